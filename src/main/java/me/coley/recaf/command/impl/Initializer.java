@@ -42,6 +42,9 @@ public class Initializer implements Runnable {
 	public boolean cli;
 	@Option(names = { "--instrument" }, description = "Indicates Recaf has been invoked as an agent")
 	public boolean instrument;
+	@Option(names = { "--lazyattach" }, description = "When invoked as an agent, only fetch the code of classes " +
+			"loaded before attaching when it is requested")
+	public boolean lazyAttach;
 	@Option(names = { "--noupdate" }, description = "Disable update checking entirely")
 	public boolean noUpdates;
 	//
@@ -60,9 +63,10 @@ public class Initializer implements Runnable {
 			controller = new GuiController(input);
 		controller.setup();
 		Recaf.setController(controller);
-		if (instrument)
+		if (instrument) {
+			InstrumentationResource.setLazyLoading(lazyAttach);
 			InstrumentationResource.setup(controller);
-		else if (controller.config().backend().firstTime && script == null)
+		} else if (controller.config().backend().firstTime && script == null)
 			promptFirstTime();
 	}
 
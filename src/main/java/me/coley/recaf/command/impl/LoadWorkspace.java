@@ -35,6 +35,10 @@ public class LoadWorkspace implements Callable<Workspace> {
 	public boolean lazy;
 	@CommandLine.Option(names = "--skip")
 	public List<String> skippedPrefixes;
+	@CommandLine.Option(names = { "--parallel" },  description = "Read and validate archive entries on multiple threads.")
+	public boolean parallel;
+	@CommandLine.Option(names = { "--nested" },  description = "Add archives nested in the input as libraries.")
+	public boolean nested;
 	private String status = "...";
 
 	@Override
@@ -100,6 +104,8 @@ public class LoadWorkspace implements Callable<Workspace> {
 		//
 		if (skippedPrefixes != null)
 			resource.setSkippedPrefixes(skippedPrefixes);
+		if (parallel && resource instanceof ArchiveResource)
+			((ArchiveResource) resource).setParallelLoading(true);
 		// Initial load classes & files
 		if (!lazy) {
 			status = LangUtil.translate("ui.load.loading");
@@ -115,6 +121,8 @@ public class LoadWorkspace implements Callable<Workspace> {
 			resource.setClassDocs(javadoc);
 		// Create workspace
 		Workspace workspace = new Workspace(resource);
+		if (nested && resource instanceof ArchiveResource)
+			workspace.getLibraries().addAll(((ArchiveResource) resource).getNestedArchives());
 		workspace.analyzePhantoms();
 		status = LangUtil.translate("ui.load.done");
 		info("Loaded workspace from: {}", input.getFileName());
@@ -9,6 +9,7 @@ import picocli.CommandLine;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.concurrent.Callable;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 import static me.coley.recaf.util.Log.*;
@@ -27,7 +28,8 @@ import static me.coley.recaf.util.Log.*;
 				Search.MemberUsage.class,
 				Search.Text.class,
 				Search.Value.class,
-				Search.Disass.class
+				Search.Disass.class,
+				Search.InsnPatternCode.class
 		}
 )
 public class Search extends MetaCommand implements Callable<Void> {
@@ -47,13 +49,47 @@ public class Search extends MetaCommand implements Callable<Void> {
 		return null;
 	}
 
+	/**
+	 * Base for search commands, which may pass results on as they are found.
+	 *
+	 * @author Matt
+	 */
+	public abstract static class SearchCommand extends ControllerCommand implements Callable<SearchCollector> {
+		@CommandLine.Option(names = "--limit", description = "The maximum number of results.")
+		public int limit;
+		private Consumer<SearchResult> resultConsumer;
+
+		/**
+		 * @param resultConsumer
+		 * 		Consumer to pass results to as they are found.
+		 * 		Results of parallel searches are passed in no particular order, unlike the returned collector.
+		 */
+		public void setResultConsumer(Consumer<SearchResult> resultConsumer) {
+			this.resultConsumer = resultConsumer;
+		}
+
+		/**
+		 * @param builder
+		 * 		Search to run.
+		 *
+		 * @return Results of the search.
+		 */
+		protected SearchCollector search(SearchBuilder builder) {
+			if (limit > 0)
+				builder.limit(limit);
+			if (resultConsumer != null)
+				builder.onResult(resultConsumer);
+			return builder.build();
+		}
+	}
+
 	/**
 	 * Command for searching for class declarations.
 	 *
 	 * @author Matt
 	 */
 	@CommandLine.Command(name = "class", description = "Find class definitions.")
-	public static class ClassName extends ControllerCommand implements Callable<SearchCollector> {
+	public static class ClassName extends SearchCommand {
 		@CommandLine.Parameters(index = "0",  description = "The string matching mode.")
 		public StringMatchMode mode;
 		@CommandLine.Parameters(index = "1",  description = "The name to search for.",
@@ -62,10 +98,9 @@ public class Search extends MetaCommand implements Callable<Void> {
 
 		@Override
 		public SearchCollector call() throws Exception {
-			return SearchBuilder.in(getWorkspace())
+			return search(SearchBuilder.in(getWorkspace())
 					.skipDebug().skipCode()
-					.query(new ClassNameQuery(name, mode))
-					.build();
+					.query(new ClassNameQuery(name, mode)));
 		}
 	}
 
@@ -75,17 +110,16 @@ public class Search extends MetaCommand implements Callable<Void> {
 	 * @author Matt
 	 */
 	@CommandLine.Command(name = "classtree", description = "Find classes extending the given name.")
-	public static class ClassInheritance extends ControllerCommand implements Callable<SearchCollector> {
+	public static class ClassInheritance extends SearchCommand {
 		@CommandLine.Parameters(index = "0",  description = "The class name to search for.",
 				completionCandidates = WorkspaceNameCompletions.class)
 		public String name;
 
 		@Override
 		public SearchCollector call() throws Exception {
-			return SearchBuilder.in(getWorkspace())
+			return search(SearchBuilder.in(getWorkspace())
 					.skipDebug().skipCode()
-					.query(new ClassInheritanceQuery(getWorkspace(), name))
-					.build();
+					.query(new ClassInheritanceQuery(getWorkspace(), name)));
 		}
 	}
 
@@ -95,7 +129,7 @@ public class Search extends MetaCommand implements Callable<Void> {
 	 * @author Matt
 	 */
 	@CommandLine.Command(name = "member", description = "Find member definitions.")
-	public static class Member extends ControllerCommand implements Callable<SearchCollector> {
+	public static class Member extends SearchCommand {
 		@CommandLine.Parameters(index = "0",  description = "The string matching mode.")
 		public StringMatchMode mode;
 		@CommandLine.Parameters(index = "1",  description = "The class containing the member.",
@@ -108,10 +142,9 @@ public class Search extends MetaCommand implements Callable<Void> {
 
 		@Override
 		public SearchCollector call() throws Exception {
-			return SearchBuilder.in(getWorkspace())
+			return search(SearchBuilder.in(getWorkspace())
 					.skipDebug().skipCode()
-					.query(new MemberDefinitionQuery(owner, name, desc, mode))
-					.build();
+					.query(new MemberDefinitionQuery(owner, name, desc, mode)));
 		}
 	}
 
@@ -121,16 +154,16 @@ public class Search extends MetaCommand implements Callable<Void> {
 	 * @author Matt
 	 */
 	@CommandLine.Command(name = "cref", description = "Find class references.")
-	public static class ClassUsage extends ControllerCommand implements Callable<SearchCollector> {
+	public static class ClassUsage extends SearchCommand {
 		@CommandLine.Parameters(index = "0",  description = "The class name.",
 				completionCandidates = WorkspaceNameCompletions.class)
 		public String name;
 
 		@Override
 		public SearchCollector call() throws Exception {
-			return SearchBuilder.in(getWorkspace())
-					.query(new ClassReferenceQuery(name))
-					.build();
+			return search(SearchBuilder.in(getWorkspace())
+					.parallel()
+					.query(new ClassReferenceQuery(name)));
 		}
 	}
 
@@ -140,7 +173,7 @@ public class Search extends MetaCommand implements Callable<Void> {
 	 * @author Matt
 	 */
 	@CommandLine.Command(name = "mref", description = "Find member references.")
-	public static class MemberUsage extends ControllerCommand implements Callable<SearchCollector> {
+	public static class MemberUsage extends SearchCommand {
 		@CommandLine.Parameters(index = "0",  description = "The string matching mode.")
 		public StringMatchMode mode;
 		@CommandLine.Option(names = "--owner", description = "The class name.",
@@ -157,10 +190,10 @@ public class Search extends MetaCommand implements Callable<Void> {
 				error("Please give at least one parameter.");
 				return new SearchCollector(getWorkspace(), Collections.emptyList());
 			}
-			return SearchBuilder.in(getWorkspace())
+			return search(SearchBuilder.in(getWorkspace())
+					.parallel()
 					.skipDebug()
-					.query(new MemberReferenceQuery(owner, name, desc, mode))
-					.build();
+					.query(new MemberReferenceQuery(owner, name, desc, mode)));
 		}
 	}
 
@@ -170,7 +203,7 @@ public class Search extends MetaCommand implements Callable<Void> {
 	 * @author Matt
 	 */
 	@CommandLine.Command(name = "string", description = "Find strings.")
-	public static class Text extends ControllerCommand implements Callable<SearchCollector> {
+	public static class Text extends SearchCommand {
 		@CommandLine.Parameters(index = "0",  description = "The string matching mode.")
 		public StringMatchMode mode;
 		@CommandLine.Parameters(index = "1", description = "The text to match.")
@@ -178,10 +211,10 @@ public class Search extends MetaCommand implements Callable<Void> {
 
 		@Override
 		public SearchCollector call() throws Exception {
-			return SearchBuilder.in(getWorkspace())
+			return search(SearchBuilder.in(getWorkspace())
+					.parallel()
 					.skipDebug()
-					.query(new StringQuery(text, mode))
-					.build();
+					.query(new StringQuery(text, mode)));
 		}
 	}
 
@@ -191,16 +224,16 @@ public class Search extends MetaCommand implements Callable<Void> {
 	 * @author Matt
 	 */
 	@CommandLine.Command(name = "value", description = "Find value constants.")
-	public static class Value extends ControllerCommand implements Callable<SearchCollector> {
+	public static class Value extends SearchCommand {
 		@CommandLine.Parameters(index = "0",  description = "The value to search for.")
 		public Number value;
 
 		@Override
 		public SearchCollector call() throws Exception {
-			return SearchBuilder.in(getWorkspace())
+			return search(SearchBuilder.in(getWorkspace())
+					.parallel()
 					.skipDebug()
-					.query(new ValueQuery(value))
-					.build();
+					.query(new ValueQuery(value)));
 		}
 	}
 
@@ -210,7 +243,7 @@ public class Search extends MetaCommand implements Callable<Void> {
 	 * @author Matt
 	 */
 	@CommandLine.Command(name = "code", description = "Find code matches.")
-	public static class Disass extends ControllerCommand implements Callable<SearchCollector> {
+	public static class Disass extends SearchCommand {
 		@CommandLine.Parameters(index = "0",  description = "The string matching mode.")
 		public StringMatchMode mode;
 		@CommandLine.Parameters(index = "1", description = "The lines of code to match, separated by ':'.")
@@ -221,10 +254,29 @@ public class Search extends MetaCommand implements Callable<Void> {
 			// Skip debug is used here so that variable names don't interfere with searching.
 			// Using pure indices instead like "ALOAD 4" instead of "ALOAD varName"
 			// ... Although it will still always o "ALOAD this" where possible
-			return SearchBuilder.in(getWorkspace())
+			return search(SearchBuilder.in(getWorkspace())
+					.parallel()
+					.skipDebug()
+					.query(new InsnTextQuery(Arrays.asList(text.split(":")), mode)));
+		}
+	}
+
+	/**
+	 * Command for searching for instruction patterns.
+	 *
+	 * @author Matt
+	 */
+	@CommandLine.Command(name = "pattern", description = "Find instruction pattern matches.")
+	public static class InsnPatternCode extends SearchCommand {
+		@CommandLine.Parameters(index = "0", description = "The instructions to match, separated by ';'.")
+		public String pattern;
+
+		@Override
+		public SearchCollector call() throws Exception {
+			return search(SearchBuilder.in(getWorkspace())
+					.parallel()
 					.skipDebug()
-					.query(new InsnTextQuery(Arrays.asList(text.split(":")), mode))
-					.build();
+					.query(new InsnPatternQuery(pattern)));
 		}
 	}
 }
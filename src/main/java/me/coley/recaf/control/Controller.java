@@ -51,9 +51,15 @@ public abstract class Controller implements Runnable {
 		Workspace old = this.workspace;
 		if (old != null) {
 			plugins.forEach(plugin -> plugin.onClosed(old));
+			// Release files held open by the old workspace, unless its primary resource and any changes to it are kept
+			if (workspace == null || workspace.getPrimary() != old.getPrimary())
+				old.close();
 		}
 		this.workspace = workspace;
 		Recaf.setCurrentWorkspace(workspace);
+		// Index constants for searching ahead of time
+		if (workspace != null)
+			workspace.getConstantIndex().buildInBackground();
 		plugins.forEach(plugin -> plugin.onOpened(workspace));
 	}
 
@@ -209,9 +209,11 @@ public class HeadlessController extends Controller {
 	public boolean setup() {
 		boolean success = super.setup();
 		//
+		// Results are printed once the search is done, so parallel searches print them in the same order as serial ones
 		Consumer<SearchCollector> printResults = r -> {
 			for (SearchResult res : r.getAllResults())
 				info("{}\n{}", res.getContext(), res.toString());
+			info("Found {} results", r.getAllResults().size());
 		};
 		//
 		registerHandler(Disassemble.class, v -> {
@@ -232,6 +234,7 @@ public class HeadlessController extends Controller {
 		registerHandler(Search.Text.class, printResults);
 		registerHandler(Search.Value.class, printResults);
 		registerHandler(Search.Disass.class, printResults);
+		registerHandler(Search.InsnPatternCode.class, printResults);
 		registerHandler(Quit.class, v -> running = false);
 		return success;
 	}
@@ -1,8 +1,13 @@
 package me.coley.recaf.graph.inheritance;
 
+import com.google.common.collect.Maps;
 import me.coley.recaf.graph.*;
+import me.coley.recaf.util.ClassHeader;
 import me.coley.recaf.util.ClassUtil;
+import me.coley.recaf.workspace.JavaResource;
+import me.coley.recaf.workspace.ResourceDelta;
 import me.coley.recaf.workspace.Workspace;
+import me.coley.recaf.workspace.WorkspaceEvent;
 import org.objectweb.asm.ClassReader;
 
 import java.util.*;
@@ -11,6 +16,7 @@ import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import static java.util.stream.Stream.*;
+import static org.objectweb.asm.ClassReader.*;
 
 /**
  * Graph model to represent the class inheritance of a loaded input. <br>
@@ -24,6 +30,11 @@ public class HierarchyGraph extends WorkspaceGraph<HierarchyVertex> {
 	 * Map of parent to children names.
 	 */
 	private final Map<String, Set<String>> descendents = new HashMap<>();
+	/**
+	 * Map of child to the parent names it is listed under in {@link #descendents}.
+	 */
+	private final Map<String, List<String>> parents = new HashMap<>();
+	private volatile boolean stale;
 
 	/**
 	 * Constructs a hierarchy graph from the given workspace.
@@ -36,6 +47,23 @@ public class HierarchyGraph extends WorkspaceGraph<HierarchyVertex> {
 		refresh();
 	}
 
+	/**
+	 * Constructs a hierarchy graph from the given workspace, using previously computed relations.
+	 *
+	 * @param workspace
+	 * 		Workspace to pull classes from.
+	 * @param descendents
+	 * 		Map of parent to children names, see {@link #getDescendantMap()}.
+	 */
+	public HierarchyGraph(Workspace workspace, Map<String, Set<String>> descendents) {
+		super(workspace);
+		this.descendents.putAll(descendents);
+		descendents.forEach((parent, children) -> {
+			for (String child : children)
+				parents.computeIfAbsent(child, k -> new ArrayList<>()).add(parent);
+		});
+	}
+
 	@Override
 	public HierarchyVertex getVertex(ClassReader key) {
 		return getVertexFast(key);
@@ -96,12 +124,21 @@ public class HierarchyGraph extends WorkspaceGraph<HierarchyVertex> {
 	 * @return Direct descendants of the class.
 	 */
 	public Stream<String> getDescendants(String name) {
-		if (descendents.containsKey(name))
-			return descendents.get(name).stream();
+		Set<String> descendentNames = descendents().get(name);
+		if (descendentNames != null)
+			return descendentNames.stream();
 		// Empty stream
 		return empty();
 	}
 
+	/**
+	 * @return Unmodifiable view of the map of parent to direct children names.
+	 * The sets of children names are unmodifiable views as well.
+	 */
+	public Map<String, Set<String>> getDescendantMap() {
+		return Collections.unmodifiableMap(Maps.transformValues(descendents(), Collections::unmodifiableSet));
+	}
+
 	/**
 	 * @param name
 	 * 		Class name.
@@ -109,7 +146,7 @@ public class HierarchyGraph extends WorkspaceGraph<HierarchyVertex> {
 	 * @return All descendants of the class.
 	 */
 	public Stream<String> getAllDescendants(String name) {
-		Set<String> descendentNames = descendents.get(name);
+		Set<String> descendentNames = descendents().get(name);
 		if (descendentNames == null)
 			return empty();
 		return concat(descendentNames.stream(),
@@ -125,12 +162,13 @@ public class HierarchyGraph extends WorkspaceGraph<HierarchyVertex> {
 	 * @return All descendants of the class, up until a point specified by the check condition.
 	 */
 	public Stream<String> getAllDescendantsWithBreakCondition(String name, Predicate<String> breakCheck) {
-		Set<String> descendentNames = descendents.get(name);
+		Set<String> descendentNames = descendents().get(name);
 		if (descendentNames == null)
 			return empty();
-		descendentNames.removeIf(breakCheck);
-		return concat(descendentNames.stream(),
-				descendentNames.stream().flatMap(d -> getAllDescendantsWithBreakCondition(d, breakCheck)));
+		// Filtered on a copy, since the set is part of the graph
+		List<String> children = descendentNames.stream().filter(breakCheck.negate()).collect(Collectors.toList());
+		return concat(children.stream(),
+				children.stream().flatMap(d -> getAllDescendantsWithBreakCondition(d, breakCheck)));
 	}
 
 	/**
@@ -140,6 +178,11 @@ public class HierarchyGraph extends WorkspaceGraph<HierarchyVertex> {
 	 * @return Direct parents of the class.
 	 */
 	public Stream<String> getParents(String name) {
+		// Shared libraries hold the parents of their classes, so the class does not need to be read
+		JavaResource resource = getWorkspace().getContainingResourceForClass(name);
+		String[] parents = resource == null ? null : resource.getSharedParents(name);
+		if (parents != null)
+			return of(parents);
 		HierarchyVertex vert = getVertex(name);
 		if (vert != null)
 			return getParents(vert);
@@ -223,12 +266,13 @@ public class HierarchyGraph extends WorkspaceGraph<HierarchyVertex> {
 		// Get classes that are considered "library" classes (not included in Input)
 		Stream<HierarchyVertex> hierarchy = getHierarchy(owner).stream();
 		Stream<HierarchyVertex> libClasses = hierarchy.filter(vertex -> !getWorkspace()
-				.getPrimaryClassNames().contains(vertex.getClassName()));
+				.getPrimary().getClasses().containsKey(vertex.getClassName()));
 		// Check if the library classes have a matching method.
 		return libClasses
-					.map(ClassVertex::getData)
-					.flatMap(cr -> ClassUtil.getMethodDefs(cr).stream())
-					.anyMatch(method -> name.equals(method.getKey()) && desc.equals(method.getValue()));
+					.map(vertex -> getWorkspace().getClassNode(vertex.getClassName(), SKIP_CODE | SKIP_DEBUG))
+					.filter(Objects::nonNull)
+					.flatMap(node -> node.methods.stream())
+					.anyMatch(method -> name.equals(method.name) && desc.equals(method.desc));
 	}
 
 	/**
@@ -277,18 +321,76 @@ public class HierarchyGraph extends WorkspaceGraph<HierarchyVertex> {
 	/**
 	 * Populate {@link #descendents} map.
 	 */
-	public void refresh() {
-		// TODO: Call this when the inheritance tree is modified.
-		//  - Already called by mappings
-		//  - But later if user changes a class name WITHOUT remappping this needs to be called too
+	public synchronized void refresh() {
+		stale = false;
 		descendents.clear();
-		for (ClassReader reader : getWorkspace().getPrimaryClassReaders()) {
-			String superName = reader.getSuperName();
-			if (superName == null || !superName.equals("java/lang/Object"))
-				descendents.computeIfAbsent(superName, k -> new HashSet<>()).add(reader.getClassName());
-			for (String inter : reader.getInterfaces()) {
-				descendents.computeIfAbsent(inter, k -> new HashSet<>()).add(reader.getClassName());
-			}
+		parents.clear();
+		for (ClassReader reader : getWorkspace().getPrimaryClassReaders())
+			link(reader.getClassName(), reader.getSuperName(), reader.getInterfaces());
+	}
+
+	/**
+	 * Apply changes made to the primary resource to the {@link #descendents} map, instead of rebuilding it.
+	 * Workspaces call this for their {@link Workspace#getHierarchyGraph() hierarchy graph}.
+	 *
+	 * @param event
+	 * 		Changes made to the workspace.
+	 */
+	public synchronized void update(WorkspaceEvent event) {
+		ResourceDelta delta = event.getDelta(getWorkspace().getPrimary());
+		if (delta == null || stale)
+			return;
+		// Rebuilt when next used
+		if (delta.isClassesReset()) {
+			stale = true;
+			return;
+		}
+		Set<String> unlinked = new HashSet<>(delta.getRemovedClasses());
+		unlinked.addAll(delta.getChangedClasses());
+		unlinked.addAll(delta.getRenamedClasses().keySet());
+		Set<String> linked = new HashSet<>(delta.getAddedClasses());
+		linked.addAll(delta.getChangedClasses());
+		linked.addAll(delta.getRenamedClasses().values());
+		unlinked.forEach(this::unlink);
+		Map<String, byte[]> classes = getWorkspace().getPrimary().getClasses();
+		for (String name : linked) {
+			byte[] value = classes.get(name);
+			ClassHeader header = value == null ? null : ClassUtil.readValidHeader(value);
+			if (header != null)
+				link(header.getName(), header.getSuperName(), header.getInterfaces());
+		}
+	}
+
+	/**
+	 * @return Map of parent to children names, rebuilt first if it is out of date.
+	 */
+	private synchronized Map<String, Set<String>> descendents() {
+		if (stale)
+			refresh();
+		return descendents;
+	}
+
+	private void link(String name, String superName, String[] interfaces) {
+		List<String> names = new ArrayList<>(interfaces.length + 1);
+		if (superName == null || !superName.equals("java/lang/Object"))
+			names.add(superName);
+		Collections.addAll(names, interfaces);
+		for (String parent : names)
+			descendents.computeIfAbsent(parent, k -> new HashSet<>()).add(name);
+		parents.computeIfAbsent(name, k -> new ArrayList<>()).addAll(names);
+	}
+
+	private void unlink(String name) {
+		List<String> names = parents.remove(name);
+		if (names == null)
+			return;
+		for (String parent : names) {
+			Set<String> children = descendents.get(parent);
+			if (children == null)
+				continue;
+			children.remove(name);
+			if (children.isEmpty())
+				descendents.remove(parent);
 		}
 	}
 }
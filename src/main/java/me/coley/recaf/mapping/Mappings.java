@@ -156,18 +156,21 @@ public class Mappings {
 			ClassReader cr = new ClassReader(old);
 			accept(updated, cr);
 		}
-		// Update the resource's classes map
-		for(Map.Entry<String, byte[]> e : updated.entrySet()) {
-			String oldKey = e.getKey();
-			String newKey = new ClassReader(e.getValue()).getClassName();
-			if (!oldKey.equals(newKey))
-				resource.getClasses().remove(oldKey);
-			resource.getClasses().put(newKey, e.getValue());
-		}
+		// Update the resource's classes map, as a single change to the workspace
+		WorkspaceEventBus bus = workspace.getEventBus();
+		bus.transaction(() -> {
+			for(Map.Entry<String, byte[]> e : updated.entrySet()) {
+				String oldKey = e.getKey();
+				String newKey = new ClassReader(e.getValue()).getClassName();
+				if (!oldKey.equals(newKey))
+					resource.getClasses().remove(oldKey);
+				resource.getClasses().put(newKey, e.getValue());
+				if (!oldKey.equals(newKey))
+					bus.onRename(resource, oldKey, newKey);
+			}
+		});
 		// Tell the workspace we've finished renaming classes
 		workspace.onPrimaryDefinitionChanges(updated.keySet());
-		// Update hierarchy graph
-		workspace.getHierarchyGraph().refresh();
 		// Update saved mappings
 		workspace.updateAggregateMappings(getMappings(), updated.keySet());
 		return updated;
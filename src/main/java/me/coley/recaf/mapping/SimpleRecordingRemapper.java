@@ -1,6 +1,5 @@
 package me.coley.recaf.mapping;
 
-import me.coley.recaf.util.ClassUtil;
 import me.coley.recaf.workspace.Workspace;
 import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.commons.SimpleRemapper;
@@ -138,10 +137,9 @@ public class SimpleRecordingRemapper extends SimpleRemapper {
 	 * @return Name of outer class or {@code null} if no outer exists.
 	 */
 	private String getUnmatchedOuter(String name) {
-		ClassReader cr = workspace.getClassReader(name);
-		if (cr == null)
+		ClassNode node = workspace.getClassNode(name, ClassReader.SKIP_CODE);
+		if (node == null)
 			return null;
-		ClassNode node = ClassUtil.getNode(cr, ClassReader.SKIP_CODE);
 		// Check for outer name attr
 		if (node.outerClass != null && !node.name.equals(node.outerClass))
 			return node.outerClass;
@@ -7,6 +7,7 @@ package me.coley.recaf.search;
  */
 public class ClassNameQuery extends Query {
 	private final String name;
+	private final StringMatcher matcher;
 
 	/**
 	 * Constructs a class name matching query.
@@ -19,6 +20,7 @@ public class ClassNameQuery extends Query {
 	public ClassNameQuery(String name, StringMatchMode stringMode) {
 		super(QueryType.CLASS_NAME, stringMode);
 		this.name = name;
+		this.matcher = compile(name);
 	}
 
 	/**
@@ -30,7 +32,7 @@ public class ClassNameQuery extends Query {
 	 * 		Name of class.
 	 */
 	public void match(int access, String name) {
-		if (stringMode.match(this.name, name)) {
+		if (matcher != null && matcher.matches(name)) {
 			getMatched().add(new ClassResult(access, name));
 		}
 	}
@@ -9,6 +9,7 @@ import java.util.function.IntSupplier;
  */
 public class ClassReferenceQuery extends Query {
 	private final String name;
+	private final StringMatcher matcher;
 
 	/**
 	 * Constructs a class referencing query.
@@ -32,6 +33,14 @@ public class ClassReferenceQuery extends Query {
 	public ClassReferenceQuery(String name, StringMatchMode stringMode) {
 		super(QueryType.CLASS_REFERENCE, stringMode);
 		this.name = name;
+		this.matcher = compile(name);
+	}
+
+	/**
+	 * @return Class name pattern.
+	 */
+	String getName() {
+		return name;
 	}
 
 	/**
@@ -43,7 +52,7 @@ public class ClassReferenceQuery extends Query {
 	 * 		Name of class.
 	 */
 	public void match(IntSupplier access, String name) {
-		if (stringMode.match(this.name, name)) {
+		if (matcher != null && matcher.matches(name)) {
 			getMatched().add(new ClassResult(access.getAsInt(), name));
 		}
 	}
@@ -0,0 +1,942 @@
+package me.coley.recaf.search;
+
+import me.coley.recaf.Recaf;
+import me.coley.recaf.util.InsnUtil;
+import me.coley.recaf.util.ThreadUtil;
+import me.coley.recaf.workspace.ResourceDelta;
+import me.coley.recaf.workspace.Workspace;
+import me.coley.recaf.workspace.WorkspaceEvent;
+import org.objectweb.asm.*;
+
+import java.io.*;
+import java.lang.reflect.Array;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+
+import static me.coley.recaf.util.Log.*;
+
+/**
+ * Inverted index of the constants in the classes of the primary resource of a workspace.
+ * Maps strings, numbers and types to the classes that contain them, and the member and instruction they are used in.
+ * <br>
+ * The index covers every place a {@link StringQuery} or {@link ValueQuery} is matched against, so a
+ * {@link SearchBuilder search} with only those queries only needs to visit the classes the index reports.
+ * <br>
+ * The index is built in parallel in the {@link #buildInBackground() background} when the workspace is opened,
+ * and kept up to date with changes published by the {@link Workspace#getEventBus() workspace event bus}.
+ * Searches only use the index once it is {@link #isBuilt() built}. It may be {@link #write(Path) written} to disk, and
+ * {@link #read(Path) read} back in a later session so only changed classes need to be indexed again.
+ * <br>
+ * Instruction offsets are the position of the instruction in the method when read with
+ * {@link ClassReader#SKIP_FRAMES}, matching the {@link Context.InsnContext} of search results.
+ *
+ * @author Matt
+ */
+public class ConstantIndex {
+	private static final int MAGIC = 0x52434349;
+	private static final int VERSION = 1;
+	private final Workspace workspace;
+	private final Map<String, ClassConstants> classes = new HashMap<>();
+	private final List<ClassConstants> byId = new ArrayList<>();
+	private final Deque<Integer> freeIds = new ArrayDeque<>();
+	private final NavigableMap<String, Postings> strings = new TreeMap<>();
+	private final Map<Object, Postings> values = new HashMap<>();
+	// Entries read from disk, used while building if the class is unchanged
+	private Map<String, ClassConstants> restored = Collections.emptyMap();
+	private volatile boolean stale = true;
+	private final Object buildLock = new Object();
+	private Future<?> building;
+
+	/**
+	 * @param workspace
+	 * 		Workspace to index the primary resource of.
+	 */
+	public ConstantIndex(Workspace workspace) {
+		this.workspace = workspace;
+	}
+
+	/**
+	 * @return {@code true} if the index is up to date.
+	 * {@code false} if it will be built the next time it is used.
+	 */
+	public boolean isBuilt() {
+		// Not synchronized, so checking does not wait on a build in progress
+		return !stale;
+	}
+
+	/**
+	 * Build the index on a background thread, if it is not up to date and not already being built.
+	 *
+	 * @return Future of the build.
+	 */
+	public Future<?> buildInBackground() {
+		synchronized(buildLock) {
+			if (building == null || building.isDone())
+				building = ThreadUtil.run(() -> {
+					try {
+						build();
+					} catch(RuntimeException ex) {
+						error(ex, "Failed to index constants");
+					}
+				});
+			return building;
+		}
+	}
+
+	/**
+	 * Build the index now, if it is not up to date.
+	 */
+	public synchronized void build() {
+		if (!stale)
+			return;
+		clear();
+		Map<String, byte[]> primary = workspace.getPrimary().getClasses();
+		List<String> names = new ArrayList<>(primary.keySet());
+		List<ClassConstants> indexed;
+		try {
+			indexed = ThreadUtil.forkJoinPool().submit(() -> names.parallelStream()
+					.map(name -> {
+						byte[] code = primary.get(name);
+						if (code == null)
+							return null;
+						ClassConstants entry = restored.get(name);
+						if (entry != null && entry.crc == crc(code))
+							return entry;
+						return scan(name, code);
+					})
+					.collect(Collectors.toList())).get();
+		} catch(InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while indexing constants", ex);
+		} catch(ExecutionException ex) {
+			throw new IllegalStateException("Failed to index constants", ex.getCause());
+		}
+		for (ClassConstants entry : indexed)
+			if (entry != null)
+				add(entry);
+		restored = Collections.emptyMap();
+		stale = false;
+		debug("Indexed constants of {} classes", classes.size());
+	}
+
+	/**
+	 * Apply changes to the primary resource, only re-indexing the changed classes.
+	 *
+	 * @param event
+	 * 		Published workspace changes.
+	 */
+	public synchronized void update(WorkspaceEvent event) {
+		if (stale)
+			return;
+		ResourceDelta delta = event.getDelta(workspace.getPrimary());
+		if (delta == null)
+			return;
+		if (delta.isClassesReset()) {
+			stale = true;
+			return;
+		}
+		Map<String, byte[]> primary = workspace.getPrimary().getClasses();
+		for (String name : delta.getRemovedClasses())
+			remove(name);
+		for (Map.Entry<String, String> e : delta.getRenamedClasses().entrySet()) {
+			remove(e.getKey());
+			reindex(e.getValue(), primary.get(e.getValue()));
+		}
+		for (String name : delta.getAddedClasses())
+			reindex(name, primary.get(name));
+		for (String name : delta.getChangedClasses())
+			reindex(name, primary.get(name));
+	}
+
+	/**
+	 * @param pattern
+	 * 		String pattern.
+	 * @param mode
+	 * 		How to match strings.
+	 *
+	 * @return Locations of matching strings, ordered by class name.
+	 */
+	public synchronized List<Location> findStrings(String pattern, StringMatchMode mode) {
+		build();
+		Collection<String> keys = matchingStrings(pattern, mode);
+		return locations(idsOf(keys.stream().map(strings::get).collect(Collectors.toList())), new HashSet<>(keys));
+	}
+
+	/**
+	 * @param value
+	 * 		Number, type or other constant value.
+	 *
+	 * @return Locations of equal values, ordered by class name.
+	 */
+	public synchronized List<Location> findValues(Object value) {
+		build();
+		Postings postings = postingsOf(value);
+		if (postings == null)
+			return Collections.emptyList();
+		return locations(idsOf(Collections.singletonList(postings)), Collections.singleton(value));
+	}
+
+	/**
+	 * @param pattern
+	 * 		String pattern.
+	 * @param mode
+	 * 		How to match strings.
+	 *
+	 * @return Names of classes containing a matching string.
+	 */
+	public synchronized Set<String> getClassesWithString(String pattern, StringMatchMode mode) {
+		build();
+		return names(idsOf(matchingStrings(pattern, mode).stream()
+				.map(strings::get).collect(Collectors.toList())));
+	}
+
+	/**
+	 * @param value
+	 * 		Number, type or other constant value.
+	 *
+	 * @return Names of classes containing an equal value.
+	 */
+	public synchronized Set<String> getClassesWithValue(Object value) {
+		build();
+		Postings postings = postingsOf(value);
+		if (postings == null)
+			return Collections.emptySet();
+		return names(idsOf(Collections.singletonList(postings)));
+	}
+
+	/**
+	 * Write the index, so it can be {@link #read(Path) read} in a later session.
+	 * Classes that hold constants that cannot be written, such as method handles, are left out and indexed again.
+	 *
+	 * @param path
+	 * 		File to write to.
+	 *
+	 * @throws IOException
+	 * 		When the file could not be written.
+	 */
+	public synchronized void write(Path path) throws IOException {
+		build();
+		Path temp = Files.createTempFile(path.toAbsolutePath().getParent(), path.getFileName().toString(), ".tmp");
+		try {
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+				List<ClassConstants> writable = classes.values().stream()
+						.filter(ClassConstants::isWritable)
+						.collect(Collectors.toList());
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeInt(writable.size());
+				for (ClassConstants entry : writable)
+					entry.write(out);
+			}
+			Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	/**
+	 * Read an index {@link #write(Path) written} in an earlier session. Entries are used when the index is next
+	 * built, for classes that have not changed since. Has no effect if the index is already built.
+	 *
+	 * @param path
+	 * 		File to read from.
+	 *
+	 * @throws IOException
+	 * 		When the file could not be read, or is not an index.
+	 */
+	public synchronized void read(Path path) throws IOException {
+		if (!stale)
+			return;
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION)
+				throw new IOException("Unsupported constant index format");
+			int count = in.readInt();
+			Map<String, ClassConstants> entries = new HashMap<>();
+			for (int i = 0; i < count; i++) {
+				ClassConstants entry = ClassConstants.read(in);
+				entries.put(entry.name, entry);
+			}
+			restored = entries;
+		}
+	}
+
+	private void clear() {
+		classes.clear();
+		byId.clear();
+		freeIds.clear();
+		strings.clear();
+		values.clear();
+	}
+
+	private void reindex(String name, byte[] code) {
+		remove(name);
+		if (code != null)
+			add(scan(name, code));
+	}
+
+	private void add(ClassConstants entry) {
+		Integer id = freeIds.poll();
+		if (id == null) {
+			id = byId.size();
+			byId.add(entry);
+		} else {
+			byId.set(id, entry);
+		}
+		entry.id = id;
+		classes.put(entry.name, entry);
+		for (Object value : entry.distinctValues()) {
+			Postings postings = value instanceof String ?
+					strings.computeIfAbsent((String) value, k -> new Postings()) :
+					values.computeIfAbsent(value, k -> new Postings());
+			postings.add(id);
+		}
+	}
+
+	private void remove(String name) {
+		ClassConstants entry = classes.remove(name);
+		if (entry == null)
+			return;
+		for (Object value : entry.distinctValues()) {
+			Map<?, Postings> map = value instanceof String ? strings : values;
+			Postings postings = map.get(value);
+			if (postings != null && postings.remove(entry.id) && postings.isEmpty())
+				map.remove(value);
+		}
+		byId.set(entry.id, null);
+		freeIds.push(entry.id);
+	}
+
+	private Postings postingsOf(Object value) {
+		return value instanceof String ? strings.get(value) : values.get(value);
+	}
+
+	private Collection<String> matchingStrings(String pattern, StringMatchMode mode) {
+		if (pattern == null || mode == null)
+			return Collections.emptyList();
+		switch(mode) {
+			case EQUALS:
+				return strings.containsKey(pattern) ? Collections.singletonList(pattern) : Collections.emptyList();
+			case STARTS_WITH:
+				// Every key with the prefix sorts directly after it
+				List<String> keys = new ArrayList<>();
+				for (String key : strings.tailMap(pattern, true).keySet()) {
+					if (!key.startsWith(pattern))
+						break;
+					keys.add(key);
+				}
+				return keys;
+			default:
+				StringMatcher matcher = mode.compile(pattern);
+				return strings.keySet().stream()
+						.filter(matcher::matches)
+						.collect(Collectors.toList());
+		}
+	}
+
+	private BitSet idsOf(Collection<Postings> postings) {
+		BitSet ids = new BitSet();
+		for (Postings p : postings)
+			if (p != null)
+				p.addTo(ids);
+		return ids;
+	}
+
+	private Set<String> names(BitSet ids) {
+		Set<String> names = new HashSet<>();
+		for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1))
+			names.add(byId.get(id).name);
+		return names;
+	}
+
+	private List<Location> locations(BitSet ids, Set<Object> matched) {
+		List<ClassConstants> entries = new ArrayList<>();
+		for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1))
+			entries.add(byId.get(id));
+		entries.sort(Comparator.comparing(entry -> entry.name));
+		List<Location> locations = new ArrayList<>();
+		for (ClassConstants entry : entries)
+			for (int i = 0; i < entry.values.length; i++)
+				if (matched.contains(entry.values[i]))
+					locations.add(entry.location(i));
+		return locations;
+	}
+
+	private static long crc(byte[] code) {
+		CRC32 crc = new CRC32();
+		crc.update(code);
+		return crc.getValue();
+	}
+
+	/**
+	 * @param name
+	 * 		Class name.
+	 * @param code
+	 * 		Class bytecode.
+	 *
+	 * @return Constants of the class.
+	 */
+	private static ClassConstants scan(String name, byte[] code) {
+		ClassConstants entry = new ClassConstants(name, crc(code));
+		try {
+			new ClassReader(code).accept(new ConstantClassVisitor(entry), ClassReader.SKIP_FRAMES);
+		} catch(Exception ex) {
+			// Searches would fail on the class as well
+			debug("Failed to index constants of class '{}': {}", name, ex.getMessage());
+		}
+		entry.trim();
+		return entry;
+	}
+
+	/**
+	 * Location of a constant.
+	 */
+	public static class Location {
+		private final String owner;
+		private final String memberName;
+		private final String memberDesc;
+		private final int offset;
+		private final Object value;
+
+		private Location(String owner, String memberName, String memberDesc, int offset, Object value) {
+			this.owner = owner;
+			this.memberName = memberName;
+			this.memberDesc = memberDesc;
+			this.offset = offset;
+			this.value = value;
+		}
+
+		/**
+		 * @return Name of the class containing the constant.
+		 */
+		public String getOwner() {
+			return owner;
+		}
+
+		/**
+		 * @return Name of the member containing the constant,
+		 * or {@code null} if the constant is in an annotation of the class.
+		 */
+		public String getMemberName() {
+			return memberName;
+		}
+
+		/**
+		 * @return Descriptor of the member containing the constant,
+		 * or {@code null} if the constant is in an annotation of the class.
+		 */
+		public String getMemberDesc() {
+			return memberDesc;
+		}
+
+		/**
+		 * @return Offset of the instruction using the constant,
+		 * or {@code -1} if the constant is not used by an instruction.
+		 */
+		public int getOffset() {
+			return offset;
+		}
+
+		/**
+		 * @return Constant value.
+		 */
+		public Object getValue() {
+			return value;
+		}
+
+		@Override
+		public String toString() {
+			String location = memberName == null ? owner : owner + "." + memberName + memberDesc;
+			return offset < 0 ? location : location + " @" + offset;
+		}
+	}
+
+	/**
+	 * Ids of the classes containing a constant. Kept as a plain array, since most constants occur in few classes.
+	 */
+	private static class Postings {
+		private int[] ids = new int[2];
+		private int size;
+
+		private void add(int id) {
+			if (size == ids.length)
+				ids = Arrays.copyOf(ids, size * 2);
+			ids[size++] = id;
+		}
+
+		private boolean remove(int id) {
+			for (int i = 0; i < size; i++)
+				if (ids[i] == id) {
+					ids[i] = ids[--size];
+					return true;
+				}
+			return false;
+		}
+
+		private boolean isEmpty() {
+			return size == 0;
+		}
+
+		private void addTo(BitSet set) {
+			for (int i = 0; i < size; i++)
+				set.set(ids[i]);
+		}
+	}
+
+	/**
+	 * Constants of a single class. Each occurrence of a constant is stored in parallel arrays.
+	 */
+	private static class ClassConstants {
+		private final String name;
+		private final long crc;
+		private String[] memberNames = new String[8];
+		private String[] memberDescs = new String[8];
+		private int memberCount;
+		private Object[] values = new Object[16];
+		private int[] members = new int[16];
+		private int[] offsets = new int[16];
+		private int count;
+		private int id;
+
+		private ClassConstants(String name, long crc) {
+			this.name = name;
+			this.crc = crc;
+		}
+
+		private int addMember(String name, String desc) {
+			if (memberCount == memberNames.length) {
+				memberNames = Arrays.copyOf(memberNames, memberCount * 2);
+				memberDescs = Arrays.copyOf(memberDescs, memberCount * 2);
+			}
+			memberNames[memberCount] = name;
+			memberDescs[memberCount] = desc;
+			return memberCount++;
+		}
+
+		private void add(Object value, int member, int offset) {
+			if (value == null)
+				return;
+			if (count == values.length) {
+				values = Arrays.copyOf(values, count * 2);
+				members = Arrays.copyOf(members, count * 2);
+				offsets = Arrays.copyOf(offsets, count * 2);
+			}
+			values[count] = value;
+			members[count] = member;
+			offsets[count] = offset;
+			count++;
+		}
+
+		private void trim() {
+			memberNames = Arrays.copyOf(memberNames, memberCount);
+			memberDescs = Arrays.copyOf(memberDescs, memberCount);
+			values = Arrays.copyOf(values, count);
+			members = Arrays.copyOf(members, count);
+			offsets = Arrays.copyOf(offsets, count);
+		}
+
+		private Set<Object> distinctValues() {
+			return new HashSet<>(Arrays.asList(values));
+		}
+
+		private Location location(int i) {
+			int member = members[i];
+			return member < 0 ?
+					new Location(name, null, null, offsets[i], values[i]) :
+					new Location(name, memberNames[member], memberDescs[member], offsets[i], values[i]);
+		}
+
+		private boolean isWritable() {
+			for (Object value : values)
+				if (tagOf(value) == 0)
+					return false;
+			return true;
+		}
+
+		private void write(DataOutputStream out) throws IOException {
+			writeString(out, name);
+			out.writeLong(crc);
+			out.writeInt(memberNames.length);
+			for (int i = 0; i < memberNames.length; i++) {
+				writeString(out, memberNames[i]);
+				writeString(out, memberDescs[i]);
+			}
+			out.writeInt(values.length);
+			for (int i = 0; i < values.length; i++) {
+				out.writeInt(members[i]);
+				out.writeInt(offsets[i]);
+				writeValue(out, values[i]);
+			}
+		}
+
+		private static ClassConstants read(DataInputStream in) throws IOException {
+			ClassConstants entry = new ClassConstants(readString(in), in.readLong());
+			int memberCount = in.readInt();
+			for (int i = 0; i < memberCount; i++)
+				entry.addMember(readString(in), readString(in));
+			int count = in.readInt();
+			for (int i = 0; i < count; i++) {
+				int member = in.readInt();
+				int offset = in.readInt();
+				entry.add(readValue(in), member, offset);
+			}
+			entry.trim();
+			return entry;
+		}
+
+		private static char tagOf(Object value) {
+			if (value instanceof String)
+				return 's';
+			if (value instanceof Integer)
+				return 'I';
+			if (value instanceof Long)
+				return 'J';
+			if (value instanceof Float)
+				return 'F';
+			if (value instanceof Double)
+				return 'D';
+			if (value instanceof Byte)
+				return 'B';
+			if (value instanceof Short)
+				return 'S';
+			if (value instanceof Character)
+				return 'C';
+			if (value instanceof Boolean)
+				return 'Z';
+			if (value instanceof Type)
+				return 'T';
+			return 0;
+		}
+
+		private static void writeValue(DataOutputStream out, Object value) throws IOException {
+			char tag = tagOf(value);
+			out.writeByte(tag);
+			switch(tag) {
+				case 's':
+					writeString(out, (String) value);
+					break;
+				case 'I':
+					out.writeInt((Integer) value);
+					break;
+				case 'J':
+					out.writeLong((Long) value);
+					break;
+				case 'F':
+					out.writeFloat((Float) value);
+					break;
+				case 'D':
+					out.writeDouble((Double) value);
+					break;
+				case 'B':
+					out.writeByte((Byte) value);
+					break;
+				case 'S':
+					out.writeShort((Short) value);
+					break;
+				case 'C':
+					out.writeChar((Character) value);
+					break;
+				case 'Z':
+					out.writeBoolean((Boolean) value);
+					break;
+				case 'T':
+					writeString(out, ((Type) value).getDescriptor());
+					break;
+				default:
+					throw new IOException("Unsupported constant: " + value);
+			}
+		}
+
+		private static Object readValue(DataInputStream in) throws IOException {
+			char tag = (char) in.readByte();
+			switch(tag) {
+				case 's':
+					return readString(in);
+				case 'I':
+					return in.readInt();
+				case 'J':
+					return in.readLong();
+				case 'F':
+					return in.readFloat();
+				case 'D':
+					return in.readDouble();
+				case 'B':
+					return in.readByte();
+				case 'S':
+					return in.readShort();
+				case 'C':
+					return in.readChar();
+				case 'Z':
+					return in.readBoolean();
+				case 'T':
+					return Type.getType(readString(in));
+				default:
+					throw new IOException("Malformed constant index");
+			}
+		}
+
+		private static void writeString(DataOutputStream out, String value) throws IOException {
+			// Constant strings may be longer than what "writeUTF" supports
+			byte[] data = value.getBytes(StandardCharsets.UTF_8);
+			out.writeInt(data.length);
+			out.write(data);
+		}
+
+		private static String readString(DataInputStream in) throws IOException {
+			int length = in.readInt();
+			if (length < 0)
+				throw new IOException("Malformed constant index");
+			byte[] data = new byte[length];
+			in.readFully(data);
+			return new String(data, StandardCharsets.UTF_8);
+		}
+	}
+
+	/**
+	 * Records the constants of a class, at the same places the search visitors match them.
+	 */
+	private static class ConstantClassVisitor extends ClassVisitor {
+		private final ClassConstants entry;
+
+		private ConstantClassVisitor(ClassConstants entry) {
+			super(Recaf.ASM_VERSION);
+			this.entry = entry;
+		}
+
+		@Override
+		public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+			return new ConstantAnnotationVisitor(entry, -1);
+		}
+
+		@Override
+		public AnnotationVisitor visitTypeAnnotation(int ref, TypePath typePath, String descriptor, boolean visible) {
+			return new ConstantAnnotationVisitor(entry, -1);
+		}
+
+		@Override
+		public FieldVisitor visitField(int access, String name, String descriptor, String signature,
+									   Object value) {
+			int member = entry.addMember(name, descriptor);
+			entry.add(value, member, -1);
+			return new FieldVisitor(Recaf.ASM_VERSION) {
+				@Override
+				public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+					return new ConstantAnnotationVisitor(entry, member);
+				}
+
+				@Override
+				public AnnotationVisitor visitTypeAnnotation(int typeRef, TypePath typePath, String descriptor,
+															 boolean visible) {
+					return new ConstantAnnotationVisitor(entry, member);
+				}
+			};
+		}
+
+		@Override
+		public MethodVisitor visitMethod(int access, String name, String descriptor, String sig, String[] ex) {
+			return new ConstantMethodVisitor(entry, entry.addMember(name, descriptor));
+		}
+	}
+
+	/**
+	 * Records the constants of annotation values.
+	 */
+	private static class ConstantAnnotationVisitor extends AnnotationVisitor {
+		private final ClassConstants entry;
+		private final int member;
+
+		private ConstantAnnotationVisitor(ClassConstants entry, int member) {
+			super(Recaf.ASM_VERSION);
+			this.entry = entry;
+			this.member = member;
+		}
+
+		@Override
+		public void visit(String name, Object value) {
+			if (value instanceof String || value instanceof Number) {
+				entry.add(value, member, -1);
+			} else if (value instanceof Character) {
+				entry.add((int) (Character) value, member, -1);
+			} else if (value != null && value.getClass().isArray()) {
+				int length = Array.getLength(value);
+				for (int i = 0; i < length; i++)
+					entry.add(Array.get(value, i), member, -1);
+			}
+		}
+
+		@Override
+		public void visitEnum(String name, String descriptor, String value) {
+			entry.add(value, member, -1);
+		}
+
+		@Override
+		public AnnotationVisitor visitAnnotation(String name, String descriptor) {
+			return this;
+		}
+
+		@Override
+		public AnnotationVisitor visitArray(String name) {
+			return this;
+		}
+	}
+
+	/**
+	 * Records the constants of a method, with the offset of the instruction using them.
+	 * Offsets are counted the same way as the instruction list of a {@link org.objectweb.asm.tree.MethodNode}.
+	 */
+	private static class ConstantMethodVisitor extends MethodVisitor {
+		private final ClassConstants entry;
+		private final int member;
+		private int offset = -1;
+
+		private ConstantMethodVisitor(ClassConstants entry, int member) {
+			super(Recaf.ASM_VERSION);
+			this.entry = entry;
+			this.member = member;
+		}
+
+		private void add(Object value) {
+			entry.add(value, member, offset);
+		}
+
+		@Override
+		public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+			return new ConstantAnnotationVisitor(entry, member);
+		}
+
+		@Override
+		public AnnotationVisitor visitTypeAnnotation(int typeRef, TypePath typePath, String descriptor,
+													 boolean visible) {
+			return new ConstantAnnotationVisitor(entry, member);
+		}
+
+		@Override
+		public AnnotationVisitor visitParameterAnnotation(int parameter, String descriptor, boolean visible) {
+			return new ConstantAnnotationVisitor(entry, member);
+		}
+
+		@Override
+		public AnnotationVisitor visitAnnotationDefault() {
+			return new ConstantAnnotationVisitor(entry, member);
+		}
+
+		@Override
+		public AnnotationVisitor visitInsnAnnotation(int typeRef, TypePath typePath, String descriptor,
+													 boolean visible) {
+			return new ConstantAnnotationVisitor(entry, member);
+		}
+
+		@Override
+		public AnnotationVisitor visitTryCatchAnnotation(int typeRef, TypePath typePath, String descriptor,
+														 boolean visible) {
+			return new ConstantAnnotationVisitor(entry, member);
+		}
+
+		@Override
+		public AnnotationVisitor visitLocalVariableAnnotation(int typeRef, TypePath typePath, Label[] start,
+															  Label[] end, int[] index, String descriptor,
+															  boolean visible) {
+			return new ConstantAnnotationVisitor(entry, member);
+		}
+
+		@Override
+		public void visitFrame(int type, int numLocal, Object[] local, int numStack, Object[] stack) {
+			offset++;
+		}
+
+		@Override
+		public void visitLabel(Label label) {
+			offset++;
+		}
+
+		@Override
+		public void visitLineNumber(int line, Label start) {
+			offset++;
+		}
+
+		@Override
+		public void visitInsn(int opcode) {
+			offset++;
+			if (opcode >= Opcodes.ICONST_M1 && opcode <= Opcodes.DCONST_1)
+				add(InsnUtil.getValue(opcode));
+		}
+
+		@Override
+		public void visitIntInsn(int opcode, int operand) {
+			offset++;
+			add(operand);
+		}
+
+		@Override
+		public void visitVarInsn(int opcode, int var) {
+			offset++;
+		}
+
+		@Override
+		public void visitTypeInsn(int opcode, String type) {
+			offset++;
+		}
+
+		@Override
+		public void visitFieldInsn(int opcode, String owner, String name, String descriptor) {
+			offset++;
+		}
+
+		@Override
+		public void visitMethodInsn(int opcode, String owner, String name, String descriptor, boolean itf) {
+			offset++;
+		}
+
+		@Override
+		public void visitInvokeDynamicInsn(String name, String descriptor, Handle handle, Object... args) {
+			offset++;
+			for (Object arg : args)
+				if (arg instanceof String || arg instanceof Number)
+					add(arg);
+		}
+
+		@Override
+		public void visitJumpInsn(int opcode, Label label) {
+			offset++;
+		}
+
+		@Override
+		public void visitLdcInsn(Object value) {
+			offset++;
+			// Handles are matched as member references instead
+			if (!(value instanceof Handle) && !(value instanceof ConstantDynamic))
+				add(value);
+		}
+
+		@Override
+		public void visitIincInsn(int var, int increment) {
+			offset++;
+			add(increment);
+		}
+
+		@Override
+		public void visitTableSwitchInsn(int min, int max, Label dflt, Label... labels) {
+			offset++;
+			add(min);
+			add(max);
+		}
+
+		@Override
+		public void visitLookupSwitchInsn(Label dflt, int[] keys, Label[] labels) {
+			offset++;
+			for (int key : keys)
+				add(key);
+		}
+
+		@Override
+		public void visitMultiANewArrayInsn(String descriptor, int numDimensions) {
+			offset++;
+		}
+	}
+}
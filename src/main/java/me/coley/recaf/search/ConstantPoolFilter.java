@@ -0,0 +1,259 @@
+package me.coley.recaf.search;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks the raw constant pool of a class for the text queries need, so classes that cannot hold any result are
+ * skipped without being parsed.
+ * <br>
+ * Every string, class name, member name and descriptor a query is matched against is, or is part of, a
+ * {@code CONSTANT_Utf8} entry. A class is only kept if, for at least one query, each required piece of text is found
+ * in some entry. Text is compared as modified UTF-8 bytes, so entries are never decoded.
+ *
+ * @author Matt
+ */
+class ConstantPoolFilter {
+	private static final int UTF8 = 1;
+	private static final int INTEGER = 3;
+	private static final int FLOAT = 4;
+	private static final int LONG = 5;
+	private static final int DOUBLE = 6;
+	private static final int CLASS = 7;
+	private static final int STRING = 8;
+	private static final int FIELD_REF = 9;
+	private static final int METHOD_REF = 10;
+	private static final int INTERFACE_METHOD_REF = 11;
+	private static final int NAME_AND_TYPE = 12;
+	private static final int METHOD_HANDLE = 15;
+	private static final int METHOD_TYPE = 16;
+	private static final int DYNAMIC = 17;
+	private static final int INVOKE_DYNAMIC = 18;
+	private static final int MODULE = 19;
+	private static final int PACKAGE = 20;
+	// Text required by each query, any one query being satisfied keeps the class
+	private final List<Needle[]> required;
+	private final int needleCount;
+
+	private ConstantPoolFilter(List<Needle[]> required) {
+		this.required = required;
+		int count = 0;
+		for (Needle[] needles : required)
+			for (Needle needle : needles)
+				needle.id = count++;
+		this.needleCount = count;
+	}
+
+	/**
+	 * @param queries
+	 * 		Queries of a search.
+	 *
+	 * @return Filter for the queries, or {@code null} if a query can match text that is not in the constant pool.
+	 */
+	static ConstantPoolFilter of(List<Query> queries) {
+		if (queries.isEmpty())
+			return null;
+		List<Needle[]> required = new ArrayList<>();
+		for (Query query : queries) {
+			Needle[] needles = needles(query);
+			if (needles == null)
+				return null;
+			required.add(needles);
+		}
+		return new ConstantPoolFilter(required);
+	}
+
+	/**
+	 * @param query
+	 * 		Query to check.
+	 *
+	 * @return Text the query requires, or {@code null} if the query cannot be checked against the constant pool.
+	 */
+	private static Needle[] needles(Query query) {
+		// Patterns can match text that is not literally in an entry
+		if (query.stringMode == null || query.stringMode == StringMatchMode.REGEX)
+			return null;
+		if (query instanceof StringQuery) {
+			// Strings are whole entries, so the query mode applies as-is
+			String pattern = ((StringQuery) query).getPattern();
+			return pattern == null ? null : new Needle[] { new Needle(pattern, query.stringMode) };
+		} else if (query instanceof ClassReferenceQuery) {
+			// Names may be part of a descriptor or signature, but always contain the pattern
+			String name = ((ClassReferenceQuery) query).getName();
+			return name == null ? null : new Needle[] { new Needle(name, StringMatchMode.CONTAINS) };
+		} else if (query instanceof MemberReferenceQuery) {
+			MemberReferenceQuery member = (MemberReferenceQuery) query;
+			List<Needle> needles = new ArrayList<>();
+			for (String part : new String[] { member.getOwner(), member.getName(), member.getDesc() })
+				if (part != null)
+					needles.add(new Needle(part, StringMatchMode.CONTAINS));
+			return needles.toArray(new Needle[0]);
+		}
+		return null;
+	}
+
+	/**
+	 * @param code
+	 * 		Class bytecode.
+	 *
+	 * @return {@code true} if the class may hold a result. {@code false} if it certainly does not.
+	 */
+	boolean mayMatch(byte[] code) {
+		try {
+			return scan(code);
+		} catch(ArrayIndexOutOfBoundsException ex) {
+			// Malformed, leave it to the search to report
+			return true;
+		}
+	}
+
+	private boolean scan(byte[] code) {
+		boolean[] found = new boolean[needleCount];
+		int count = readShort(code, 8);
+		int offset = 10;
+		for (int i = 1; i < count; i++) {
+			int tag = code[offset];
+			switch(tag) {
+				case UTF8: {
+					int length = readShort(code, offset + 1);
+					int start = offset + 3;
+					if (test(code, start, length, found))
+						return true;
+					offset = start + length;
+					break;
+				}
+				case CLASS:
+				case STRING:
+				case METHOD_TYPE:
+				case MODULE:
+				case PACKAGE:
+					offset += 3;
+					break;
+				case METHOD_HANDLE:
+					offset += 4;
+					break;
+				case INTEGER:
+				case FLOAT:
+				case FIELD_REF:
+				case METHOD_REF:
+				case INTERFACE_METHOD_REF:
+				case NAME_AND_TYPE:
+				case DYNAMIC:
+				case INVOKE_DYNAMIC:
+					offset += 5;
+					break;
+				case LONG:
+				case DOUBLE:
+					offset += 9;
+					i++;
+					break;
+				default:
+					// Unknown entry, the rest of the pool cannot be read
+					return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @param code
+	 * 		Class bytecode.
+	 * @param start
+	 * 		Offset of the entry text.
+	 * @param length
+	 * 		Length of the entry text.
+	 * @param found
+	 * 		Needles found so far, updated with the needles found in the entry.
+	 *
+	 * @return {@code true} when all needles of a query have been found.
+	 */
+	private boolean test(byte[] code, int start, int length, boolean[] found) {
+		boolean changed = false;
+		for (Needle[] needles : required)
+			for (Needle needle : needles)
+				if (!found[needle.id] && needle.test(code, start, length)) {
+					found[needle.id] = true;
+					changed = true;
+				}
+		if (!changed)
+			return false;
+		for (Needle[] needles : required) {
+			boolean all = true;
+			for (Needle needle : needles)
+				all &= found[needle.id];
+			if (all)
+				return true;
+		}
+		return false;
+	}
+
+	private static int readShort(byte[] code, int offset) {
+		return ((code[offset] & 0xFF) << 8) | (code[offset + 1] & 0xFF);
+	}
+
+	/**
+	 * Text to find in a {@code CONSTANT_Utf8} entry, encoded the same way as the entry.
+	 */
+	private static class Needle {
+		private final byte[] text;
+		private final StringMatchMode mode;
+		private int id;
+
+		private Needle(String text, StringMatchMode mode) {
+			this.text = encode(text);
+			this.mode = mode;
+		}
+
+		private boolean test(byte[] code, int start, int length) {
+			switch(mode) {
+				case EQUALS:
+					return length == text.length && regionMatches(code, start);
+				case STARTS_WITH:
+					return length >= text.length && regionMatches(code, start);
+				case ENDS_WITH:
+					return length >= text.length && regionMatches(code, start + length - text.length);
+				case CONTAINS:
+					for (int i = start, last = start + length - text.length; i <= last; i++)
+						if (regionMatches(code, i))
+							return true;
+					return false;
+				default:
+					return true;
+			}
+		}
+
+		private boolean regionMatches(byte[] code, int offset) {
+			for (int i = 0; i < text.length; i++)
+				if (code[offset + i] != text[i])
+					return false;
+			return true;
+		}
+
+		/**
+		 * @param text
+		 * 		Text to encode.
+		 *
+		 * @return Modified UTF-8 encoding of the text, as used by the class file format.
+		 */
+		private static byte[] encode(String text) {
+			byte[] data = new byte[text.length() * 3];
+			int size = 0;
+			for (int i = 0; i < text.length(); i++) {
+				char c = text.charAt(i);
+				if (c >= 0x0001 && c <= 0x007F) {
+					data[size++] = (byte) c;
+				} else if (c <= 0x07FF) {
+					data[size++] = (byte) (0xC0 | ((c >> 6) & 0x1F));
+					data[size++] = (byte) (0x80 | (c & 0x3F));
+				} else {
+					data[size++] = (byte) (0xE0 | ((c >> 12) & 0x0F));
+					data[size++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+					data[size++] = (byte) (0x80 | (c & 0x3F));
+				}
+			}
+			byte[] encoded = new byte[size];
+			System.arraycopy(data, 0, encoded, 0, size);
+			return encoded;
+		}
+	}
+}
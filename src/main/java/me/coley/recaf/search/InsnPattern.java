@@ -0,0 +1,528 @@
+package me.coley.recaf.search;
+
+import me.coley.recaf.util.OpcodeUtil;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.*;
+
+import java.util.*;
+
+/**
+ * Pattern of instructions, matched against the instructions of a method without disassembling it.
+ * <br>
+ * A pattern is a sequence of elements, separated by new lines or {@code ;}. Each element is either:
+ * <ul>
+ * <li>{@code ...} - Any number of instructions.</li>
+ * <li>An opcode name followed by operands, such as {@code INVOKESTATIC *.decrypt $sig}. The opcode may be
+ * {@code *} to match any instruction, or use {@code *} as a wildcard within the name, such as {@code INVOKE*}.</li>
+ * </ul>
+ * Operands are matched in order, and instructions may have more operands than the pattern lists. An operand is
+ * either {@code *} to match anything, text with {@code *} wildcards, or text in double quotes to match exactly.
+ * Unquoted operands may start with a capture such as {@code $name}, which captures as much of the operand as
+ * possible while the rest still matches, so {@code $type.<init>} captures the owner of a constructor call.
+ * A capture used more than once must match the same text each time.
+ * <br>
+ * Operands are, by instruction type:
+ * <ul>
+ * <li>Field and method instructions - {@code owner.name} and the descriptor.</li>
+ * <li>Invokedynamic instructions - The name, the descriptor, and {@code owner.name} of the bootstrap method.</li>
+ * <li>Constant instructions - The constant, strings are not quoted and types are descriptors.</li>
+ * <li>Type instructions - The type.</li>
+ * <li>Variable instructions - The variable index.</li>
+ * <li>Int instructions - The operand.</li>
+ * <li>Increment instructions - The variable index and the increment.</li>
+ * <li>Switch instructions - The keys, or the minimum and maximum of a table switch.</li>
+ * <li>Multi-dimension array instructions - The descriptor and the number of dimensions.</li>
+ * </ul>
+ * Labels, line numbers and frames are not instructions and are skipped.
+ * <br>
+ * The pattern is compiled to a non-deterministic automaton, which runs over the instructions once. Matches do not
+ * overlap, and each match is reported as soon as it is complete, so {@code ...} matches as few instructions as
+ * possible. When multiple matches complete on the same instruction, the one that started first is reported.
+ *
+ * @author Matt
+ */
+public class InsnPattern {
+	private static final String GAP = "...";
+	private static final String WILDCARD = "*";
+	private static final char CAPTURE = '$';
+	private final String text;
+	private final Step[] steps;
+	// Whether instructions may be skipped before the step at the same index
+	private final boolean[] gaps;
+
+	private InsnPattern(String text, Step[] steps, boolean[] gaps) {
+		this.text = text;
+		this.steps = steps;
+		this.gaps = gaps;
+	}
+
+	/**
+	 * @param text
+	 * 		Pattern text.
+	 *
+	 * @return Compiled pattern.
+	 *
+	 * @throws IllegalArgumentException
+	 * 		When the pattern is malformed.
+	 */
+	public static InsnPattern parse(String text) {
+		List<Step> steps = new ArrayList<>();
+		List<Boolean> gaps = new ArrayList<>();
+		boolean gap = false;
+		for (List<Token> element : tokenize(text)) {
+			Token first = element.get(0);
+			if (!first.quoted && first.text.equals(GAP)) {
+				if (element.size() > 1)
+					throw new IllegalArgumentException("Gaps cannot have operands");
+				gap = true;
+				continue;
+			}
+			if (first.quoted)
+				throw new IllegalArgumentException("Expected opcode, found: \"" + first.text + "\"");
+			Operand[] operands = new Operand[element.size() - 1];
+			for (int i = 0; i < operands.length; i++)
+				operands[i] = Operand.of(element.get(i + 1));
+			steps.add(new Step(opcodes(first.text), operands));
+			// A leading gap has no effect, since matches may start at any instruction
+			gaps.add(gap && steps.size() > 1);
+			gap = false;
+		}
+		if (steps.isEmpty())
+			throw new IllegalArgumentException("Pattern has no instructions");
+		boolean[] gapArray = new boolean[steps.size()];
+		for (int i = 0; i < gapArray.length; i++)
+			gapArray[i] = gaps.get(i);
+		return new InsnPattern(text, steps.toArray(new Step[0]), gapArray);
+	}
+
+	/**
+	 * @param instructions
+	 * 		Instructions of a method.
+	 *
+	 * @return Matches of the pattern, in order.
+	 */
+	public List<Match> match(InsnList instructions) {
+		List<Match> matches = new ArrayList<>();
+		// Partial matches, ordered by where they started
+		List<Candidate> candidates = new ArrayList<>();
+		int pos = 0;
+		for (AbstractInsnNode insn = instructions.getFirst(); insn != null; insn = insn.getNext(), pos++) {
+			int opcode = insn.getOpcode();
+			if (opcode < 0)
+				continue;
+			candidates.add(new Candidate(0, pos, Collections.emptyMap()));
+			List<Candidate> next = new ArrayList<>();
+			Set<Candidate> seen = new HashSet<>();
+			List<String> operands = null;
+			Candidate accepted = null;
+			for (Candidate candidate : candidates) {
+				Step step = steps[candidate.state];
+				if (step.accepts(opcode)) {
+					if (operands == null)
+						operands = operands(insn);
+					Map<String, String> captures = step.match(operands, candidate.captures);
+					if (captures != null) {
+						Candidate advanced = new Candidate(candidate.state + 1, candidate.start, captures);
+						if (advanced.state == steps.length) {
+							if (accepted == null)
+								accepted = advanced;
+						} else if (seen.add(advanced)) {
+							next.add(advanced);
+						}
+					}
+				}
+				// Candidates in the same state with the same captures behave the same from here on,
+				// so only the one that started first is kept
+				if (gaps[candidate.state] && seen.add(candidate))
+					next.add(candidate);
+			}
+			if (accepted != null) {
+				matches.add(new Match(accepted.start, pos, accepted.captures));
+				candidates.clear();
+			} else {
+				candidates = next;
+			}
+		}
+		return matches;
+	}
+
+	/**
+	 * @param insn
+	 * 		Instruction.
+	 *
+	 * @return Opcode and operands of the instruction, in the pattern format.
+	 */
+	public static String toString(AbstractInsnNode insn) {
+		StringBuilder sb = new StringBuilder(OpcodeUtil.opcodeToName(insn.getOpcode()));
+		boolean quote = insn instanceof LdcInsnNode && ((LdcInsnNode) insn).cst instanceof String;
+		for (String operand : operands(insn)) {
+			sb.append(' ');
+			if (quote)
+				sb.append('"').append(operand.replace("\\", "\\\\").replace("\"", "\\\"")
+						.replace("\n", "\\n").replace("\r", "\\r").replace("\t", "\\t")).append('"');
+			else
+				sb.append(operand);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @param insn
+	 * 		Instruction.
+	 *
+	 * @return Operands of the instruction.
+	 */
+	static List<String> operands(AbstractInsnNode insn) {
+		switch(insn.getType()) {
+			case AbstractInsnNode.INT_INSN:
+				return Collections.singletonList(String.valueOf(((IntInsnNode) insn).operand));
+			case AbstractInsnNode.VAR_INSN:
+				return Collections.singletonList(String.valueOf(((VarInsnNode) insn).var));
+			case AbstractInsnNode.TYPE_INSN:
+				return Collections.singletonList(((TypeInsnNode) insn).desc);
+			case AbstractInsnNode.FIELD_INSN: {
+				FieldInsnNode field = (FieldInsnNode) insn;
+				return Arrays.asList(field.owner + "." + field.name, field.desc);
+			}
+			case AbstractInsnNode.METHOD_INSN: {
+				MethodInsnNode method = (MethodInsnNode) insn;
+				return Arrays.asList(method.owner + "." + method.name, method.desc);
+			}
+			case AbstractInsnNode.INVOKE_DYNAMIC_INSN: {
+				InvokeDynamicInsnNode indy = (InvokeDynamicInsnNode) insn;
+				return Arrays.asList(indy.name, indy.desc, indy.bsm.getOwner() + "." + indy.bsm.getName());
+			}
+			case AbstractInsnNode.LDC_INSN: {
+				Object cst = ((LdcInsnNode) insn).cst;
+				return Collections.singletonList(cst instanceof Type ?
+						((Type) cst).getDescriptor() : String.valueOf(cst));
+			}
+			case AbstractInsnNode.IINC_INSN: {
+				IincInsnNode iinc = (IincInsnNode) insn;
+				return Arrays.asList(String.valueOf(iinc.var), String.valueOf(iinc.incr));
+			}
+			case AbstractInsnNode.TABLESWITCH_INSN: {
+				TableSwitchInsnNode table = (TableSwitchInsnNode) insn;
+				return Arrays.asList(String.valueOf(table.min), String.valueOf(table.max));
+			}
+			case AbstractInsnNode.LOOKUPSWITCH_INSN: {
+				List<String> keys = new ArrayList<>();
+				for (Integer key : ((LookupSwitchInsnNode) insn).keys)
+					keys.add(String.valueOf(key));
+				return keys;
+			}
+			case AbstractInsnNode.MULTIANEWARRAY_INSN: {
+				MultiANewArrayInsnNode array = (MultiANewArrayInsnNode) insn;
+				return Arrays.asList(array.desc, String.valueOf(array.dims));
+			}
+			default:
+				return Collections.emptyList();
+		}
+	}
+
+	/**
+	 * @param name
+	 * 		Opcode name, which may contain wildcards.
+	 *
+	 * @return Set of matching opcodes, or {@code null} to match any opcode.
+	 */
+	private static BitSet opcodes(String name) {
+		if (name.equals(WILDCARD))
+			return null;
+		Glob glob = new Glob(name.toUpperCase());
+		BitSet opcodes = new BitSet();
+		for (String opName : OpcodeUtil.getInsnNames()) {
+			int op = OpcodeUtil.nameToOpcode(opName);
+			// Skip pseudo-instructions used by the assembler
+			if (op >= 0 && op <= 255 && glob.matches(opName))
+				opcodes.set(op);
+		}
+		if (opcodes.isEmpty())
+			throw new IllegalArgumentException("Unknown opcode: " + name);
+		return opcodes;
+	}
+
+	/**
+	 * @param text
+	 * 		Pattern text.
+	 *
+	 * @return Tokens of each element of the pattern.
+	 */
+	private static List<List<Token>> tokenize(String text) {
+		List<List<Token>> elements = new ArrayList<>();
+		List<Token> element = new ArrayList<>();
+		StringBuilder token = new StringBuilder();
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (c == '"') {
+				if (token.length() > 0)
+					throw new IllegalArgumentException("Unexpected quote at offset " + i);
+				i = readQuoted(text, i + 1, token);
+				element.add(new Token(token.toString(), true));
+				token.setLength(0);
+			} else if (c == '\n' || c == '\r' || c == ';' || Character.isWhitespace(c)) {
+				if (token.length() > 0) {
+					element.add(new Token(token.toString(), false));
+					token.setLength(0);
+				}
+				boolean separator = c == '\n' || c == '\r' || c == ';';
+				if (separator && !element.isEmpty()) {
+					elements.add(element);
+					element = new ArrayList<>();
+				}
+			} else {
+				token.append(c);
+			}
+		}
+		if (token.length() > 0)
+			element.add(new Token(token.toString(), false));
+		if (!element.isEmpty())
+			elements.add(element);
+		return elements;
+	}
+
+	/**
+	 * @param text
+	 * 		Pattern text.
+	 * @param start
+	 * 		Offset after the opening quote.
+	 * @param out
+	 * 		Builder to append the unescaped text to.
+	 *
+	 * @return Offset of the closing quote.
+	 */
+	private static int readQuoted(String text, int start, StringBuilder out) {
+		for (int i = start; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (c == '"')
+				return i;
+			if (c == '\\' && i + 1 < text.length()) {
+				char escaped = text.charAt(++i);
+				switch(escaped) {
+					case 'n':
+						out.append('\n');
+						break;
+					case 'r':
+						out.append('\r');
+						break;
+					case 't':
+						out.append('\t');
+						break;
+					default:
+						out.append(escaped);
+						break;
+				}
+			} else {
+				out.append(c);
+			}
+		}
+		throw new IllegalArgumentException("Unterminated quote at offset " + (start - 1));
+	}
+
+	@Override
+	public String toString() {
+		return text;
+	}
+
+	/**
+	 * Match of a pattern.
+	 */
+	public static class Match {
+		private final int start;
+		private final int end;
+		private final Map<String, String> captures;
+
+		private Match(int start, int end, Map<String, String> captures) {
+			this.start = start;
+			this.end = end;
+			this.captures = captures;
+		}
+
+		/**
+		 * @return Index of the first matched instruction in the method instructions.
+		 */
+		public int getStart() {
+			return start;
+		}
+
+		/**
+		 * @return Index of the last matched instruction in the method instructions.
+		 */
+		public int getEnd() {
+			return end;
+		}
+
+		/**
+		 * @return Captured operands, by capture name.
+		 */
+		public Map<String, String> getCaptures() {
+			return Collections.unmodifiableMap(captures);
+		}
+	}
+
+	/**
+	 * Instruction of a pattern.
+	 */
+	private static class Step {
+		private final BitSet opcodes;
+		private final Operand[] operands;
+
+		private Step(BitSet opcodes, Operand[] operands) {
+			this.opcodes = opcodes;
+			this.operands = operands;
+		}
+
+		private boolean accepts(int opcode) {
+			return opcodes == null || opcodes.get(opcode);
+		}
+
+		/**
+		 * @param values
+		 * 		Operands of an instruction.
+		 * @param captures
+		 * 		Operands captured so far.
+		 *
+		 * @return Captures after matching the instruction, or {@code null} if the operands do not match.
+		 */
+		private Map<String, String> match(List<String> values, Map<String, String> captures) {
+			if (values.size() < operands.length)
+				return null;
+			Map<String, String> result = captures;
+			for (int i = 0; i < operands.length; i++) {
+				result = operands[i].match(values.get(i), result);
+				if (result == null)
+					return null;
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Operand of a pattern instruction. Matches anything when neither a capture nor a glob.
+	 */
+	private static class Operand {
+		private final String capture;
+		private final Glob glob;
+
+		private Operand(String capture, Glob glob) {
+			this.capture = capture;
+			this.glob = glob;
+		}
+
+		private static Operand of(Token token) {
+			String text = token.text;
+			if (token.quoted)
+				return new Operand(null, new Glob(text, false));
+			if (text.equals(WILDCARD))
+				return new Operand(null, null);
+			// Captures are only allowed at the start, since '$' is common in inner class and lambda names
+			int nameEnd = 1;
+			while (nameEnd < text.length() && Character.isJavaIdentifierPart(text.charAt(nameEnd)) &&
+					text.charAt(nameEnd) != CAPTURE)
+				nameEnd++;
+			if (text.charAt(0) == CAPTURE && nameEnd > 1)
+				return new Operand(text.substring(1, nameEnd), new Glob(text.substring(nameEnd)));
+			return new Operand(null, new Glob(text));
+		}
+
+		/**
+		 * @param value
+		 * 		Operand of an instruction.
+		 * @param captures
+		 * 		Operands captured so far.
+		 *
+		 * @return Captures after matching the operand, or {@code null} if the operand does not match.
+		 */
+		private Map<String, String> match(String value, Map<String, String> captures) {
+			if (capture == null)
+				return glob == null || glob.matches(value) ? captures : null;
+			String captured = captures.get(capture);
+			if (captured != null)
+				return value.startsWith(captured) && glob.matches(value.substring(captured.length())) ?
+						captures : null;
+			// Capture as much as possible, leaving the rest to the text after the capture
+			for (int end = value.length(); end >= 0; end--) {
+				if (glob.matches(value.substring(end))) {
+					Map<String, String> result = new HashMap<>(captures);
+					result.put(capture, value.substring(0, end));
+					return result;
+				}
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * Text with {@code *} wildcards.
+	 */
+	private static class Glob {
+		private final String[] parts;
+
+		private Glob(String text) {
+			this(text, true);
+		}
+
+		private Glob(String text, boolean wildcards) {
+			this.parts = wildcards ? text.split("\\*", -1) : new String[] { text };
+		}
+
+		private boolean matches(String text) {
+			if (parts.length == 1)
+				return text.equals(parts[0]);
+			String last = parts[parts.length - 1];
+			if (!text.startsWith(parts[0]) || !text.endsWith(last) ||
+					text.length() < parts[0].length() + last.length())
+				return false;
+			int offset = parts[0].length();
+			int end = text.length() - last.length();
+			for (int i = 1; i < parts.length - 1; i++) {
+				int found = text.indexOf(parts[i], offset);
+				if (found < 0 || found + parts[i].length() > end)
+					return false;
+				offset = found + parts[i].length();
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Token of pattern text.
+	 */
+	private static class Token {
+		private final String text;
+		private final boolean quoted;
+
+		private Token(String text, boolean quoted) {
+			this.text = text;
+			this.quoted = quoted;
+		}
+	}
+
+	/**
+	 * Partial match, in the state of the next step to match.
+	 */
+	private static class Candidate {
+		private final int state;
+		private final int start;
+		private final Map<String, String> captures;
+
+		private Candidate(int state, int start, Map<String, String> captures) {
+			this.state = state;
+			this.start = start;
+			this.captures = captures;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof Candidate))
+				return false;
+			Candidate candidate = (Candidate) other;
+			return state == candidate.state && captures.equals(candidate.captures);
+		}
+
+		@Override
+		public int hashCode() {
+			return state * 31 + captures.hashCode();
+		}
+	}
+}
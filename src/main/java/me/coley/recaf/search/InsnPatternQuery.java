@@ -0,0 +1,65 @@
+package me.coley.recaf.search;
+
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.InsnList;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Query to find sequences of instructions matching an {@link InsnPattern}.
+ * Unlike {@link InsnTextQuery} the instructions are matched directly, without disassembling the method.
+ *
+ * @author Matt
+ */
+public class InsnPatternQuery extends Query {
+	private final InsnPattern pattern;
+
+	/**
+	 * Constructs an instruction pattern query.
+	 *
+	 * @param pattern
+	 * 		Pattern text, see {@link InsnPattern}.
+	 *
+	 * @throws IllegalArgumentException
+	 * 		When the pattern is malformed.
+	 */
+	public InsnPatternQuery(String pattern) {
+		this(InsnPattern.parse(pattern));
+	}
+
+	/**
+	 * Constructs an instruction pattern query.
+	 *
+	 * @param pattern
+	 * 		Compiled pattern.
+	 */
+	public InsnPatternQuery(InsnPattern pattern) {
+		super(QueryType.INSTRUCTION_PATTERN, null);
+		this.pattern = pattern;
+	}
+
+	/**
+	 * @return Compiled pattern.
+	 */
+	public InsnPattern getPattern() {
+		return pattern;
+	}
+
+	/**
+	 * Adds a result for each match of the pattern in the given instructions.
+	 *
+	 * @param instructions
+	 * 		Method instructions.
+	 */
+	public void match(InsnList instructions) {
+		for (InsnPattern.Match match : pattern.match(instructions)) {
+			List<String> lines = new ArrayList<>();
+			AbstractInsnNode insn = instructions.get(match.getStart());
+			for (int i = match.getStart(); i <= match.getEnd(); i++, insn = insn.getNext())
+				if (insn.getOpcode() >= 0)
+					lines.add(InsnPattern.toString(insn));
+			getMatched().add(new InsnPatternResult(match.getStart(), lines, match.getCaptures()));
+		}
+	}
+}
@@ -0,0 +1,35 @@
+package me.coley.recaf.search;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Search result of a matched instruction pattern.
+ *
+ * @author Matt
+ */
+public class InsnPatternResult extends InsnResult {
+	private final Map<String, String> captures;
+
+	/**
+	 * Constructs an instruction pattern result.
+	 *
+	 * @param index
+	 * 		Index of first matched instruction.
+	 * @param lines
+	 * 		Matched instructions, in the pattern format.
+	 * @param captures
+	 * 		Captured operands, by capture name.
+	 */
+	public InsnPatternResult(int index, List<String> lines, Map<String, String> captures) {
+		super(index, lines);
+		this.captures = captures;
+	}
+
+	/**
+	 * @return Captured operands, by capture name.
+	 */
+	public Map<String, String> getCaptures() {
+		return captures;
+	}
+}
@@ -25,6 +25,13 @@ public class InsnResult extends SearchResult {
 		this.lines = lines;
 	}
 
+	/**
+	 * @return Index of first matched item.
+	 */
+	public int getIndex() {
+		return index;
+	}
+
 	/**
 	 * @return Matched Lines of dissasembled method code.
 	 */
@@ -12,6 +12,7 @@ import java.util.List;
  */
 public class InsnTextQuery extends Query {
 	private final List<String> lines;
+	private final List<StringMatcher> matchers = new ArrayList<>();
 
 	/**
 	 * Constructs a instruction text query.
@@ -24,6 +25,8 @@ public class InsnTextQuery extends Query {
 	public InsnTextQuery(List<String> lines, StringMatchMode stringMode) {
 		super(QueryType.INSTRUCTION_TEXT, stringMode);
 		this.lines = lines;
+		for (String line : lines)
+			matchers.add(compile(line));
 	}
 
 	/**
@@ -47,10 +50,10 @@ public class InsnTextQuery extends Query {
 			// - If matching for all lines, return the match
 			// - If a line doesn't match skip to the next method insn starting point
 			for (int j = 0; j < lines.size(); j++) {
-				String line = lines.get(j);
+				StringMatcher matcher = matchers.get(j);
 				String lineDis = codeLines[i+j];
 				ret.add(lineDis);
-				if (!stringMode.match(line, lineDis)) {
+				if (matcher == null || !matcher.matches(lineDis)) {
 					match = false;
 					break;
 				}
@@ -9,6 +9,9 @@ public class MemberDefinitionQuery extends Query {
 	private final String owner;
 	private final String name;
 	private final String desc;
+	private final StringMatcher ownerMatcher;
+	private final StringMatcher nameMatcher;
+	private final StringMatcher descMatcher;
 
 	/**
 	 * Constructs a member definition query.
@@ -31,6 +34,9 @@ public class MemberDefinitionQuery extends Query {
 		this.owner = owner;
 		this.name = name;
 		this.desc = desc;
+		this.ownerMatcher = compile(owner);
+		this.nameMatcher = compile(name);
+		this.descMatcher = compile(desc);
 	}
 
 	/**
@@ -46,9 +52,9 @@ public class MemberDefinitionQuery extends Query {
 	 * 		Member descriptor.
 	 */
 	public void match(int access, String owner, String name, String desc) {
-		boolean hasOwner = this.owner == null || stringMode.match(this.owner, owner);
-		boolean hasName = this.name == null || stringMode.match(this.name, name);
-		boolean hasDesc = this.desc == null || stringMode.match(this.desc, desc);
+		boolean hasOwner = ownerMatcher == null || ownerMatcher.matches(owner);
+		boolean hasName = nameMatcher == null || nameMatcher.matches(name);
+		boolean hasDesc = descMatcher == null || descMatcher.matches(desc);
 		if(hasOwner && hasName && hasDesc) {
 			getMatched().add(new MemberResult(access, owner, name, desc));
 		}
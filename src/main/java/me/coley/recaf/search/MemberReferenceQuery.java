@@ -11,6 +11,9 @@ public class MemberReferenceQuery extends Query {
 	private final String owner;
 	private final String name;
 	private final String desc;
+	private final StringMatcher ownerMatcher;
+	private final StringMatcher nameMatcher;
+	private final StringMatcher descMatcher;
 
 	/**
 	 * Constructs a member references query.
@@ -33,6 +36,30 @@ public class MemberReferenceQuery extends Query {
 		this.owner = owner;
 		this.name = name;
 		this.desc = desc;
+		this.ownerMatcher = compile(owner);
+		this.nameMatcher = compile(name);
+		this.descMatcher = compile(desc);
+	}
+
+	/**
+	 * @return Owner name pattern, or {@code null} to match any owner.
+	 */
+	String getOwner() {
+		return owner;
+	}
+
+	/**
+	 * @return Member name pattern, or {@code null} to match any name.
+	 */
+	String getName() {
+		return name;
+	}
+
+	/**
+	 * @return Member descriptor pattern, or {@code null} to match any descriptor.
+	 */
+	String getDesc() {
+		return desc;
 	}
 
 	/**
@@ -48,9 +75,9 @@ public class MemberReferenceQuery extends Query {
 	 * 		Member descriptor.
 	 */
 	public void match(IntSupplier access, String owner, String name, String desc) {
-		boolean hasOwner = this.owner == null || stringMode.match(this.owner, owner);
-		boolean hasName = this.name == null || stringMode.match(this.name, name);
-		boolean hasDesc = this.desc == null || stringMode.match(this.desc, desc);
+		boolean hasOwner = ownerMatcher == null || ownerMatcher.matches(owner);
+		boolean hasName = nameMatcher == null || nameMatcher.matches(name);
+		boolean hasDesc = descMatcher == null || descMatcher.matches(desc);
 		if(hasOwner && hasName && hasDesc) {
 			getMatched().add(new MemberResult(access.getAsInt(), owner, name, desc));
 		}
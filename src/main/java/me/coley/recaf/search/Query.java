@@ -10,7 +10,11 @@ import java.util.*;
 public abstract class Query {
 	private final QueryType type;
 	protected final StringMatchMode stringMode;
-	protected final List<SearchResult> matched = new ArrayList<>();
+	/**
+	 * Temporary storage of results, see {@link #getMatched()}.
+	 * Operations on the list apply to the current thread's storage.
+	 */
+	protected final List<SearchResult> matched = new PerThreadList<>();
 
 	/**
 	 * Baseline query.
@@ -25,6 +29,17 @@ public abstract class Query {
 		this.stringMode = stringMode;
 	}
 
+	/**
+	 * @param key
+	 * 		Pattern to match.
+	 *
+	 * @return Matcher for the pattern with the query's {@link StringMatchMode},
+	 * or {@code null} if the pattern is {@code null}.
+	 */
+	protected StringMatcher compile(String key) {
+		return key == null ? null : stringMode.compile(key);
+	}
+
 	/**
 	 * @return Implementation type.
 	 */
@@ -43,11 +58,59 @@ public abstract class Query {
 	}
 
 	/**
-	 * A temporary storage of results.
+	 * A temporary storage of results. Each thread has its own storage,
+	 * so classes can be searched {@link SearchBuilder#parallel() in parallel}.
 	 *
 	 * @return List of results matched.
 	 */
 	public List<SearchResult> getMatched() {
-		return matched;
+		return ((PerThreadList<SearchResult>) matched).local();
+	}
+
+	/**
+	 * List that delegates to a separate list for each thread.
+	 *
+	 * @param <E>
+	 * 		Element type.
+	 */
+	private static class PerThreadList<E> extends AbstractList<E> {
+		private final ThreadLocal<List<E>> lists = ThreadLocal.withInitial(ArrayList::new);
+
+		/**
+		 * @return List of the current thread.
+		 */
+		private List<E> local() {
+			return lists.get();
+		}
+
+		@Override
+		public E get(int index) {
+			return local().get(index);
+		}
+
+		@Override
+		public int size() {
+			return local().size();
+		}
+
+		@Override
+		public E set(int index, E element) {
+			return local().set(index, element);
+		}
+
+		@Override
+		public void add(int index, E element) {
+			local().add(index, element);
+		}
+
+		@Override
+		public E remove(int index) {
+			return local().remove(index);
+		}
+
+		@Override
+		public void clear() {
+			local().clear();
+		}
 	}
 }
@@ -37,5 +37,9 @@ public enum QueryType {
 	/**
 	 * Match a method if it contains the given sequence of instruction patterns.
 	 */
-	INSTRUCTION_TEXT
+	INSTRUCTION_TEXT,
+	/**
+	 * Match a sequence of instructions if it matches a given {@link InsnPattern}.
+	 */
+	INSTRUCTION_PATTERN
 }
@@ -1,9 +1,13 @@
 package me.coley.recaf.search;
 
+import me.coley.recaf.util.ThreadUtil;
 import me.coley.recaf.workspace.Workspace;
 import org.objectweb.asm.*;
 
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 /**
  * Builder for {@link SearchCollector}.
@@ -11,10 +15,17 @@ import java.util.*;
  * @author Matt
  */
 public class SearchBuilder {
+	private static final int MIN_SHARD_SIZE = 32;
+	private static final int SHARDS_PER_THREAD = 4;
 	private final Workspace workspace;
 	private final List<Query> queries = new ArrayList<>();
 	private int readFlags = ClassReader.SKIP_FRAMES;
 	private Collection<String> skipped = Collections.emptyList();
+	private boolean parallel;
+	private boolean useIndex = true;
+	private int limit = -1;
+	private Consumer<SearchResult> resultConsumer;
+	private SearchTask.ProgressListener progressListener;
 
 	private SearchBuilder(Workspace workspace) {
 		this.workspace = workspace;
@@ -71,21 +82,186 @@ public class SearchBuilder {
 		return this;
 	}
 
+	/**
+	 * @return Builder that splits the classes to search across the
+	 * {@link ThreadUtil#forkJoinPool() shared fork-join pool}. The results are the same as those of a serial search.
+	 */
+	public SearchBuilder parallel() {
+		this.parallel = true;
+		return this;
+	}
+
+	/**
+	 * @return Builder that visits every class, instead of only the classes the
+	 * {@link Workspace#getConstantIndex() constant index} reports for string and value queries.
+	 */
+	public SearchBuilder noIndex() {
+		this.useIndex = false;
+		return this;
+	}
+
+	/**
+	 * @param limit
+	 * 		Maximum number of results to collect.
+	 *
+	 * @return Builder that stops searching once the given number of results are found.
+	 * In a serial search these are the first results, in a {@link #parallel() parallel} search they are whichever
+	 * results are found first.
+	 */
+	public SearchBuilder limit(int limit) {
+		if (limit <= 0)
+			throw new IllegalArgumentException("Result limit must be positive: " + limit);
+		this.limit = limit;
+		return this;
+	}
+
+	/**
+	 * @param resultConsumer
+	 * 		Consumer to pass results to as they are found. In a {@link #parallel() parallel} search it is called
+	 * 		from multiple threads at once.
+	 *
+	 * @return Builder that streams results as they are found.
+	 */
+	public SearchBuilder onResult(Consumer<SearchResult> resultConsumer) {
+		this.resultConsumer = resultConsumer;
+		return this;
+	}
+
+	/**
+	 * @param progressListener
+	 * 		Listener to notify with the number of classes searched so far.
+	 *
+	 * @return Builder that reports the progress of the search.
+	 */
+	public SearchBuilder onProgress(SearchTask.ProgressListener progressListener) {
+		this.progressListener = progressListener;
+		return this;
+	}
+
 	/**
 	 * @return SearchCollector from the builder. The search is started by calling this method.
 	 */
 	public SearchCollector build() {
+		return search(newTask());
+	}
+
+	/**
+	 * @return Task of the search, which is run in the background.
+	 */
+	public SearchTask start() {
+		SearchTask task = newTask();
+		ThreadUtil.run(() -> {
+			try {
+				task.complete(search(task));
+			} catch(Throwable t) {
+				task.fail(t);
+			}
+		});
+		return task;
+	}
+
+	private SearchTask newTask() {
+		return new SearchTask(limit, resultConsumer, progressListener);
+	}
+
+	/**
+	 * @param task
+	 * 		Task to check for cancellation and report results and progress to.
+	 *
+	 * @return Collector of the results.
+	 */
+	private SearchCollector search(SearchTask task) {
+		// Classes are visited in name order, so the order of results does not depend on how the search is split
+		Set<String> candidates = useIndex ? indexCandidates() : null;
+		List<String> names = (candidates != null ? candidates : workspace.getPrimaryClassNames()).stream()
+				.filter(name -> !skip(name))
+				.sorted()
+				.collect(Collectors.toList());
+		task.setTotal(names.size());
+		ConstantPoolFilter filter = ConstantPoolFilter.of(queries);
+		int shardSize = Math.max(MIN_SHARD_SIZE,
+				names.size() / (ThreadUtil.forkJoinPool().getParallelism() * SHARDS_PER_THREAD) + 1);
+		if (!parallel || names.size() <= shardSize)
+			return search(names, filter, task);
+		List<List<String>> shards = new ArrayList<>();
+		for (int i = 0; i < names.size(); i += shardSize)
+			shards.add(names.subList(i, Math.min(names.size(), i + shardSize)));
+		// Each shard has its own collector, which are merged in order
+		List<SearchCollector> shardResults;
+		try {
+			shardResults = ThreadUtil.forkJoinPool().submit(() -> shards.parallelStream()
+					.map(shard -> search(shard, filter, task))
+					.collect(Collectors.toList())).get();
+		} catch(InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while searching", ex);
+		} catch(ExecutionException ex) {
+			Throwable cause = ex.getCause();
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+			throw new IllegalStateException("Failed to search", cause);
+		}
 		SearchCollector collector = new SearchCollector(workspace, queries);
+		shardResults.forEach(collector::addAll);
+		return collector;
+	}
+
+	/**
+	 * @param names
+	 * 		Classes to visit, in order.
+	 * @param filter
+	 * 		Filter to skip classes that cannot hold results with, or {@code null} to visit every class.
+	 * @param task
+	 * 		Task to check for cancellation and report results and progress to.
+	 *
+	 * @return Collector of the results in the given classes.
+	 */
+	private SearchCollector search(List<String> names, ConstantPoolFilter filter, SearchTask task) {
+		SearchCollector collector = new SearchCollector(workspace, queries, task);
 		SearchClassVisitor sv = new SearchClassVisitor(collector);
-		workspace.getPrimaryClassReaders().forEach(cr -> {
-			String name = cr.getClassName();
-			if (skip(name))
-				return;
-			cr.accept(sv, readFlags);
-		});
+		Map<String, byte[]> classes = workspace.getPrimary().getClasses();
+		for (String name : names) {
+			// Shards share the task, so one reaching the limit stops the others too
+			if (task.isStopped())
+				break;
+			byte[] code = classes.get(name);
+			if (code != null && (filter == null || filter.mayMatch(code)))
+				workspace.getParseCache().getReader(code).accept(sv, readFlags);
+			task.scanned();
+		}
 		return collector;
 	}
 
+	/**
+	 * @return Names of the only classes that can hold results, or {@code null} if every class must be visited.
+	 * Only searches made up of string and value queries can be narrowed down by the constant index,
+	 * and only once it is built.
+	 */
+	private Set<String> indexCandidates() {
+		if (queries.isEmpty())
+			return null;
+		ConstantIndex index = workspace.getConstantIndex();
+		// Building the index takes a while, so every class is visited until it is ready
+		if (!index.isBuilt()) {
+			index.buildInBackground();
+			return null;
+		}
+		Set<String> candidates = new HashSet<>();
+		for (Query query : queries) {
+			if (query instanceof StringQuery) {
+				StringQuery stringQuery = (StringQuery) query;
+				candidates.addAll(index.getClassesWithString(stringQuery.getPattern(), stringQuery.getStringMode()));
+			} else if (query instanceof ValueQuery) {
+				candidates.addAll(index.getClassesWithValue(((ValueQuery) query).getValue()));
+			} else {
+				return null;
+			}
+		}
+		return candidates;
+	}
+
 	/**
 	 * @param name
 	 * 		Class name.
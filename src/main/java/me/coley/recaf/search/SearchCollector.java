@@ -3,7 +3,6 @@ package me.coley.recaf.search;
 import com.google.common.collect.ListMultimap;
 import com.google.common.collect.MultimapBuilder;
 import com.google.common.collect.Multimaps;
-import me.coley.recaf.util.ClassUtil;
 import me.coley.recaf.workspace.Workspace;
 import org.objectweb.asm.*;
 import org.objectweb.asm.tree.*;
@@ -34,6 +33,7 @@ public class SearchCollector {
 	private final Map<Query, List<SearchResult>> resultMapView = Multimaps.asMap(results);
 	private final Workspace workspace;
 	private final Collection<Query> queries;
+	private final SearchTask task;
 
 	/**
 	 * Constructs a class search visitor.
@@ -44,8 +44,23 @@ public class SearchCollector {
 	 * 		Queries to check for collecting results.
 	 */
 	public SearchCollector(Workspace workspace, Collection<Query> queries) {
+		this(workspace, queries, null);
+	}
+
+	/**
+	 * Constructs a class search visitor.
+	 *
+	 * @param workspace
+	 * 		Workspace to pull additional references from.
+	 * @param queries
+	 * 		Queries to check for collecting results.
+	 * @param task
+	 * 		Task to limit and pass on collected results with. May be {@code null}.
+	 */
+	SearchCollector(Workspace workspace, Collection<Query> queries, SearchTask task) {
 		this.workspace = workspace;
 		this.queries = queries;
+		this.task = task;
 	}
 
 	/**
@@ -107,6 +122,7 @@ public class SearchCollector {
 
 	/**
 	 * Adds all results from the query to the {@link #getResultsMap() results map}.
+	 * Results beyond the limit of the search task are dropped.
 	 *
 	 * @param context
 	 * 		Optional context to add to results.
@@ -118,10 +134,26 @@ public class SearchCollector {
 		if(context == null)
 			throw new IllegalStateException("Must have context");
 		matched.forEach(res -> res.setContext(context));
-		results.putAll(query, matched);
+		if(task == null) {
+			results.putAll(query, matched);
+		} else {
+			List<SearchResult> accepted = matched.subList(0, task.reserve(matched.size()));
+			results.putAll(query, accepted);
+			accepted.forEach(task::publish);
+		}
 		matched.clear();
 	}
 
+	/**
+	 * Adds all results of another collector, after the results already collected.
+	 *
+	 * @param other
+	 * 		Collector of the same queries.
+	 */
+	void addAll(SearchCollector other) {
+		results.putAll(other.results);
+	}
+
 	// We use suppliers so that we don't have to lookup this information unless
 	// we are sure that there is a match and this information is needed.
 	// Looking this up in hundreds of cases where we don't need it would just waste time.
@@ -139,34 +171,35 @@ public class SearchCollector {
 		if(name.endsWith(";"))
 			throw new IllegalStateException("Must use internal name, not descriptor!");
 		// Get access
-		if(workspace.hasClass(name))
-			return workspace.getClassReader(name).getAccess();
+		ClassReader reader = workspace.getClassReader(name);
+		if(reader != null)
+			return reader.getAccess();
 		// Unknown
 		return defaultAcc;
 	}
 
 	private int acc(String owner, String name, String desc, int defaultAcc) {
-		if(workspace.hasClass(owner))
+		ClassNode node = workspace.getClassNode(owner, SKIP_CODE | SKIP_DEBUG);
+		if(node != null)
 			if(desc.contains("(")) {
-				ClassReader reader = workspace.getClassReader(owner);
-				MethodNode node = ClassUtil.getMethod(
-						reader, SKIP_CODE | SKIP_DEBUG, name, desc);
-				if(node != null)
-					return node.access;
+				for(MethodNode method : node.methods)
+					if(method.name.equals(name) && method.desc.equals(desc))
+						return method.access;
 				// Try and look in parent classes for the method definition
-				int ret = acc(reader.getSuperName(), name, desc, defaultAcc);
-				if(ret != defaultAcc)
-					return ret;
-				for(String itf : reader.getInterfaces()) {
-					ret = acc(itf, name, desc, defaultAcc);
+				if(node.superName != null) {
+					int ret = acc(node.superName, name, desc, defaultAcc);
+					if(ret != defaultAcc)
+						return ret;
+				}
+				for(String itf : node.interfaces) {
+					int ret = acc(itf, name, desc, defaultAcc);
 					if(ret != defaultAcc)
 						return ret;
 				}
 			} else {
-				FieldNode node = ClassUtil.getField(
-						workspace.getClassReader(owner), SKIP_CODE | SKIP_DEBUG, name, desc);
-				if(node != null)
-					return node.access;
+				for(FieldNode field : node.fields)
+					if(field.name.equals(name) && field.desc.equals(desc))
+						return field.access;
 			}
 		return defaultAcc;
 	}
@@ -304,6 +304,11 @@ public class SearchMethodVisitor extends MethodNode {
 		// Don't check disassembled text on abstract methods
 		if (AccessFlag.isAbstract(access))
 			return;
+		collector.queries(InsnPatternQuery.class)
+				.forEach(q -> {
+					q.match(instructions);
+					collector.addMatched(context, q);
+				});
 		List<InsnTextQuery> insnTextQueries = collector.queries(InsnTextQuery.class).collect(Collectors.toList());
 		if (!insnTextQueries.isEmpty()) {
 			try {
@@ -0,0 +1,186 @@
+package me.coley.recaf.search;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Handle to a running search, see {@link SearchBuilder#start()}.
+ * <br>
+ * Cancellation is cooperative: the search stops before the next class it would visit, and the results found up
+ * to that point are kept.
+ *
+ * @author Matt
+ */
+public class SearchTask {
+	private final CompletableFuture<SearchCollector> future = new CompletableFuture<>();
+	private final AtomicBoolean cancelled = new AtomicBoolean();
+	private final AtomicInteger scanned = new AtomicInteger();
+	// Results that may still be collected, negative for no limit
+	private final AtomicInteger remaining;
+	private final Consumer<SearchResult> resultConsumer;
+	private final ProgressListener progressListener;
+	private volatile int total;
+
+	/**
+	 * @param limit
+	 * 		Maximum number of results to collect, negative for no limit.
+	 * @param resultConsumer
+	 * 		Consumer to pass results to as they are found. May be {@code null}.
+	 * @param progressListener
+	 * 		Listener to notify after each visited class. May be {@code null}.
+	 */
+	SearchTask(int limit, Consumer<SearchResult> resultConsumer, ProgressListener progressListener) {
+		this.remaining = new AtomicInteger(limit);
+		this.resultConsumer = resultConsumer;
+		this.progressListener = progressListener;
+	}
+
+	/**
+	 * Requests the search to stop. Has no effect if the search is already done.
+	 */
+	public void cancel() {
+		cancelled.set(true);
+	}
+
+	/**
+	 * @return {@code true} if the search was requested to stop.
+	 */
+	public boolean isCancelled() {
+		return cancelled.get();
+	}
+
+	/**
+	 * @return {@code true} if the search stopped early because the result limit was reached.
+	 */
+	public boolean isLimitReached() {
+		return remaining.get() == 0;
+	}
+
+	/**
+	 * @return {@code true} if the search is finished, was cancelled and has stopped, or failed.
+	 */
+	public boolean isDone() {
+		return future.isDone();
+	}
+
+	/**
+	 * @return Number of classes visited or skipped so far.
+	 */
+	public int getScanned() {
+		return scanned.get();
+	}
+
+	/**
+	 * @return Number of classes to search. Zero until the classes to search have been determined.
+	 */
+	public int getTotal() {
+		return total;
+	}
+
+	/**
+	 * Waits for the search to finish.
+	 *
+	 * @return Collector of the results. Only holds the results found before stopping if the task was cancelled.
+	 *
+	 * @throws InterruptedException
+	 * 		When the current thread is interrupted while waiting.
+	 * @throws ExecutionException
+	 * 		When the search failed.
+	 */
+	public SearchCollector get() throws InterruptedException, ExecutionException {
+		return future.get();
+	}
+
+	/**
+	 * @return Future completed with the collector of the results once the search finishes.
+	 */
+	public CompletableFuture<SearchCollector> getFuture() {
+		return future;
+	}
+
+	/**
+	 * @return {@code true} if no more classes should be visited.
+	 */
+	boolean isStopped() {
+		return cancelled.get() || remaining.get() == 0;
+	}
+
+	/**
+	 * @param total
+	 * 		Number of classes to search.
+	 */
+	void setTotal(int total) {
+		this.total = total;
+	}
+
+	/**
+	 * Marks one more class as visited and notifies the progress listener.
+	 */
+	void scanned() {
+		int count = scanned.incrementAndGet();
+		if (progressListener != null)
+			progressListener.onProgress(count, total);
+	}
+
+	/**
+	 * @param count
+	 * 		Number of results about to be collected.
+	 *
+	 * @return Number of those results that fit within the limit.
+	 */
+	int reserve(int count) {
+		while(true) {
+			int left = remaining.get();
+			if (left < 0)
+				return count;
+			int accepted = Math.min(left, count);
+			if (remaining.compareAndSet(left, left - accepted))
+				return accepted;
+		}
+	}
+
+	/**
+	 * @param result
+	 * 		Collected result to pass to the result consumer.
+	 */
+	void publish(SearchResult result) {
+		if (resultConsumer != null)
+			resultConsumer.accept(result);
+	}
+
+	/**
+	 * @param collector
+	 * 		Results of the finished search.
+	 */
+	void complete(SearchCollector collector) {
+		future.complete(collector);
+	}
+
+	/**
+	 * @param cause
+	 * 		Reason the search failed.
+	 */
+	void fail(Throwable cause) {
+		future.completeExceptionally(cause);
+	}
+
+	/**
+	 * Listener for search progress.
+	 */
+	@FunctionalInterface
+	public interface ProgressListener {
+		/**
+		 * Called from the searching threads after each class, so a listener updating a UI should only schedule
+		 * the update.
+		 *
+		 * @param scanned
+		 * 		Number of classes visited or skipped so far.
+		 * @param total
+		 * 		Number of classes to search.
+		 */
+		void onProgress(int scanned, int total);
+	}
+}
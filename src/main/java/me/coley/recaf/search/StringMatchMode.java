@@ -1,9 +1,12 @@
 package me.coley.recaf.search;
 
+import jregex.Matcher;
 import jregex.Pattern;
 import me.coley.recaf.util.Log;
 
-import java.util.function.BiPredicate;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
 
 /**
  * String match implementations.
@@ -14,37 +17,48 @@ public enum StringMatchMode {
 	/**
 	 * String match via equality.
 	 */
-	EQUALS((key, text) -> text.equals(key)),
+	EQUALS(key -> text -> text.equals(key)),
 	/**
 	 * String match via containment.
 	 */
-	CONTAINS((key, text) -> text.contains(key)),
+	CONTAINS(key -> text -> text.contains(key)),
 	/**
 	 * String match via same prefix.
 	 */
-	STARTS_WITH((key, text) -> text.startsWith(key)),
+	STARTS_WITH(key -> text -> text.startsWith(key)),
 	/**
 	 * String match via same suffix.
 	 */
-	ENDS_WITH((key, text) -> text.endsWith(key)),
+	ENDS_WITH(key -> text -> text.endsWith(key)),
 	/**
 	 * String match via regular expression matching.
 	 */
-	REGEX((key, text) -> regmatch(text, key));
-
-	private static boolean regmatch(String text, String key) {
-		try {
-			return new Pattern(key).matcher(text).find();
-		} catch(Exception ex) {
-			Log.error(ex, "Invalid pattern: '{}'", key);
-			return false;
+	REGEX(StringMatchMode::compileRegex);
+
+	private static final int MAX_CACHED_PATTERNS = 64;
+	// Compiled patterns, so repeated calls to "match" do not compile the pattern again
+	private static final Map<String, StringMatcher> PATTERNS =
+			new LinkedHashMap<String, StringMatcher>(16, 0.75F, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, StringMatcher> eldest) {
+			return size() > MAX_CACHED_PATTERNS;
 		}
-	}
+	};
+	private final Function<String, StringMatcher> compiler;
 
-	private final BiPredicate<String, String> matcher;
+	StringMatchMode(Function<String, StringMatcher> compiler)  {
+		this.compiler = compiler;
+	}
 
-	StringMatchMode(BiPredicate<String, String> matcher)  {
-		this.matcher = matcher;
+	/**
+	 * @param key
+	 * 		Expected pattern.
+	 *
+	 * @return Matcher testing text against the pattern. Compiling is done once, so the matcher should be reused
+	 * when testing many strings against the same pattern.
+	 */
+	public StringMatcher compile(String key) {
+		return compiler.apply(key);
 	}
 
 	/**
@@ -56,6 +70,26 @@ public enum StringMatchMode {
 	 * @return {@code true} if the given text matches with the given key.
 	 */
 	public boolean match(String key, String text) {
-		return matcher.test(key, text);
+		return compile(key).matches(text);
+	}
+
+	private static StringMatcher compileRegex(String key) {
+		synchronized(PATTERNS) {
+			return PATTERNS.computeIfAbsent(key, k -> {
+				try {
+					Pattern pattern = new Pattern(k);
+					// Matchers are not thread safe, but can be retargeted, so each thread keeps its own
+					ThreadLocal<Matcher> matcher = ThreadLocal.withInitial(pattern::matcher);
+					return text -> {
+						Matcher m = matcher.get();
+						m.setTarget(text);
+						return m.find();
+					};
+				} catch(Exception ex) {
+					Log.error(ex, "Invalid pattern: '{}'", k);
+					return text -> false;
+				}
+			});
+		}
 	}
 }
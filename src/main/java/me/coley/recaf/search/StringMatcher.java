@@ -0,0 +1,18 @@
+package me.coley.recaf.search;
+
+/**
+ * Matcher for a single pattern, {@link StringMatchMode#compile(String) compiled} once and reused for every string
+ * it is tested against. Matchers may be shared between threads.
+ *
+ * @author Matt
+ */
+@FunctionalInterface
+public interface StringMatcher {
+	/**
+	 * @param text
+	 * 		Text to test for a match.
+	 *
+	 * @return {@code true} if the given text matches the compiled pattern.
+	 */
+	boolean matches(String text);
+}
@@ -7,6 +7,7 @@ package me.coley.recaf.search;
  */
 public class StringQuery extends Query {
 	private final String pattern;
+	private final StringMatcher matcher;
 
 	/**
 	 * Constructs a string matching query.
@@ -19,6 +20,21 @@ public class StringQuery extends Query {
 	public StringQuery(String pattern, StringMatchMode stringMode) {
 		super(QueryType.CLASS_NAME, stringMode);
 		this.pattern = pattern;
+		this.matcher = compile(pattern);
+	}
+
+	/**
+	 * @return String pattern.
+	 */
+	String getPattern() {
+		return pattern;
+	}
+
+	/**
+	 * @return How to match strings.
+	 */
+	StringMatchMode getStringMode() {
+		return stringMode;
 	}
 
 	/**
@@ -28,7 +44,7 @@ public class StringQuery extends Query {
 	 * 		Text to match.
 	 */
 	public void match(String text) {
-		if(stringMode.match(pattern, text)) {
+		if(matcher != null && matcher.matches(text)) {
 			getMatched().add(new StringResult(text));
 		}
 	}
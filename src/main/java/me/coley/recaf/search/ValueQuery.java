@@ -19,6 +19,13 @@ public class ValueQuery extends Query {
 		this.value = value;
 	}
 
+	/**
+	 * @return Value to search for.
+	 */
+	Object getValue() {
+		return value;
+	}
+
 	/**
 	 * Adds a result if the given value matches the specified value.
 	 *
@@ -116,7 +116,8 @@ public class MainMenu extends MenuBar {
 				new ActionMenuItem(translate("ui.menubar.search.cls_reference"), this::searchClassReference),
 				new ActionMenuItem(translate("ui.menubar.search.mem_reference"), this::searchMemberReference),
 				new ActionMenuItem(translate("ui.menubar.search.declare"),  this::searchDeclaration),
-				new ActionMenuItem(translate("ui.menubar.search.insn"),  this::searchInsn));
+				new ActionMenuItem(translate("ui.menubar.search.insn"),  this::searchInsn),
+				new ActionMenuItem(translate("ui.menubar.search.insn_pattern"),  this::searchInsnPattern));
 		mAttach = new Menu(translate("ui.menubar.attach"));
 		mAttach.getItems().addAll(
 				new ActionMenuItem(translate("ui.menubar.attach.existing"), this::attachExisting),
@@ -269,11 +270,22 @@ public class MainMenu extends MenuBar {
 		return search(QueryType.INSTRUCTION_TEXT, "insn");
 	}
 
+	/**
+	 * Open instruction pattern search window.
+	 *
+	 * @return Search window.
+	 */
+	public SearchPane searchInsnPattern() {
+		return search(QueryType.INSTRUCTION_PATTERN, "insn_pattern");
+	}
+
 	private SearchPane search(QueryType type, String key) {
 		SearchPane pane = new SearchPane(controller, type);
 		Stage stage  = controller.windows().window(
 				translate("ui.menubar.search") + ":" + translate("ui.menubar.search." + key),
 				pane, 600, 400);
+		// Closing the window abandons the search
+		stage.setOnHidden(e -> pane.cancel());
 		stage.show();
 		stage.toFront();
 		return pane;
@@ -548,6 +560,7 @@ public class MainMenu extends MenuBar {
 			try {
 				FileUtils.write(file, json, UTF_8);
 				config().recentSaveWorkspace = file.getAbsolutePath();
+				WorkspaceIO.writeSnapshot(controller.getWorkspace(), file.toPath());
 			} catch(IOException ex) {
 				error(ex, "Failed to save workspace to file: {}", file.getName());
 				ExceptionAlert.show(ex, "Failed to save workspace to file: " + file.getName());
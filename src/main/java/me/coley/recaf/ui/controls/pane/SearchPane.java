@@ -13,9 +13,12 @@ import me.coley.recaf.ui.controls.SubLabeled;
 import me.coley.recaf.ui.controls.tree.*;
 import me.coley.recaf.util.LangUtil;
 import me.coley.recaf.util.Log;
+import me.coley.recaf.util.ThreadUtil;
 import me.coley.recaf.workspace.Workspace;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.BiConsumer;
 import java.util.function.Function;
 import java.util.function.Supplier;
@@ -32,8 +35,10 @@ import static me.coley.recaf.util.LangUtil.translate;
 public class SearchPane extends SplitPane {
 	private final Map<String, Input> inputMap = new HashMap<>();
 	private final TreeView tree = new TreeView();
+	private final ProgressBar progress = new ProgressBar(0);
 	private final Runnable searchAction;
-
+	private SearchTask task;
+	private int searchCount;
 
 	/**
 	 * @param controller
@@ -128,6 +133,12 @@ public class SearchPane extends SplitPane {
 				searchAction = () -> search(controller, () -> buildInsnSearch(controller.getWorkspace()));
 				btn.setOnAction(e -> search());
 				break;
+			case INSTRUCTION_PATTERN:
+				addInput(new Input<>(params, "ui.search.insn.pattern", "ui.search.insn.pattern.sub",
+						TextArea::new, TextArea::getText, TextArea::setText));
+				searchAction = () -> search(controller, () -> buildInsnPatternSearch(controller.getWorkspace()));
+				btn.setOnAction(e -> search());
+				break;
 			default:
 				searchAction = null;
 				break;
@@ -136,6 +147,9 @@ public class SearchPane extends SplitPane {
 		addInput(new Input<>(params, "ui.search.skippackages", "ui.search.skippackages.sub",
 				() -> selector, PackageSelector::get, PackageSelector::set));
 		params.add(null, btn);
+		// Only shown while a search is running
+		progress.setVisible(false);
+		params.add(null, progress);
 		getItems().addAll(params, tree);
 		SplitPane.setResizableWithParent(params, Boolean.FALSE);
 	}
@@ -149,83 +163,142 @@ public class SearchPane extends SplitPane {
 	}
 
 	/**
-	 * Run search and display results.
+	 * Stop the running search, if any. The results found so far are still shown.
+	 */
+	public void cancel() {
+		if (task != null)
+			task.cancel();
+	}
+
+	/**
+	 * Run search and display results as they are found.
 	 *
 	 * @param controller
 	 * 		Controller for the workspace.
-	 * @param collectorSupplier
+	 * @param builderSupplier
 	 * 		Search generator.
 	 */
-	private void search(Controller controller, Supplier<SearchCollector> collectorSupplier) {
+	private void search(Controller controller, Supplier<SearchBuilder> builderSupplier) {
+		// Results of an abandoned search are no longer needed
+		cancel();
+		task = null;
+		progress.setVisible(false);
 		Workspace workspace = controller.getWorkspace();
-		List<SearchResult> results = null;
-		SearchCollector collector = null;
-		try {
-			collector = collectorSupplier.get();
-			results = collector.getAllResults();
-		} catch(IllegalArgumentException ex) {
-			// Some search argument requirements were not met
-			results = Collections.emptyList();
-			// TODO: visual warning
-			Log.warn("Failed search due to illegal arguments: {}", ex.getMessage());
-		}
 		// Create parameter map so the root item can show the parameters of the search
 		Map<String, Object> params = new TreeMap<>(inputMap.entrySet().stream()
 				.collect(Collectors.toMap(
 						e -> e.getKey().substring(e.getKey().lastIndexOf(".") + 1),
 						e -> e.getValue().getOr("")
 				)));
-		tree.setRoot(new SearchRootItem(workspace.getPrimary(), results, params));
-		JavaResourceTree.recurseOpen(tree.getRoot());
+		SearchRootItem root = new SearchRootItem(workspace.getPrimary(), new ArrayList<>(), params);
+		tree.setRoot(root);
+		SearchBuilder builder;
+		try {
+			builder = builderSupplier.get();
+		} catch(IllegalArgumentException ex) {
+			// Some search argument requirements were not met
+			// TODO: visual warning
+			Log.warn("Failed search due to illegal arguments: {}", ex.getMessage());
+			return;
+		}
+		int id = ++searchCount;
+		progress.setProgress(0);
+		progress.setVisible(true);
+		// Progress is reported after each class, so only one UI update is queued at a time
+		AtomicBoolean progressQueued = new AtomicBoolean();
+		builder.onProgress((scanned, total) -> {
+			if (progressQueued.compareAndSet(false, true))
+				ThreadUtil.checkJfxAndEnqueue(() -> {
+					progressQueued.set(false);
+					if (id == searchCount && total > 0)
+						progress.setProgress((double) scanned / total);
+				});
+		});
+		// Results are queued so that many results found at once are added in a single UI update
+		Queue<SearchResult> found = new ConcurrentLinkedQueue<>();
+		AtomicBoolean updateQueued = new AtomicBoolean();
+		SearchTask current = builder.onResult(result -> {
+			found.add(result);
+			if (updateQueued.compareAndSet(false, true))
+				ThreadUtil.checkJfxAndEnqueue(() -> {
+					updateQueued.set(false);
+					SearchResult next;
+					while((next = found.poll()) != null)
+						root.add(next);
+					JavaResourceTree.recurseOpen(root);
+				});
+		}).start();
+		task = current;
+		// Once done, show all results in sorted order
+		current.getFuture().whenComplete((collector, error) -> ThreadUtil.checkJfxAndEnqueue(() -> {
+			if (task != current)
+				return;
+			progress.setVisible(false);
+			if (error != null) {
+				Log.error(error, "Failed search");
+				return;
+			}
+			tree.setRoot(new SearchRootItem(workspace.getPrimary(), collector.getAllResults(), params));
+			JavaResourceTree.recurseOpen(tree.getRoot());
+		}));
 	}
 
-	private SearchCollector buildDefinitionSearch(Workspace workspace) {
+	private SearchBuilder buildDefinitionSearch(Workspace workspace) {
 		return SearchBuilder.in(workspace)
 				.skipDebug()
 				.skipCode()
 				.query(new MemberDefinitionQuery(
 						input("ui.search.declaration.owner"), input("ui.search.declaration.name"),
 						input("ui.search.declaration.desc"), input("ui.search.matchmode")))
-				.skipPackages(input("ui.search.skippackages"))
-				.build();
+				.skipPackages(input("ui.search.skippackages"));
 	}
 
-	private SearchCollector buildClassReferenceSearch(Workspace workspace) {
+	private SearchBuilder buildClassReferenceSearch(Workspace workspace) {
 		return SearchBuilder.in(workspace)
+				.parallel()
 				.query(new ClassReferenceQuery(
 						input("ui.search.cls_reference.name"), input("ui.search.matchmode")))
-				.skipPackages(input("ui.search.skippackages"))
-				.build();
+				.skipPackages(input("ui.search.skippackages"));
 	}
 
-	private SearchCollector buildMemberReferenceSearch(Workspace workspace) {
+	private SearchBuilder buildMemberReferenceSearch(Workspace workspace) {
 		return SearchBuilder.in(workspace)
+				.parallel()
 				.query(new MemberReferenceQuery(
 						input("ui.search.mem_reference.owner"), input("ui.search.mem_reference.name"),
 						input("ui.search.mem_reference.desc"), input("ui.search.matchmode")))
-				.skipPackages(input("ui.search.skippackages"))
-				.build();
+				.skipPackages(input("ui.search.skippackages"));
 	}
 
-	private SearchCollector buildStringSearch(Workspace workspace) {
+	private SearchBuilder buildStringSearch(Workspace workspace) {
 		return SearchBuilder.in(workspace)
+				.parallel()
 				.skipDebug()
 				.query(new StringQuery(input("ui.search.string"), input("ui.search.matchmode")))
-				.skipPackages(input("ui.search.skippackages"))
-				.build();
+				.skipPackages(input("ui.search.skippackages"));
 	}
 
-	private SearchCollector buildValueSearch(Workspace workspace) {
+	private SearchBuilder buildValueSearch(Workspace workspace) {
 		return SearchBuilder.in(workspace)
+				.parallel()
 				.skipDebug()
 				.skipPackages(input("ui.search.skippackages"))
-				.query(new ValueQuery(input("ui.search.value"))).build();
+				.query(new ValueQuery(input("ui.search.value")));
 	}
 
-	private SearchCollector buildInsnSearch(Workspace workspace) {
+	private SearchBuilder buildInsnSearch(Workspace workspace) {
 		return SearchBuilder.in(workspace)
+				.parallel()
+				.skipPackages(input("ui.search.skippackages"))
+				.query(new InsnTextQuery(input("ui.search.insn.lines"), input("ui.search.matchmode")));
+	}
+
+	private SearchBuilder buildInsnPatternSearch(Workspace workspace) {
+		return SearchBuilder.in(workspace)
+				.parallel()
+				.skipDebug()
 				.skipPackages(input("ui.search.skippackages"))
-				.query(new InsnTextQuery(input("ui.search.insn.lines"), input("ui.search.matchmode"))).build();
+				.query(new InsnPatternQuery((String) input("ui.search.insn.pattern")));
 	}
 
 	/**
@@ -19,7 +19,7 @@ public class SearchRootItem extends DirectoryItem {
 	 * @param resource
 	 * 		The resource associated with the item.
 	 * @param results
-	 * 		Results to show in sub-items.
+	 * 		Results to show in sub-items. Must be modifiable if {@link #add(SearchResult) more results} are added.
 	 * @param params
 	 * 		Search parameters.
 	 */
@@ -39,6 +39,17 @@ public class SearchRootItem extends DirectoryItem {
 		sorted.forEach(this::addResult);
 	}
 
+	/**
+	 * Adds a result found after the item was created. Unlike the initial results its sub-items are not sorted.
+	 *
+	 * @param result
+	 * 		Result to add.
+	 */
+	public void add(SearchResult result) {
+		results.add(result);
+		addResult(result);
+	}
+
 	/**
 	 * @return Results of the search.
 	 */
@@ -0,0 +1,936 @@
+package me.coley.recaf.util;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Opcodes;
+
+import java.util.Arrays;
+
+/**
+ * Basic information about a class, read without building a {@link org.objectweb.asm.tree.ClassNode}.
+ * <br>
+ * {@link #read(byte[])} walks the constant pool, member tables, attributes and method code bounds.
+ * Classes that are well-formed and do not use any of the features obfuscators abuse to crash ASM are
+ * marked as {@link #isTrusted() trusted}. Untrusted classes should be checked with a full ASM parse,
+ * see {@link ClassUtil#isValidClass(byte[])}.
+ *
+ * @author Matt
+ */
+public class ClassHeader {
+	private static final int MAX_SUPPORTED_VERSION = Opcodes.V18 & 0xFFFF;
+	private static final int MAX_ANNO_DEPTH = 32;
+	// Constant pool tags
+	private static final int UTF8 = 1;
+	private static final int INT = 3;
+	private static final int FLOAT = 4;
+	private static final int LONG = 5;
+	private static final int DOUBLE = 6;
+	private static final int CLASS = 7;
+	private static final int STRING = 8;
+	private static final int FIELD = 9;
+	private static final int METHOD = 10;
+	private static final int INTERFACE_METHOD = 11;
+	private static final int NAME_TYPE = 12;
+	private static final int HANDLE = 15;
+	private static final int METHOD_TYPE = 16;
+	private static final int DYNAMIC = 17;
+	private static final int INVOKE_DYNAMIC = 18;
+	private static final int MODULE = 19;
+	private static final int PACKAGE = 20;
+	// Instruction kinds
+	private static final int INSN_INVALID = 0;
+	private static final int INSN_PLAIN = 1;
+	private static final int INSN_VAR = 2;
+	private static final int INSN_LDC = 3;
+	private static final int INSN_JUMP = 4;
+	private static final int INSN_JUMP_WIDE = 5;
+	private static final int INSN_FIELD = 6;
+	private static final int INSN_METHOD = 7;
+	private static final int INSN_INTERFACE = 8;
+	private static final int INSN_INDY = 9;
+	private static final int INSN_TYPE = 10;
+	private static final int INSN_SWITCH = 11;
+	private static final int INSN_WIDE = 12;
+	private static final int[] INSN_KINDS = new int[256];
+	private static final int[] INSN_SIZES = new int[256];
+	private final int access;
+	private final int version;
+	private final String name;
+	private final String superName;
+	private final String[] interfaces;
+	private final boolean trusted;
+
+	static {
+		// Everything up to and including MONITOREXIT without special handling below has no operands
+		for (int op = Opcodes.NOP; op <= Opcodes.MONITOREXIT; op++)
+			insn(op, INSN_PLAIN, 1);
+		insn(Opcodes.BIPUSH, INSN_PLAIN, 2);
+		insn(Opcodes.SIPUSH, INSN_PLAIN, 3);
+		insn(Opcodes.NEWARRAY, INSN_PLAIN, 2);
+		insn(Opcodes.IINC, INSN_PLAIN, 3);
+		insn(Opcodes.LDC, INSN_LDC, 2);
+		insn(Opcodes.LDC + 1, INSN_LDC, 3);
+		insn(Opcodes.LDC + 2, INSN_LDC, 3);
+		for (int op = Opcodes.ILOAD; op <= Opcodes.ALOAD; op++)
+			insn(op, INSN_VAR, 2);
+		for (int op = Opcodes.ISTORE; op <= Opcodes.ASTORE; op++)
+			insn(op, INSN_VAR, 2);
+		insn(Opcodes.RET, INSN_VAR, 2);
+		for (int op = Opcodes.IFEQ; op <= Opcodes.JSR; op++)
+			insn(op, INSN_JUMP, 3);
+		insn(Opcodes.IFNULL, INSN_JUMP, 3);
+		insn(Opcodes.IFNONNULL, INSN_JUMP, 3);
+		insn(Opcodes.IFNONNULL + 1, INSN_JUMP_WIDE, 5);
+		insn(Opcodes.IFNONNULL + 2, INSN_JUMP_WIDE, 5);
+		insn(Opcodes.TABLESWITCH, INSN_SWITCH, 0);
+		insn(Opcodes.LOOKUPSWITCH, INSN_SWITCH, 0);
+		for (int op = Opcodes.GETSTATIC; op <= Opcodes.PUTFIELD; op++)
+			insn(op, INSN_FIELD, 3);
+		for (int op = Opcodes.INVOKEVIRTUAL; op <= Opcodes.INVOKESTATIC; op++)
+			insn(op, INSN_METHOD, 3);
+		insn(Opcodes.INVOKEINTERFACE, INSN_INTERFACE, 5);
+		insn(Opcodes.INVOKEDYNAMIC, INSN_INDY, 5);
+		insn(Opcodes.NEW, INSN_TYPE, 3);
+		insn(Opcodes.ANEWARRAY, INSN_TYPE, 3);
+		insn(Opcodes.CHECKCAST, INSN_TYPE, 3);
+		insn(Opcodes.INSTANCEOF, INSN_TYPE, 3);
+		insn(Opcodes.MULTIANEWARRAY, INSN_TYPE, 4);
+		insn(Opcodes.MONITOREXIT + 1, INSN_WIDE, 0);
+	}
+
+	private static void insn(int op, int kind, int size) {
+		INSN_KINDS[op] = kind;
+		INSN_SIZES[op] = size;
+	}
+
+	private ClassHeader(int access, int version, String name, String superName, String[] interfaces,
+						boolean trusted) {
+		this.access = access;
+		this.version = version;
+		this.name = name;
+		this.superName = superName;
+		this.interfaces = interfaces;
+		this.trusted = trusted;
+	}
+
+	/**
+	 * @param reader
+	 * 		Reader of a class that is known to be valid.
+	 *
+	 * @return Header of the class.
+	 */
+	public static ClassHeader of(ClassReader reader) {
+		int version = reader.readShort(6) & 0xFFFF;
+		return new ClassHeader(reader.getAccess(), version, reader.getClassName(), reader.getSuperName(),
+				reader.getInterfaces(), true);
+	}
+
+	/**
+	 * @param code
+	 * 		Class bytecode.
+	 *
+	 * @return Header of the class, or {@code null} if the header itself cannot be read.
+	 * If the rest of the class is malformed or unusual the header is not {@link #isTrusted() trusted}.
+	 */
+	public static ClassHeader read(byte[] code) {
+		if (code == null || !ClassUtil.isClass(code))
+			return null;
+		try {
+			return new Walker(code).walk();
+		} catch(RuntimeException ex) {
+			// Out of bounds reads, or something unexpected enough to stop walking
+			return null;
+		}
+	}
+
+	/**
+	 * @return Class access flags.
+	 */
+	public int getAccess() {
+		return access;
+	}
+
+	/**
+	 * @return Class major version.
+	 */
+	public int getVersion() {
+		return version;
+	}
+
+	/**
+	 * @return Internal class name.
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return Internal name of parent class. May be {@code null} for {@code java/lang/Object} and modules.
+	 */
+	public String getSuperName() {
+		return superName;
+	}
+
+	/**
+	 * @return Internal names of implemented interfaces.
+	 */
+	public String[] getInterfaces() {
+		return interfaces;
+	}
+
+	/**
+	 * @return {@code true} when the class is well-formed, and a full ASM parse is not needed to validate it.
+	 */
+	public boolean isTrusted() {
+		return trusted;
+	}
+
+	@Override
+	public String toString() {
+		return name + " extends " + superName + " implements " + Arrays.toString(interfaces);
+	}
+
+	/**
+	 * Walks the class file structure. Any bounds violations surface as {@link IndexOutOfBoundsException}.
+	 * Anything else that is malformed or unusual sets {@link #suspicious}.
+	 */
+	private static class Walker {
+		private final byte[] code;
+		private int[] offsets;
+		private int[] tags;
+		private String[] strings;
+		private int bootstrapCount = -1;
+		private int maxBootstrapIndex = -1;
+		private boolean suspicious;
+
+		private Walker(byte[] code) {
+			this.code = code;
+		}
+
+		private ClassHeader walk() {
+			int version = u2(6);
+			if (version > MAX_SUPPORTED_VERSION)
+				suspicious = true;
+			int pos = readPool();
+			int access = u2(pos);
+			String name = className(u2(pos + 2));
+			int superIndex = u2(pos + 4);
+			String superName = superIndex == 0 ? null : className(superIndex);
+			int interfaceCount = u2(pos + 6);
+			String[] interfaces = new String[interfaceCount];
+			pos += 8;
+			for (int i = 0; i < interfaceCount; i++, pos += 2)
+				interfaces[i] = className(u2(pos));
+			if (name == null)
+				throw new IllegalStateException();
+			pos = readMembers(pos, false);
+			pos = readMembers(pos, true);
+			pos = readClassAttributes(pos);
+			if (pos != code.length)
+				suspicious = true;
+			if (maxBootstrapIndex >= 0 && maxBootstrapIndex >= bootstrapCount)
+				suspicious = true;
+			return new ClassHeader(access, version, name, superName, interfaces, !suspicious);
+		}
+
+		// ================================== CONSTANT POOL ================================== //
+
+		private int readPool() {
+			int count = u2(8);
+			offsets = new int[count];
+			tags = new int[count];
+			strings = new String[count];
+			int pos = 10;
+			for (int i = 1; i < count; i++) {
+				int tag = u1(pos);
+				tags[i] = tag;
+				offsets[i] = pos + 1;
+				switch(tag) {
+					case UTF8:
+						pos += 3 + u2(pos + 1);
+						break;
+					case INT:
+					case FLOAT:
+					case FIELD:
+					case METHOD:
+					case INTERFACE_METHOD:
+					case NAME_TYPE:
+					case DYNAMIC:
+					case INVOKE_DYNAMIC:
+						pos += 5;
+						break;
+					case LONG:
+					case DOUBLE:
+						pos += 9;
+						i++;
+						break;
+					case CLASS:
+					case STRING:
+					case METHOD_TYPE:
+					case MODULE:
+					case PACKAGE:
+						pos += 3;
+						break;
+					case HANDLE:
+						pos += 4;
+						break;
+					default:
+						// ASM cannot read unknown entries
+						throw new IllegalStateException();
+				}
+			}
+			if (pos > code.length)
+				throw new IndexOutOfBoundsException();
+			// Validate references between entries
+			for (int i = 1; i < count; i++) {
+				int off = offsets[i];
+				switch(tags[i]) {
+					case CLASS:
+					case STRING:
+					case METHOD_TYPE:
+					case MODULE:
+					case PACKAGE:
+						expect(u2(off), UTF8);
+						break;
+					case FIELD:
+					case METHOD:
+					case INTERFACE_METHOD:
+						expect(u2(off), CLASS);
+						expect(u2(off + 2), NAME_TYPE);
+						break;
+					case NAME_TYPE:
+						expect(u2(off), UTF8);
+						expect(u2(off + 2), UTF8);
+						break;
+					case HANDLE:
+						checkHandle(u1(off), u2(off + 1));
+						break;
+					case DYNAMIC:
+					case INVOKE_DYNAMIC:
+						maxBootstrapIndex = Math.max(maxBootstrapIndex, u2(off));
+						expect(u2(off + 2), NAME_TYPE);
+						break;
+					default:
+						break;
+				}
+			}
+			return pos;
+		}
+
+		private void checkHandle(int kind, int ref) {
+			if (kind >= 1 && kind <= 4)
+				expect(ref, FIELD);
+			else if (kind == 5 || kind == 8)
+				expect(ref, METHOD);
+			else if (kind == 6 || kind == 7)
+				expectAny(ref, METHOD, INTERFACE_METHOD);
+			else if (kind == 9)
+				expect(ref, INTERFACE_METHOD);
+			else
+				suspicious = true;
+		}
+
+		private boolean isTag(int index, int tag) {
+			return index > 0 && index < tags.length && tags[index] == tag;
+		}
+
+		private void expect(int index, int tag) {
+			if (!isTag(index, tag))
+				suspicious = true;
+		}
+
+		private void expectAny(int index, int... allowed) {
+			for (int tag : allowed)
+				if (isTag(index, tag))
+					return;
+			suspicious = true;
+		}
+
+		private void expectOptional(int index, int tag) {
+			if (index != 0)
+				expect(index, tag);
+		}
+
+		private String utf(int index) {
+			if (!isTag(index, UTF8))
+				return null;
+			// Attribute names are looked up repeatedly
+			String cached = strings[index];
+			if (cached != null)
+				return cached;
+			int off = offsets[index];
+			int pos = off + 2;
+			int end = pos + u2(off);
+			// Modified UTF-8, decoded the same way as ASM does
+			char[] chars = new char[end - pos];
+			int len = 0;
+			while (pos < end) {
+				int c = code[pos++];
+				if ((c & 0x80) == 0) {
+					chars[len++] = (char) (c & 0x7F);
+				} else if ((c & 0xE0) == 0xC0) {
+					chars[len++] = (char) (((c & 0x1F) << 6) + (code[pos++] & 0x3F));
+				} else {
+					chars[len++] = (char) (((c & 0xF) << 12) + ((code[pos++] & 0x3F) << 6) + (code[pos++] & 0x3F));
+				}
+			}
+			return strings[index] = new String(chars, 0, len);
+		}
+
+		private String className(int index) {
+			if (!isTag(index, CLASS)) {
+				suspicious = true;
+				return null;
+			}
+			return utf(u2(offsets[index]));
+		}
+
+		// ================================== MEMBERS ================================== //
+
+		private int readMembers(int pos, boolean methods) {
+			int count = u2(pos);
+			pos += 2;
+			for (int i = 0; i < count; i++) {
+				expect(u2(pos + 2), UTF8);
+				int descIndex = u2(pos + 4);
+				expect(descIndex, UTF8);
+				int attributeCount = u2(pos + 6);
+				pos += 8;
+				for (int a = 0; a < attributeCount; a++) {
+					String attrName = utf(u2(pos));
+					int len = u4(pos + 2);
+					int start = pos + 6;
+					int end = start + len;
+					if (len < 0 || end > code.length)
+						throw new IndexOutOfBoundsException();
+					if (attrName == null)
+						suspicious = true;
+					else if (methods)
+						checkMethodAttribute(attrName, start, end, descIndex);
+					else
+						checkFieldAttribute(attrName, start, end);
+					pos = end;
+				}
+			}
+			return pos;
+		}
+
+		private void checkFieldAttribute(String attrName, int start, int end) {
+			switch(attrName) {
+				case "ConstantValue":
+					checkLength(start, end, 2);
+					expectAny(u2(start), INT, FLOAT, LONG, DOUBLE, STRING);
+					break;
+				default:
+					checkCommonAttribute(attrName, start, end);
+					break;
+			}
+		}
+
+		private void checkMethodAttribute(String attrName, int start, int end, int descIndex) {
+			switch(attrName) {
+				case "Code":
+					checkCode(start, end);
+					break;
+				case "Exceptions":
+					checkClassList(start, end);
+					break;
+				case "AnnotationDefault":
+					checkEnd(readElementValue(start, 0), end);
+					break;
+				case "RuntimeVisibleParameterAnnotations":
+				case "RuntimeInvisibleParameterAnnotations": {
+					// The tree API indexes parameter annotations by the descriptor's argument count
+					int params = u1(start);
+					if (params > argumentCount(utf(descIndex)))
+						suspicious = true;
+					int pos = start + 1;
+					for (int i = 0; i < params; i++)
+						pos = readAnnotations(pos);
+					checkEnd(pos, end);
+					break;
+				}
+				case "MethodParameters": {
+					int count = u1(start);
+					checkLength(start, end, 1 + count * 4);
+					for (int i = 0; i < count; i++)
+						expectOptional(u2(start + 1 + i * 4), UTF8);
+					break;
+				}
+				default:
+					checkCommonAttribute(attrName, start, end);
+					break;
+			}
+		}
+
+		private int readClassAttributes(int pos) {
+			int attributeCount = u2(pos);
+			pos += 2;
+			for (int a = 0; a < attributeCount; a++) {
+				String attrName = utf(u2(pos));
+				int len = u4(pos + 2);
+				int start = pos + 6;
+				int end = start + len;
+				if (len < 0 || end > code.length)
+					throw new IndexOutOfBoundsException();
+				if (attrName == null)
+					suspicious = true;
+				else
+					checkClassAttribute(attrName, start, end);
+				pos = end;
+			}
+			return pos;
+		}
+
+		private void checkClassAttribute(String attrName, int start, int end) {
+			switch(attrName) {
+				case "SourceFile":
+				case "NestHost":
+					checkLength(start, end, 2);
+					expect(u2(start), attrName.equals("NestHost") ? CLASS : UTF8);
+					break;
+				case "InnerClasses": {
+					int count = u2(start);
+					checkLength(start, end, 2 + count * 8);
+					for (int i = 0; i < count; i++) {
+						int off = start + 2 + i * 8;
+						expect(u2(off), CLASS);
+						expectOptional(u2(off + 2), CLASS);
+						expectOptional(u2(off + 4), UTF8);
+					}
+					break;
+				}
+				case "EnclosingMethod":
+					checkLength(start, end, 4);
+					expect(u2(start), CLASS);
+					expectOptional(u2(start + 2), NAME_TYPE);
+					break;
+				case "NestMembers":
+				case "PermittedSubclasses":
+					checkClassList(start, end);
+					break;
+				case "SourceDebugExtension":
+					break;
+				case "BootstrapMethods": {
+					int count = u2(start);
+					int pos = start + 2;
+					for (int i = 0; i < count; i++) {
+						expect(u2(pos), HANDLE);
+						int args = u2(pos + 2);
+						pos += 4;
+						for (int j = 0; j < args; j++, pos += 2)
+							checkLoadable(u2(pos));
+					}
+					checkEnd(pos, end);
+					bootstrapCount = count;
+					break;
+				}
+				case "Record": {
+					int count = u2(start);
+					int pos = start + 2;
+					for (int i = 0; i < count; i++) {
+						expect(u2(pos), UTF8);
+						expect(u2(pos + 2), UTF8);
+						int attributeCount = u2(pos + 4);
+						pos += 6;
+						for (int a = 0; a < attributeCount; a++) {
+							String componentAttrName = utf(u2(pos));
+							int len = u4(pos + 2);
+							int componentAttrEnd = pos + 6 + len;
+							if (len < 0 || componentAttrEnd > end)
+								throw new IndexOutOfBoundsException();
+							if (componentAttrName == null)
+								suspicious = true;
+							else
+								checkCommonAttribute(componentAttrName, pos + 6, componentAttrEnd);
+							pos = componentAttrEnd;
+						}
+					}
+					checkEnd(pos, end);
+					break;
+				}
+				case "Module":
+				case "ModulePackages":
+				case "ModuleMainClass":
+					// Rare enough to leave to ASM
+					suspicious = true;
+					break;
+				default:
+					checkCommonAttribute(attrName, start, end);
+					break;
+			}
+		}
+
+		/**
+		 * Attributes that can appear on classes, fields and methods.
+		 * Unknown attributes are kept as raw data by ASM, so only their bounds matter.
+		 */
+		private void checkCommonAttribute(String attrName, int start, int end) {
+			switch(attrName) {
+				case "Signature":
+					checkLength(start, end, 2);
+					expect(u2(start), UTF8);
+					break;
+				case "Synthetic":
+				case "Deprecated":
+					checkLength(start, end, 0);
+					break;
+				case "RuntimeVisibleAnnotations":
+				case "RuntimeInvisibleAnnotations":
+					checkEnd(readAnnotations(start), end);
+					break;
+				case "RuntimeVisibleTypeAnnotations":
+				case "RuntimeInvisibleTypeAnnotations":
+					checkEnd(readTypeAnnotations(start), end);
+					break;
+				case "Code":
+				case "ConstantValue":
+				case "Exceptions":
+				case "AnnotationDefault":
+				case "RuntimeVisibleParameterAnnotations":
+				case "RuntimeInvisibleParameterAnnotations":
+				case "MethodParameters":
+				case "StackMapTable":
+				case "LineNumberTable":
+				case "LocalVariableTable":
+				case "LocalVariableTypeTable":
+					// Known attribute in an unexpected location
+					suspicious = true;
+					break;
+				default:
+					break;
+			}
+		}
+
+		private void checkClassList(int start, int end) {
+			int count = u2(start);
+			checkLength(start, end, 2 + count * 2);
+			for (int i = 0; i < count; i++)
+				expect(u2(start + 2 + i * 2), CLASS);
+		}
+
+		private void checkLength(int start, int end, int expected) {
+			if (end - start != expected)
+				suspicious = true;
+		}
+
+		private void checkEnd(int pos, int end) {
+			if (pos != end)
+				suspicious = true;
+		}
+
+		private void checkLoadable(int index) {
+			expectAny(index, INT, FLOAT, LONG, DOUBLE, CLASS, STRING, HANDLE, METHOD_TYPE, DYNAMIC);
+		}
+
+		// ================================== ANNOTATIONS ================================== //
+
+		private int readAnnotations(int pos) {
+			int count = u2(pos);
+			pos += 2;
+			for (int i = 0; i < count; i++)
+				pos = readAnnotation(pos, 0);
+			return pos;
+		}
+
+		private int readTypeAnnotations(int pos) {
+			int count = u2(pos);
+			pos += 2;
+			for (int i = 0; i < count; i++) {
+				int target = u1(pos);
+				// Only targets that can appear outside of method code are handled here.
+				// Targets in method code are left to ASM, since the tree API is picky about them.
+				switch(target) {
+					case 0x13:
+					case 0x14:
+					case 0x15:
+						pos += 1;
+						break;
+					case 0x00:
+					case 0x01:
+					case 0x16:
+						pos += 2;
+						break;
+					case 0x10:
+					case 0x11:
+					case 0x12:
+					case 0x17:
+						pos += 3;
+						break;
+					default:
+						suspicious = true;
+						throw new IllegalStateException();
+				}
+				// Type path
+				pos += 1 + u1(pos) * 2;
+				pos = readAnnotation(pos, 0);
+			}
+			return pos;
+		}
+
+		private int readAnnotation(int pos, int depth) {
+			expect(u2(pos), UTF8);
+			int pairs = u2(pos + 2);
+			pos += 4;
+			for (int i = 0; i < pairs; i++) {
+				expect(u2(pos), UTF8);
+				pos = readElementValue(pos + 2, depth);
+			}
+			return pos;
+		}
+
+		private int readElementValue(int pos, int depth) {
+			if (depth > MAX_ANNO_DEPTH) {
+				suspicious = true;
+				throw new IllegalStateException();
+			}
+			int tag = u1(pos);
+			switch(tag) {
+				case 'B':
+				case 'C':
+				case 'I':
+				case 'S':
+				case 'Z':
+					expect(u2(pos + 1), INT);
+					return pos + 3;
+				case 'D':
+					expect(u2(pos + 1), DOUBLE);
+					return pos + 3;
+				case 'F':
+					expect(u2(pos + 1), FLOAT);
+					return pos + 3;
+				case 'J':
+					expect(u2(pos + 1), LONG);
+					return pos + 3;
+				case 's':
+				case 'c':
+					expect(u2(pos + 1), UTF8);
+					return pos + 3;
+				case 'e':
+					expect(u2(pos + 1), UTF8);
+					expect(u2(pos + 3), UTF8);
+					return pos + 5;
+				case '@':
+					return readAnnotation(pos + 1, depth + 1);
+				case '[': {
+					int count = u2(pos + 1);
+					pos += 3;
+					for (int i = 0; i < count; i++)
+						pos = readElementValue(pos, depth + 1);
+					return pos;
+				}
+				default:
+					suspicious = true;
+					throw new IllegalStateException();
+			}
+		}
+
+		// ================================== CODE ================================== //
+
+		private void checkCode(int start, int end) {
+			int codeLength = u4(start + 4);
+			int codeStart = start + 8;
+			int codeEnd = codeStart + codeLength;
+			if (codeLength <= 0 || codeLength >= 65536 || codeEnd > end)
+				throw new IndexOutOfBoundsException();
+			checkInstructions(codeStart, codeLength);
+			int pos = codeEnd;
+			int handlers = u2(pos);
+			pos += 2;
+			for (int i = 0; i < handlers; i++, pos += 8) {
+				checkOffset(u2(pos), codeLength);
+				checkOffset(u2(pos + 2), codeLength);
+				checkOffset(u2(pos + 4), codeLength);
+				expectOptional(u2(pos + 6), CLASS);
+			}
+			int attributeCount = u2(pos);
+			pos += 2;
+			for (int a = 0; a < attributeCount; a++) {
+				String attrName = utf(u2(pos));
+				int len = u4(pos + 2);
+				int attrStart = pos + 6;
+				int attrEnd = attrStart + len;
+				if (len < 0 || attrEnd > end)
+					throw new IndexOutOfBoundsException();
+				if (attrName == null) {
+					suspicious = true;
+				} else {
+					switch(attrName) {
+						case "LineNumberTable": {
+							int count = u2(attrStart);
+							checkLength(attrStart, attrEnd, 2 + count * 4);
+							for (int i = 0; i < count; i++)
+								checkOffset(u2(attrStart + 2 + i * 4), codeLength);
+							break;
+						}
+						case "LocalVariableTable":
+						case "LocalVariableTypeTable": {
+							int count = u2(attrStart);
+							checkLength(attrStart, attrEnd, 2 + count * 10);
+							for (int i = 0; i < count; i++) {
+								int off = attrStart + 2 + i * 10;
+								int varStart = u2(off);
+								checkOffset(varStart, codeLength);
+								checkOffset(varStart + u2(off + 2), codeLength);
+								expect(u2(off + 4), UTF8);
+								expect(u2(off + 6), UTF8);
+							}
+							break;
+						}
+						case "StackMapTable":
+							// Skipped when frames are not read
+							break;
+						case "RuntimeVisibleTypeAnnotations":
+						case "RuntimeInvisibleTypeAnnotations":
+							// Rare enough to leave to ASM
+							suspicious = true;
+							break;
+						default:
+							break;
+					}
+				}
+				pos = attrEnd;
+			}
+			checkEnd(pos, end);
+		}
+
+		private void checkOffset(int offset, int codeLength) {
+			// ASM allocates labels for offsets up to and including the code length
+			if (offset < 0 || offset > codeLength)
+				suspicious = true;
+		}
+
+		private void checkInstructions(int codeStart, int codeLength) {
+			int pc = 0;
+			while (pc < codeLength) {
+				int pos = codeStart + pc;
+				int op = u1(pos);
+				switch(INSN_KINDS[op]) {
+					case INSN_PLAIN:
+						break;
+					case INSN_LDC:
+						checkLdc(op == Opcodes.LDC ? u1(pos + 1) : u2(pos + 1));
+						break;
+					case INSN_JUMP:
+						checkOffset(pc + (short) u2(pos + 1), codeLength);
+						break;
+					case INSN_JUMP_WIDE:
+						checkOffset(pc + u4(pos + 1), codeLength);
+						break;
+					case INSN_FIELD:
+						expect(u2(pos + 1), FIELD);
+						break;
+					case INSN_METHOD:
+						expectAny(u2(pos + 1), METHOD, INTERFACE_METHOD);
+						break;
+					case INSN_INTERFACE:
+						expect(u2(pos + 1), INTERFACE_METHOD);
+						break;
+					case INSN_INDY:
+						expect(u2(pos + 1), INVOKE_DYNAMIC);
+						break;
+					case INSN_TYPE:
+						expect(u2(pos + 1), CLASS);
+						break;
+					case INSN_SWITCH: {
+						// Operands are aligned to 4 bytes from the start of the code
+						int operands = pc + 4 - (pc & 3);
+						checkOffset(pc + u4(codeStart + operands), codeLength);
+						int count;
+						int size;
+						if (op == Opcodes.TABLESWITCH) {
+							int low = u4(codeStart + operands + 4);
+							int high = u4(codeStart + operands + 8);
+							if (high < low)
+								throw new IllegalStateException();
+							count = high - low + 1;
+							size = 4;
+						} else {
+							count = u4(codeStart + operands + 4);
+							size = 8;
+						}
+						if (count < 0 || count >= codeLength)
+							throw new IllegalStateException();
+						// For both switch types the jump offsets start after the default offset and two more values
+						for (int i = 0; i < count; i++)
+							checkOffset(pc + u4(codeStart + operands + 12 + i * size), codeLength);
+						pc = operands + 8 + count * size + (op == Opcodes.TABLESWITCH ? 4 : 0);
+						continue;
+					}
+					case INSN_WIDE: {
+						int wideOp = u1(pos + 1);
+						if (wideOp == Opcodes.IINC)
+							pc += 6;
+						else if (INSN_KINDS[wideOp] == INSN_VAR)
+							pc += 4;
+						else
+							throw new IllegalStateException();
+						continue;
+					}
+					case INSN_VAR:
+						break;
+					case INSN_INVALID:
+					default:
+						// Unknown opcode, ASM will fail on it
+						throw new IllegalStateException();
+				}
+				pc += INSN_SIZES[op];
+			}
+			if (pc != codeLength)
+				throw new IllegalStateException();
+		}
+
+		private void checkLdc(int index) {
+			checkLoadable(index);
+		}
+
+		// ================================== DESCRIPTORS ================================== //
+
+		private int argumentCount(String desc) {
+			if (desc == null || desc.isEmpty() || desc.charAt(0) != '(') {
+				suspicious = true;
+				return 0;
+			}
+			int count = 0;
+			int i = 1;
+			while (i < desc.length() && desc.charAt(i) != ')') {
+				while (i < desc.length() && desc.charAt(i) == '[')
+					i++;
+				if (i >= desc.length()) {
+					suspicious = true;
+					return count;
+				}
+				char c = desc.charAt(i);
+				if (c == 'L') {
+					int semi = desc.indexOf(';', i);
+					if (semi < 0) {
+						suspicious = true;
+						return count;
+					}
+					i = semi + 1;
+				} else if ("ZBCSIJFD".indexOf(c) >= 0) {
+					i++;
+				} else {
+					suspicious = true;
+					return count;
+				}
+				count++;
+			}
+			return count;
+		}
+
+		// ================================== RAW READS ================================== //
+
+		private int u1(int pos) {
+			return code[pos] & 0xFF;
+		}
+
+		private int u2(int pos) {
+			return ((code[pos] & 0xFF) << 8) | (code[pos + 1] & 0xFF);
+		}
+
+		private int u4(int pos) {
+			return ((code[pos] & 0xFF) << 24) | ((code[pos + 1] & 0xFF) << 16) |
+					((code[pos + 2] & 0xFF) << 8) | (code[pos + 3] & 0xFF);
+		}
+	}
+}
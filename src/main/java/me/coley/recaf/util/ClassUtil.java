@@ -410,14 +410,31 @@ public class ClassUtil {
 	 * @return {@code true} when the class can be read by ASM.
 	 */
 	public static boolean isValidClass(byte[] value) {
-		if (!isClass(value))
-			return false;
+		return readValidHeader(value) != null;
+	}
+
+	/**
+	 * Validate the class can be parsed by ASM. Well-formed classes are validated by a
+	 * {@link ClassHeader#read(byte[]) structural check}, only
+	 * {@link ClassHeader#isTrusted() untrusted} classes are fully parsed.
+	 *
+	 * @param value
+	 * 		Class bytecode.
+	 *
+	 * @return Header of the class when it can be read by ASM, otherwise {@code null}.
+	 */
+	public static ClassHeader readValidHeader(byte[] value) {
+		if (value == null || !isClass(value))
+			return null;
+		ClassHeader header = ClassHeader.read(value);
+		if (header != null && header.isTrusted())
+			return header;
 		try {
-			getNode(new ClassReader(value), SKIP_FRAMES);
-			return true;
+			ClassReader reader = new ClassReader(value);
+			getNode(reader, SKIP_FRAMES);
+			return ClassHeader.of(reader);
 		} catch(Throwable t) {
-			return false;
+			return null;
 		}
 	}
-
 }
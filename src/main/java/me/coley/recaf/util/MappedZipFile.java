@@ -0,0 +1,421 @@
+package me.coley.recaf.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * Zip reader that maps the archive into memory and reads entries based only on the central directory.
+ * <br>
+ * Like {@link java.util.zip.ZipFile} this ignores CRC values and most of the local file headers,
+ * which obfuscators like to fill with bogus data to crash {@link java.util.zip.ZipInputStream}.
+ * Unlike {@link java.util.zip.ZipFile} entries are inflated directly from the mapped region without
+ * any intermediate streams, and reading entries is safe from multiple threads.
+ * <br>
+ * {@link #close() Closing} the archive releases the mapping right away, so the file is no longer locked.
+ *
+ * @author Matt
+ */
+public class MappedZipFile implements Closeable {
+	private static final int LOC_SIG = 0x04034b50;
+	private static final int CEN_SIG = 0x02014b50;
+	private static final int END_SIG = 0x06054b50;
+	private static final int ZIP64_END_SIG = 0x06064b50;
+	private static final int ZIP64_LOC_SIG = 0x07064b50;
+	private static final int LOC_HEADER = 30;
+	private static final int CEN_HEADER = 46;
+	private static final int END_HEADER = 22;
+	private static final int ZIP64_LOC_HEADER = 20;
+	private static final int ZIP64_EXTRA = 0x0001;
+	private static final int MAX_COMMENT = 0xFFFF;
+	private static final int CHUNK_SIZE = 8192;
+	private static final int MAX_INITIAL_SIZE = 1 << 20;
+	private static final int INITIAL_RATIO = 4;
+	// Reads hold the read lock, so the mapping is not released while it is being read
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	private final FileChannel channel;
+	private final MappedByteBuffer mapped;
+	private final ByteBuffer buffer;
+	private final List<Entry> entries;
+	private final Closeable owner;
+	private boolean closed;
+
+	/**
+	 * Open and index the archive.
+	 *
+	 * @param path
+	 * 		Path to the archive.
+	 *
+	 * @throws IOException
+	 * 		When the file cannot be mapped, or it has no valid central directory.
+	 */
+	public MappedZipFile(Path path) throws IOException {
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+		MappedByteBuffer mapped = null;
+		try {
+			long size = channel.size();
+			if (size > Integer.MAX_VALUE)
+				throw new IOException("Archive too large to map: " + path);
+			mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			buffer = mapped.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+			entries = Collections.unmodifiableList(readCentralDirectory());
+		} catch(IOException | RuntimeException ex) {
+			channel.close();
+			if (mapped != null)
+				VMUtil.unmap(mapped);
+			throw ex;
+		}
+		this.channel = channel;
+		this.mapped = mapped;
+		this.owner = null;
+	}
+
+	/**
+	 * Index an archive that is already in memory, such as an archive {@link #map(Entry) nested} in another one.
+	 *
+	 * @param data
+	 * 		Content of the archive. Not copied, so it must not be modified while the archive is in use.
+	 *
+	 * @throws IOException
+	 * 		When the archive has no valid central directory.
+	 */
+	public MappedZipFile(ByteBuffer data) throws IOException {
+		this(data, null);
+	}
+
+	/**
+	 * Index an archive that is a view of another archive, such as a stored archive {@link #map(Entry) nested} in it.
+	 *
+	 * @param data
+	 * 		Content of the archive. Not copied, so it must not be modified while the archive is in use.
+	 * @param owner
+	 * 		Source of the data, closed along with this archive. May be {@code null}.
+	 *
+	 * @throws IOException
+	 * 		When the archive has no valid central directory.
+	 */
+	public MappedZipFile(ByteBuffer data, Closeable owner) throws IOException {
+		channel = null;
+		mapped = null;
+		buffer = data.slice().order(ByteOrder.LITTLE_ENDIAN);
+		entries = Collections.unmodifiableList(readCentralDirectory());
+		this.owner = owner;
+	}
+
+	/**
+	 * @return Entries in the order they appear in the central directory.
+	 */
+	public List<Entry> getEntries() {
+		return entries;
+	}
+
+	/**
+	 * @param entry
+	 * 		Entry to read.
+	 *
+	 * @return Decompressed content of the entry.
+	 *
+	 * @throws IOException
+	 * 		When the entry data cannot be located or inflated.
+	 */
+	public byte[] read(Entry entry) throws IOException {
+		return read(entry, IOUtil.ANY);
+	}
+
+	/**
+	 * @param entry
+	 * 		Entry to read.
+	 * @param max
+	 * 		Maximum number of bytes to read, or {@link IOUtil#ANY} for no limit.
+	 * 		Useful for checking file headers without inflating the whole entry.
+	 *
+	 * @return Decompressed content of the entry, up to the given limit.
+	 *
+	 * @throws IOException
+	 * 		When the entry data cannot be located or inflated.
+	 */
+	public byte[] read(Entry entry, int max) throws IOException {
+		Lock readLock = lock.readLock();
+		readLock.lock();
+		try {
+			ByteBuffer data = slice(entry);
+			switch(entry.getStoredMethod()) {
+				case ZipEntry.STORED: {
+					int len = max == IOUtil.ANY ? data.remaining() : Math.min(max, data.remaining());
+					byte[] out = new byte[len];
+					data.get(out);
+					return out;
+				}
+				case ZipEntry.DEFLATED:
+					return inflate(entry, data, max);
+				default:
+					throw new ZipException("Unsupported compression method " + entry.getStoredMethod() +
+							" for entry: " + entry.getName());
+			}
+		} finally {
+			readLock.unlock();
+		}
+	}
+
+	/**
+	 * @param entry
+	 * 		Entry to read.
+	 *
+	 * @return Content of the entry. Uncompressed entries are a read-only view of the archive, so nothing is copied,
+	 * and the view must not be used after the archive is {@link #close() closed}. Compressed entries are inflated.
+	 *
+	 * @throws IOException
+	 * 		When the entry data cannot be located or inflated.
+	 */
+	public ByteBuffer map(Entry entry) throws IOException {
+		if (entry.getStoredMethod() != ZipEntry.STORED)
+			return ByteBuffer.wrap(read(entry));
+		Lock readLock = lock.readLock();
+		readLock.lock();
+		try {
+			return slice(entry).asReadOnlyBuffer();
+		} finally {
+			readLock.unlock();
+		}
+	}
+
+	/**
+	 * Closes the file and releases its mapping. Entries can no longer be read afterwards.
+	 *
+	 * @throws IOException
+	 * 		When the file could not be closed.
+	 */
+	@Override
+	public void close() throws IOException {
+		Lock writeLock = lock.writeLock();
+		writeLock.lock();
+		try {
+			if (closed)
+				return;
+			closed = true;
+			// Archives read from memory have nothing to release
+			if (channel != null)
+				channel.close();
+			// Otherwise the mapping, and with it the lock on the file, is held until garbage collection
+			if (mapped != null)
+				VMUtil.unmap(mapped);
+			// Views of another archive keep it open until they are closed
+			if (owner != null)
+				owner.close();
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+	/**
+	 * @param entry
+	 * 		Entry to locate.
+	 *
+	 * @return View of the compressed data of the entry.
+	 *
+	 * @throws IOException
+	 * 		When the local header of the entry is not valid.
+	 */
+	private ByteBuffer slice(Entry entry) throws IOException {
+		if (closed)
+			throw new IOException("Archive is closed");
+		ByteBuffer view = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		long loc = entry.localOffset;
+		if (loc < 0 || loc + LOC_HEADER > view.capacity() || view.getInt((int) loc) != LOC_SIG)
+			throw new ZipException("Invalid local header for entry: " + entry.getName());
+		// Only the name and extra lengths of the local header are used, to find where the data starts.
+		// Everything else in the local header is ignored in favor of the central directory.
+		long start = loc + LOC_HEADER + u16(view, (int) loc + 26) + u16(view, (int) loc + 28);
+		long end = start + entry.compressedLength;
+		if (end > view.capacity() || end < start)
+			throw new ZipException("Entry data out of archive bounds: " + entry.getName());
+		view.limit((int) end);
+		view.position((int) start);
+		return view.slice();
+	}
+
+	private static byte[] inflate(Entry entry, ByteBuffer data, int max) throws IOException {
+		// The declared size is only a hint, since it can be bogus.
+		// Start small and grow as data is inflated, so a forged size cannot force a huge allocation.
+		long estimate = Math.max(CHUNK_SIZE, data.remaining() * (long) INITIAL_RATIO);
+		long hint = entry.length < 0 ? estimate : Math.min(entry.length, estimate);
+		int limit = max == IOUtil.ANY ? Integer.MAX_VALUE - 8 : max;
+		byte[] out = new byte[(int) Math.min(Math.min(hint, MAX_INITIAL_SIZE), limit)];
+		byte[] chunk = new byte[Math.min(CHUNK_SIZE, Math.max(1, data.remaining()))];
+		Inflater inflater = new Inflater(true);
+		int len = 0;
+		boolean dummy = false;
+		try {
+			while (len < limit && !inflater.finished()) {
+				if (inflater.needsInput()) {
+					if (data.hasRemaining()) {
+						int n = Math.min(chunk.length, data.remaining());
+						data.get(chunk, 0, n);
+						inflater.setInput(chunk, 0, n);
+					} else if (!dummy) {
+						// The "nowrap" inflater may need an extra byte past the end of the data
+						dummy = true;
+						inflater.setInput(new byte[1], 0, 1);
+					} else {
+						break;
+					}
+				}
+				if (len == out.length)
+					out = Arrays.copyOf(out, (int) Math.min(Math.max(out.length * 2L, CHUNK_SIZE), limit));
+				int n = inflater.inflate(out, len, out.length - len);
+				if (n == 0 && (inflater.needsDictionary() || (dummy && inflater.needsInput())))
+					break;
+				len += n;
+			}
+		} catch(DataFormatException ex) {
+			throw new ZipException("Invalid deflate data for entry " + entry.getName() + ": " + ex.getMessage());
+		} finally {
+			inflater.end();
+		}
+		return len == out.length ? out : Arrays.copyOf(out, len);
+	}
+
+	private List<Entry> readCentralDirectory() throws IOException {
+		int end = findEnd();
+		if (end < 0)
+			throw new ZipException("Could not locate zip end header");
+		long count = u16(buffer, end + 10);
+		long cenSize = u32(buffer, end + 12);
+		long cenOffset = u32(buffer, end + 16);
+		long cenPos = end - cenSize;
+		// Check for zip64 end header
+		int zip64Loc = end - ZIP64_LOC_HEADER;
+		if (zip64Loc >= 0 && buffer.getInt(zip64Loc) == ZIP64_LOC_SIG) {
+			long zip64End = buffer.getLong(zip64Loc + 8);
+			if (zip64End >= 0 && zip64End <= zip64Loc - 56 && buffer.getInt((int) zip64End) == ZIP64_END_SIG) {
+				count = buffer.getLong((int) zip64End + 32);
+				cenSize = buffer.getLong((int) zip64End + 40);
+				cenOffset = buffer.getLong((int) zip64End + 48);
+				cenPos = zip64End - cenSize;
+			}
+		}
+		if (cenPos < 0 || cenSize < 0 || cenSize > buffer.capacity() - cenPos)
+			throw new ZipException("Invalid central directory bounds");
+		// Data may be prepended to the archive, so offsets are relative to where the archive actually starts
+		long base = cenPos - cenOffset;
+		List<Entry> list = new ArrayList<>((int) Math.max(0, Math.min(count, 0xFFFF)));
+		int pos = (int) cenPos;
+		int cenEnd = (int) (cenPos + cenSize);
+		while (pos <= cenEnd - CEN_HEADER && buffer.getInt(pos) == CEN_SIG) {
+			int method = u16(buffer, pos + 10);
+			long compressed = u32(buffer, pos + 20);
+			long size = u32(buffer, pos + 24);
+			int nameLen = u16(buffer, pos + 28);
+			int extraLen = u16(buffer, pos + 30);
+			int commentLen = u16(buffer, pos + 32);
+			long offset = u32(buffer, pos + 42);
+			long next = (long) pos + CEN_HEADER + nameLen + extraLen + commentLen;
+			if (next > cenEnd)
+				throw new ZipException("Invalid central directory header lengths for entry at: " + pos);
+			byte[] nameBytes = new byte[nameLen];
+			ByteBuffer view = buffer.duplicate();
+			view.position(pos + CEN_HEADER);
+			view.get(nameBytes);
+			String name = new String(nameBytes, StandardCharsets.UTF_8);
+			// Zip64 extra field holds the actual values of any maxed out fields
+			if (size == 0xFFFFFFFFL || compressed == 0xFFFFFFFFL || offset == 0xFFFFFFFFL) {
+				int extra = pos + CEN_HEADER + nameLen;
+				int extraEnd = extra + extraLen;
+				while (extra + 4 <= extraEnd) {
+					int tag = u16(buffer, extra);
+					int sz = u16(buffer, extra + 2);
+					int field = extra + 4;
+					if (tag == ZIP64_EXTRA) {
+						if (size == 0xFFFFFFFFL && field + 8 <= extraEnd) {
+							size = buffer.getLong(field);
+							field += 8;
+						}
+						if (compressed == 0xFFFFFFFFL && field + 8 <= extraEnd) {
+							compressed = buffer.getLong(field);
+							field += 8;
+						}
+						if (offset == 0xFFFFFFFFL && field + 8 <= extraEnd)
+							offset = buffer.getLong(field);
+						break;
+					}
+					extra += 4 + sz;
+				}
+			}
+			list.add(new Entry(name, method, compressed, size, base + offset));
+			pos = (int) next;
+		}
+		return list;
+	}
+
+	private int findEnd() {
+		int min = Math.max(0, buffer.capacity() - END_HEADER - MAX_COMMENT);
+		for (int i = buffer.capacity() - END_HEADER; i >= min; i--)
+			if (buffer.getInt(i) == END_SIG)
+				return i;
+		return -1;
+	}
+
+	private static int u16(ByteBuffer buffer, int pos) {
+		return buffer.getShort(pos) & 0xFFFF;
+	}
+
+	private static long u32(ByteBuffer buffer, int pos) {
+		return buffer.getInt(pos) & 0xFFFFFFFFL;
+	}
+
+	/**
+	 * Archive entry, as described by the central directory.
+	 */
+	public static class Entry extends ZipEntry {
+		private final int method;
+		private final long compressedLength;
+		private final long length;
+		private final long localOffset;
+
+		private Entry(String name, int method, long compressedLength, long length, long localOffset) {
+			super(name);
+			this.method = method;
+			this.compressedLength = compressedLength;
+			this.length = length;
+			this.localOffset = localOffset;
+			if (method == STORED || method == DEFLATED)
+				setMethod(method);
+			if (compressedLength >= 0)
+				setCompressedSize(compressedLength);
+			if (length >= 0)
+				setSize(length);
+		}
+
+		/**
+		 * @return Compression method as stated in the central directory.
+		 * Unlike {@link #getMethod()} this may be an unsupported method.
+		 */
+		public int getStoredMethod() {
+			return method;
+		}
+
+		/**
+		 * @return Offset of the entry's local header in the archive.
+		 */
+		public long getLocalOffset() {
+			return localOffset;
+		}
+	}
+}
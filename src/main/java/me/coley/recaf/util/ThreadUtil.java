@@ -22,6 +22,7 @@ public class ThreadUtil {
 							.setNameFormat("Recaf Scheduler Thread #%d")
 							.setDaemon(true).build());
 	private static final ExecutorService service = Executors.newWorkStealingPool(threadCount());
+	private static final ForkJoinPool forkJoinPool = new ForkJoinPool(threadCount());
 
 	/**
 	 * @param action
@@ -33,6 +34,13 @@ public class ThreadUtil {
 		return service.submit(action);
 	}
 
+	/**
+	 * @return Pool for splitting up CPU heavy work, such as loading large resources.
+	 */
+	public static ForkJoinPool forkJoinPool() {
+		return forkJoinPool;
+	}
+
 	/**
 	 * @param action
 	 * 		Task to start in new thread.
@@ -180,6 +188,7 @@ public class ThreadUtil {
 		trace("Shutting down thread executors");
 		service.shutdownNow();
 		scheduledService.shutdownNow();
+		forkJoinPool.shutdownNow();
 	}
 
 	private static int threadCount() {
@@ -13,6 +13,8 @@ import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.HashMap;
@@ -336,6 +338,38 @@ public final class VMUtil {
         }
     }
 
+    /**
+     * Releases the memory mapping of a buffer right away, rather than when it is garbage collected.
+     * On Windows a mapped file cannot be changed or deleted until the mapping is released.
+     * The buffer, and any views of it, must not be accessed afterwards.
+     *
+     * @param buffer
+     *      Buffer to unmap. Must be the buffer returned by {@link java.nio.channels.FileChannel#map},
+     *      not a slice or duplicate of it.
+     *
+     * @return {@code true} if the buffer was unmapped, {@code false} if it is left to the garbage collector.
+     */
+    public static boolean unmap(MappedByteBuffer buffer) {
+        try {
+            if (getVmVersion() < 9) {
+                Method method = buffer.getClass().getMethod("cleaner");
+                method.setAccessible(true);
+                Object cleaner = method.invoke(buffer);
+                if (cleaner != null)
+                    cleaner.getClass().getMethod("clean").invoke(cleaner);
+            } else {
+                Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+                Field field = unsafeClass.getDeclaredField("theUnsafe");
+                field.setAccessible(true);
+                unsafeClass.getMethod("invokeCleaner", ByteBuffer.class).invoke(field.get(null), buffer);
+            }
+            return true;
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            Log.debug("Could not unmap buffer, it will be released when garbage collected: {}", ex.toString());
+            return false;
+        }
+    }
+
     /**
      * A set that discards it's elements upon adding.
      * This class is used to prevent "Duplicate zip entry: "
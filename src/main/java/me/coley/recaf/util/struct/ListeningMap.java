@@ -1,23 +1,29 @@
 package me.coley.recaf.util.struct;
 
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 
 /**
- * Map implementation that allows registering listeners for map update calls.<br>
+ * Map implementation that allows registering listeners for map update calls.
+ * Listeners may be registered and called from multiple threads.<br>
  * See:<ul>
  * <li>{@link #getPutListeners()}</li>
  * <li>{@link #getRemoveListeners()}</li>
+ * <li>{@link #getUpdateListeners()}</li>
+ * <li>{@link #getResetListeners()}</li>
  * </ul>
  *
  * @param <K> Key type of map.
  * @param <V> Value type of map.
  */
 public class ListeningMap<K, V> implements Map<K, V> {
-	private final Set<BiConsumer<K, V>> putListeners = new HashSet<>();
-	private final Set<Consumer<Object>> removeListeners = new HashSet<>();
-	private Map<K, V> backing;
+	private final Set<BiConsumer<K, V>> putListeners = new CopyOnWriteArraySet<>();
+	private final Set<Consumer<Object>> removeListeners = new CopyOnWriteArraySet<>();
+	private final Set<BiConsumer<K, V>> updateListeners = new CopyOnWriteArraySet<>();
+	private final Set<Runnable> resetListeners = new CopyOnWriteArraySet<>();
+	private volatile Map<K, V> backing;
 
 	/**
 	 * @param backing
@@ -25,6 +31,14 @@ public class ListeningMap<K, V> implements Map<K, V> {
 	 */
 	public void setBacking(Map<K, V> backing) {
 		this.backing = backing;
+		resetListeners.forEach(Runnable::run);
+	}
+
+	/**
+	 * @return The map containing the actual data. May be {@code null}.
+	 */
+	public Map<K, V> getBacking() {
+		return backing;
 	}
 
 	/**
@@ -48,16 +62,40 @@ public class ListeningMap<K, V> implements Map<K, V> {
 		return removeListeners;
 	}
 
+	/**
+	 * @return Set of listeners that are fed the key and previous value of items after they are put or removed.
+	 * The previous value is {@code null} when the item did not exist before.
+	 * Unlike {@link #getPutListeners() put} and {@link #getRemoveListeners() remove} listeners,
+	 * these are called once the map reflects the change.
+	 */
+	public Set<BiConsumer<K, V>> getUpdateListeners() {
+		return updateListeners;
+	}
+
+	/**
+	 * @return Set of listeners that are called when the map content is replaced in bulk,
+	 * either by {@link #setBacking(Map) changing the backing map} or by {@link #clear() clearing it}.
+	 */
+	public Set<Runnable> getResetListeners() {
+		return resetListeners;
+	}
+
 	@Override
 	public V put(K key, V value) {
 		putListeners.forEach(listener -> listener.accept(key, value));
-		return backing.put(key, value);
+		V old = backing.put(key, value);
+		updateListeners.forEach(listener -> listener.accept(key, old));
+		return old;
 	}
 
 	@Override
+	@SuppressWarnings("unchecked")
 	public V remove(Object key) {
 		removeListeners.forEach(listener -> listener.accept(key));
-		return backing.remove(key);
+		V old = backing.remove(key);
+		if (old != null)
+			updateListeners.forEach(listener -> listener.accept((K) key, old));
+		return old;
 	}
 
 	@Override
@@ -94,6 +132,7 @@ public class ListeningMap<K, V> implements Map<K, V> {
 	@Override
 	public void clear() {
 		backing.clear();
+		resetListeners.forEach(Runnable::run);
 	}
 
 	@Override
@@ -1,7 +1,11 @@
 package me.coley.recaf.workspace;
 
+import me.coley.recaf.util.MappedZipFile;
+
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Importable archive base.
@@ -9,6 +13,8 @@ import java.nio.file.Path;
  * @author Matt
  */
 public abstract class ArchiveResource extends FileSystemResource {
+	private boolean parallelLoading;
+
 	/**
 	 * Constructs an archive file resource.
 	 *
@@ -23,4 +29,51 @@ public abstract class ArchiveResource extends FileSystemResource {
 	public ArchiveResource(ResourceKind kind, Path path) throws IOException {
 		super(kind, path);
 	}
+
+	/**
+	 * @return {@code true} if entries are read and validated on multiple threads.
+	 */
+	public boolean isParallelLoading() {
+		return parallelLoading;
+	}
+
+	/**
+	 * @param parallelLoading
+	 * 		{@code true} to read and validate entries on multiple threads.
+	 * 		See {@link EntryLoader#onClasses}.
+	 */
+	public void setParallelLoading(boolean parallelLoading) {
+		this.parallelLoading = parallelLoading;
+	}
+
+	/**
+	 * Find the archives nested in this one, such as the libraries of a web application in {@code WEB-INF/lib/} or
+	 * those of a fat jar in {@code BOOT-INF/lib/}. Only the index of this archive is read.
+	 *
+	 * @return Resources of the nested archives, to be used as libraries.
+	 *
+	 * @throws IOException
+	 * 		When the archive could not be read.
+	 */
+	public List<NestedArchiveResource> getNestedArchives() throws IOException {
+		List<NestedArchiveResource> nested = new ArrayList<>();
+		try (MappedZipFile zf = openArchive()) {
+			for (MappedZipFile.Entry entry : zf.getEntries()) {
+				String name = entry.getName();
+				if (!entry.isDirectory() && name.toLowerCase().endsWith(".jar") && !shouldSkip(name))
+					nested.add(new NestedArchiveResource(this, name));
+			}
+		}
+		return nested;
+	}
+
+	/**
+	 * @return Reader of the archive.
+	 *
+	 * @throws IOException
+	 * 		When the archive could not be read.
+	 */
+	protected MappedZipFile openArchive() throws IOException {
+		return new MappedZipFile(getPath());
+	}
 }
@@ -0,0 +1,213 @@
+package me.coley.recaf.workspace;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.tree.ClassNode;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Size-bounded cache of parsed classes, keyed by the identity of the class bytecode array.
+ * <br>
+ * Updating a class in a resource puts a new array into the class map, so entries of outdated bytecode are never
+ * returned and simply age out of the cache. Cached values are shared and <b>must not be modified</b>.
+ *
+ * @author Matt
+ */
+public class ClassParseCache {
+	/**
+	 * Default maximum cache weight. Roughly the number of bytes held by the cache.
+	 */
+	public static final long DEFAULT_MAX_WEIGHT = 64L * 1024L * 1024L;
+	// Nodes take a lot more memory than the class file they are read from
+	private static final int NODE_WEIGHT_FACTOR = 4;
+	// Covers every combination of SKIP_CODE, SKIP_DEBUG, SKIP_FRAMES and EXPAND_FRAMES
+	private static final int FLAG_MASK = 0xF;
+	private final LinkedHashMap<Key, Parsed> cache = new LinkedHashMap<>(256, 0.75F, true);
+	private final long maxWeight;
+	private long weight;
+	private long hits;
+	private long misses;
+
+	/**
+	 * Create a cache with the {@link #DEFAULT_MAX_WEIGHT default weight}.
+	 */
+	public ClassParseCache() {
+		this(DEFAULT_MAX_WEIGHT);
+	}
+
+	/**
+	 * @param maxWeight
+	 * 		Maximum cache weight. Roughly the number of bytes held by the cache.
+	 */
+	public ClassParseCache(long maxWeight) {
+		this.maxWeight = maxWeight;
+	}
+
+	/**
+	 * @param code
+	 * 		Class bytecode.
+	 *
+	 * @return Shared reader of the class.
+	 */
+	public ClassReader getReader(byte[] code) {
+		Key key = new Key(code);
+		synchronized(this) {
+			Parsed parsed = cache.get(key);
+			if (parsed != null) {
+				hits++;
+				return parsed.reader;
+			}
+			misses++;
+		}
+		return read(key).reader;
+	}
+
+	/**
+	 * @param code
+	 * 		Class bytecode.
+	 * @param readFlags
+	 * 		{@link ClassReader} flags to apply when generating the node.
+	 *
+	 * @return Shared node of the class. <b>Must not be modified.</b>
+	 */
+	public ClassNode getNode(byte[] code, int readFlags) {
+		int slot = readFlags & FLAG_MASK;
+		Key key = new Key(code);
+		synchronized(this) {
+			Parsed parsed = cache.get(key);
+			if (parsed != null && parsed.nodes != null && parsed.nodes[slot] != null) {
+				hits++;
+				return parsed.nodes[slot];
+			}
+			misses++;
+		}
+		ClassNode node = new ClassNode();
+		read(key).reader.accept(node, readFlags);
+		synchronized(this) {
+			Parsed parsed = cache.get(key);
+			if (parsed == null) {
+				parsed = new Parsed(new ClassReader(code), code.length);
+				cache.put(key, parsed);
+				grow(code.length);
+			}
+			if (parsed.nodes == null)
+				parsed.nodes = new ClassNode[FLAG_MASK + 1];
+			if (parsed.nodes[slot] == null) {
+				parsed.nodes[slot] = node;
+				grow((long) code.length * NODE_WEIGHT_FACTOR);
+			}
+			return parsed.nodes[slot];
+		}
+	}
+
+	/**
+	 * @return Number of lookups served from the cache.
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * @return Number of lookups that required parsing the class.
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * @return Current cache weight.
+	 */
+	public synchronized long getWeight() {
+		return weight;
+	}
+
+	/**
+	 * @return Number of classes in the cache.
+	 */
+	public synchronized int size() {
+		return cache.size();
+	}
+
+	/**
+	 * Remove all cached values and reset the counters.
+	 */
+	public synchronized void clear() {
+		cache.clear();
+		weight = 0;
+		hits = 0;
+		misses = 0;
+	}
+
+	private Parsed read(Key key) {
+		synchronized(this) {
+			Parsed parsed = cache.get(key);
+			if (parsed != null)
+				return parsed;
+		}
+		// Parse outside of the lock, at worst a class is parsed twice
+		Parsed parsed = new Parsed(new ClassReader(key.code), key.code.length);
+		synchronized(this) {
+			Parsed existing = cache.get(key);
+			if (existing != null)
+				return existing;
+			cache.put(key, parsed);
+			grow(key.code.length);
+			return parsed;
+		}
+	}
+
+	private void grow(long amount) {
+		weight += amount;
+		// Evict least recently used classes, but always keep the most recent one
+		Iterator<Parsed> it = cache.values().iterator();
+		while (weight > maxWeight && cache.size() > 1) {
+			weight -= it.next().weight();
+			it.remove();
+		}
+	}
+
+	/**
+	 * Identity wrapper of class bytecode.
+	 */
+	private static final class Key {
+		private final byte[] code;
+
+		private Key(byte[] code) {
+			this.code = code;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof Key && ((Key) o).code == code;
+		}
+
+		@Override
+		public int hashCode() {
+			return System.identityHashCode(code);
+		}
+	}
+
+	/**
+	 * Parsed values of a single class.
+	 */
+	private static final class Parsed {
+		private final ClassReader reader;
+		private final long length;
+		private ClassNode[] nodes;
+
+		private Parsed(ClassReader reader, long length) {
+			this.reader = reader;
+			this.length = length;
+		}
+
+		private long weight() {
+			long total = length;
+			if (nodes != null)
+				for (ClassNode node : nodes)
+					if (node != null)
+						total += length * NODE_WEIGHT_FACTOR;
+			return total;
+		}
+	}
+}
@@ -46,6 +46,9 @@ public class DeferringResource extends JavaResource {
 
 	@Override
 	protected Map<String, byte[]> loadClasses() throws IOException {
+		// The backing resource is never marked as primary, so tell it if it should be read lazily
+		if (backing instanceof JarResource)
+			((JarResource) backing).setLazyLoading(!isPrimary());
 		return backing.loadClasses();
 	}
 
@@ -54,6 +57,18 @@ public class DeferringResource extends JavaResource {
 		return backing.loadFiles();
 	}
 
+	@Override
+	protected LoadedContent loadContent() throws IOException {
+		if (backing instanceof JarResource)
+			((JarResource) backing).setLazyLoading(!isPrimary());
+		return backing.loadContent();
+	}
+
+	@Override
+	protected Map<String, byte[]> copyMap(Map<String, byte[]> map) {
+		return backing.copyMap(map);
+	}
+
 	@Override
 	public List<String> getSkippedPrefixes() {
 		return backing.getSkippedPrefixes();
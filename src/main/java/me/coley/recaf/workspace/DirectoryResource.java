@@ -3,14 +3,16 @@ package me.coley.recaf.workspace;
 import me.coley.recaf.util.IOUtil;
 
 import java.io.ByteArrayOutputStream;
-import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Importable directory resource.
@@ -19,7 +21,10 @@ import java.util.stream.Collectors;
  */
 public class DirectoryResource extends ArchiveResource {
 	private static final String SEPARATOR = System.getProperty("file.separator");
-
+	private static final ThreadLocal<byte[]> READ_BUFFER = ThreadLocal.withInitial(() -> new byte[8192]);
+	private static final ThreadLocal<ByteArrayOutputStream> OUTPUT_BUFFER =
+			ThreadLocal.withInitial(ByteArrayOutputStream::new);
+	private DirectoryWatcher watcher;
 
 	/**
 	 * Constructs a directory resource.
@@ -36,26 +41,18 @@ public class DirectoryResource extends ArchiveResource {
 
 	@Override
 	protected Map<String, byte[]> loadClasses() throws IOException {
-		// iterate jar entries
-		ByteArrayOutputStream out = new ByteArrayOutputStream();
-		byte[] buffer = new byte[8192];
 		EntryLoader loader = getEntryLoader();
-		Path root = getPath();
-		List<Path> classFilePaths = Files.walk(root)
-				.filter(Files::isRegularFile)
-				.collect(Collectors.toList());
-		String absolutePath = IOUtil.toString(root);
-		for (Path path : classFilePaths) {
-			File file = path.toFile();
-			String relative = file.getAbsolutePath().substring(absolutePath.length() + 1)
-					.replace(SEPARATOR, "/");
-			if (shouldSkip(relative))
-				continue;
-			if(!loader.isFileValidClassName(relative))
-				continue;
-			out.reset();
-			byte[] in = IOUtil.toByteArray(new FileInputStream(file), out, buffer);
-			loader.onClass(relative, in);
+		Map<Path, String> names = walk();
+		List<Path> paths = new ArrayList<>();
+		names.forEach((path, relative) -> {
+			if (loader.isFileValidClassName(relative))
+				paths.add(path);
+		});
+		if (isParallelLoading()) {
+			loader.onClasses(paths, names::get, DirectoryResource::read);
+		} else {
+			for (Path path : paths)
+				loader.onClass(names.get(path), read(path));
 		}
 		loader.finishClasses();
 		return loader.getClasses();
@@ -63,31 +60,111 @@ public class DirectoryResource extends ArchiveResource {
 
 	@Override
 	protected Map<String, byte[]> loadFiles() throws IOException {
-		// iterate jar entries
-		ByteArrayOutputStream out = new ByteArrayOutputStream();
-		byte[] buffer = new byte[8192];
 		EntryLoader loader = getEntryLoader();
-		Path root = getPath();
-		List<Path> classFilePaths = Files.walk(root)
-				.filter(Files::isRegularFile)
-				.collect(Collectors.toList());
-		String absolutePath = IOUtil.toString(root);
-		for (Path path : classFilePaths) {
-			File file = path.toFile();
-			String relative = file.getAbsolutePath().substring(absolutePath.length() + 1)
-					.replace(SEPARATOR, "/");
-			if (shouldSkip(relative))
-				continue;
-			if(loader.isFileValidClassName(relative))
-				continue;
-			out.reset();
-			byte[] in = IOUtil.toByteArray(new FileInputStream(file), out, buffer);
-			loader.onFile(relative, in);
+		for (Map.Entry<Path, String> e : walk().entrySet()) {
+			String relative = e.getValue();
+			if (!loader.isFileValidClassName(relative))
+				loader.onFile(relative, read(e.getKey()));
 		}
 		loader.finishFiles();
 		return loader.getFiles();
 	}
 
+	@Override
+	protected LoadedContent loadContent() throws IOException {
+		// Single walk of the directory
+		EntryLoader loader = getEntryLoader();
+		Map<Path, String> names = walk();
+		loader.onEntries(new ArrayList<>(names.keySet()), names::get,
+				path -> loader.isFileValidClassName(names.get(path)) ? read(path) : null,
+				path -> loader.isFileValidClassName(names.get(path)) ? null : read(path), isParallelLoading());
+		return new LoadedContent(loader.getClasses(), loader.getFiles());
+	}
+
+	/**
+	 * @return Map of regular files in the directory to their names relative to the directory.
+	 * Skipped names are not included.
+	 *
+	 * @throws IOException
+	 * 		When the directory could not be walked.
+	 */
+	private Map<Path, String> walk() throws IOException {
+		Map<Path, String> names = new LinkedHashMap<>();
+		try (Stream<Path> stream = Files.walk(getPath())) {
+			stream.filter(Files::isRegularFile).forEach(path -> {
+				String relative = getRelativeName(path);
+				if (!shouldSkip(relative))
+					names.put(path, relative);
+			});
+		}
+		return names;
+	}
+
+	/**
+	 * @param path
+	 * 		Path in the directory.
+	 *
+	 * @return Name of the path relative to the directory, using {@code /} as the separator.
+	 */
+	String getRelativeName(Path path) {
+		String absolutePath = IOUtil.toString(getPath());
+		return path.toFile().getAbsolutePath().substring(absolutePath.length() + 1)
+				.replace(SEPARATOR, "/");
+	}
+
+	/**
+	 * @param path
+	 * 		File to read.
+	 *
+	 * @return Content of the file.
+	 *
+	 * @throws IOException
+	 * 		When the file could not be read.
+	 */
+	static byte[] read(Path path) throws IOException {
+		// Buffers are pooled per thread, so parallel reads do not allocate new buffers for each file
+		ByteArrayOutputStream out = OUTPUT_BUFFER.get();
+		out.reset();
+		try (InputStream in = new FileInputStream(path.toFile())) {
+			return IOUtil.toByteArray(in, out, READ_BUFFER.get());
+		}
+	}
+
+	/**
+	 * @return {@code true} when changes to the directory are applied to the loaded classes and files.
+	 */
+	public boolean isWatching() {
+		return watcher != null;
+	}
+
+	/**
+	 * Watch the directory for changes. Changed files are re-read and re-validated, and then put into or removed from
+	 * the {@link #getClasses() classes} and {@link #getFiles() files} maps, notifying their listeners as usual.
+	 * Changes are applied from a background thread, so watching makes the resource {@link #setConcurrent(boolean)
+	 * concurrent}, including content that is already loaded.
+	 *
+	 * @param watching
+	 * 		{@code true} to watch the directory for changes.
+	 *
+	 * @throws IOException
+	 * 		When the directory could not be watched.
+	 */
+	public synchronized void setWatching(boolean watching) throws IOException {
+		if (watching == isWatching())
+			return;
+		if (watching) {
+			// The watcher updates the maps from its own thread
+			makeConcurrent();
+			// Make sure the content is loaded, otherwise there is nothing to update
+			getClasses();
+			getFiles();
+			watcher = new DirectoryWatcher(this);
+		} else {
+			watcher.close();
+			watcher = null;
+		}
+	}
+
 	@Override
 	protected void verify() throws IOException {
 		if(!Files.isDirectory(getPath()))
@@ -0,0 +1,215 @@
+package me.coley.recaf.workspace;
+
+import me.coley.recaf.util.ClassHeader;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+import static me.coley.recaf.util.Log.*;
+
+/**
+ * Applies changes made to the files of a {@link DirectoryResource} to its loaded classes and files.
+ * Only the changed files are read again.
+ *
+ * @author Matt
+ */
+class DirectoryWatcher implements Closeable {
+	// Time to wait for more changes before applying them, since compilers and editors write in bursts
+	private static final long SETTLE_TIME = 50;
+	private final Map<WatchKey, Path> keys = new HashMap<>();
+	// Relative paths of class files to the names of the classes they hold, which do not have to match
+	private final Map<String, String> classNames = new HashMap<>();
+	private final DirectoryResource resource;
+	private final WatchService service;
+
+	/**
+	 * @param resource
+	 * 		Resource to watch.
+	 *
+	 * @throws IOException
+	 * 		When the directory could not be watched.
+	 */
+	DirectoryWatcher(DirectoryResource resource) throws IOException {
+		this.resource = resource;
+		this.classNames.putAll(resource.getEntryLoader().getClassEntryNames());
+		this.service = resource.getPath().getFileSystem().newWatchService();
+		try {
+			register(resource.getPath());
+		} catch(IOException ex) {
+			service.close();
+			throw ex;
+		}
+		Thread thread = new Thread(this::run, "Recaf Directory Watcher - " + resource.getPath().getFileName());
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	@Override
+	public void close() throws IOException {
+		service.close();
+	}
+
+	private void run() {
+		try {
+			while (true) {
+				WatchKey key = service.take();
+				Set<Path> changed = new LinkedHashSet<>();
+				boolean overflow = false;
+				do {
+					overflow |= collect(key, changed);
+					key = service.poll(SETTLE_TIME, TimeUnit.MILLISECONDS);
+				} while (key != null);
+				if (overflow) {
+					warn("Too many changes in '{}' to track, re-reading the whole directory", resource.getPath());
+					changed.addAll(getOutdated());
+				}
+				for (Path path : changed) {
+					try {
+						update(path);
+					} catch(IOException | RuntimeException ex) {
+						error(ex, "Failed to update '{}' from directory", path);
+					}
+				}
+			}
+		} catch(InterruptedException | ClosedWatchServiceException ex) {
+			// Watching stopped
+		}
+	}
+
+	/**
+	 * @param key
+	 * 		Key of a directory with changes.
+	 * @param changed
+	 * 		Set to add changed paths to.
+	 *
+	 * @return {@code true} when events were lost.
+	 */
+	private boolean collect(WatchKey key, Set<Path> changed) {
+		Path dir = keys.get(key);
+		boolean overflow = false;
+		for (WatchEvent<?> event : key.pollEvents()) {
+			if (event.kind() == OVERFLOW || dir == null) {
+				overflow = true;
+				continue;
+			}
+			Path path = dir.resolve((Path) event.context());
+			changed.add(path);
+			// Files in new directories may be written before the directory is registered, so they are added now
+			if (event.kind() == ENTRY_CREATE && Files.isDirectory(path)) {
+				try {
+					register(path);
+					try (Stream<Path> stream = Files.walk(path)) {
+						stream.filter(Files::isRegularFile).forEach(changed::add);
+					}
+				} catch(IOException ex) {
+					error(ex, "Failed to watch new directory '{}'", path);
+				}
+			}
+		}
+		// Directory no longer exists
+		if (!key.reset())
+			keys.remove(key);
+		return overflow;
+	}
+
+	/**
+	 * @param path
+	 * 		File or directory that changed.
+	 *
+	 * @throws IOException
+	 * 		When the file could not be read.
+	 */
+	private void update(Path path) throws IOException {
+		String relative = resource.getRelativeName(path);
+		if (resource.shouldSkip(relative) || Files.isDirectory(path))
+			return;
+		if (!Files.isRegularFile(path)) {
+			remove(relative);
+			return;
+		}
+		EntryLoader loader = resource.getEntryLoader();
+		byte[] value = DirectoryResource.read(path);
+		if (loader.isFileValidClassName(relative)) {
+			EntryLoader.InspectedClass inspected = loader.inspectClass(relative, value);
+			loader.interceptClass(inspected);
+			ClassHeader header = inspected.getInterceptedHeader();
+			if (header != null) {
+				String name = header.getName();
+				String oldName = classNames.put(relative, name);
+				if (oldName != null && !oldName.equals(name))
+					resource.getClasses().remove(oldName);
+				putIfChanged(resource.getClasses(), name, inspected.getInterceptedValue());
+				return;
+			}
+			warn("Invalid class \"{}\" - Cannot be parsed with ASM reader\nAdding as a file instead.", relative);
+			// The file may have held a valid class before, which is replaced by the file
+			String oldName = classNames.remove(relative);
+			if (oldName != null)
+				resource.getClasses().remove(oldName);
+			if (inspected.isIntercepted())
+				value = inspected.getInterceptedValue();
+		}
+		putIfChanged(resource.getFiles(), relative, loader.interceptFile(relative, value));
+	}
+
+	/**
+	 * @param relative
+	 * 		Name of a removed file or directory.
+	 */
+	private void remove(String relative) {
+		String name = classNames.remove(relative);
+		if (name != null)
+			resource.getClasses().remove(name);
+		resource.getFiles().remove(relative);
+		// A removed directory removes everything in it
+		String prefix = relative + "/";
+		for (Iterator<Map.Entry<String, String>> it = classNames.entrySet().iterator(); it.hasNext(); ) {
+			Map.Entry<String, String> entry = it.next();
+			if (entry.getKey().startsWith(prefix)) {
+				resource.getClasses().remove(entry.getValue());
+				it.remove();
+			}
+		}
+		new ArrayList<>(resource.getFiles().keySet()).stream()
+				.filter(n -> n.startsWith(prefix))
+				.forEach(resource.getFiles()::remove);
+	}
+
+	/**
+	 * @return All files in the directory, and the locations of loaded items that no longer exist.
+	 */
+	private Set<Path> getOutdated() {
+		Set<Path> paths = new LinkedHashSet<>();
+		Path root = resource.getPath();
+		try (Stream<Path> stream = Files.walk(root)) {
+			stream.filter(Files::isRegularFile).forEach(paths::add);
+		} catch(IOException ex) {
+			error(ex, "Failed to walk directory '{}'", root);
+		}
+		// Classes are located by the file they were read from, since their names do not have to match
+		for (String path : classNames.keySet())
+			paths.add(root.resolve(path));
+		for (String name : resource.getFiles().keySet())
+			paths.add(root.resolve(name));
+		return paths;
+	}
+
+	private void register(Path root) throws IOException {
+		try (Stream<Path> stream = Files.walk(root)) {
+			for (Iterator<Path> it = stream.filter(Files::isDirectory).iterator(); it.hasNext(); ) {
+				Path dir = it.next();
+				keys.put(dir.register(service, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE), dir);
+			}
+		}
+	}
+
+	private static void putIfChanged(Map<String, byte[]> map, String name, byte[] value) {
+		if (!Arrays.equals(map.get(name), value))
+			map.put(name, value);
+	}
+}
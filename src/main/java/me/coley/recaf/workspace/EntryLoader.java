@@ -4,18 +4,24 @@ import me.coley.cafedude.InvalidClassException;
 import me.coley.cafedude.io.ClassFileReader;
 import me.coley.recaf.plugin.PluginsManager;
 import me.coley.recaf.plugin.api.LoadInterceptorPlugin;
+import me.coley.recaf.util.ClassHeader;
 import me.coley.recaf.util.ClassUtil;
 import me.coley.recaf.util.IOUtil;
 import me.coley.recaf.util.IllegalBytecodePatcherUtil;
 import me.coley.recaf.util.Log;
-import org.objectweb.asm.ClassReader;
+import me.coley.recaf.util.ThreadUtil;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 import java.util.zip.ZipEntry;
 
 import static me.coley.recaf.util.Log.*;
@@ -30,6 +36,7 @@ public class EntryLoader {
 	private final Map<String, byte[]> files = new HashMap<>();
 	private final Map<String, byte[]> invalidClasses = new HashMap<>();
 	private final Map<String, byte[]> invalidJunkClasses = new HashMap<>();
+	private final Map<String, String> classEntryNames = new HashMap<>();
 
 	/**
 	 * @return New archive entry loader instance.
@@ -56,18 +63,31 @@ public class EntryLoader {
 	 * @return Addition was a success.
 	 */
 	public boolean onClass(String entryName, byte[] value) {
-		// Check if class is valid. If it is not it will be stored for later.
-		if (!ClassUtil.isValidClass(value)) {
-			try {
+		return onClass(inspectClass(entryName, value));
+	}
+
+	/**
+	 * Load a class that has already been {@link #inspectClass(String, byte[]) inspected}.
+	 * This is the ordered "merge" step of loading, it must be called from a single thread at a time.
+	 *
+	 * @param inspected
+	 * 		Inspected class entry.
+	 *
+	 * @return Addition was a success.
+	 */
+	public boolean onClass(InspectedClass inspected) {
+		String entryName = inspected.getEntryName();
+		byte[] value = inspected.getValue();
+		switch(inspected.getState()) {
+			case INVALID:
 				// If the data can be read, overwrite whatever entry we have previously seen
-				new ClassFileReader().read(value);
 				invalidClasses.put(entryName, value);
 				if (invalidJunkClasses.remove(entryName) != null) {
 					debug("Replacing class '{}' previously associated with non-class junk with" +
 							" newly discovered class data", entryName);
 				}
 				return false;
-			} catch (InvalidClassException e) {
+			case JUNK:
 				// Skip if we think this is junk data that is masking an invalid class we already recovered
 				if (invalidClasses.containsKey(entryName)) {
 					debug("Skipping masking junk data for class '{}'", entryName);
@@ -83,52 +103,285 @@ public class EntryLoader {
 				}
 				invalidJunkClasses.put(entryName, value);
 				return false;
-			}
-		}
-		// Check if we've already seen this class
-		String clsName = new ClassReader(value).getClassName();
-		if (classes.containsKey(clsName)) {
-			debug("Skipping duplicate class '{}'", clsName);
-			return false;
+			case VALID:
+			default:
+				// Check if we've already seen this class
+				String clsName = inspected.getName();
+				if (classes.containsKey(clsName)) {
+					debug("Skipping duplicate class '{}'", clsName);
+					return false;
+				}
+				// Load the class
+				return handleAddClass(inspected);
 		}
-		// Load the class
-		handleAddClass(entryName, value);
-		return true;
 	}
 
 	/**
-	 * Add the class to the loaded classes map.
+	 * Checks if the class is valid, and if not, if it can be recovered later.
+	 * This does not modify the state of the loader and is safe to call from multiple threads.
 	 *
 	 * @param entryName
 	 * 		Class's archive entry name.
 	 * @param value
 	 * 		Class's bytecode.
 	 *
-	 * @return Addition was a success.
+	 * @return Inspected class entry, to be passed to {@link #onClass(InspectedClass)}.
+	 */
+	public InspectedClass inspectClass(String entryName, byte[] value) {
+		// Check if class is valid. If it is not it will be stored for later.
+		ClassHeader header = ClassUtil.readValidHeader(value);
+		if (header == null) {
+			try {
+				new ClassFileReader().read(value);
+				return new InspectedClass(entryName, value, ClassState.INVALID, null);
+			} catch (InvalidClassException e) {
+				return new InspectedClass(entryName, value, ClassState.JUNK, null);
+			}
+		}
+		return new InspectedClass(entryName, value, ClassState.VALID, header);
+	}
+
+	/**
+	 * Passes a valid class through the registered {@link LoadInterceptorPlugin}s.
+	 * This does not modify the state of the loader and is safe to call from multiple threads.
+	 *
+	 * @param inspected
+	 * 		Inspected class entry to update with the intercepted bytecode.
 	 */
-	private boolean handleAddClass(String entryName, byte[] value) {
-		String name = new ClassReader(value).getClassName();
+	public void interceptClass(InspectedClass inspected) {
+		if (inspected.getState() != ClassState.VALID || inspected.isIntercepted())
+			return;
+		String entryName = inspected.getEntryName();
+		ClassHeader header = inspected.getHeader();
+		byte[] value = inspected.getValue();
 		for(LoadInterceptorPlugin interceptor :
 				PluginsManager.getInstance().ofType(LoadInterceptorPlugin.class)) {
 			// Intercept class
+			byte[] original = value;
 			try {
-				value = interceptor.interceptClass(name, value);
+				value = interceptor.interceptClass(header.getName(), value);
 			} catch(Throwable t) {
-				Log.error(t, "Plugin '{}' threw exception when reading the class '{}'", interceptor.getName(), name);
+				Log.error(t, "Plugin '{}' threw exception when reading the class '{}'",
+						interceptor.getName(), header.getName());
 			}
+			// Unchanged, no need to validate again
+			if (value == original)
+				continue;
 			// Make sure the class interception doesn't break the class
-			if (!ClassUtil.isValidClass(value)) {
-				warn("Invalid class '{}' due to modifications by plugin '{}'\nAdding as a file instead.", entryName);
-				onFile(entryName, value);
-				return false;
+			header = ClassUtil.readValidHeader(value);
+			if (header == null) {
+				warn("Invalid class '{}' due to modifications by plugin '{}'\nAdding as a file instead.",
+						entryName, interceptor.getName());
+				inspected.setIntercepted(null, value);
+				return;
 			}
-			// Update name
-			name = new ClassReader(value).getClassName();
 		}
-		classes.put(name, value);
+		inspected.setIntercepted(header, value);
+	}
+
+	/**
+	 * Add the class to the loaded classes map.
+	 *
+	 * @param entryName
+	 * 		Class's archive entry name.
+	 * @param value
+	 * 		Class's bytecode.
+	 * @param header
+	 * 		Header of the class.
+	 *
+	 * @return Addition was a success.
+	 */
+	private boolean handleAddClass(String entryName, byte[] value, ClassHeader header) {
+		return handleAddClass(new InspectedClass(entryName, value, ClassState.VALID, header));
+	}
+
+	/**
+	 * Add the class to the loaded classes map.
+	 *
+	 * @param inspected
+	 * 		Inspected class entry.
+	 *
+	 * @return Addition was a success.
+	 */
+	private boolean handleAddClass(InspectedClass inspected) {
+		interceptClass(inspected);
+		// Plugins broke the class, so it gets added as a file
+		if (inspected.getInterceptedHeader() == null) {
+			onFile(inspected.getEntryName(), inspected.getInterceptedValue());
+			return false;
+		}
+		String name = inspected.getInterceptedHeader().getName();
+		classes.put(name, inspected.getInterceptedValue());
+		classEntryNames.put(inspected.getEntryName(), name);
 		return true;
 	}
 
+	/**
+	 * Load classes using multiple threads. Reading entries, validating the content,
+	 * and {@link LoadInterceptorPlugin plugin interception} is split across the
+	 * {@link ThreadUtil#forkJoinPool() shared fork-join pool}. The results are then
+	 * {@link #onClass(InspectedClass) merged} one at a time in the order of the given entries.
+	 * This way the duplicate and junk class handling is the same as loading the entries sequentially.
+	 * <br>
+	 * If this loader does not {@link #supportsParallelLoading() support parallel loading}
+	 * the entries are fed to {@link #onClass(String, byte[])} sequentially instead.
+	 *
+	 * @param entries
+	 * 		Entries to load, in the order they appear in the resource.
+	 * @param nameLookup
+	 * 		Function to get the name of an entry.
+	 * @param reader
+	 * 		Function to read the content of an entry. Must be safe to call from multiple threads.
+	 * @param <T>
+	 * 		Entry type.
+	 *
+	 * @throws IOException
+	 * 		When an entry could not be read.
+	 */
+	public <T> void onClasses(List<T> entries, Function<T, String> nameLookup, EntryReader<T> reader)
+			throws IOException {
+		if (!supportsParallelLoading()) {
+			for (T entry : entries) {
+				byte[] value = reader.read(entry);
+				if (value != null)
+					onClass(nameLookup.apply(entry), value);
+			}
+			return;
+		}
+		try {
+			ThreadUtil.forkJoinPool().submit(() -> entries.parallelStream()
+					.map(entry -> {
+						try {
+							byte[] value = reader.read(entry);
+							if (value == null)
+								return null;
+							InspectedClass inspected = inspectClass(nameLookup.apply(entry), value);
+							interceptClass(inspected);
+							return inspected;
+						} catch(IOException ex) {
+							throw new UncheckedIOException(ex);
+						}
+					})
+					.forEachOrdered(inspected -> {
+						if (inspected != null)
+							onClass(inspected);
+					})).get();
+		} catch(InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while loading classes", ex);
+		} catch(ExecutionException ex) {
+			Throwable cause = ex.getCause();
+			if (cause instanceof UncheckedIOException)
+				throw ((UncheckedIOException) cause).getCause();
+			throw new IOException("Failed to load classes", cause);
+		}
+	}
+
+	/**
+	 * Load the classes and files of a resource in a single pass over its entries.
+	 * Each entry is offered to both the class and the file reader, either of which may skip it.
+	 * Classes are loaded and {@link #finishClasses() finished} before files are added,
+	 * matching the order of loading classes and files separately.
+	 *
+	 * @param entries
+	 * 		Entries to load, in the order they appear in the resource.
+	 * @param nameLookup
+	 * 		Function to get the name of an entry.
+	 * @param classReader
+	 * 		Function to read the content of a class entry. Must be safe to call from multiple threads
+	 * 		when loading in parallel.
+	 * @param fileReader
+	 * 		Function to read the content of a file entry.
+	 * @param parallel
+	 * 		{@code true} to load classes on multiple threads, see {@link #onClasses(List, Function, EntryReader)}.
+	 * @param <T>
+	 * 		Entry type.
+	 *
+	 * @throws IOException
+	 * 		When an entry could not be read.
+	 */
+	public <T> void onEntries(List<T> entries, Function<T, String> nameLookup, EntryReader<T> classReader,
+							  EntryReader<T> fileReader, boolean parallel) throws IOException {
+		if (parallel) {
+			onClasses(entries, nameLookup, classReader);
+		} else {
+			for (T entry : entries) {
+				byte[] value = classReader.read(entry);
+				if (value != null)
+					onClass(nameLookup.apply(entry), value);
+			}
+		}
+		finishClasses();
+		if (parallel) {
+			// Only reading is done in parallel, files are still added in order
+			List<byte[]> values = readAll(entries, fileReader);
+			for (int i = 0; i < entries.size(); i++) {
+				byte[] value = values.get(i);
+				if (value != null)
+					onFile(nameLookup.apply(entries.get(i)), value);
+			}
+		} else {
+			for (T entry : entries) {
+				byte[] value = fileReader.read(entry);
+				if (value != null)
+					onFile(nameLookup.apply(entry), value);
+			}
+		}
+		finishFiles();
+	}
+
+	/**
+	 * @param entries
+	 * 		Entries to read.
+	 * @param reader
+	 * 		Function to read the content of an entry. Must be safe to call from multiple threads.
+	 * @param <T>
+	 * 		Entry type.
+	 *
+	 * @return Content of each entry, in the order of the given entries.
+	 *
+	 * @throws IOException
+	 * 		When an entry could not be read.
+	 */
+	private static <T> List<byte[]> readAll(List<T> entries, EntryReader<T> reader) throws IOException {
+		try {
+			return ThreadUtil.forkJoinPool().submit(() -> entries.parallelStream()
+					.map(entry -> {
+						try {
+							return reader.read(entry);
+						} catch(IOException ex) {
+							throw new UncheckedIOException(ex);
+						}
+					})
+					.collect(Collectors.toList())).get();
+		} catch(InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while reading files", ex);
+		} catch(ExecutionException ex) {
+			Throwable cause = ex.getCause();
+			if (cause instanceof UncheckedIOException)
+				throw ((UncheckedIOException) cause).getCause();
+			throw new IOException("Failed to read files", cause);
+		}
+	}
+
+	/**
+	 * Parallel loading splits {@link #onClass(String, byte[])} into {@link #inspectClass(String, byte[])},
+	 * {@link #interceptClass(InspectedClass)} and {@link #onClass(InspectedClass)}.
+	 * Loaders that only override {@link #onClass(String, byte[])} would be skipped over,
+	 * so they are fed sequentially unless they override this method.
+	 *
+	 * @return {@code true} when the stages of loading a class can be run on multiple threads.
+	 */
+	public boolean supportsParallelLoading() {
+		try {
+			return getClass().getMethod("onClass", String.class, byte[].class)
+					.getDeclaringClass() == EntryLoader.class;
+		} catch(NoSuchMethodException ex) {
+			return false;
+		}
+	}
+
 	/**
 	 * Load a file.
 	 *
@@ -140,11 +393,26 @@ public class EntryLoader {
 	 * @return Addition was a success.
 	 */
 	public boolean onFile(String entryName, byte[] value) {
+		files.put(entryName, interceptFile(entryName, value));
+		return true;
+	}
+
+	/**
+	 * Passes a file through the registered {@link LoadInterceptorPlugin}s.
+	 * This does not modify the state of the loader and is safe to call from multiple threads.
+	 *
+	 * @param entryName
+	 * 		File's archive entry name.
+	 * @param value
+	 * 		File's raw value.
+	 *
+	 * @return Intercepted value.
+	 */
+	public byte[] interceptFile(String entryName, byte[] value) {
 		for (LoadInterceptorPlugin interceptor : PluginsManager.getInstance().ofType(LoadInterceptorPlugin.class)) {
 			value = interceptor.interceptFile(entryName, value);
 		}
-		files.put(entryName, value);
-		return true;
+		return value;
 	}
 
 	/**
@@ -217,10 +485,12 @@ public class EntryLoader {
 			try {
 				// Attempt to patch invalid classes.
 				// If the internal measure fails, allow plugins to patch invalid classes
-				if (!ClassUtil.isValidClass(value)) {
+				ClassHeader header = ClassUtil.readValidHeader(value);
+				if (header == null) {
 					debug("Attempting to patch invalid class '{}'", entryName);
 					byte[] patched = IllegalBytecodePatcherUtil.fix(classes, invalidClasses, value);
-					if (ClassUtil.isValidClass(patched)) {
+					header = ClassUtil.readValidHeader(patched);
+					if (header != null) {
 						value = patched;
 					} else if (!interceptors.isEmpty()) {
 						for (LoadInterceptorPlugin interceptor : interceptors) {
@@ -231,12 +501,13 @@ public class EntryLoader {
 										interceptor.getName(), entryName);
 							}
 						}
+						header = ClassUtil.readValidHeader(value);
 					}
 				}
 				// Check if class is valid
-				if (ClassUtil.isValidClass(value)) {
+				if (header != null) {
 					debug("Illegal class patching success!");
-					handleAddClass(entryName, value);
+					handleAddClass(entryName, value, header);
 				} else {
 					warn("Invalid class \"{}\" - Cannot be parsed with ASM reader\n" +
 							"Adding as a file instead.", entryName);
@@ -272,10 +543,142 @@ public class EntryLoader {
 		return files;
 	}
 
+	/**
+	 * @return Map of entry names to the names of the classes loaded from them.
+	 * The name of a class does not have to match the name of its entry.
+	 */
+	public Map<String, String> getClassEntryNames() {
+		return classEntryNames;
+	}
+
 	/**
 	 * @return Set of classes that failed to load.
 	 */
 	public Set<String> getInvalidClasses() {
 		return invalidClasses.keySet();
 	}
+
+	/**
+	 * Reads the content of an entry.
+	 *
+	 * @param <T>
+	 * 		Entry type.
+	 */
+	@FunctionalInterface
+	public interface EntryReader<T> {
+		/**
+		 * @param entry
+		 * 		Entry to read.
+		 *
+		 * @return Content of the entry, or {@code null} if the entry should be skipped.
+		 *
+		 * @throws IOException
+		 * 		When the entry could not be read.
+		 */
+		byte[] read(T entry) throws IOException;
+	}
+
+	/**
+	 * Result of {@link #inspectClass(String, byte[]) inspecting} a class entry.
+	 */
+	public enum ClassState {
+		/**
+		 * Class can be parsed by ASM.
+		 */
+		VALID,
+		/**
+		 * Class cannot be parsed by ASM, but can be read by the backup reader.
+		 * Will be patched in {@link #finishClasses()}.
+		 */
+		INVALID,
+		/**
+		 * Class cannot be read at all.
+		 */
+		JUNK
+	}
+
+	/**
+	 * Class entry that has been inspected, but not yet added to the loader.
+	 */
+	public static class InspectedClass {
+		private final String entryName;
+		private final byte[] value;
+		private final ClassState state;
+		private final ClassHeader header;
+		private ClassHeader interceptedHeader;
+		private byte[] interceptedValue;
+		private boolean intercepted;
+
+		private InspectedClass(String entryName, byte[] value, ClassState state, ClassHeader header) {
+			this.entryName = entryName;
+			this.value = value;
+			this.state = state;
+			this.header = header;
+		}
+
+		private void setIntercepted(ClassHeader interceptedHeader, byte[] interceptedValue) {
+			this.interceptedHeader = interceptedHeader;
+			this.interceptedValue = interceptedValue;
+			this.intercepted = true;
+		}
+
+		/**
+		 * @return Class's archive entry name.
+		 */
+		public String getEntryName() {
+			return entryName;
+		}
+
+		/**
+		 * @return Class's bytecode, as read from the archive.
+		 */
+		public byte[] getValue() {
+			return value;
+		}
+
+		/**
+		 * @return Validity of the class.
+		 */
+		public ClassState getState() {
+			return state;
+		}
+
+		/**
+		 * @return Header of the class, as read from the archive.
+		 * {@code null} when the class is not {@link ClassState#VALID valid}.
+		 */
+		public ClassHeader getHeader() {
+			return header;
+		}
+
+		/**
+		 * @return Internal name of the class, as read from the archive.
+		 * {@code null} when the class is not {@link ClassState#VALID valid}.
+		 */
+		public String getName() {
+			return header == null ? null : header.getName();
+		}
+
+		/**
+		 * @return {@code true} when the class has been passed through the load interceptor plugins.
+		 */
+		public boolean isIntercepted() {
+			return intercepted;
+		}
+
+		/**
+		 * @return Header of the class after plugin interception.
+		 * {@code null} when the plugins made the class invalid.
+		 */
+		public ClassHeader getInterceptedHeader() {
+			return interceptedHeader;
+		}
+
+		/**
+		 * @return Class's bytecode after plugin interception.
+		 */
+		public byte[] getInterceptedValue() {
+			return interceptedValue;
+		}
+	}
 }
@@ -3,26 +3,28 @@ package me.coley.recaf.workspace;
 import me.coley.recaf.util.struct.ListeningMap;
 
 import java.time.Instant;
-import java.util.Stack;
+import java.util.ArrayList;
+import java.util.EmptyStackException;
+import java.util.List;
+import java.util.function.Supplier;
 
 import static me.coley.recaf.util.Log.*;
 
 /**
- * History manager for files.
+ * History manager for files. Save states are pushed and popped atomically, so history is safe to update
+ * from multiple threads.
+ * <br>
+ * Only the initial and the most recent states are held in full. The initial state may be a reference to content that
+ * can be fetched again, such as an archive entry. Intermediate states are held as deltas against the next newer
+ * state, and are moved to disk by the {@link HistoryStore} when the total size of held deltas grows too large.
  *
  * @author Matt
  */
 public class History {
-	// TODO: For large inputs it would make sense to offload this to the file system.
-	//  - But only for large inputs. In-memory is much faster and should be the default.
 	/**
-	 * Stack of changed content.
+	 * Stack of save states, the initial state at the bottom.
 	 */
-	private final Stack<byte[]> stack = new Stack<>();
-	/**
-	 * Stack of when the content was changed.
-	 */
-	private final Stack<Instant> times = new Stack<>();
+	private final List<State> states = new ArrayList<>();
 	/**
 	 * File map to update when the history is rolled back.
 	 */
@@ -52,23 +54,31 @@ public class History {
 	/**
 	 * @return Size of history for the current file.
 	 */
-	public int size() {
-		return stack.size();
+	public synchronized int size() {
+		return states.size();
 	}
 
 	/**
 	 * @return {@code true} if the top of the stack is the initial state of the item.
 	 */
-	public boolean isAtInitial() {
+	public synchronized boolean isAtInitial() {
 		return atInitial;
 	}
 
 	/**
 	 * Wipe all items from the history.
 	 */
-	public void clear() {
-		stack.clear();
-		times.clear();
+	public synchronized void clear() {
+		for (State state : states)
+			state.release();
+		states.clear();
+	}
+
+	/**
+	 * @return Content of the initial state, or {@code null} if there are no states.
+	 */
+	synchronized byte[] getInitial() {
+		return states.isEmpty() ? null : states.get(0).content();
 	}
 
 	/**
@@ -76,15 +86,18 @@ public class History {
 	 *
 	 * @return Array of timestamps of each tracked change.
 	 */
-	public Instant[] getFileTimes() {
-		return times.toArray(new Instant[0]);
+	public synchronized Instant[] getFileTimes() {
+		Instant[] times = new Instant[states.size()];
+		for (int i = 0; i < times.length; i++)
+			times[i] = states.get(i).time;
+		return times;
 	}
 
 	/**
 	 * @return Instant of most recent change.
 	 */
-	public Instant getMostRecentUpdate() {
-		return times.peek();
+	public synchronized Instant getMostRecentUpdate() {
+		return top().time;
 	}
 
 	/**
@@ -92,23 +105,22 @@ public class History {
 	 *
 	 * @return Most recent version of the tracked file.
 	 */
-	public byte[] pop() {
-		Instant time = times.pop();
-		byte[] content = stack.pop();
-		if (content != null) {
-			map.put(name, content);
-			// If the size is now 0, we just pop'd the initial state.
-			// Since we ALWAYS want to keep the initial state we will push it back.
-			if (size() == 0) {
-				times.push(time);
-				stack.push(content);
-				atInitial = true;
-				info("Reverted '{}' - initial state", name);
-			} else {
-				info("Reverted '{}' - {} total", name, stack.size());
-			}
-		} else {
+	public synchronized byte[] pop() {
+		byte[] content = top().content();
+		if (content == null)
 			throw new IllegalStateException("No history to revert to!");
+		map.put(name, content);
+		// We ALWAYS want to keep the initial state, so it is never removed.
+		if (states.size() == 1) {
+			atInitial = true;
+			info("Reverted '{}' - initial state", name);
+		} else {
+			states.remove(states.size() - 1);
+			// The new top is held in full, rebuilt from the delta against the content that was just removed
+			State newTop = top();
+			if (states.size() > 1)
+				newTop.expand(content);
+			info("Reverted '{}' - {} total", name, states.size());
 		}
 		return content;
 	}
@@ -116,8 +128,8 @@ public class History {
 	/**
 	 * @return Most recent version of the tracked file.
 	 */
-	public byte[] peek() {
-		return stack.peek();
+	public synchronized byte[] peek() {
+		return top().content();
 	}
 
 	/**
@@ -127,13 +139,131 @@ public class History {
 	 * @param modified
 	 * 		Changed value.
 	 */
-	public void push(byte[] modified) {
-		stack.push(modified);
-		times.push(Instant.now());
+	public synchronized void push(byte[] modified) {
+		push(new State(modified));
+	}
+
+	/**
+	 * Pushes the initial state of the item, which is fetched on demand.
+	 * Used so that loading a resource does not require holding the initial content of every item in memory.
+	 *
+	 * @param initial
+	 * 		Supplier of the initial value. Must return the same content each time.
+	 */
+	synchronized void pushInitial(Supplier<byte[]> initial) {
+		if (states.isEmpty())
+			push(new State(initial));
+		else
+			push(initial.get());
+	}
+
+	private void push(State state) {
+		// The previous top is replaced by a delta, unless it is the initial state which is always held as-is
+		if (states.size() > 1 && top().compact(state.full))
+			spill();
+		states.add(state);
 		// Don't log the initial push
-		if(stack.size() > 1) {
-			info("Saved '{}' - {} total", name, stack.size());
+		if(states.size() > 1) {
+			info("Saved '{}' - {} total", name, states.size());
 			atInitial = false;
 		}
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Move the held deltas of this history to disk.
+	 */
+	private void spill() {
+		for (State state : states)
+			state.spill();
+	}
+
+	private State top() {
+		if (states.isEmpty())
+			throw new EmptyStackException();
+		return states.get(states.size() - 1);
+	}
+
+	/**
+	 * A single save state. Held in one of the following forms:
+	 * <ul>
+	 * <li>In full</li>
+	 * <li>As a supplier of the content <i>(initial state only)</i></li>
+	 * <li>As a delta against the next newer state, in memory or on disk</li>
+	 * </ul>
+	 */
+	private static class State {
+		private final Instant time = Instant.now();
+		private final Supplier<byte[]> source;
+		private byte[] full;
+		private byte[] delta;
+		private long offset = -1;
+		private int length;
+
+		private State(byte[] full) {
+			this.full = full;
+			this.source = null;
+		}
+
+		private State(Supplier<byte[]> source) {
+			this.source = source;
+		}
+
+		/**
+		 * @return Content of the state, if held in full or as a supplier.
+		 */
+		private byte[] content() {
+			return source != null ? source.get() : full;
+		}
+
+		/**
+		 * @param newer
+		 * 		Content of the next newer state.
+		 *
+		 * @return {@code true} when held deltas exceed the disk threshold.
+		 */
+		private boolean compact(byte[] newer) {
+			if (full == null || newer == null)
+				return false;
+			delta = HistoryStore.encode(full, newer);
+			full = null;
+			return HistoryStore.track(delta);
+		}
+
+		/**
+		 * @param newer
+		 * 		Content of the next newer state, which has been removed.
+		 */
+		private void expand(byte[] newer) {
+			if (delta != null) {
+				full = HistoryStore.decode(delta, newer);
+				release();
+			} else if (offset >= 0) {
+				full = HistoryStore.decode(HistoryStore.read(offset, length), newer);
+				release();
+			}
+		}
+
+		private void spill() {
+			if (delta == null)
+				return;
+			offset = HistoryStore.write(delta);
+			length = delta.length;
+			HistoryStore.untrack(delta);
+			delta = null;
+		}
+
+		/**
+		 * Drop the delta of this state, in memory or on disk.
+		 */
+		private void release() {
+			if (delta != null) {
+				HistoryStore.untrack(delta);
+				delta = null;
+			}
+			if (offset >= 0) {
+				HistoryStore.free(offset, length);
+				offset = -1;
+			}
+		}
+	}
+}
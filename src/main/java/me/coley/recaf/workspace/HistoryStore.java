@@ -0,0 +1,263 @@
+package me.coley.recaf.workspace;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Storage for older {@link History} save states.
+ * <br>
+ * States are stored as binary deltas against the next newer state. Once the total size of in-memory deltas exceeds
+ * the {@link #getSpillThreshold() spill threshold}, older deltas are moved into an append-only temporary file.
+ * The bytes of the file that are still referenced are tracked: space freed at the end of the file is reused,
+ * and the file is deleted once no history refers to it anymore.
+ *
+ * @author Matt
+ */
+final class HistoryStore {
+	private static final long DEFAULT_SPILL_THRESHOLD = 64L * 1024L * 1024L;
+	// Deltas with a smaller changed region are not worth compressing
+	private static final int MIN_DEFLATE_SIZE = 64;
+	private static final AtomicLong memory = new AtomicLong();
+	private static volatile long spillThreshold = DEFAULT_SPILL_THRESHOLD;
+	private static FileChannel spill;
+	private static long spillSize;
+	private static long spillLive;
+
+	private HistoryStore() {
+	}
+
+	/**
+	 * @return Total size of deltas held in memory before older deltas are moved to disk.
+	 */
+	static long getSpillThreshold() {
+		return spillThreshold;
+	}
+
+	/**
+	 * @param threshold
+	 * 		Total size of deltas held in memory before older deltas are moved to disk.
+	 */
+	static void setSpillThreshold(long threshold) {
+		spillThreshold = threshold;
+	}
+
+	/**
+	 * @param delta
+	 * 		Delta being held in memory.
+	 *
+	 * @return {@code true} when in-memory deltas exceed the spill threshold.
+	 */
+	static boolean track(byte[] delta) {
+		return memory.addAndGet(delta.length) > spillThreshold;
+	}
+
+	/**
+	 * @param delta
+	 * 		Delta no longer held in memory.
+	 */
+	static void untrack(byte[] delta) {
+		memory.addAndGet(-delta.length);
+	}
+
+	/**
+	 * @param data
+	 * 		Data to write.
+	 *
+	 * @return Offset of the data in the spill file.
+	 */
+	static synchronized long write(byte[] data) {
+		try {
+			if (spill == null) {
+				Path path = Files.createTempFile("recaf-history", ".bin");
+				path.toFile().deleteOnExit();
+				spill = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE,
+						StandardOpenOption.DELETE_ON_CLOSE);
+			}
+			long offset = spillSize;
+			ByteBuffer buffer = ByteBuffer.wrap(data);
+			while (buffer.hasRemaining())
+				spill.write(buffer, offset + buffer.position());
+			spillSize += data.length;
+			spillLive += data.length;
+			return offset;
+		} catch(IOException ex) {
+			throw new UncheckedIOException("Failed to write history to disk", ex);
+		}
+	}
+
+	/**
+	 * @param offset
+	 * 		Offset of the data in the spill file.
+	 * @param length
+	 * 		Length of the data.
+	 *
+	 * @return Data read from the spill file.
+	 */
+	static byte[] read(long offset, int length) {
+		FileChannel channel;
+		synchronized(HistoryStore.class) {
+			channel = spill;
+			if (channel == null || offset + length > spillSize)
+				throw new IllegalStateException("History data is not in the history file: " + offset);
+		}
+		byte[] data = new byte[length];
+		ByteBuffer buffer = ByteBuffer.wrap(data);
+		try {
+			while (buffer.hasRemaining())
+				if (channel.read(buffer, offset + buffer.position()) < 0)
+					throw new IOException("Unexpected end of history file");
+		} catch(IOException ex) {
+			throw new UncheckedIOException("Failed to read history from disk", ex);
+		}
+		return data;
+	}
+
+	/**
+	 * Release data that is no longer referenced.
+	 *
+	 * @param offset
+	 * 		Offset of the data in the spill file.
+	 * @param length
+	 * 		Length of the data.
+	 */
+	static synchronized void free(long offset, int length) {
+		if (spill == null)
+			return;
+		spillLive -= length;
+		try {
+			if (spillLive <= 0) {
+				// Nothing refers to the file anymore, closing it deletes it
+				spill.close();
+				spill = null;
+				spillSize = 0;
+				spillLive = 0;
+			} else if (offset + length == spillSize) {
+				// The most recently written data is freed first when reverting, so reuse its space
+				spillSize = offset;
+				spill.truncate(spillSize);
+			}
+		} catch(IOException ex) {
+			throw new UncheckedIOException("Failed to release history on disk", ex);
+		}
+	}
+
+	/**
+	 * @return Size of the spill file in bytes, {@code 0} when there is no spill file.
+	 */
+	static synchronized long getSpillSize() {
+		return spillSize;
+	}
+
+	/**
+	 * @param target
+	 * 		Content to encode.
+	 * @param base
+	 * 		Content the delta is relative to.
+	 *
+	 * @return Delta that recreates the target from the base.
+	 */
+	static byte[] encode(byte[] target, byte[] base) {
+		int max = Math.min(target.length, base.length);
+		int prefix = 0;
+		while (prefix < max && target[prefix] == base[prefix])
+			prefix++;
+		int suffix = 0;
+		while (suffix < max - prefix &&
+				target[target.length - 1 - suffix] == base[base.length - 1 - suffix])
+			suffix++;
+		int changed = target.length - prefix - suffix;
+		byte[] middle = Arrays.copyOfRange(target, prefix, prefix + changed);
+		boolean deflated = false;
+		if (changed >= MIN_DEFLATE_SIZE) {
+			byte[] compressed = deflate(middle);
+			if (compressed.length < middle.length) {
+				middle = compressed;
+				deflated = true;
+			}
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(17 + middle.length);
+		buffer.put((byte) (deflated ? 1 : 0));
+		buffer.putInt(target.length);
+		buffer.putInt(prefix);
+		buffer.putInt(suffix);
+		buffer.putInt(changed);
+		buffer.put(middle);
+		return buffer.array();
+	}
+
+	/**
+	 * @param delta
+	 * 		Delta from {@link #encode(byte[], byte[])}.
+	 * @param base
+	 * 		Content the delta is relative to.
+	 *
+	 * @return Recreated content.
+	 */
+	static byte[] decode(byte[] delta, byte[] base) {
+		ByteBuffer buffer = ByteBuffer.wrap(delta);
+		boolean deflated = buffer.get() != 0;
+		int length = buffer.getInt();
+		int prefix = buffer.getInt();
+		int suffix = buffer.getInt();
+		int changed = buffer.getInt();
+		byte[] target = new byte[length];
+		System.arraycopy(base, 0, target, 0, prefix);
+		System.arraycopy(base, base.length - suffix, target, length - suffix, suffix);
+		if (deflated) {
+			inflate(delta, buffer.position(), target, prefix, changed);
+		} else {
+			buffer.get(target, prefix, changed);
+		}
+		return target;
+	}
+
+	private static byte[] deflate(byte[] data) {
+		Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+		try {
+			deflater.setInput(data);
+			deflater.finish();
+			byte[] out = new byte[data.length + 64];
+			int len = 0;
+			while (!deflater.finished()) {
+				if (len == out.length)
+					out = Arrays.copyOf(out, out.length * 2);
+				len += deflater.deflate(out, len, out.length - len);
+			}
+			return Arrays.copyOf(out, len);
+		} finally {
+			deflater.end();
+		}
+	}
+
+	private static void inflate(byte[] data, int offset, byte[] out, int outOffset, int length) {
+		Inflater inflater = new Inflater(true);
+		try {
+			// The "nowrap" inflater may need an extra byte past the end of the data
+			byte[] input = Arrays.copyOfRange(data, offset, data.length + 1);
+			inflater.setInput(input);
+			int len = 0;
+			while (len < length) {
+				int n = inflater.inflate(out, outOffset + len, length - len);
+				if (n == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary()))
+					break;
+				len += n;
+			}
+			if (len != length)
+				throw new IllegalStateException("Corrupt history delta");
+		} catch(DataFormatException ex) {
+			throw new IllegalStateException("Corrupt history delta", ex);
+		} finally {
+			inflater.end();
+		}
+	}
+}
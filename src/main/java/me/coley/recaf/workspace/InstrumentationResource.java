@@ -9,6 +9,7 @@ import me.coley.recaf.plugin.api.StartupPlugin;
 import me.coley.recaf.util.ClasspathUtil;
 import me.coley.recaf.util.IOUtil;
 import me.coley.recaf.util.Log;
+import me.coley.recaf.util.struct.ListeningMap;
 import org.objectweb.asm.Type;
 import org.plugface.core.annotations.Plugin;
 
@@ -22,6 +23,7 @@ import java.lang.instrument.UnmodifiableClassException;
 import java.security.ProtectionDomain;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 
 /**
  * Importable instrumentation resource.
@@ -34,6 +36,11 @@ public class InstrumentationResource extends JavaResource {
 			"Instrumentation");
 	public static Instrumentation instrumentation;
 	private static InstrumentationResource instance;
+	private static volatile boolean lazyLoading;
+	private final Object fetchLock = new Object();
+	private volatile LoadedClassMap loadedClasses;
+	private volatile Class<?> fetching;
+	private byte[] fetched;
 
 	/**
 	 * Constructs an instrumentation resource.
@@ -78,6 +85,26 @@ public class InstrumentationResource extends JavaResource {
 		return controller.getWorkspace();
 	}
 
+	/**
+	 * @return {@code true} if only the names of classes loaded before attaching are listed,
+	 * and their bytecode is fetched when it is first accessed.
+	 */
+	public static boolean isLazyLoading() {
+		return lazyLoading;
+	}
+
+	/**
+	 * Must be set before the resource is {@link #setup(Controller) setup} to have an effect.
+	 *
+	 * @param lazyLoading
+	 * 		{@code true} to only list the names of classes loaded before attaching,
+	 * 		and fetch their bytecode when it is first accessed. This avoids retransforming every loaded class at once,
+	 * 		which pauses the VM, and avoids holding the bytecode of classes that are never looked at.
+	 */
+	public static void setLazyLoading(boolean lazyLoading) {
+		InstrumentationResource.lazyLoading = lazyLoading;
+	}
+
 	/**
 	 * Saves changed by retransforming classes.
 	 *
@@ -96,11 +123,13 @@ public class InstrumentationResource extends JavaResource {
 			return;
 		}
 		Log.info("Preparing to redefine {} classes", dirty.size());
+		// All definitions are applied in a single call, so the VM is only paused once
 		ClassDefinition[] definitions = new ClassDefinition[dirty.size()];
 		int i = 0;
 		for (String name : dirty) {
-			String clsName = name.replace('/', '.');
-			Class<?> cls = Class.forName(clsName, false, ClasspathUtil.scl);
+			Class<?> cls = getRuntimeClass(name);
+			if (cls == null)
+				cls = Class.forName(name.replace('/', '.'), false, ClasspathUtil.scl);
 			byte[] value = getClasses().get(name);
 			if (value == null)
 				throw new IllegalStateException("Failed to fetch code for class: " + name);
@@ -135,22 +164,16 @@ public class InstrumentationResource extends JavaResource {
 	}
 
 	private void loadRuntimeClasses(Map<String, byte[]> map) throws IOException {
+		if (lazyLoading) {
+			indexRuntimeClasses(getClasses());
+			return;
+		}
 		// iterate over loaded classes
-		ByteArrayOutputStream out = new ByteArrayOutputStream();
-		byte[] buffer = new byte[8192];
 		Class<?>[] klass = {null};
 		int failedTransformations = 0;
-		// Let's skipp all Recaf's classes.
 		for(Class<?> c : instrumentation.getAllLoadedClasses()) {
-			if (ClasspathUtil.isRecafClass(c)) {
-				continue;
-			}
-			String name = Type.getInternalName(c);
-			// skip specified prefixes
-			if(shouldSkip(name))
-				continue;
-			// Skip array types
-			if (name.contains("["))
+			String name = getRuntimeName(c);
+			if (name == null)
 				continue;
 			try {
 				klass[0] = c;
@@ -159,16 +182,10 @@ public class InstrumentationResource extends JavaResource {
 				if (++failedTransformations < 5) {
 					Log.error("Could not get live version of a class {}:", name, ex);
 				}
-				String path = name.concat(".class");
-				ClassLoader loader = c.getClassLoader();
-				try(InputStream in = (loader != null) ?
-						loader.getResourceAsStream(path) :
-						ClassLoader.getSystemResourceAsStream(path)) {
-					if(in != null) {
-						out.reset();
-						getClasses().put(name, IOUtil.toByteArray(in, out, buffer));
-						getDirtyClasses().remove(name);
-					}
+				byte[] code = readClassResource(c, name);
+				if (code != null) {
+					getClasses().put(name, code);
+					getDirtyClasses().remove(name);
 				}
 			}
 		}
@@ -177,6 +194,114 @@ public class InstrumentationResource extends JavaResource {
 		}
 	}
 
+	/**
+	 * List loaded classes without fetching their bytecode.
+	 *
+	 * @param map
+	 * 		Current class map, holding classes that were loaded since attaching.
+	 */
+	private void indexRuntimeClasses(ListeningMap<String, byte[]> map) {
+		LoadedClassMap runtime = new LoadedClassMap(this::fetchRuntimeClass, LoadedClassMap.DEFAULT_CACHE_SIZE);
+		for (Map.Entry<String, byte[]> e : map.entrySet())
+			runtime.put(e.getKey(), e.getValue());
+		for (Class<?> c : instrumentation.getAllLoadedClasses()) {
+			String name = getRuntimeName(c);
+			if (name != null)
+				runtime.index(name, c);
+		}
+		map.setBacking(runtime);
+		loadedClasses = runtime;
+		// Refer to the loaded classes for the initial save state, rather than fetching every class
+		for (String name : runtime.keySet()) {
+			Supplier<byte[]> original = runtime.isIndexed(name) ? runtime.getOriginal(name) : null;
+			if (original != null)
+				getClassHistory().computeIfAbsent(name, key -> new History(map, key)).pushInitial(original);
+		}
+		Log.info("Indexed {} loaded classes", runtime.size());
+	}
+
+	/**
+	 * Fetch the current bytecode of a loaded class by retransforming only that class.
+	 * Called by the {@link LoadedClassMap} without holding its lock, since the transformer also accesses the map.
+	 *
+	 * @param c
+	 * 		Loaded class.
+	 *
+	 * @return Bytecode of the class, or {@code null} if it could not be fetched.
+	 */
+	private byte[] fetchRuntimeClass(Class<?> c) {
+		synchronized(fetchLock) {
+			fetched = null;
+			fetching = c;
+			try {
+				instrumentation.retransformClasses(c);
+				return fetched;
+			} catch (UnmodifiableClassException ex) {
+				return readClassResource(c, Type.getInternalName(c));
+			} catch (Throwable t) {
+				Log.error(t, "Could not get live version of a class {}", c.getName());
+				return null;
+			} finally {
+				fetching = null;
+				fetched = null;
+			}
+		}
+	}
+
+	/**
+	 * @param name
+	 * 		Internal class name.
+	 *
+	 * @return Loaded class of the name, if it was {@link #isLazyLoading() lazily listed}. Otherwise {@code null}.
+	 */
+	private Class<?> getRuntimeClass(String name) {
+		LoadedClassMap runtime = loadedClasses;
+		return runtime == null ? null : runtime.getRuntimeClass(name);
+	}
+
+	/**
+	 * @param c
+	 * 		Loaded class.
+	 *
+	 * @return Internal name of the class, or {@code null} if it should not be part of the resource.
+	 */
+	private String getRuntimeName(Class<?> c) {
+		// Let's skipp all Recaf's classes.
+		if (ClasspathUtil.isRecafClass(c))
+			return null;
+		String name = Type.getInternalName(c);
+		// skip specified prefixes
+		if(shouldSkip(name))
+			return null;
+		// Skip array types
+		if (name.contains("["))
+			return null;
+		return name;
+	}
+
+	/**
+	 * @param c
+	 * 		Loaded class.
+	 * @param name
+	 * 		Internal class name.
+	 *
+	 * @return Bytecode of the class as found by its class loader, or {@code null} if it could not be found.
+	 */
+	private static byte[] readClassResource(Class<?> c, String name) {
+		String path = name.concat(".class");
+		ClassLoader loader = c.getClassLoader();
+		try(InputStream in = (loader != null) ?
+				loader.getResourceAsStream(path) :
+				ClassLoader.getSystemResourceAsStream(path)) {
+			if (in == null)
+				return null;
+			return IOUtil.toByteArray(in, new ByteArrayOutputStream(), new byte[8192]);
+		} catch (IOException ex) {
+			Log.error(ex, "Could not read class {}", name);
+			return null;
+		}
+	}
+
 	/**
 	 * @return Instrumentation resource instance.
 	 *
@@ -228,9 +353,18 @@ public class InstrumentationResource extends JavaResource {
 			if (ClasspathUtil.isRecafLoader(loader)) {
 				return buffer;
 			}
+			// Deliver the bytecode of a class being fetched on demand
+			if (cls != null && cls == res.fetching) {
+				res.fetched = buffer;
+				return buffer;
+			}
 			String internal = className.replace('.', '/');
 			if(res.shouldSkip(internal))
 				return buffer;
+			// Lazily listed classes are fetched when needed, so retransforming them should not hold their code
+			LoadedClassMap runtime = res.loadedClasses;
+			if (cls != null && runtime != null && runtime.isIndexed(internal))
+				return buffer;
 			// Add to classes map
 			res.getClasses().put(internal, buffer);
 			// Make sure the class is NOT marked as dirty after initially registering it
@@ -1,14 +1,16 @@
 package me.coley.recaf.workspace;
 
-import me.coley.recaf.util.IOUtil;
+import me.coley.recaf.plugin.PluginsManager;
+import me.coley.recaf.plugin.api.LoadInterceptorPlugin;
+import me.coley.recaf.util.ClassHeader;
+import me.coley.recaf.util.ClassUtil;
+import me.coley.recaf.util.MappedZipFile;
 
 import java.io.*;
 import java.nio.file.Path;
 import java.util.*;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipException;
-import java.util.zip.ZipFile;
-import java.util.zip.ZipInputStream;
+
+import static me.coley.recaf.util.Log.*;
 
 /**
  * Importable jar resource.
@@ -16,6 +18,9 @@ import java.util.zip.ZipInputStream;
  * @author Matt
  */
 public class JarResource extends ArchiveResource {
+	private Boolean lazyLoading;
+	private long lazyCacheSize = LazyArchiveMap.DEFAULT_CACHE_SIZE;
+
 	/**
 	 * Constructs a jar resource.
 	 *
@@ -31,107 +36,239 @@ public class JarResource extends ArchiveResource {
 
 	@Override
 	protected Map<String, byte[]> loadClasses() throws IOException {
-		// iterate jar entries
-		ByteArrayOutputStream out = new ByteArrayOutputStream();
-		byte[] buffer = new byte[8192];
 		EntryLoader loader = getEntryLoader();
+		if (isLazyLoading() && supportsLazyLoading(loader))
+			return loadClassesLazily(loader, openArchive());
+		// iterate jar entries
+		// The mapped reader only uses the central directory, same as "ZipFile"/"JarFile".
+		// This way it totally ignores CRC validity and a few other zip entry values.
+		// Since somebody can intentionally write bogus data there to crash "ZipInputStream" this way works.
+		try (MappedZipFile zf = openArchive()) {
+			List<MappedZipFile.Entry> entries = getEntries(zf);
+			EntryLoader.EntryReader<MappedZipFile.Entry> reader = entry -> readClassEntry(zf, loader, entry);
+			if (isParallelLoading()) {
+				loader.onClasses(entries, MappedZipFile.Entry::getName, reader);
+			} else {
+				for (MappedZipFile.Entry entry : entries) {
+					byte[] in = reader.read(entry);
+					if (in != null)
+						loader.onClass(entry.getName(), in);
+				}
+			}
+		}
+		loader.finishClasses();
+		return loader.getClasses();
+	}
 
-		try (ZipInputStream zis = new ZipInputStream(new FileInputStream(getPath().toFile()))) {
-			ZipEntry entry;
+	@Override
+	protected LoadedContent loadContent() throws IOException {
+		EntryLoader loader = getEntryLoader();
+		if (isLazyLoading() && supportsLazyLoading(loader)) {
+			// The archive stays open for the lazily read classes, so the files are read from it before returning
+			MappedZipFile zf = openArchive();
+			LazyArchiveMap classes = loadClassesLazily(loader, zf);
+			try {
+				for (MappedZipFile.Entry entry : getEntries(zf)) {
+					byte[] in = readFileEntry(zf, loader, entry);
+					if (in != null)
+						loader.onFile(entry.getName(), in);
+				}
+				loader.finishFiles();
+			} catch(IOException | RuntimeException ex) {
+				classes.close();
+				throw ex;
+			}
+			return new LoadedContent(classes, loader.getFiles());
+		}
+		try (MappedZipFile zf = openArchive()) {
+			loader.onEntries(getEntries(zf), MappedZipFile.Entry::getName,
+					entry -> readClassEntry(zf, loader, entry),
+					entry -> readFileEntry(zf, loader, entry), isParallelLoading());
+		}
+		return new LoadedContent(loader.getClasses(), loader.getFiles());
+	}
 
-			while ((entry = zis.getNextEntry()) != null) {
-				// verify entries are classes and valid files
-				// - skip intentional garbage / zip file abnormalities
-				if (shouldSkip(entry.getName()))
+	/**
+	 * Index the classes of the archive without keeping their bytecode in memory.
+	 * Invalid classes are still given to the entry loader, so they can be patched as usual.
+	 *
+	 * @param loader
+	 * 		Loader to handle invalid classes.
+	 * @param zf
+	 * 		Archive to read from. Owned by the returned map, or closed if indexing fails.
+	 *
+	 * @return Map of class names to their bytecode, which is read on demand.
+	 *
+	 * @throws IOException
+	 * 		When the archive could not be read.
+	 */
+	private LazyArchiveMap loadClassesLazily(EntryLoader loader, MappedZipFile zf) throws IOException {
+		LazyArchiveMap map = new LazyArchiveMap(zf, lazyCacheSize);
+		try {
+			for (MappedZipFile.Entry entry : getEntries(zf)) {
+				byte[] in = readClassEntry(zf, loader, entry);
+				if (in == null)
+					continue;
+				ClassHeader header = ClassUtil.readValidHeader(in);
+				if (header == null) {
+					loader.onClass(entry.getName(), in);
 					continue;
-
-				out.reset();
-				byte[] in;
-				if (!loader.isValidClassEntry(entry)) {
-					// The class file might not end with .class or .class/
-					// so we also check it's header.
-					in = IOUtil.toByteArray(zis, out, buffer, 4);
-					if (!loader.isValidClassFile(new ByteArrayInputStream(in))) {
-						continue;
-					}
 				}
-
-				in = IOUtil.toByteArray(zis, out, buffer);
-
-				// There is no possible way a "class" under 30 bytes is valid
-				if (in.length < 30)
+				String name = header.getName();
+				if (map.containsKey(name)) {
+					debug("Skipping duplicate class '{}'", name);
 					continue;
-
-				loader.onClass(entry.getName(), in);
-			}
-		} catch (ZipException e) {
-			if (e.getMessage().contains("invalid entry CRC")) {
-				// "ZipFile"/"JarFile" reads the entire ZIP file structure before letting us do any entry parsing.
-				// This may not always be ideal, but this way has one major bonus. It totally ignores CRC validity.
-				// It also ignores a few other zip entry values.
-				// Since somebody can intentionally write bogus data there to crash "ZipInputStream" this way works.
-				try (ZipFile zf = new ZipFile(getPath().toString())) {
-					Enumeration<? extends ZipEntry> entries = zf.entries();
-					while (entries.hasMoreElements()) {
-						ZipEntry entry = entries.nextElement();
-
-						if (shouldSkip(entry.getName()))
-							continue;
-
-						out.reset();
-						byte[] in;
-
-						if (!loader.isValidClassEntry(entry)) {
-							// The class file might not end with .class or .class/
-							// so we also check it's header.
-							out.reset();
-							try (InputStream zis = zf.getInputStream(entry)) {
-								in = IOUtil.toByteArray(zis, out, buffer, 4);
-							}
-							if (!loader.isValidClassFile(new ByteArrayInputStream(in))) {
-								continue;
-							}
-						}
-
-						out.reset();
-						try (InputStream zis = zf.getInputStream(entry)) {
-							in = IOUtil.toByteArray(zis, out, buffer);
-						}
-
-						loader.onClass(entry.getName(), in);
-					}
 				}
+				map.index(name, entry);
 			}
+			loader.finishClasses();
+		} catch(IOException | RuntimeException ex) {
+			zf.close();
+			throw ex;
 		}
-		loader.finishClasses();
-		return loader.getClasses();
+		// Recovered invalid classes are kept in memory
+		loader.getClasses().forEach((name, value) -> {
+			if (!map.containsKey(name))
+				map.put(name, value);
+		});
+		return map;
+	}
+
+	/**
+	 * @param zf
+	 * 		Archive to read from.
+	 *
+	 * @return Entries of the archive that are not skipped.
+	 */
+	private List<MappedZipFile.Entry> getEntries(MappedZipFile zf) {
+		List<MappedZipFile.Entry> entries = new ArrayList<>();
+		for (MappedZipFile.Entry entry : zf.getEntries()) {
+			// verify entries are valid
+			// - skip intentional garbage / zip file abnormalities
+			if (!shouldSkip(entry.getName()))
+				entries.add(entry);
+		}
+		return entries;
+	}
+
+	/**
+	 * @param zf
+	 * 		Archive to read from.
+	 * @param loader
+	 * 		Loader to validate entries with.
+	 * @param entry
+	 * 		Entry to read.
+	 *
+	 * @return Entry content, or {@code null} if the entry is not a class.
+	 *
+	 * @throws IOException
+	 * 		When the entry could not be read.
+	 */
+	private static byte[] readClassEntry(MappedZipFile zf, EntryLoader loader, MappedZipFile.Entry entry)
+			throws IOException {
+		if (!loader.isValidClassEntry(entry)) {
+			// The class file might not end with .class or .class/
+			// so we also check it's header.
+			byte[] header = zf.read(entry, 4);
+			if (!loader.isValidClassFile(new ByteArrayInputStream(header)))
+				return null;
+		}
+		byte[] in = zf.read(entry);
+		// There is no possible way a "class" under 30 bytes is valid
+		if (in.length < 30)
+			return null;
+		return in;
+	}
+
+	/**
+	 * Lazy loading skips parts of the entry loader, and plugins would not be able to intercept classes.
+	 * So it is only used when neither are customized.
+	 *
+	 * @param loader
+	 * 		Loader of the resource.
+	 *
+	 * @return {@code true} when classes can be loaded lazily.
+	 */
+	private static boolean supportsLazyLoading(EntryLoader loader) {
+		return loader.getClass() == EntryLoader.class &&
+				PluginsManager.getInstance().ofType(LoadInterceptorPlugin.class).isEmpty();
+	}
+
+	/**
+	 * @param zf
+	 * 		Archive to read from.
+	 * @param loader
+	 * 		Loader to validate entries with.
+	 * @param entry
+	 * 		Entry to read.
+	 *
+	 * @return Entry content, or {@code null} if the entry is not a file.
+	 *
+	 * @throws IOException
+	 * 		When the entry could not be read.
+	 */
+	private static byte[] readFileEntry(MappedZipFile zf, EntryLoader loader, MappedZipFile.Entry entry)
+			throws IOException {
+		// verify entries are not classes and are valid files
+		if(loader.isValidClassEntry(entry))
+			return null;
+		if(!loader.isValidFileEntry(entry))
+			return null;
+		return zf.read(entry);
 	}
 
 	@Override
 	protected Map<String, byte[]> loadFiles() throws IOException {
 		// iterate jar entries
-		ByteArrayOutputStream out = new ByteArrayOutputStream();
-		byte[] buffer = new byte[8192];
 		EntryLoader loader = getEntryLoader();
-		try (ZipFile zipFile = new ZipFile(getPath().toFile())) {
-			Enumeration<? extends ZipEntry> entries = zipFile.entries();
-			while(entries.hasMoreElements()) {
-				// verify entries are not classes and are valid files
-				// - skip intentional garbage / zip file abnormalities
-				ZipEntry entry = entries.nextElement();
-				if (shouldSkip(entry.getName()))
-					continue;
-				if(loader.isValidClassEntry(entry))
-					continue;
-				if(!loader.isValidFileEntry(entry))
-					continue;
-				out.reset();
-				InputStream stream = zipFile.getInputStream(entry);
-				byte[] in = IOUtil.toByteArray(stream, out, buffer);
-				loader.onFile(entry.getName(), in);
+		try (MappedZipFile zipFile = openArchive()) {
+			for (MappedZipFile.Entry entry : getEntries(zipFile)) {
+				byte[] in = readFileEntry(zipFile, loader, entry);
+				if (in != null)
+					loader.onFile(entry.getName(), in);
 			}
 		}
 		loader.finishFiles();
 		return loader.getFiles();
 	}
+
+	@Override
+	protected Map<String, byte[]> copyMap(Map<String, byte[]> map) {
+		// Copying would read every class
+		if (map instanceof LazyArchiveMap)
+			return map;
+		return super.copyMap(map);
+	}
+
+	/**
+	 * @return {@code true} if class bytecode is only read from the archive when it is needed.
+	 * Unless {@link #setLazyLoading(boolean) specified} this is the case for non-primary resources
+	 * that are not held in the {@link LibraryStore shared library store}.
+	 */
+	public boolean isLazyLoading() {
+		return lazyLoading != null ? lazyLoading : !isPrimary() && !LibraryStore.canShare(this);
+	}
+
+	/**
+	 * @return {@code true} if lazy loading was explicitly {@link #setLazyLoading(boolean) enabled}.
+	 */
+	boolean isLazyLoadingRequested() {
+		return Boolean.TRUE.equals(lazyLoading);
+	}
+
+	/**
+	 * @param lazyLoading
+	 * 		{@code true} to only read class bytecode from the archive when it is needed.
+	 */
+	public void setLazyLoading(boolean lazyLoading) {
+		this.lazyLoading = lazyLoading;
+	}
+
+	/**
+	 * @param lazyCacheSize
+	 * 		Maximum number of bytes of class bytecode to keep in memory when {@link #isLazyLoading() lazy loading}.
+	 */
+	public void setLazyCacheSize(long lazyCacheSize) {
+		this.lazyCacheSize = lazyCacheSize;
+	}
 }
@@ -2,21 +2,27 @@ package me.coley.recaf.workspace;
 
 import com.github.javaparser.ParseResult;
 import com.github.javaparser.ast.CompilationUnit;
-import me.coley.recaf.parse.javadoc.DocumentationParseException;
 import me.coley.recaf.parse.javadoc.Javadocs;
 import me.coley.recaf.parse.source.SourceCode;
 import me.coley.recaf.parse.source.SourceCodeException;
 import me.coley.recaf.util.InternalElement;
+import me.coley.recaf.util.MappedZipFile;
+import me.coley.recaf.util.ThreadUtil;
 import me.coley.recaf.util.struct.InternalBiConsumer;
 import me.coley.recaf.util.struct.InternalConsumer;
 import me.coley.recaf.util.struct.ListeningMap;
-import org.apache.commons.io.IOUtils;
 
 import java.io.IOException;
+import java.lang.ref.SoftReference;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.util.*;
-import java.util.zip.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
 
 import static me.coley.recaf.util.Log.*;
 
@@ -31,15 +37,23 @@ public abstract class JavaResource {
 	private List<String> skippedPrefixes = Collections.emptyList();
 	private final ListeningMap<String, byte[]> cachedClasses = new ListeningMap<>();
 	private final ListeningMap<String, byte[]> cachedFiles = new ListeningMap<>();
-	private final Map<String, History> classHistory = new HashMap<>();
-	private final Map<String, History> fileHistory = new HashMap<>();
-	private final Set<String> dirtyClasses = new HashSet<>();
-	private final Set<String> dirtyFiles = new HashSet<>();
-	private final Map<String, SourceCode> classSource = new HashMap<>();
-	private final Map<String, Javadocs> classDocs = new HashMap<>();
+	private final Map<String, History> classHistory = new ConcurrentHashMap<>();
+	private final Map<String, History> fileHistory = new ConcurrentHashMap<>();
+	private final Set<String> dirtyClasses = ConcurrentHashMap.newKeySet();
+	private final Set<String> dirtyFiles = ConcurrentHashMap.newKeySet();
+	private volatile Map<String, SourceCode> classSource = new ConcurrentHashMap<>();
+	private volatile Map<String, Javadocs> classDocs = new ConcurrentHashMap<>();
 	private Path classSourceFile;
 	private Path classDocsFile;
+	private Map<String, byte[]> restoredClasses;
+	private Map<String, byte[]> restoredFiles;
+	private final Object contentLock = new Object();
+	private Supplier<Map<String, byte[]>> loadedClasses;
+	private Supplier<Map<String, byte[]>> loadedFiles;
+	private boolean contentLoaded;
+	private volatile LibraryStore.Library sharedLibrary;
 	private boolean isPrimary;
+	private boolean concurrent;
 
 	/**
 	 * Constructs a java resource.
@@ -227,7 +241,10 @@ public abstract class JavaResource {
 		synchronized(cachedClasses) {
 			if (!cachedClasses.isBacked()) {
 				try {
-					cachedClasses.setBacking(copyMap(loadClasses()));
+					Map<String, byte[]> backing =
+							backingOf(restoredClasses != null ? restoredClasses : copyMap(takeLoadedClasses()));
+					cachedClasses.setBacking(backing);
+					restoredClasses = null;
 					// If this resource is not the primary resource, we are done
 					if (!isPrimary())
 						return cachedClasses;
@@ -236,8 +253,33 @@ public abstract class JavaResource {
 							.add(InternalBiConsumer.internal((name, code) -> dirtyClasses.add(name)));
 					cachedClasses.getRemoveListeners().add(InternalConsumer.internal(dirtyClasses::remove));
 					// Create initial save state
-					for (Map.Entry<String, byte[]> e : cachedClasses.entrySet()) {
-						addClassSave(e.getKey(), e.getValue());
+					if (backing instanceof LazyArchiveMap) {
+						// Refer to the archive entries, rather than reading every class.
+						// Classes that were modified while loading are not read from the archive, so they are held as-is.
+						LazyArchiveMap lazy = (LazyArchiveMap) backing;
+						for (String name : lazy.keySet()) {
+							Supplier<byte[]> original = lazy.isIndexed(name) ? lazy.getOriginal(name) : null;
+							if (original == null)
+								addClassSave(name, lazy.get(name));
+							else
+								classHistory.computeIfAbsent(name, key -> new History(cachedClasses, key))
+										.pushInitial(original);
+						}
+					} else if (backing instanceof SnapshotMap) {
+						// Refer to the snapshot, which also holds the original content of modified classes
+						SnapshotMap snapshot = (SnapshotMap) backing;
+						for (String name : snapshot.keySet()) {
+							Supplier<byte[]> original = snapshot.getOriginal(name);
+							if (original == null)
+								addClassSave(name, snapshot.get(name));
+							else
+								classHistory.computeIfAbsent(name, key -> new History(cachedClasses, key))
+										.pushInitial(original);
+						}
+					} else {
+						for (Map.Entry<String, byte[]> e : cachedClasses.entrySet()) {
+							addClassSave(e.getKey(), e.getValue());
+						}
 					}
 					// Add listener to create initial save states for newly made classes
 					cachedClasses.getPutListeners().add(InternalBiConsumer.internal((name, code) -> {
@@ -261,7 +303,10 @@ public abstract class JavaResource {
 		synchronized(cachedFiles) {
 			try {
 				if (!cachedFiles.isBacked()) {
-					cachedFiles.setBacking(copyMap(loadFiles()));
+					Map<String, byte[]> backing =
+							backingOf(restoredFiles != null ? restoredFiles : copyMap(takeLoadedFiles()));
+					cachedFiles.setBacking(backing);
+					restoredFiles = null;
 					// If this resource is not the primary resource, we are done
 					if (!isPrimary())
 						return cachedFiles;
@@ -270,8 +315,21 @@ public abstract class JavaResource {
 							.add(InternalBiConsumer.internal((name, code) -> dirtyFiles.add(name)));
 					cachedFiles.getRemoveListeners().add(InternalConsumer.internal(dirtyFiles::remove));
 					// Create initial save state
-					for (Map.Entry<String, byte[]> e : cachedFiles.entrySet()) {
-						addFileSave(e.getKey(), e.getValue());
+					if (backing instanceof SnapshotMap) {
+						// Refer to the snapshot, which also holds the original content of modified files
+						SnapshotMap snapshot = (SnapshotMap) backing;
+						for (String name : snapshot.keySet()) {
+							Supplier<byte[]> original = snapshot.getOriginal(name);
+							if (original == null)
+								addFileSave(name, snapshot.get(name));
+							else
+								fileHistory.computeIfAbsent(name, key -> new History(cachedFiles, key))
+										.pushInitial(original);
+						}
+					} else {
+						for (Map.Entry<String, byte[]> e : cachedFiles.entrySet()) {
+							addFileSave(e.getKey(), e.getValue());
+						}
 					}
 					// Add listener to create initial save states for newly made files
 					cachedFiles.getPutListeners().add(InternalBiConsumer.internal((name, code) -> {
@@ -289,20 +347,200 @@ public abstract class JavaResource {
 	}
 
 	/**
-	 * Refresh this resource.
+	 * @return Map of class names to their bytecode, without loading the classes if they are not loaded yet.
+	 */
+	ListeningMap<String, byte[]> getClassMap() {
+		return cachedClasses;
+	}
+
+	/**
+	 * @return Map of file names to their raw data, without loading the files if they are not loaded yet.
+	 */
+	ListeningMap<String, byte[]> getFileMap() {
+		return cachedFiles;
+	}
+
+	/**
+	 * @return Classes from the resource's source. Loaded together with the files when
+	 * {@link #loadContent() supported}, otherwise loaded on their own.
+	 *
+	 * @throws IOException
+	 * 		When the resource could not be fetched or parsed.
+	 */
+	private Map<String, byte[]> takeLoadedClasses() throws IOException {
+		synchronized(contentLock) {
+			loadContentOnce();
+			Map<String, byte[]> classes = loadedClasses != null ? loadedClasses.get() : null;
+			loadedClasses = null;
+			return classes != null ? classes : loadClasses();
+		}
+	}
+
+	/**
+	 * @return Files from the resource's source. Loaded together with the classes when
+	 * {@link #loadContent() supported}, otherwise loaded on their own.
+	 *
+	 * @throws IOException
+	 * 		When the resource could not be fetched or parsed.
+	 */
+	private Map<String, byte[]> takeLoadedFiles() throws IOException {
+		synchronized(contentLock) {
+			loadContentOnce();
+			Map<String, byte[]> files = loadedFiles != null ? loadedFiles.get() : null;
+			loadedFiles = null;
+			return files != null ? files : loadFiles();
+		}
+	}
+
+	/**
+	 * Load the classes and files in a single pass, if supported. The map that is not requested first is held
+	 * until it is requested, so both {@link #getClasses()} and {@link #getFiles()} remain lazy.
+	 * Since it may never be requested, it is only softly held, and loaded again on its own if it was collected.
+	 * Libraries that {@link LibraryStore can be shared} take their content from the shared store.
+	 *
+	 * @throws IOException
+	 * 		When the resource could not be fetched or parsed.
+	 */
+	private void loadContentOnce() throws IOException {
+		if (contentLoaded)
+			return;
+		contentLoaded = true;
+		LoadedContent content;
+		if (LibraryStore.canShare(this)) {
+			sharedLibrary = LibraryStore.load(this);
+			content = new LoadedContent(sharedLibrary.getClasses(), sharedLibrary.getFiles());
+		} else {
+			content = loadContent();
+		}
+		if (content != null) {
+			loadedClasses = pending(content.getClasses());
+			loadedFiles = pending(content.getFiles());
+		}
+	}
+
+	/**
+	 * @param map
+	 * 		Loaded content that has not been requested yet.
+	 *
+	 * @return Supplier of the content, or {@code null} if the content was collected.
+	 */
+	private static Supplier<Map<String, byte[]>> pending(Map<String, byte[]> map) {
+		// Lazy archive maps only hold the locations of their classes, but hold the archive open until cleared
+		if (map == null || map instanceof LazyArchiveMap)
+			return () -> map;
+		SoftReference<Map<String, byte[]>> ref = new SoftReference<>(map);
+		return ref::get;
+	}
+
+	/**
+	 * @param name
+	 * 		Class name.
+	 *
+	 * @return Super class name followed by the interface names of the class, as precomputed by the
+	 * {@link LibraryStore shared library store}. {@code null} if the resource is not shared,
+	 * or the class is not in the shared library as-is.
+	 */
+	public String[] getSharedParents(String name) {
+		LibraryStore.Library library = sharedLibrary;
+		if (library == null)
+			return null;
+		// Only use the precomputed parents while the class is unchanged
+		byte[] value = library.getClasses().get(name);
+		if (value == null || value != getClasses().get(name))
+			return null;
+		return library.getParents(name);
+	}
+
+	/**
+	 * @param map
+	 * 		Loaded content.
+	 *
+	 * @return Map to back the content with.
+	 * In {@link #isConcurrent() concurrent mode} this is a map that is safe to access from multiple threads.
+	 */
+	private Map<String, byte[]> backingOf(Map<String, byte[]> map) {
+		// Lazy archive and snapshot maps are already synchronized, and copying them would read every value
+		if (!concurrent || map instanceof ConcurrentMap || map instanceof LazyArchiveMap || map instanceof SnapshotMap)
+			return map;
+		return new ConcurrentHashMap<>(map);
+	}
+
+	/**
+	 * Provide content to use instead of loading it from the resource's source.
+	 * Used to restore a {@link WorkspaceSnapshot}. Has no effect on content that is already loaded.
+	 *
+	 * @param classes
+	 * 		Map of class names to their bytecode.
+	 * @param files
+	 * 		Map of file names to their raw data.
+	 * @param dirtyClasses
+	 * 		Names of classes that were modified.
+	 * @param dirtyFiles
+	 * 		Names of files that were modified.
+	 */
+	void restore(Map<String, byte[]> classes, Map<String, byte[]> files,
+				 Set<String> dirtyClasses, Set<String> dirtyFiles) {
+		synchronized(cachedClasses) {
+			if (!cachedClasses.isBacked()) {
+				restoredClasses = classes;
+				this.dirtyClasses.addAll(dirtyClasses);
+			}
+		}
+		synchronized(cachedFiles) {
+			if (!cachedFiles.isBacked()) {
+				restoredFiles = files;
+				this.dirtyFiles.addAll(dirtyFiles);
+			}
+		}
+	}
+
+	/**
+	 * Refresh this resource. The loaded content is dropped, and any file it is read from is released, such as the
+	 * archive of a {@link JarResource#isLazyLoading() lazily loaded} library. Content is loaded again when requested.
 	 */
 	public void invalidate() {
 		cachedFiles.getPutListeners().removeIf(InternalElement.INTERNAL_PREDICATE);
 		cachedFiles.getRemoveListeners().removeIf(InternalElement.INTERNAL_PREDICATE);
-		cachedFiles.clear();
+		if (cachedFiles.isBacked())
+			cachedFiles.clear();
 		cachedFiles.setBacking(null);
 		cachedClasses.getPutListeners().removeIf(InternalElement.INTERNAL_PREDICATE);
 		cachedClasses.getRemoveListeners().removeIf(InternalElement.INTERNAL_PREDICATE);
-		cachedClasses.clear();
+		if (cachedClasses.isBacked())
+			cachedClasses.clear();
 		cachedClasses.setBacking(null);
 		classDocs.clear();
 		classSource.clear();
+		// Clearing the histories releases their states held on disk
+		classHistory.values().forEach(History::clear);
 		classHistory.clear();
+		fileHistory.values().forEach(History::clear);
+		fileHistory.clear();
+		// Restored content that was never requested still refers to the snapshot
+		synchronized(cachedClasses) {
+			if (restoredClasses != null)
+				restoredClasses.clear();
+			restoredClasses = null;
+		}
+		synchronized(cachedFiles) {
+			if (restoredFiles != null)
+				restoredFiles.clear();
+			restoredFiles = null;
+		}
+		synchronized(contentLock) {
+			// Release archives held by content that was never requested, unless it belongs to the shared store
+			if (sharedLibrary == null) {
+				for (Supplier<Map<String, byte[]>> pending : Arrays.asList(loadedClasses, loadedFiles)) {
+					Map<String, byte[]> map = pending != null ? pending.get() : null;
+					if (map instanceof LazyArchiveMap)
+						map.clear();
+				}
+			}
+			contentLoaded = false;
+			sharedLibrary = null;
+			loadedClasses = null;
+			loadedFiles = null;
+		}
 	}
 
 	/**
@@ -333,6 +571,20 @@ public abstract class JavaResource {
 	 */
 	protected abstract Map<String, byte[]> loadFiles() throws IOException;
 
+	/**
+	 * Load both the classes and files in a single pass over the resource's source.
+	 * Resources that do not support this load classes and files with {@link #loadClasses()} and
+	 * {@link #loadFiles()} separately.
+	 *
+	 * @return Classes and files of the resource, or {@code null} if single pass loading is not supported.
+	 *
+	 * @throws IOException
+	 * 		When the resource could not be fetched or parsed.
+	 */
+	protected LoadedContent loadContent() throws IOException {
+		return null;
+	}
+
 	/**
 	 * @param path
 	 * 		File containing source code.
@@ -343,28 +595,55 @@ public abstract class JavaResource {
 	 * 		When the file could not be fetched or parsed.
 	 */
 	protected Map<String, SourceCode> loadSources(Path path) throws IOException {
-		Map<String, SourceCode> map = new HashMap<>();
 		// Will throw IO exception if the file couldn't be opened as an archive
-		try (ZipFile zip = new ZipFile(path.toFile())) {
-			Enumeration<? extends ZipEntry> entries = zip.entries();
-			while (entries.hasMoreElements()) {
-				ZipEntry entry = entries.nextElement();
+		MappedZipFile zip = new MappedZipFile(path);
+		LazySourceMap map = new LazySourceMap(this, zip, path);
+		try {
+			Set<String> classNames = getClasses().keySet();
+			for (MappedZipFile.Entry entry : zip.getEntries()) {
 				String name = entry.getName();
-				if (!name.endsWith(".java"))
+				if (!name.endsWith(".java") || name.endsWith("package-info.java") || name.endsWith("module-info.java"))
 					continue;
-				String src = IOUtils.toString(zip.getInputStream(entry), StandardCharsets.UTF_8);
-				try {
-					SourceCode code = new SourceCode(this, src);
-					code.analyze();
-					map.put(code.getInternalName(), code);
-				} catch(SourceCodeException ex) {
-					error(ex, "Failed to parse source: {} in {}", name, path);
+				name = name.substring(0, name.length() - ".java".length());
+				String className = getSourceClassName(name, classNames);
+				if (className == null) {
+					// Not a class of this resource, so the package is read from the source
+					String simpleName = name.substring(name.lastIndexOf('/') + 1);
+					String packageName = LazySourceMap.readPackage(new String(zip.read(entry), StandardCharsets.UTF_8));
+					className = packageName.isEmpty() ? simpleName : packageName + "/" + simpleName;
 				}
+				map.index(className, entry);
 			}
+		} catch(IOException | RuntimeException ex) {
+			zip.close();
+			throw ex;
 		}
 		return map;
 	}
 
+	/**
+	 * Source archives often put sources under a directory, such as {@code src/main/java/}.
+	 * Leading directories are removed until the name matches a class of this resource.
+	 *
+	 * @param path
+	 * 		Path of a source file in an archive, without the extension.
+	 * @param classNames
+	 * 		Names of classes in this resource.
+	 *
+	 * @return Name of the class the source defines, or {@code null} if it does not match a class of this resource.
+	 */
+	private static String getSourceClassName(String path, Set<String> classNames) {
+		String name = path;
+		while (true) {
+			if (classNames.contains(name))
+				return name;
+			int split = name.indexOf('/');
+			if (split < 0)
+				return null;
+			name = name.substring(split + 1);
+		}
+	}
+
 	/**
 	 * @param path
 	 * 		File containing documentation.
@@ -375,26 +654,17 @@ public abstract class JavaResource {
 	 * 		When the file could not be fetched or parsed.
 	 */
 	protected Map<String, Javadocs> loadDocs(Path path) throws IOException {
-		Map<String, Javadocs> map = new HashMap<>(512, 1F);
 		// Will throw IO exception if the file couldn't be opened as an archive
-		try (ZipFile zip = new ZipFile(path.toFile())) {
-			Enumeration<? extends ZipEntry> entries = zip.entries();
-			while (entries.hasMoreElements()) {
-				ZipEntry entry = entries.nextElement();
-				String name = entry.getName();
-				if (!name.endsWith(".html"))
-					continue;
-				if (name.contains("-") || name.contains("index"))
-					continue;
-				String src = IOUtils.toString(zip.getInputStream(entry), StandardCharsets.UTF_8);
-				try {
-					Javadocs docs = new Javadocs(name, src);
-					docs.parse();
-					map.put(docs.getInternalName(), docs);
-				} catch(DocumentationParseException ex) {
-					error(ex, "Failed to parse docs: {} in {}", name, path);
-				}
-			}
+		MappedZipFile zip = new MappedZipFile(path);
+		LazyDocsMap map = new LazyDocsMap(zip, path, LazyDocsMap.DEFAULT_CACHE_SIZE);
+		for (MappedZipFile.Entry entry : zip.getEntries()) {
+			String name = entry.getName();
+			if (!name.endsWith(".html"))
+				continue;
+			if (name.contains("-") || name.contains("index"))
+				continue;
+			// Pages are only parsed when requested
+			map.index(name.substring(0, name.length() - ".html".length()), entry);
 		}
 		return map;
 	}
@@ -412,10 +682,28 @@ public abstract class JavaResource {
 	 * 		When the path could not be fetched or parsed.
 	 */
 	public boolean setClassSources(Path path) throws  IOException {
+		Map<String, SourceCode> sources = loadSources(path);
+		// Lazily loaded sources are parsed on demand, see "getClassSource"
+		if (!(sources instanceof LazySourceMap))
+			sources = new ConcurrentHashMap<>(sources);
+		Map<String, SourceCode> old = classSource;
 		this.classSourceFile = path;
-		this.classSource.clear();
-		this.classSource.putAll(loadSources(path));
-		return !classSource.isEmpty();
+		this.classSource = sources;
+		old.clear();
+		return !sources.isEmpty();
+	}
+
+	/**
+	 * Attached sources are parsed when they are first requested.
+	 * This parses all sources that have not been requested yet in the background.
+	 *
+	 * @return Future completed when all attached sources have been parsed.
+	 */
+	public Future<?> preloadClassSources() {
+		Map<String, SourceCode> sources = classSource;
+		if (sources instanceof LazySourceMap)
+			return ((LazySourceMap) sources).preload();
+		return CompletableFuture.completedFuture(null);
 	}
 
 	/**
@@ -431,10 +719,15 @@ public abstract class JavaResource {
 	 * 		When the path could not be fetched or parsed.
 	 */
 	public boolean setClassDocs(Path path) throws  IOException {
+		Map<String, Javadocs> docs = loadDocs(path);
+		// Lazily loaded docs are parsed on demand, see "getClassDocs"
+		if (!(docs instanceof LazyDocsMap))
+			docs = new ConcurrentHashMap<>(docs);
+		Map<String, Javadocs> old = classDocs;
 		this.classDocsFile = path;
-		this.classDocs.clear();
-		this.classDocs.putAll(loadDocs(path));
-		return !classDocs.isEmpty();
+		this.classDocs = docs;
+		old.clear();
+		return !docs.isEmpty();
 	}
 
 	/**
@@ -463,16 +756,32 @@ public abstract class JavaResource {
 	 * then it's result may have {@link com.github.javaparser.ParseResult#isSuccessful()} be {@code false}.
 	 */
 	public Map<String, ParseResult<CompilationUnit>> analyzeSource(Workspace workspace) {
-		Map<String,ParseResult<CompilationUnit>> copy = new HashMap<>();
-		classSource.forEach((name, value) -> {
-			try {
-				copy.put(name, value.analyze(workspace));
-			} catch(SourceCodeException ex) {
-				error(ex, "Failed to parse source: {}", name);
-				copy.put(name, ex.getResult());
-			}
-		});
-		return copy;
+		Map<String, SourceCode> sources = classSource;
+		Map<String, ParseResult<CompilationUnit>> results = new ConcurrentHashMap<>();
+		// Create the shared config before parsing on multiple threads
+		workspace.getSourceParseConfig();
+		try {
+			ThreadUtil.forkJoinPool().submit(() -> new ArrayList<>(sources.keySet()).parallelStream().forEach(name -> {
+				// Sources not parsed yet only need to be parsed once, with the workspace config
+				boolean lazy = sources instanceof LazySourceMap;
+				SourceCode code = lazy ? ((LazySourceMap) sources).getUnparsed(name) : sources.get(name);
+				if (code == null)
+					return;
+				try {
+					results.put(name, code.analyze(workspace));
+					if (lazy)
+						((LazySourceMap) sources).setParsed(name, code);
+				} catch(SourceCodeException ex) {
+					error(ex, "Failed to parse source: {}", name);
+					results.put(name, ex.getResult());
+				}
+			})).get();
+		} catch(InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		} catch(ExecutionException ex) {
+			error(ex.getCause(), "Failed to analyze sources of resource \"{}\"", toString());
+		}
+		return new HashMap<>(results);
 	}
 
 	/**
@@ -508,6 +817,46 @@ public abstract class JavaResource {
 		isPrimary = primary;
 	}
 
+	/**
+	 * @return {@code true} if the class and file maps are safe to access from multiple threads.
+	 */
+	public boolean isConcurrent() {
+		return concurrent;
+	}
+
+	/**
+	 * Concurrent mode backs classes and files with concurrent maps, allowing parallel jobs to share the resource.
+	 * This must be set before the content is loaded.
+	 *
+	 * @param concurrent
+	 *        {@code true} to make the class and file maps safe to access from multiple threads.
+	 */
+	public void setConcurrent(boolean concurrent) {
+		this.concurrent = concurrent;
+	}
+
+	/**
+	 * Enable {@link #setConcurrent(boolean) concurrent mode}, also for content that is already loaded.
+	 */
+	void makeConcurrent() {
+		concurrent = true;
+		rebackConcurrent(cachedClasses);
+		rebackConcurrent(cachedFiles);
+	}
+
+	private void rebackConcurrent(ListeningMap<String, byte[]> map) {
+		synchronized(map) {
+			Map<String, byte[]> backing = map.getBacking();
+			if (backing == null)
+				return;
+			// Only replace maps that are not safe to access from multiple threads,
+			// since replacing the backing map notifies the reset listeners
+			Map<String, byte[]> concurrentBacking = backingOf(backing);
+			if (concurrentBacking != backing)
+				map.setBacking(concurrentBacking);
+		}
+	}
+
 	/**
 	 * @return short resource name
 	 */
@@ -522,5 +871,38 @@ public abstract class JavaResource {
 	public String toString() {
 		return getShortName().toString();
 	}
+
+	/**
+	 * Classes and files loaded in a {@link #loadContent() single pass}.
+	 */
+	public static class LoadedContent {
+		private final Map<String, byte[]> classes;
+		private final Map<String, byte[]> files;
+
+		/**
+		 * @param classes
+		 * 		Map of class names to their bytecode.
+		 * @param files
+		 * 		Map of file names to their raw data.
+		 */
+		public LoadedContent(Map<String, byte[]> classes, Map<String, byte[]> files) {
+			this.classes = classes;
+			this.files = files;
+		}
+
+		/**
+		 * @return Map of class names to their bytecode.
+		 */
+		public Map<String, byte[]> getClasses() {
+			return classes;
+		}
+
+		/**
+		 * @return Map of file names to their raw data.
+		 */
+		public Map<String, byte[]> getFiles() {
+			return files;
+		}
+	}
 }
 // TODO: Allow resources to have update-checks, ex: the referenced resource is modified externally
\ No newline at end of file
@@ -0,0 +1,317 @@
+package me.coley.recaf.workspace;
+
+import me.coley.recaf.util.MappedZipFile;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.*;
+import java.util.function.Supplier;
+
+import static me.coley.recaf.util.Log.*;
+
+/**
+ * Map of class names to bytecode that only holds the location of each class in an archive.
+ * Bytecode is inflated on first access, and recently used values are kept in a size-bounded cache.
+ * <br>
+ * Values that are {@link #put(String, byte[]) put} into the map are kept in memory,
+ * since they no longer match the content of the archive.
+ *
+ * @author Matt
+ */
+public class LazyArchiveMap extends AbstractMap<String, byte[]> implements Closeable {
+	/**
+	 * Default size of the cache, in bytes.
+	 */
+	public static final long DEFAULT_CACHE_SIZE = 32L * 1024L * 1024L;
+	private final Map<String, MappedZipFile.Entry> index = new LinkedHashMap<>();
+	private final Map<String, byte[]> resident = new LinkedHashMap<>();
+	private final Map<String, MappedZipFile.Entry> originals = new HashMap<>();
+	private final LinkedHashMap<String, byte[]> cache = new LinkedHashMap<>(64, 0.75F, true);
+	private final MappedZipFile archive;
+	private final long maxCacheSize;
+	private long cacheSize;
+	private Set<String> keySet;
+	private Set<Entry<String, byte[]>> entrySet;
+
+	/**
+	 * @param archive
+	 * 		Archive to read from. Closed when the map is {@link #clear() cleared} or {@link #close() closed}.
+	 * @param maxCacheSize
+	 * 		Maximum number of bytes to keep in the cache.
+	 */
+	public LazyArchiveMap(MappedZipFile archive, long maxCacheSize) {
+		this.archive = archive;
+		this.maxCacheSize = maxCacheSize;
+	}
+
+	/**
+	 * Register the location of a class.
+	 *
+	 * @param name
+	 * 		Internal class name.
+	 * @param entry
+	 * 		Archive entry holding the bytecode of the class.
+	 */
+	public synchronized void index(String name, MappedZipFile.Entry entry) {
+		resident.remove(name);
+		cache.remove(name);
+		index.put(name, entry);
+		originals.put(name, entry);
+	}
+
+	/**
+	 * @param name
+	 * 		Internal class name.
+	 *
+	 * @return Supplier of the bytecode of the class as it is in the archive, regardless of any value put into the
+	 * map since. {@code null} if the class was never indexed.
+	 */
+	public synchronized Supplier<byte[]> getOriginal(String name) {
+		MappedZipFile.Entry entry = originals.get(name);
+		if (entry == null)
+			return null;
+		return () -> {
+			try {
+				return archive.read(entry);
+			} catch(IOException ex) {
+				error(ex, "Failed to read class '{}' from archive entry '{}'", name, entry.getName());
+				return null;
+			}
+		};
+	}
+
+	/**
+	 * @param name
+	 * 		Internal class name.
+	 *
+	 * @return {@code true} if the class bytecode is read from the archive.
+	 * {@code false} if it is held in memory, or is not in the map.
+	 */
+	public synchronized boolean isIndexed(String name) {
+		return index.containsKey(name);
+	}
+
+	/**
+	 * @return Number of bytes currently held in the cache.
+	 */
+	public synchronized long getCacheSize() {
+		return cacheSize;
+	}
+
+	@Override
+	public synchronized byte[] get(Object key) {
+		byte[] value = resident.get(key);
+		if (value != null)
+			return value;
+		MappedZipFile.Entry entry = index.get(key);
+		if (entry == null)
+			return null;
+		value = cache.get(key);
+		if (value != null)
+			return value;
+		try {
+			value = archive.read(entry);
+		} catch(IOException ex) {
+			error(ex, "Failed to read class '{}' from archive entry '{}'", key, entry.getName());
+			return null;
+		}
+		cache.put((String) key, value);
+		cacheSize += value.length;
+		// Evict least recently used values, but always keep the value being returned
+		Iterator<byte[]> it = cache.values().iterator();
+		while (cacheSize > maxCacheSize && cache.size() > 1) {
+			cacheSize -= it.next().length;
+			it.remove();
+		}
+		return value;
+	}
+
+	@Override
+	public synchronized byte[] put(String key, byte[] value) {
+		byte[] old = get(key);
+		uncache(key);
+		index.remove(key);
+		resident.put(key, value);
+		return old;
+	}
+
+	@Override
+	public synchronized byte[] remove(Object key) {
+		byte[] old = get(key);
+		uncache(key);
+		index.remove(key);
+		resident.remove(key);
+		return old;
+	}
+
+	@Override
+	public synchronized boolean containsKey(Object key) {
+		return resident.containsKey(key) || index.containsKey(key);
+	}
+
+	@Override
+	public synchronized int size() {
+		return resident.size() + index.size();
+	}
+
+	@Override
+	public synchronized void clear() {
+		resident.clear();
+		index.clear();
+		originals.clear();
+		cache.clear();
+		cacheSize = 0;
+		try {
+			close();
+		} catch(IOException ex) {
+			error(ex, "Failed to close archive");
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		archive.close();
+	}
+
+	@Override
+	public Set<String> keySet() {
+		if (keySet == null)
+			keySet = new AbstractSet<String>() {
+				@Override
+				public Iterator<String> iterator() {
+					return new KeyIterator();
+				}
+
+				@Override
+				public int size() {
+					return LazyArchiveMap.this.size();
+				}
+
+				@Override
+				public boolean contains(Object o) {
+					return containsKey(o);
+				}
+
+				@Override
+				public boolean remove(Object o) {
+					boolean contained = containsKey(o);
+					LazyArchiveMap.this.remove(o);
+					return contained;
+				}
+			};
+		return keySet;
+	}
+
+	@Override
+	public Set<Entry<String, byte[]>> entrySet() {
+		if (entrySet == null)
+			entrySet = new AbstractSet<Entry<String, byte[]>>() {
+				@Override
+				public Iterator<Entry<String, byte[]>> iterator() {
+					KeyIterator keys = new KeyIterator();
+					return new Iterator<Entry<String, byte[]>>() {
+						@Override
+						public boolean hasNext() {
+							return keys.hasNext();
+						}
+
+						@Override
+						public Entry<String, byte[]> next() {
+							return new LazyEntry(keys.next());
+						}
+
+						@Override
+						public void remove() {
+							keys.remove();
+						}
+					};
+				}
+
+				@Override
+				public int size() {
+					return LazyArchiveMap.this.size();
+				}
+			};
+		return entrySet;
+	}
+
+	private void uncache(Object key) {
+		byte[] cached = cache.remove(key);
+		if (cached != null)
+			cacheSize -= cached.length;
+	}
+
+	/**
+	 * Iterates over a snapshot of the keys, so values can be loaded while iterating.
+	 */
+	private class KeyIterator implements Iterator<String> {
+		private final Iterator<String> it;
+		private String current;
+
+		private KeyIterator() {
+			synchronized(LazyArchiveMap.this) {
+				List<String> keys = new ArrayList<>(size());
+				keys.addAll(resident.keySet());
+				keys.addAll(index.keySet());
+				it = keys.iterator();
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			return it.hasNext();
+		}
+
+		@Override
+		public String next() {
+			return current = it.next();
+		}
+
+		@Override
+		public void remove() {
+			if (current == null)
+				throw new IllegalStateException();
+			LazyArchiveMap.this.remove(current);
+			current = null;
+		}
+	}
+
+	/**
+	 * Entry that fetches its value on demand.
+	 */
+	private class LazyEntry implements Entry<String, byte[]> {
+		private final String key;
+
+		private LazyEntry(String key) {
+			this.key = key;
+		}
+
+		@Override
+		public String getKey() {
+			return key;
+		}
+
+		@Override
+		public byte[] getValue() {
+			return get(key);
+		}
+
+		@Override
+		public byte[] setValue(byte[] value) {
+			return put(key, value);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Entry))
+				return false;
+			Entry<?, ?> other = (Entry<?, ?>) o;
+			return key.equals(other.getKey()) && Objects.equals(getValue(), other.getValue());
+		}
+
+		@Override
+		public int hashCode() {
+			return key.hashCode() ^ Objects.hashCode(getValue());
+		}
+	}
+}
@@ -1,14 +1,11 @@
 package me.coley.recaf.workspace;
 
-import me.coley.recaf.util.IOUtil;
-import me.coley.recaf.util.Log;
-
 import java.io.IOException;
-import java.io.InputStream;
 import java.util.*;
 
 /**
  * Resource for lazyily fetching classes via runtime lookups.
+ * Runtime image classes are indexed, see {@link RuntimeClassMap}.
  *
  * @author Matt
  */
@@ -29,36 +26,7 @@ public class LazyClasspathResource extends JavaResource {
 
 	@Override
 	protected Map<String, byte[]> loadClasses() throws IOException {
-		return new HashMap<String, byte[]>() {
-			private final Map<String, byte[]> cache = new HashMap<>();
-
-			@Override
-			public byte[] get(Object name) {
-				if (name == null)
-					return null;
-				String key = name.toString();
-				if (key.contains("."))
-					key = key.replace('.', '/');
-				if(cache.containsKey(key))
-					return cache.get(key);
-				// Can't do "computeIfAbsent" since we also want to store null values.
-				byte[] value = null;
-				try (InputStream in = ClassLoader.getSystemResourceAsStream(key + ".class")) {
-					if (in != null) {
-						value = IOUtil.toByteArray(in);
-					}
-				} catch (IOException ex) {
-					Log.error(ex, "Failed to fetch runtime bytecode of class '{}'", key);
-				}
-				cache.put(key, value);
-				return value;
-			}
-
-			@Override
-			public boolean containsKey(Object key) {
-				return get(key) != null;
-			}
-		};
+		return new RuntimeClassMap();
 	}
 
 	@Override
@@ -0,0 +1,223 @@
+package me.coley.recaf.workspace;
+
+import me.coley.recaf.parse.javadoc.DocumentationParseException;
+import me.coley.recaf.parse.javadoc.Javadocs;
+import me.coley.recaf.util.MappedZipFile;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static me.coley.recaf.util.Log.*;
+
+/**
+ * Map of class names to documentation that only holds the location of each documentation page in an archive.
+ * Pages are read and parsed when requested, and recently used pages are kept in a size-bounded cache.
+ * <br>
+ * Pages that fail to parse are logged and removed from the map.
+ * Replacing or removing a page does not parse it, so {@link #put(String, Javadocs)} and {@link #remove(Object)}
+ * return {@code null} for pages that were not parsed yet.
+ *
+ * @author Matt
+ */
+class LazyDocsMap extends AbstractMap<String, Javadocs> implements Closeable {
+	/**
+	 * Default number of parsed pages to keep.
+	 */
+	static final int DEFAULT_CACHE_SIZE = 64;
+	private final Map<String, MappedZipFile.Entry> index = new ConcurrentHashMap<>();
+	private final Map<String, Javadocs> resident = new ConcurrentHashMap<>();
+	private final Map<String, Javadocs> cache;
+	private final MappedZipFile archive;
+	private final Path path;
+	private Set<Entry<String, Javadocs>> entrySet;
+
+	/**
+	 * @param archive
+	 * 		Archive to read from. Closed when the map is {@link #clear() cleared} or {@link #close() closed}.
+	 * @param path
+	 * 		Location of the archive.
+	 * @param maxCacheSize
+	 * 		Maximum number of parsed pages to keep.
+	 */
+	LazyDocsMap(MappedZipFile archive, Path path, int maxCacheSize) {
+		this.archive = archive;
+		this.path = path;
+		this.cache = new LinkedHashMap<String, Javadocs>(16, 0.75F, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Javadocs> eldest) {
+				return size() > maxCacheSize;
+			}
+		};
+	}
+
+	/**
+	 * Register the location of a documentation page.
+	 *
+	 * @param name
+	 * 		Internal name of the documented class.
+	 * @param entry
+	 * 		Archive entry holding the page.
+	 */
+	void index(String name, MappedZipFile.Entry entry) {
+		index.put(name, entry);
+	}
+
+	@Override
+	public Javadocs get(Object key) {
+		Javadocs docs = getLoaded(key);
+		if (docs != null)
+			return docs;
+		MappedZipFile.Entry entry = index.get(key);
+		if (entry == null)
+			return null;
+		try {
+			docs = new Javadocs(entry.getName(), new String(archive.read(entry), StandardCharsets.UTF_8));
+			docs.parse();
+		} catch(IOException | DocumentationParseException ex) {
+			error(ex, "Failed to parse docs: {} in {}", entry.getName(), path);
+			index.remove(key);
+			return null;
+		}
+		synchronized(cache) {
+			cache.put((String) key, docs);
+		}
+		return docs;
+	}
+
+	@Override
+	public Javadocs put(String key, Javadocs value) {
+		Javadocs old = getLoaded(key);
+		uncache(key);
+		index.remove(key);
+		resident.put(key, value);
+		return old;
+	}
+
+	@Override
+	public Javadocs remove(Object key) {
+		Javadocs old = getLoaded(key);
+		uncache(key);
+		index.remove(key);
+		resident.remove(key);
+		return old;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return resident.containsKey(key) || index.containsKey(key);
+	}
+
+	@Override
+	public int size() {
+		return keys().size();
+	}
+
+	@Override
+	public void clear() {
+		resident.clear();
+		index.clear();
+		synchronized(cache) {
+			cache.clear();
+		}
+		try {
+			close();
+		} catch(IOException ex) {
+			error(ex, "Failed to close documentation archive");
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		archive.close();
+	}
+
+	/**
+	 * @return Snapshot of the names of all documented classes. Does not parse any page.
+	 */
+	@Override
+	public Set<String> keySet() {
+		return Collections.unmodifiableSet(keys());
+	}
+
+	@Override
+	public Set<Entry<String, Javadocs>> entrySet() {
+		if (entrySet == null)
+			entrySet = new AbstractSet<Entry<String, Javadocs>>() {
+				@Override
+				public Iterator<Entry<String, Javadocs>> iterator() {
+					Iterator<String> it = keys().iterator();
+					return new Iterator<Entry<String, Javadocs>>() {
+						private Entry<String, Javadocs> next;
+						private String current;
+
+						@Override
+						public boolean hasNext() {
+							// Pages that fail to parse are skipped
+							while (next == null && it.hasNext()) {
+								String name = it.next();
+								Javadocs docs = get(name);
+								if (docs != null)
+									next = new SimpleImmutableEntry<>(name, docs);
+							}
+							return next != null;
+						}
+
+						@Override
+						public Entry<String, Javadocs> next() {
+							if (!hasNext())
+								throw new NoSuchElementException();
+							Entry<String, Javadocs> entry = next;
+							current = entry.getKey();
+							next = null;
+							return entry;
+						}
+
+						@Override
+						public void remove() {
+							if (current == null)
+								throw new IllegalStateException();
+							LazyDocsMap.this.remove(current);
+							current = null;
+						}
+					};
+				}
+
+				@Override
+				public int size() {
+					return LazyDocsMap.this.size();
+				}
+			};
+		return entrySet;
+	}
+
+	private Set<String> keys() {
+		Set<String> keys = new LinkedHashSet<>(resident.keySet());
+		keys.addAll(index.keySet());
+		return keys;
+	}
+
+	/**
+	 * @param key
+	 * 		Internal name of the documented class.
+	 *
+	 * @return Documentation of the class if it is already parsed, otherwise {@code null}.
+	 */
+	private Javadocs getLoaded(Object key) {
+		Javadocs docs = resident.get(key);
+		if (docs != null)
+			return docs;
+		synchronized(cache) {
+			return cache.get(key);
+		}
+	}
+
+	private void uncache(Object key) {
+		synchronized(cache) {
+			cache.remove(key);
+		}
+	}
+}
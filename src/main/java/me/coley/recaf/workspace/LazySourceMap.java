@@ -0,0 +1,286 @@
+package me.coley.recaf.workspace;
+
+import me.coley.recaf.parse.source.SourceCode;
+import me.coley.recaf.parse.source.SourceCodeException;
+import me.coley.recaf.util.MappedZipFile;
+import me.coley.recaf.util.ThreadUtil;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinTask;
+
+import static me.coley.recaf.util.Log.*;
+
+/**
+ * Map of class names to source code that only holds the location of each source file in an archive.
+ * Sources are read and parsed the first time they are requested, and then kept.
+ * <br>
+ * Sources that fail to parse are logged and removed from the map.
+ *
+ * @author Matt
+ */
+class LazySourceMap extends AbstractMap<String, SourceCode> implements Closeable {
+	private final Map<String, MappedZipFile.Entry> index = new ConcurrentHashMap<>();
+	private final Map<String, SourceCode> parsed = new ConcurrentHashMap<>();
+	private final JavaResource resource;
+	private final MappedZipFile archive;
+	private final Path path;
+	private Set<Entry<String, SourceCode>> entrySet;
+
+	/**
+	 * @param resource
+	 * 		Resource the sources are attached to.
+	 * @param archive
+	 * 		Archive to read from. Closed when the map is {@link #clear() cleared} or {@link #close() closed}.
+	 * @param path
+	 * 		Location of the archive.
+	 */
+	LazySourceMap(JavaResource resource, MappedZipFile archive, Path path) {
+		this.resource = resource;
+		this.archive = archive;
+		this.path = path;
+	}
+
+	/**
+	 * Register the location of a source file.
+	 *
+	 * @param name
+	 * 		Internal name of the class defined by the source.
+	 * @param entry
+	 * 		Archive entry holding the source.
+	 */
+	void index(String name, MappedZipFile.Entry entry) {
+		index.put(name, entry);
+	}
+
+	/**
+	 * Parse all sources that have not been parsed yet on the {@link ThreadUtil#forkJoinPool() shared fork-join pool}.
+	 *
+	 * @return Task parsing the sources.
+	 */
+	ForkJoinTask<?> preload() {
+		return ThreadUtil.forkJoinPool().submit(() -> new ArrayList<>(index.keySet()).parallelStream()
+				.forEach(this::get));
+	}
+
+	/**
+	 * @param name
+	 * 		Internal name of the class defined by the source.
+	 *
+	 * @return Source code, not yet parsed. {@code null} if there is no source for the class.
+	 */
+	SourceCode getUnparsed(String name) {
+		SourceCode code = parsed.get(name);
+		if (code != null)
+			return code;
+		String text = read(name);
+		return text == null ? null : new SourceCode(resource, text);
+	}
+
+	/**
+	 * Record a source that has been parsed outside of this map.
+	 *
+	 * @param name
+	 * 		Internal name of the class defined by the source.
+	 * @param code
+	 * 		Parsed source code.
+	 */
+	void setParsed(String name, SourceCode code) {
+		parsed.put(name, code);
+		index.remove(name);
+	}
+
+	@Override
+	public SourceCode get(Object key) {
+		SourceCode code = parsed.get(key);
+		if (code != null || !(key instanceof String))
+			return code;
+		String name = (String) key;
+		String text = read(name);
+		if (text == null)
+			return null;
+		code = new SourceCode(resource, text);
+		try {
+			code.analyze();
+		} catch(SourceCodeException ex) {
+			error(ex, "Failed to parse source: {} in {}", name, path);
+			index.remove(name);
+			return null;
+		}
+		// Another thread may have parsed the same source in the meantime, use whichever was first
+		SourceCode existing = parsed.putIfAbsent(name, code);
+		index.remove(name);
+		return existing != null ? existing : code;
+	}
+
+	@Override
+	public SourceCode put(String key, SourceCode value) {
+		SourceCode old = parsed.put(key, value);
+		index.remove(key);
+		return old;
+	}
+
+	@Override
+	public SourceCode remove(Object key) {
+		SourceCode old = parsed.remove(key);
+		index.remove(key);
+		return old;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return parsed.containsKey(key) || index.containsKey(key);
+	}
+
+	@Override
+	public int size() {
+		return keys().size();
+	}
+
+	@Override
+	public void clear() {
+		parsed.clear();
+		index.clear();
+		try {
+			close();
+		} catch(IOException ex) {
+			error(ex, "Failed to close source archive");
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		archive.close();
+	}
+
+	/**
+	 * @return Snapshot of the names of all sources. Unlike iterating over the entries, this does not parse any source,
+	 * so it may include sources that fail to parse.
+	 */
+	@Override
+	public Set<String> keySet() {
+		return Collections.unmodifiableSet(keys());
+	}
+
+	@Override
+	public Set<Entry<String, SourceCode>> entrySet() {
+		if (entrySet == null)
+			entrySet = new AbstractSet<Entry<String, SourceCode>>() {
+				@Override
+				public Iterator<Entry<String, SourceCode>> iterator() {
+					Iterator<String> it = keys().iterator();
+					return new Iterator<Entry<String, SourceCode>>() {
+						private Entry<String, SourceCode> next;
+						private String current;
+
+						@Override
+						public boolean hasNext() {
+							// Sources that fail to parse are skipped
+							while (next == null && it.hasNext()) {
+								String name = it.next();
+								SourceCode code = get(name);
+								if (code != null)
+									next = new SimpleImmutableEntry<>(name, code);
+							}
+							return next != null;
+						}
+
+						@Override
+						public Entry<String, SourceCode> next() {
+							if (!hasNext())
+								throw new NoSuchElementException();
+							Entry<String, SourceCode> entry = next;
+							current = entry.getKey();
+							next = null;
+							return entry;
+						}
+
+						@Override
+						public void remove() {
+							if (current == null)
+								throw new IllegalStateException();
+							LazySourceMap.this.remove(current);
+							current = null;
+						}
+					};
+				}
+
+				@Override
+				public int size() {
+					return LazySourceMap.this.size();
+				}
+			};
+		return entrySet;
+	}
+
+	/**
+	 * @return Snapshot of the names of all sources.
+	 */
+	private Set<String> keys() {
+		Set<String> keys = new LinkedHashSet<>(parsed.keySet());
+		keys.addAll(index.keySet());
+		return keys;
+	}
+
+	/**
+	 * @param name
+	 * 		Internal name of the class defined by the source.
+	 *
+	 * @return Source text, or {@code null} if there is no source for the class.
+	 */
+	private String read(String name) {
+		MappedZipFile.Entry entry = index.get(name);
+		if (entry == null)
+			return null;
+		try {
+			return new String(archive.read(entry), StandardCharsets.UTF_8);
+		} catch(IOException ex) {
+			error(ex, "Failed to read source: {} in {}", entry.getName(), path);
+			return null;
+		}
+	}
+
+	/**
+	 * @param source
+	 * 		Source text.
+	 *
+	 * @return Package of the source in internal format, or an empty string for the default package.
+	 * Found by skipping over comments and whitespace, without parsing the source.
+	 */
+	static String readPackage(String source) {
+		int i = 0;
+		int len = source.length();
+		while (i < len) {
+			char c = source.charAt(i);
+			if (Character.isWhitespace(c) || c == '\uFEFF') {
+				i++;
+			} else if (source.startsWith("//", i)) {
+				int end = source.indexOf('\n', i);
+				i = end < 0 ? len : end + 1;
+			} else if (source.startsWith("/*", i)) {
+				int end = source.indexOf("*/", i + 2);
+				i = end < 0 ? len : end + 2;
+			} else {
+				break;
+			}
+		}
+		if (!source.startsWith("package", i) || i + 7 >= len || Character.isJavaIdentifierPart(source.charAt(i + 7)))
+			return "";
+		int end = source.indexOf(';', i);
+		if (end < 0)
+			return "";
+		StringBuilder sb = new StringBuilder();
+		for (int j = i + 7; j < end; j++) {
+			char c = source.charAt(j);
+			if (c == '.')
+				sb.append('/');
+			else if (!Character.isWhitespace(c))
+				sb.append(c);
+		}
+		return sb.toString();
+	}
+}
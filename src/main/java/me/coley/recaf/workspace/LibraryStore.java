@@ -0,0 +1,345 @@
+package me.coley.recaf.workspace;
+
+import me.coley.recaf.plugin.PluginsManager;
+import me.coley.recaf.plugin.api.LoadInterceptorPlugin;
+import me.coley.recaf.util.ClassHeader;
+import me.coley.recaf.util.ClassUtil;
+
+import java.io.*;
+import java.lang.ref.SoftReference;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static me.coley.recaf.util.Log.*;
+
+/**
+ * Process-wide store of library content, keyed by a hash of the library file.
+ * <br>
+ * Workspaces that reference the same library share one immutable, already validated class and file map, along with
+ * the direct parents of each class. Switching between workspaces does not load shared libraries again.
+ * Libraries are held softly, so they are dropped when memory runs low and no workspace uses them.
+ * <br>
+ * When a {@link #setDirectory(Path) directory} is set, libraries are also written to it, so they do not need to be
+ * validated again in later sessions.
+ * <br>
+ * Only non-primary resources backed by a single file are shared, and only when the default {@link EntryLoader} is
+ * used with no {@link LoadInterceptorPlugin load interceptors}, since those may change the content.
+ * Shared libraries are held fully in memory, so archives that are explicitly
+ * {@link JarResource#setLazyLoading(boolean) lazily loaded} are not shared.
+ * For the same reason sharing is {@link #setEnabled(boolean) disabled} by default, as libraries are otherwise
+ * lazily loaded and only read the classes that are used.
+ *
+ * @author Matt
+ */
+public final class LibraryStore {
+	private static final int MAGIC = 0x52434C42;
+	private static final int VERSION = 1;
+	private static final String EXTENSION = ".lib";
+	private static final Map<String, SoftReference<Library>> libraries = new ConcurrentHashMap<>();
+	private static final Map<String, Object> locks = new ConcurrentHashMap<>();
+	// Hashes of library files, so unchanged files are not hashed again
+	private static final Map<FileKey, String> hashes = new ConcurrentHashMap<>();
+	private static volatile boolean enabled;
+	private static volatile Path directory;
+
+	private LibraryStore() {
+	}
+
+	/**
+	 * @return {@code true} if libraries are shared between workspaces. Disabled by default.
+	 */
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * @param enabled
+	 * 		{@code true} to share libraries between workspaces.
+	 */
+	public static void setEnabled(boolean enabled) {
+		LibraryStore.enabled = enabled;
+	}
+
+	/**
+	 * @return Directory libraries are written to, or {@code null} if they are only held in memory.
+	 */
+	public static Path getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * @param directory
+	 * 		Directory to write libraries to, or {@code null} to only hold them in memory.
+	 */
+	public static void setDirectory(Path directory) {
+		LibraryStore.directory = directory;
+	}
+
+	/**
+	 * Drop all libraries held in memory. Workspaces that use them are not affected.
+	 */
+	public static void clear() {
+		libraries.clear();
+		hashes.clear();
+	}
+
+	/**
+	 * @param resource
+	 * 		Resource to check.
+	 *
+	 * @return {@code true} when the content of the resource can be shared.
+	 */
+	static boolean canShare(JavaResource resource) {
+		if (!enabled || resource.isPrimary() || !(resource instanceof FileSystemResource))
+			return false;
+		// Directories may change at any time
+		if (!Files.isRegularFile(((FileSystemResource) resource).getPath()))
+			return false;
+		// Lazily read classes keep the archive open, so they are not shared
+		if (resource instanceof JarResource && ((JarResource) resource).isLazyLoadingRequested())
+			return false;
+		return resource.getSkippedPrefixes().isEmpty() &&
+				resource.getEntryLoader().getClass() == EntryLoader.class &&
+				PluginsManager.getInstance().ofType(LoadInterceptorPlugin.class).isEmpty();
+	}
+
+	/**
+	 * @param resource
+	 * 		Resource to load, which {@link #canShare(JavaResource) can be shared}.
+	 *
+	 * @return Shared library of the resource.
+	 *
+	 * @throws IOException
+	 * 		When the resource could not be hashed or loaded.
+	 */
+	static Library load(JavaResource resource) throws IOException {
+		String key = key((FileSystemResource) resource);
+		Library library = get(key);
+		if (library != null)
+			return library;
+		synchronized(locks.computeIfAbsent(key, k -> new Object())) {
+			try {
+				library = get(key);
+				if (library != null)
+					return library;
+				library = read(key);
+				if (library == null) {
+					JavaResource.LoadedContent content = resource.loadContent();
+					Map<String, byte[]> classes = content != null ? content.getClasses() : resource.loadClasses();
+					Map<String, byte[]> files = content != null ? content.getFiles() : resource.loadFiles();
+					library = new Library(classes, files);
+					write(key, library);
+				}
+				libraries.put(key, new SoftReference<>(library));
+				return library;
+			} finally {
+				locks.remove(key);
+			}
+		}
+	}
+
+	private static Library get(String key) {
+		SoftReference<Library> ref = libraries.get(key);
+		return ref == null ? null : ref.get();
+	}
+
+	/**
+	 * @param resource
+	 * 		Resource backed by a single file.
+	 *
+	 * @return Key of the resource, made up of the hash of its file and the kind of resource.
+	 *
+	 * @throws IOException
+	 * 		When the file could not be read.
+	 */
+	private static String key(FileSystemResource resource) throws IOException {
+		Path path = resource.getPath().toAbsolutePath();
+		FileKey fileKey = new FileKey(path, Files.size(path), Files.getLastModifiedTime(path).toMillis());
+		String hash = hashes.get(fileKey);
+		if (hash == null) {
+			hash = hex(WorkspaceSnapshot.hashSource(resource));
+			hashes.put(fileKey, hash);
+		}
+		// Nested archives share the file of their parent, so the entry is part of the key
+		if (resource instanceof NestedArchiveResource)
+			hash = hex(WorkspaceSnapshot.hash((hash + "!/" +
+					((NestedArchiveResource) resource).getEntryPath()).getBytes(StandardCharsets.UTF_8)));
+		return hash + "-" + resource.getKind().name().toLowerCase();
+	}
+
+	private static String hex(byte[] data) {
+		StringBuilder sb = new StringBuilder();
+		for (byte b : data)
+			sb.append(String.format("%02x", b));
+		return sb.toString();
+	}
+
+	/**
+	 * @param key
+	 * 		Key of the library.
+	 *
+	 * @return Library from the {@link #getDirectory() directory}, or {@code null} if it is not stored there.
+	 */
+	private static Library read(String key) {
+		Path dir = directory;
+		if (dir == null)
+			return null;
+		Path path = dir.resolve(key + EXTENSION);
+		if (!Files.isRegularFile(path))
+			return null;
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION)
+				throw new IOException("Unsupported library format");
+			Map<String, byte[]> classes = readEntries(in);
+			Map<String, byte[]> files = readEntries(in);
+			debug("Read shared library '{}'", path);
+			return new Library(classes, files);
+		} catch(IOException ex) {
+			error(ex, "Failed to read shared library '{}'", path);
+			return null;
+		}
+	}
+
+	/**
+	 * @param key
+	 * 		Key of the library.
+	 * @param library
+	 * 		Library to write to the {@link #getDirectory() directory}, if one is set.
+	 */
+	private static void write(String key, Library library) {
+		Path dir = directory;
+		if (dir == null)
+			return;
+		Path temp = null;
+		try {
+			Files.createDirectories(dir);
+			temp = Files.createTempFile(dir, key, ".tmp");
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				writeEntries(out, library.getClasses());
+				writeEntries(out, library.getFiles());
+			}
+			Files.move(temp, dir.resolve(key + EXTENSION), StandardCopyOption.REPLACE_EXISTING);
+		} catch(IOException ex) {
+			error(ex, "Failed to write shared library to '{}'", dir);
+		} finally {
+			if (temp != null) {
+				try {
+					Files.deleteIfExists(temp);
+				} catch(IOException ex) {
+					// Already logged the failure to write
+				}
+			}
+		}
+	}
+
+	private static void writeEntries(DataOutputStream out, Map<String, byte[]> map) throws IOException {
+		out.writeInt(map.size());
+		for (Map.Entry<String, byte[]> e : map.entrySet()) {
+			byte[] name = e.getKey().getBytes(StandardCharsets.UTF_8);
+			out.writeInt(name.length);
+			out.write(name);
+			out.writeInt(e.getValue().length);
+			out.write(e.getValue());
+		}
+	}
+
+	private static Map<String, byte[]> readEntries(DataInputStream in) throws IOException {
+		int count = in.readInt();
+		if (count < 0)
+			throw new IOException("Malformed library");
+		Map<String, byte[]> map = new HashMap<>();
+		for (int i = 0; i < count; i++) {
+			byte[] name = new byte[in.readInt()];
+			in.readFully(name);
+			byte[] value = new byte[in.readInt()];
+			in.readFully(value);
+			map.put(new String(name, StandardCharsets.UTF_8), value);
+		}
+		return map;
+	}
+
+	/**
+	 * Immutable content of a shared library.
+	 */
+	static final class Library {
+		private final Map<String, byte[]> classes;
+		private final Map<String, byte[]> files;
+		private final Map<String, String[]> parents = new HashMap<>();
+
+		private Library(Map<String, byte[]> classes, Map<String, byte[]> files) {
+			this.classes = Collections.unmodifiableMap(new HashMap<>(classes));
+			this.files = Collections.unmodifiableMap(new HashMap<>(files));
+			for (Map.Entry<String, byte[]> e : this.classes.entrySet()) {
+				ClassHeader header = ClassUtil.readValidHeader(e.getValue());
+				if (header == null)
+					continue;
+				// Same order as the hierarchy graph, the super class followed by the interfaces
+				String[] interfaces = header.getInterfaces();
+				String[] edges = new String[interfaces.length + 1];
+				edges[0] = header.getSuperName();
+				System.arraycopy(interfaces, 0, edges, 1, interfaces.length);
+				parents.put(e.getKey(), edges);
+			}
+		}
+
+		/**
+		 * @return Map of class names to their bytecode.
+		 */
+		Map<String, byte[]> getClasses() {
+			return classes;
+		}
+
+		/**
+		 * @return Map of file names to their raw data.
+		 */
+		Map<String, byte[]> getFiles() {
+			return files;
+		}
+
+		/**
+		 * @param name
+		 * 		Class name.
+		 *
+		 * @return Super class name followed by the interface names of the class,
+		 * or {@code null} if the class is not in the library.
+		 */
+		String[] getParents(String name) {
+			String[] edges = parents.get(name);
+			return edges == null ? null : edges.clone();
+		}
+	}
+
+	/**
+	 * Location and state of a library file.
+	 */
+	private static final class FileKey {
+		private final Path path;
+		private final long size;
+		private final long modified;
+
+		private FileKey(Path path, long size, long modified) {
+			this.path = path;
+			this.size = size;
+			this.modified = modified;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o)
+				return true;
+			if (!(o instanceof FileKey))
+				return false;
+			FileKey other = (FileKey) o;
+			return size == other.size && modified == other.modified && path.equals(other.path);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(path, size, modified);
+		}
+	}
+}
@@ -0,0 +1,266 @@
+package me.coley.recaf.workspace;
+
+import java.lang.ref.WeakReference;
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Map of class names to bytecode that only holds a reference to each class loaded in the current VM.
+ * Bytecode is fetched on first access, and recently used values are kept in a size-bounded cache.
+ * <br>
+ * Values that are {@link #put(String, byte[]) put} into the map are kept in memory, along with the bytecode they
+ * replaced so the original can still be {@link #getOriginal(String) restored}.
+ * Classes that have been unloaded since they were indexed are dropped from the map when accessed.
+ * <br>
+ * Bytecode is fetched without holding the lock of the map, since fetching may retransform the class, during which
+ * class file transformers on other threads may need to access the map.
+ *
+ * @author Matt
+ */
+class LoadedClassMap extends AbstractMap<String, byte[]> {
+	/**
+	 * Default size of the cache, in bytes.
+	 */
+	static final long DEFAULT_CACHE_SIZE = 32L * 1024L * 1024L;
+	private final Map<String, WeakReference<Class<?>>> index = new LinkedHashMap<>();
+	private final Map<String, byte[]> resident = new LinkedHashMap<>();
+	private final Map<String, byte[]> originals = new HashMap<>();
+	private final LinkedHashMap<String, byte[]> cache = new LinkedHashMap<>(64, 0.75F, true);
+	private final Function<Class<?>, byte[]> fetcher;
+	private final long maxCacheSize;
+	private long cacheSize;
+	private Set<Entry<String, byte[]>> entrySet;
+
+	/**
+	 * @param fetcher
+	 * 		Function to fetch the current bytecode of a loaded class. May return {@code null} if it cannot be fetched.
+	 * @param maxCacheSize
+	 * 		Maximum number of bytes to keep in the cache.
+	 */
+	LoadedClassMap(Function<Class<?>, byte[]> fetcher, long maxCacheSize) {
+		this.fetcher = fetcher;
+		this.maxCacheSize = maxCacheSize;
+	}
+
+	/**
+	 * Register a loaded class. Does nothing if the map already contains the name.
+	 *
+	 * @param name
+	 * 		Internal class name.
+	 * @param cls
+	 * 		Loaded class.
+	 */
+	synchronized void index(String name, Class<?> cls) {
+		if (!containsKey(name))
+			index.put(name, new WeakReference<>(cls));
+	}
+
+	/**
+	 * @param name
+	 * 		Internal class name.
+	 *
+	 * @return Loaded class of the name, or {@code null} if it was never indexed or has been unloaded.
+	 */
+	synchronized Class<?> getRuntimeClass(String name) {
+		WeakReference<Class<?>> ref = index.get(name);
+		return ref == null ? null : ref.get();
+	}
+
+	/**
+	 * @param name
+	 * 		Internal class name.
+	 *
+	 * @return {@code true} if the class bytecode is fetched from the VM.
+	 * {@code false} if it is held in memory, or is not in the map.
+	 */
+	synchronized boolean isIndexed(String name) {
+		return index.containsKey(name) && !resident.containsKey(name);
+	}
+
+	/**
+	 * @param name
+	 * 		Internal class name.
+	 *
+	 * @return Supplier of the bytecode of the class as it was before any value was put into the map,
+	 * or {@code null} if the class was never indexed.
+	 */
+	synchronized Supplier<byte[]> getOriginal(String name) {
+		if (!index.containsKey(name))
+			return null;
+		return () -> {
+			synchronized(LoadedClassMap.this) {
+				byte[] original = originals.get(name);
+				if (original != null)
+					return original;
+			}
+			return fetch(name);
+		};
+	}
+
+	@Override
+	public byte[] get(Object key) {
+		synchronized(this) {
+			byte[] value = resident.get(key);
+			if (value != null || !index.containsKey(key))
+				return value;
+			value = cache.get(key);
+			if (value != null)
+				return value;
+		}
+		byte[] value = fetch((String) key);
+		if (value == null)
+			return null;
+		synchronized(this) {
+			// The class may have been replaced or removed while it was fetched
+			byte[] current = resident.get(key);
+			if (current != null || !index.containsKey(key))
+				return current;
+			cache(key, value);
+		}
+		return value;
+	}
+
+	private void cache(Object key, byte[] value) {
+		uncache(key);
+		cache.put((String) key, value);
+		cacheSize += value.length;
+		// Evict least recently used values, but always keep the value being returned
+		Iterator<byte[]> it = cache.values().iterator();
+		while (cacheSize > maxCacheSize && cache.size() > 1) {
+			cacheSize -= it.next().length;
+			it.remove();
+		}
+	}
+
+	@Override
+	public byte[] put(String key, byte[] value) {
+		byte[] old = get(key);
+		synchronized(this) {
+			byte[] previous = resident.get(key);
+			// Keep what the VM defines, since it can no longer be fetched once the class is redefined
+			if (previous == null && old != null && index.containsKey(key) && !originals.containsKey(key))
+				originals.put(key, old);
+			uncache(key);
+			resident.put(key, value);
+			return previous != null ? previous : old;
+		}
+	}
+
+	@Override
+	public byte[] remove(Object key) {
+		byte[] old = get(key);
+		synchronized(this) {
+			byte[] previous = resident.remove(key);
+			uncache(key);
+			index.remove(key);
+			originals.remove(key);
+			return previous != null ? previous : old;
+		}
+	}
+
+	@Override
+	public synchronized boolean containsKey(Object key) {
+		return resident.containsKey(key) || index.containsKey(key);
+	}
+
+	@Override
+	public synchronized int size() {
+		return keys().size();
+	}
+
+	@Override
+	public synchronized void clear() {
+		index.clear();
+		resident.clear();
+		originals.clear();
+		cache.clear();
+		cacheSize = 0;
+	}
+
+	@Override
+	public Set<String> keySet() {
+		return Collections.unmodifiableSet(keys());
+	}
+
+	@Override
+	public Set<Entry<String, byte[]>> entrySet() {
+		if (entrySet == null)
+			entrySet = new AbstractSet<Entry<String, byte[]>>() {
+				@Override
+				public Iterator<Entry<String, byte[]>> iterator() {
+					// Iterates over a snapshot of the keys, so values can be fetched while iterating
+					Iterator<String> it = keys().iterator();
+					return new Iterator<Entry<String, byte[]>>() {
+						private String current;
+
+						@Override
+						public boolean hasNext() {
+							return it.hasNext();
+						}
+
+						@Override
+						public Entry<String, byte[]> next() {
+							String key = current = it.next();
+							return new SimpleEntry<String, byte[]>(key, null) {
+								@Override
+								public byte[] getValue() {
+									return get(key);
+								}
+
+								@Override
+								public byte[] setValue(byte[] value) {
+									return put(key, value);
+								}
+							};
+						}
+
+						@Override
+						public void remove() {
+							if (current == null)
+								throw new IllegalStateException();
+							LoadedClassMap.this.remove(current);
+							current = null;
+						}
+					};
+				}
+
+				@Override
+				public int size() {
+					return LoadedClassMap.this.size();
+				}
+			};
+		return entrySet;
+	}
+
+	/**
+	 * @param name
+	 * 		Internal class name.
+	 *
+	 * @return Current bytecode of the class, or {@code null} if it could not be fetched.
+	 */
+	private byte[] fetch(String name) {
+		Class<?> cls;
+		synchronized(this) {
+			cls = getRuntimeClass(name);
+			// Unloaded classes can no longer be fetched
+			if (cls == null) {
+				index.remove(name);
+				return null;
+			}
+		}
+		return fetcher.apply(cls);
+	}
+
+	private synchronized Set<String> keys() {
+		Set<String> keys = new LinkedHashSet<>(resident.keySet());
+		keys.addAll(index.keySet());
+		return keys;
+	}
+
+	private void uncache(Object key) {
+		byte[] cached = cache.remove(key);
+		if (cached != null)
+			cacheSize -= cached.length;
+	}
+}
@@ -0,0 +1,127 @@
+package me.coley.recaf.workspace;
+
+import me.coley.recaf.util.IOUtil;
+import me.coley.recaf.util.MappedZipFile;
+
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.nio.ByteBuffer;
+import java.util.zip.ZipEntry;
+
+/**
+ * Jar resource nested in another archive, such as a library in {@code WEB-INF/lib/} of a war
+ * or in {@code BOOT-INF/lib/} of a fat jar.
+ * <br>
+ * The nested archive is read straight from the content of its parent, without extracting it.
+ * When the nested archive is stored uncompressed, as required by fat jars, it is a view of the parent's
+ * mapped file and nothing is copied. A compressed archive is inflated in memory, and kept while memory allows.
+ * Like other libraries, classes are {@link #isLazyLoading() lazily loaded}.
+ * <br>
+ * {@link #getPath()} is the file containing the outermost archive.
+ *
+ * @author Matt
+ */
+public class NestedArchiveResource extends JarResource {
+	private final ArchiveResource parent;
+	private final String entryName;
+	private SoftReference<byte[]> inflated;
+
+	/**
+	 * Constructs a nested archive resource.
+	 *
+	 * @param parent
+	 * 		Archive containing this one.
+	 * @param entryName
+	 * 		Name of the entry of this archive in the parent.
+	 *
+	 * @throws IOException
+	 * 		When the file of the parent does not exist.
+	 */
+	public NestedArchiveResource(ArchiveResource parent, String entryName) throws IOException {
+		super(parent.getPath());
+		this.parent = parent;
+		this.entryName = entryName;
+	}
+
+	/**
+	 * @return Archive containing this one.
+	 */
+	public ArchiveResource getParent() {
+		return parent;
+	}
+
+	/**
+	 * @return Name of the entry of this archive in the parent.
+	 */
+	public String getEntryName() {
+		return entryName;
+	}
+
+	/**
+	 * @return Location of this archive, as the path of the outermost archive
+	 * followed by the name of each nested entry, separated by {@code !/}.
+	 */
+	public String getLocation() {
+		return IOUtil.toString(getPath()) + "!/" + getEntryPath();
+	}
+
+	/**
+	 * @return Names of each nested entry from the outermost archive to this one, separated by {@code !/}.
+	 */
+	String getEntryPath() {
+		if (parent instanceof NestedArchiveResource)
+			return ((NestedArchiveResource) parent).getEntryPath() + "!/" + entryName;
+		return entryName;
+	}
+
+	@Override
+	protected synchronized MappedZipFile openArchive() throws IOException {
+		byte[] data = inflated == null ? null : inflated.get();
+		if (data != null)
+			return new MappedZipFile(ByteBuffer.wrap(data));
+		MappedZipFile outer = parent.openArchive();
+		try {
+			for (MappedZipFile.Entry entry : outer.getEntries()) {
+				if (!entry.getName().equals(entryName))
+					continue;
+				if (entry.getStoredMethod() == ZipEntry.STORED)
+					// Stored archives are a view of the parent's mapping, which stays open until this one is closed
+					return new MappedZipFile(outer.map(entry), outer);
+				// Compressed archives are inflated in memory, and kept while memory allows so they are inflated once
+				data = outer.read(entry);
+				inflated = new SoftReference<>(data);
+				outer.close();
+				return new MappedZipFile(ByteBuffer.wrap(data));
+			}
+		} catch(IOException | RuntimeException ex) {
+			outer.close();
+			throw ex;
+		}
+		outer.close();
+		throw new IOException("Archive '" + entryName + "' no longer exists in '" + parent + "'");
+	}
+
+	@Override
+	public void invalidate() {
+		super.invalidate();
+		// The parent may have changed, so the archive is read again when next opened
+		synchronized(this) {
+			inflated = null;
+		}
+	}
+
+	@Override
+	public ResourceLocation getShortName() {
+		return LiteralResourceLocation.ofKind(getKind(), entryName.substring(entryName.lastIndexOf('/') + 1));
+	}
+
+	@Override
+	public ResourceLocation getName() {
+		return LiteralResourceLocation.ofKind(getKind(), getLocation());
+	}
+
+	@Override
+	public String toString() {
+		return getShortName().toString();
+	}
+}
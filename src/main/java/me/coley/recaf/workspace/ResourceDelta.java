@@ -0,0 +1,207 @@
+package me.coley.recaf.workspace;
+
+import java.util.*;
+
+/**
+ * Changes made to the classes and files of a single resource, as part of a {@link WorkspaceEvent}.
+ * <br>
+ * Changes are coalesced relative to the content at the start of the event. For instance a class that is added and
+ * then removed again does not show up at all, and a class that is removed and then added again is changed.
+ *
+ * @author Matt
+ */
+public class ResourceDelta {
+	private final JavaResource resource;
+	private final Set<String> addedClasses = new LinkedHashSet<>();
+	private final Set<String> removedClasses = new LinkedHashSet<>();
+	private final Set<String> changedClasses = new LinkedHashSet<>();
+	private final Map<String, String> renamedClasses = new LinkedHashMap<>();
+	private final Set<String> addedFiles = new LinkedHashSet<>();
+	private final Set<String> removedFiles = new LinkedHashSet<>();
+	private final Set<String> changedFiles = new LinkedHashSet<>();
+	private boolean classesReset;
+	private boolean filesReset;
+
+	/**
+	 * @param resource
+	 * 		Changed resource.
+	 */
+	ResourceDelta(JavaResource resource) {
+		this.resource = resource;
+	}
+
+	/**
+	 * @return Changed resource.
+	 */
+	public JavaResource getResource() {
+		return resource;
+	}
+
+	/**
+	 * @return Names of classes that were added.
+	 */
+	public Set<String> getAddedClasses() {
+		return Collections.unmodifiableSet(addedClasses);
+	}
+
+	/**
+	 * @return Names of classes that were removed.
+	 */
+	public Set<String> getRemovedClasses() {
+		return Collections.unmodifiableSet(removedClasses);
+	}
+
+	/**
+	 * @return Names of classes whose bytecode was replaced.
+	 */
+	public Set<String> getChangedClasses() {
+		return Collections.unmodifiableSet(changedClasses);
+	}
+
+	/**
+	 * @return Map of old class names to new class names, for classes that were moved to a new name.
+	 * Renamed classes are not listed as removed or added.
+	 */
+	public Map<String, String> getRenamedClasses() {
+		return Collections.unmodifiableMap(renamedClasses);
+	}
+
+	/**
+	 * @return Names of files that were added.
+	 */
+	public Set<String> getAddedFiles() {
+		return Collections.unmodifiableSet(addedFiles);
+	}
+
+	/**
+	 * @return Names of files that were removed.
+	 */
+	public Set<String> getRemovedFiles() {
+		return Collections.unmodifiableSet(removedFiles);
+	}
+
+	/**
+	 * @return Names of files whose content was replaced.
+	 */
+	public Set<String> getChangedFiles() {
+		return Collections.unmodifiableSet(changedFiles);
+	}
+
+	/**
+	 * @return {@code true} when the classes were replaced in bulk, such as when they are loaded or the resource is
+	 * {@link JavaResource#invalidate() refreshed}. Individual class changes are not tracked in that case.
+	 */
+	public boolean isClassesReset() {
+		return classesReset;
+	}
+
+	/**
+	 * @return {@code true} when the files were replaced in bulk, such as when they are loaded or the resource is
+	 * {@link JavaResource#invalidate() refreshed}. Individual file changes are not tracked in that case.
+	 */
+	public boolean isFilesReset() {
+		return filesReset;
+	}
+
+	/**
+	 * @return {@code true} when there are no changes.
+	 */
+	public boolean isEmpty() {
+		return !classesReset && !filesReset && addedClasses.isEmpty() && removedClasses.isEmpty() &&
+				changedClasses.isEmpty() && renamedClasses.isEmpty() && addedFiles.isEmpty() &&
+				removedFiles.isEmpty() && changedFiles.isEmpty();
+	}
+
+	/**
+	 * @param name
+	 * 		Class name.
+	 * @param existed
+	 * 		{@code true} if the class existed before the change.
+	 * @param exists
+	 * 		{@code true} if the class exists after the change.
+	 */
+	void onClass(String name, boolean existed, boolean exists) {
+		if (classesReset)
+			return;
+		// A removed rename target undoes the rename
+		if (existed && !exists) {
+			for (Iterator<Map.Entry<String, String>> it = renamedClasses.entrySet().iterator(); it.hasNext(); ) {
+				Map.Entry<String, String> e = it.next();
+				if (e.getValue().equals(name)) {
+					it.remove();
+					changedClasses.remove(name);
+					removedClasses.add(e.getKey());
+					return;
+				}
+			}
+		}
+		update(addedClasses, removedClasses, changedClasses, name, existed, exists);
+	}
+
+	/**
+	 * @param name
+	 * 		File name.
+	 * @param existed
+	 * 		{@code true} if the file existed before the change.
+	 * @param exists
+	 * 		{@code true} if the file exists after the change.
+	 */
+	void onFile(String name, boolean existed, boolean exists) {
+		if (!filesReset)
+			update(addedFiles, removedFiles, changedFiles, name, existed, exists);
+	}
+
+	/**
+	 * Record that a removed class was added again under a new name.
+	 *
+	 * @param oldName
+	 * 		Name the class was removed from.
+	 * @param newName
+	 * 		Name the class was added as.
+	 */
+	void onRename(String oldName, String newName) {
+		if (classesReset || !removedClasses.contains(oldName) || !addedClasses.contains(newName))
+			return;
+		removedClasses.remove(oldName);
+		addedClasses.remove(newName);
+		renamedClasses.put(oldName, newName);
+	}
+
+	/**
+	 * Record that the classes were replaced in bulk.
+	 */
+	void onClassesReset() {
+		classesReset = true;
+		addedClasses.clear();
+		removedClasses.clear();
+		changedClasses.clear();
+		renamedClasses.clear();
+	}
+
+	/**
+	 * Record that the files were replaced in bulk.
+	 */
+	void onFilesReset() {
+		filesReset = true;
+		addedFiles.clear();
+		removedFiles.clear();
+		changedFiles.clear();
+	}
+
+	private static void update(Set<String> added, Set<String> removed, Set<String> changed,
+							   String name, boolean existed, boolean exists) {
+		if (!existed && exists) {
+			if (removed.remove(name))
+				changed.add(name);
+			else
+				added.add(name);
+		} else if (existed && exists) {
+			if (!added.contains(name))
+				changed.add(name);
+		} else if (existed) {
+			changed.remove(name);
+			if (!added.remove(name))
+				removed.add(name);
+		}
+	}
+}
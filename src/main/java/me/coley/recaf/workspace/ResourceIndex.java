@@ -0,0 +1,159 @@
+package me.coley.recaf.workspace;
+
+import me.coley.recaf.util.struct.ListeningMap;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Index of names to the workspace resource that defines them.
+ * The index is kept up to date by listening to the maps of each resource, so a lookup is a single hash probe
+ * instead of probing the primary resource and then each library in turn.
+ * <br>
+ * When a name is defined by multiple resources the primary resource wins,
+ * followed by the libraries in the order they are listed in the workspace.
+ *
+ * @author Matt
+ */
+class ResourceIndex {
+	private final Map<JavaResource, Hook> hooks = new IdentityHashMap<>();
+	private final AtomicLong modifications = new AtomicLong();
+	private final Workspace workspace;
+	private final Function<JavaResource, ListeningMap<String, byte[]>> mapper;
+	private volatile Map<String, JavaResource> index = Collections.emptyMap();
+	private volatile boolean stale = true;
+	private List<JavaResource> order = Collections.emptyList();
+
+	/**
+	 * @param workspace
+	 * 		Workspace to index.
+	 * @param mapper
+	 * 		Function to get the indexed map of a resource.
+	 */
+	ResourceIndex(Workspace workspace, Function<JavaResource, ListeningMap<String, byte[]>> mapper) {
+		this.workspace = workspace;
+		this.mapper = mapper;
+	}
+
+	/**
+	 * @param name
+	 * 		Name of item.
+	 *
+	 * @return Resource defining the item, or {@code null} if neither the primary resource nor any library does.
+	 */
+	JavaResource get(String name) {
+		if (name == null)
+			return null;
+		if (stale)
+			rebuild();
+		return index.get(name);
+	}
+
+	/**
+	 * @return Number of modifications made to the indexed maps, or to the set of indexed resources.
+	 */
+	long getModificationCount() {
+		// Rebuilding ensures all current resources are hooked, so no modification goes uncounted
+		if (stale)
+			rebuild();
+		return modifications.get();
+	}
+
+	/**
+	 * Mark the index as out of date. It will be rebuilt on the next lookup.
+	 */
+	void invalidate() {
+		modifications.incrementAndGet();
+		stale = true;
+	}
+
+	private synchronized void rebuild() {
+		if (!stale)
+			return;
+		// Stale is reset first, so resets that happen while rebuilding are not lost
+		stale = false;
+		List<JavaResource> newOrder = new ArrayList<>();
+		newOrder.add(workspace.getPrimary());
+		newOrder.addAll(workspace.getLibraries());
+		// Unhook resources that are no longer in the workspace
+		for (Iterator<Map.Entry<JavaResource, Hook>> it = hooks.entrySet().iterator(); it.hasNext(); ) {
+			Map.Entry<JavaResource, Hook> e = it.next();
+			if (!newOrder.contains(e.getKey())) {
+				e.getValue().unhook();
+				it.remove();
+			}
+		}
+		Map<String, JavaResource> newIndex = new ConcurrentHashMap<>();
+		for (JavaResource resource : newOrder) {
+			ListeningMap<String, byte[]> map = mapper.apply(resource);
+			hooks.computeIfAbsent(resource, r -> new Hook(r, map));
+			for (String name : map.keySet())
+				newIndex.putIfAbsent(name, resource);
+		}
+		order = newOrder;
+		index = newIndex;
+	}
+
+	private synchronized void onPut(JavaResource resource, String name) {
+		if (stale || name == null)
+			return;
+		JavaResource current = index.get(name);
+		if (current == null || rank(resource) <= rank(current))
+			index.put(name, resource);
+	}
+
+	private synchronized void onRemove(JavaResource resource, Object key) {
+		if (stale || !(key instanceof String))
+			return;
+		String name = (String) key;
+		if (index.get(name) != resource)
+			return;
+		// The item is still in the map when the listener is called, so the resource is skipped explicitly
+		for (JavaResource other : order)
+			if (other != resource && mapper.apply(other).containsKey(name)) {
+				index.put(name, other);
+				return;
+			}
+		index.remove(name);
+	}
+
+	private int rank(JavaResource resource) {
+		int rank = order.indexOf(resource);
+		return rank < 0 ? Integer.MAX_VALUE : rank;
+	}
+
+	/**
+	 * Listeners registered on the map of a single resource.
+	 */
+	private class Hook {
+		private final ListeningMap<String, byte[]> map;
+		private final BiConsumer<String, byte[]> put;
+		private final Consumer<Object> remove;
+		private final BiConsumer<String, byte[]> update;
+		private final Runnable reset;
+
+		private Hook(JavaResource resource, ListeningMap<String, byte[]> map) {
+			this.map = map;
+			this.put = (name, value) -> onPut(resource, name);
+			this.remove = key -> onRemove(resource, key);
+			// Counted once the backing map has changed, so a set built for the new count includes the change
+			this.update = (name, old) -> modifications.incrementAndGet();
+			this.reset = ResourceIndex.this::invalidate;
+			map.getPutListeners().add(put);
+			map.getRemoveListeners().add(remove);
+			map.getUpdateListeners().add(update);
+			map.getResetListeners().add(reset);
+		}
+
+		private void unhook() {
+			map.getPutListeners().remove(put);
+			map.getRemoveListeners().remove(remove);
+			map.getUpdateListeners().remove(update);
+			map.getResetListeners().remove(reset);
+		}
+	}
+}
@@ -0,0 +1,190 @@
+package me.coley.recaf.workspace;
+
+import me.coley.recaf.util.IOUtil;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static me.coley.recaf.util.Log.*;
+
+/**
+ * Read-only map of runtime class names to their bytecode.
+ * <br>
+ * When the runtime image is available through the {@code jrt:/} file system, an index of packages to the modules
+ * defining them is built once. The classes of a package are listed the first time the package is looked up, so
+ * checking if a class exists never reads any bytecode. Other classes, such as those on the application classpath or
+ * the runtime classes of Java 8, are resolved through the system class loader.
+ * <br>
+ * Recently read bytecode is kept in a size-bounded cache. The map cannot be iterated.
+ *
+ * @author Matt
+ */
+class RuntimeClassMap extends AbstractMap<String, byte[]> {
+	private static final long MAX_CACHE_SIZE = 16L * 1024L * 1024L;
+	private static final int MAX_FALLBACK_ENTRIES = 4096;
+	private static final String CLASS_EXT = ".class";
+	private final Map<String, List<Path>> packages = new HashMap<>();
+	private final Map<String, Map<String, Path>> packageClasses = new ConcurrentHashMap<>();
+	private final LinkedHashMap<String, byte[]> cache = new LinkedHashMap<>(256, 0.75F, true);
+	private final Map<String, Boolean> fallback = new LinkedHashMap<String, Boolean>(256, 0.75F, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+			return size() > MAX_FALLBACK_ENTRIES;
+		}
+	};
+	private long cacheSize;
+
+	/**
+	 * Create the map, indexing the runtime image if it is available.
+	 */
+	RuntimeClassMap() {
+		FileSystem jrt;
+		try {
+			jrt = FileSystems.getFileSystem(URI.create("jrt:/"));
+		} catch(ProviderNotFoundException | FileSystemNotFoundException ex) {
+			// Java 8, runtime classes are on the boot classpath
+			return;
+		}
+		// The "packages" directory holds a directory for each package, which links to the modules defining it
+		try (DirectoryStream<Path> packageDirs = Files.newDirectoryStream(jrt.getPath("/packages"))) {
+			for (Path packageDir : packageDirs) {
+				String packageName = packageDir.getFileName().toString();
+				String packagePath = packageName.replace('.', '/');
+				List<Path> locations = new ArrayList<>(1);
+				try (DirectoryStream<Path> modules = Files.newDirectoryStream(packageDir)) {
+					for (Path module : modules)
+						locations.add(jrt.getPath("/modules", module.getFileName().toString(), packagePath));
+				}
+				packages.put(packagePath, locations);
+			}
+		} catch(IOException ex) {
+			error(ex, "Failed to index runtime image, falling back to classpath lookups");
+			packages.clear();
+		}
+	}
+
+	@Override
+	public byte[] get(Object name) {
+		String key = normalize(name);
+		if (key == null)
+			return null;
+		synchronized(cache) {
+			byte[] value = cache.get(key);
+			if (value != null)
+				return value;
+		}
+		byte[] value = read(key);
+		if (value != null) {
+			synchronized(cache) {
+				cache.put(key, value);
+				cacheSize += value.length;
+				// Evict least recently used values, but always keep the value being returned
+				Iterator<byte[]> it = cache.values().iterator();
+				while (cacheSize > MAX_CACHE_SIZE && cache.size() > 1) {
+					cacheSize -= it.next().length;
+					it.remove();
+				}
+			}
+		}
+		return value;
+	}
+
+	@Override
+	public boolean containsKey(Object name) {
+		String key = normalize(name);
+		if (key == null)
+			return false;
+		if (locate(key) != null)
+			return true;
+		synchronized(fallback) {
+			Boolean exists = fallback.get(key);
+			if (exists != null)
+				return exists;
+		}
+		boolean exists = ClassLoader.getSystemResource(key + CLASS_EXT) != null;
+		synchronized(fallback) {
+			fallback.put(key, exists);
+		}
+		return exists;
+	}
+
+	@Override
+	public Set<Entry<String, byte[]>> entrySet() {
+		return Collections.emptySet();
+	}
+
+	/**
+	 * @param key
+	 * 		Internal class name.
+	 *
+	 * @return Bytecode of the class, or {@code null} if no such class exists.
+	 */
+	private byte[] read(String key) {
+		try {
+			Path path = locate(key);
+			if (path != null)
+				return Files.readAllBytes(path);
+			try (InputStream in = ClassLoader.getSystemResourceAsStream(key + CLASS_EXT)) {
+				if (in != null)
+					return IOUtil.toByteArray(in);
+			}
+		} catch(IOException ex) {
+			error(ex, "Failed to fetch runtime bytecode of class '{}'", key);
+		}
+		return null;
+	}
+
+	/**
+	 * @param key
+	 * 		Internal class name.
+	 *
+	 * @return Location of the class in the runtime image, or {@code null} if it is not a runtime image class.
+	 */
+	private Path locate(String key) {
+		int split = key.lastIndexOf('/');
+		if (split < 0 || packages.isEmpty())
+			return null;
+		String packagePath = key.substring(0, split);
+		List<Path> locations = packages.get(packagePath);
+		if (locations == null)
+			return null;
+		return packageClasses.computeIfAbsent(packagePath, k -> listClasses(locations))
+				.get(key.substring(split + 1));
+	}
+
+	/**
+	 * @param locations
+	 * 		Package directories in the runtime image.
+	 *
+	 * @return Map of simple class names to their location.
+	 */
+	private static Map<String, Path> listClasses(List<Path> locations) {
+		Map<String, Path> classes = new HashMap<>();
+		for (Path location : locations) {
+			if (!Files.isDirectory(location))
+				continue;
+			try (DirectoryStream<Path> files = Files.newDirectoryStream(location, "*" + CLASS_EXT)) {
+				for (Path file : files) {
+					String fileName = file.getFileName().toString();
+					classes.putIfAbsent(fileName.substring(0, fileName.length() - CLASS_EXT.length()), file);
+				}
+			} catch(IOException ex) {
+				error(ex, "Failed to list runtime package '{}'", location);
+			}
+		}
+		return classes;
+	}
+
+	private static String normalize(Object name) {
+		if (name == null)
+			return null;
+		String key = name.toString();
+		if (key.indexOf('.') >= 0)
+			key = key.replace('.', '/');
+		return key;
+	}
+}
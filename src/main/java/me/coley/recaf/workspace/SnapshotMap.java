@@ -0,0 +1,330 @@
+package me.coley.recaf.workspace;
+
+import me.coley.recaf.util.VMUtil;
+
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.util.*;
+import java.util.function.Supplier;
+
+/**
+ * Map of names to content restored from a {@link WorkspaceSnapshot}.
+ * Only the location of each value in the memory mapped snapshot is held until the value is first accessed.
+ * <br>
+ * The original content of each item is kept so that it can serve as the base of the item's history,
+ * see {@link #getOriginal(String)}.
+ *
+ * @author Matt
+ */
+class SnapshotMap extends AbstractMap<String, byte[]> {
+	private final Map<String, Slice> index = new LinkedHashMap<>();
+	private final Map<String, byte[]> resident = new LinkedHashMap<>();
+	private final Map<String, byte[]> originals = new HashMap<>();
+	private final Mapping mapping;
+	private boolean released;
+	private Set<String> keySet;
+	private Set<Entry<String, byte[]>> entrySet;
+
+	/**
+	 * @param mapping
+	 * 		Mapped snapshot to read values from.
+	 */
+	SnapshotMap(Mapping mapping) {
+		this.mapping = mapping;
+		mapping.retain();
+	}
+
+	/**
+	 * Register the location of a value.
+	 *
+	 * @param name
+	 * 		Item name.
+	 * @param position
+	 * 		Position of the value in the snapshot file.
+	 * @param length
+	 * 		Length of the value.
+	 * @param original
+	 * 		Original content of the item, if it was modified before the snapshot was taken.
+	 * {@code null} to use the value itself as the original.
+	 */
+	synchronized void index(String name, long position, int length, byte[] original) {
+		index.put(name, new Slice(position, length));
+		if (original != null)
+			originals.put(name, original);
+	}
+
+	/**
+	 * Releases the mapping if no values are left to be read from it.
+	 */
+	synchronized void trim() {
+		if (index.isEmpty() && !released) {
+			released = true;
+			mapping.release();
+		}
+	}
+
+	/**
+	 * @param name
+	 * 		Item name.
+	 *
+	 * @return Supplier of the content of the item as it was before it was modified, regardless of any value put
+	 * into the map since. {@code null} if the original content of the item is unknown.
+	 */
+	synchronized Supplier<byte[]> getOriginal(String name) {
+		if (!originals.containsKey(name) && !index.containsKey(name))
+			return null;
+		return () -> {
+			synchronized(SnapshotMap.this) {
+				// Reading the value from the snapshot registers it as the original
+				byte[] original = originals.get(name);
+				return original != null ? original : get(name);
+			}
+		};
+	}
+
+	@Override
+	public synchronized byte[] get(Object key) {
+		byte[] value = resident.get(key);
+		if (value != null)
+			return value;
+		Slice slice = index.remove(key);
+		if (slice == null)
+			return null;
+		value = mapping.read(slice.position, slice.length);
+		resident.put((String) key, value);
+		originals.putIfAbsent((String) key, value);
+		trim();
+		return value;
+	}
+
+	@Override
+	public synchronized byte[] put(String key, byte[] value) {
+		byte[] old = get(key);
+		resident.put(key, value);
+		return old;
+	}
+
+	@Override
+	public synchronized byte[] remove(Object key) {
+		byte[] old = get(key);
+		resident.remove(key);
+		return old;
+	}
+
+	@Override
+	public synchronized boolean containsKey(Object key) {
+		return resident.containsKey(key) || index.containsKey(key);
+	}
+
+	@Override
+	public synchronized int size() {
+		return resident.size() + index.size();
+	}
+
+	@Override
+	public synchronized void clear() {
+		resident.clear();
+		index.clear();
+		originals.clear();
+		trim();
+	}
+
+	@Override
+	public Set<String> keySet() {
+		if (keySet == null)
+			keySet = new AbstractSet<String>() {
+				@Override
+				public Iterator<String> iterator() {
+					return new KeyIterator();
+				}
+
+				@Override
+				public int size() {
+					return SnapshotMap.this.size();
+				}
+
+				@Override
+				public boolean contains(Object o) {
+					return containsKey(o);
+				}
+
+				@Override
+				public boolean remove(Object o) {
+					boolean contained = containsKey(o);
+					SnapshotMap.this.remove(o);
+					return contained;
+				}
+			};
+		return keySet;
+	}
+
+	@Override
+	public Set<Entry<String, byte[]>> entrySet() {
+		if (entrySet == null)
+			entrySet = new AbstractSet<Entry<String, byte[]>>() {
+				@Override
+				public Iterator<Entry<String, byte[]>> iterator() {
+					KeyIterator keys = new KeyIterator();
+					return new Iterator<Entry<String, byte[]>>() {
+						@Override
+						public boolean hasNext() {
+							return keys.hasNext();
+						}
+
+						@Override
+						public Entry<String, byte[]> next() {
+							return new LazyEntry(keys.next());
+						}
+
+						@Override
+						public void remove() {
+							keys.remove();
+						}
+					};
+				}
+
+				@Override
+				public int size() {
+					return SnapshotMap.this.size();
+				}
+			};
+		return entrySet;
+	}
+
+	/**
+	 * Memory mapped snapshot, shared by the maps restored from it.
+	 * The mapping is released once each map has read all of its values or has been cleared,
+	 * so that the snapshot file can be replaced.
+	 */
+	static class Mapping {
+		private final MappedByteBuffer buffer;
+		private int users = 1;
+
+		/**
+		 * The mapping starts out retained by its creator, which must {@link #release()} it when done.
+		 *
+		 * @param buffer
+		 * 		Mapped snapshot file.
+		 */
+		Mapping(MappedByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		/**
+		 * @param position
+		 * 		Position in the snapshot file.
+		 * @param length
+		 * 		Length of the data.
+		 *
+		 * @return Copy of the data.
+		 */
+		synchronized byte[] read(long position, int length) {
+			if (users == 0)
+				throw new IllegalStateException("Snapshot mapping was released");
+			byte[] value = new byte[length];
+			ByteBuffer view = buffer.duplicate();
+			view.position((int) position);
+			view.get(value);
+			return value;
+		}
+
+		private synchronized void retain() {
+			users++;
+		}
+
+		/**
+		 * Release one use of the mapping. The mapping is unmapped once it is no longer used.
+		 */
+		synchronized void release() {
+			if (users > 0 && --users == 0)
+				VMUtil.unmap(buffer);
+		}
+	}
+
+	/**
+	 * Location of a value in the snapshot file.
+	 */
+	private static class Slice {
+		private final long position;
+		private final int length;
+
+		private Slice(long position, int length) {
+			this.position = position;
+			this.length = length;
+		}
+	}
+
+	/**
+	 * Iterates over a snapshot of the keys, so values can be loaded while iterating.
+	 */
+	private class KeyIterator implements Iterator<String> {
+		private final Iterator<String> it;
+		private String current;
+
+		private KeyIterator() {
+			synchronized(SnapshotMap.this) {
+				List<String> keys = new ArrayList<>(size());
+				keys.addAll(resident.keySet());
+				keys.addAll(index.keySet());
+				it = keys.iterator();
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			return it.hasNext();
+		}
+
+		@Override
+		public String next() {
+			return current = it.next();
+		}
+
+		@Override
+		public void remove() {
+			if (current == null)
+				throw new IllegalStateException();
+			SnapshotMap.this.remove(current);
+			current = null;
+		}
+	}
+
+	/**
+	 * Entry that fetches its value on demand.
+	 */
+	private class LazyEntry implements Entry<String, byte[]> {
+		private final String key;
+
+		private LazyEntry(String key) {
+			this.key = key;
+		}
+
+		@Override
+		public String getKey() {
+			return key;
+		}
+
+		@Override
+		public byte[] getValue() {
+			return get(key);
+		}
+
+		@Override
+		public byte[] setValue(byte[] value) {
+			return put(key, value);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Entry))
+				return false;
+			Entry<?, ?> other = (Entry<?, ?>) o;
+			return key.equals(other.getKey()) && Objects.equals(getValue(), other.getValue());
+		}
+
+		@Override
+		public int hashCode() {
+			return key.hashCode() ^ Objects.hashCode(getValue());
+		}
+	}
+}
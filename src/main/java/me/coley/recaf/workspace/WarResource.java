@@ -1,14 +1,12 @@
 package me.coley.recaf.workspace;
 
-import me.coley.recaf.util.IOUtil;
+import me.coley.recaf.util.MappedZipFile;
 
-import java.io.*;
+import java.io.IOException;
 import java.nio.file.Path;
-import java.util.Enumeration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
-import java.util.zip.ZipInputStream;
 
 /**
  * Importable war resource.
@@ -34,28 +32,22 @@ public class WarResource extends ArchiveResource {
 	@Override
 	protected Map<String, byte[]> loadClasses() throws IOException {
 		// iterate war entries
-		ByteArrayOutputStream out = new ByteArrayOutputStream();
-		byte[] buffer = new byte[8192];
 		EntryLoader loader = getEntryLoader();
-		ZipInputStream zis = new ZipInputStream(new FileInputStream(getPath().toFile()));
-		ZipEntry entry;
-		while ((entry = zis.getNextEntry()) != null) {
-			// verify entries are classes and valid files
-			// - skip intentional garbage / zip file abnormalities
-			if (shouldSkip(entry.getName()))
-				continue;
-			if(!loader.isValidFileEntry(entry))
-				continue;
-			if (loader.isValidClassEntry(entry)) {
-				out.reset();
-				byte[] in = IOUtil.toByteArray(zis, out, buffer);
-				// There is no possible way a "class" under 30 bytes is valid
-				if (in.length < 30)
+		try (MappedZipFile zipFile = openArchive()) {
+			for (MappedZipFile.Entry entry : zipFile.getEntries()) {
+				// verify entries are classes and valid files
+				// - skip intentional garbage / zip file abnormalities
+				if (shouldSkip(entry.getName()))
+					continue;
+				if(!loader.isValidFileEntry(entry))
 					continue;
-				String name = entry.getName();
-				if (name.startsWith(WAR_CLASS_PREFIX))
-					name = name.substring(WAR_CLASS_PREFIX.length());
-				loader.onClass(name, in);
+				if (loader.isValidClassEntry(entry)) {
+					byte[] in = zipFile.read(entry);
+					// There is no possible way a "class" under 30 bytes is valid
+					if (in.length < 30)
+						continue;
+					loader.onClass(getClassName(entry), in);
+				}
 			}
 		}
 		loader.finishClasses();
@@ -65,28 +57,53 @@ public class WarResource extends ArchiveResource {
 	@Override
 	protected Map<String, byte[]> loadFiles() throws IOException {
 		// iterate war entries
-		ByteArrayOutputStream out = new ByteArrayOutputStream();
-		byte[] buffer = new byte[8192];
 		EntryLoader loader = getEntryLoader();
-		try (ZipFile zipFile = new ZipFile(getPath().toFile())) {
-			Enumeration<? extends ZipEntry> entries = zipFile.entries();
-			while(entries.hasMoreElements()) {
+		try (MappedZipFile zipFile = openArchive()) {
+			for (MappedZipFile.Entry entry : zipFile.getEntries()) {
 				// verify entries are not classes and are valid files
 				// - skip intentional garbage / zip file abnormalities
-				ZipEntry entry = entries.nextElement();
 				if (shouldSkip(entry.getName()))
 					continue;
 				if(loader.isValidClassEntry(entry))
 					continue;
 				if(!loader.isValidFileEntry(entry))
 					continue;
-				out.reset();
-				InputStream stream = zipFile.getInputStream(entry);
-				byte[] in = IOUtil.toByteArray(stream, out, buffer);
+				byte[] in = zipFile.read(entry);
 				loader.onFile(entry.getName(), in);
 			}
 		}
 		loader.finishFiles();
 		return loader.getFiles();
 	}
+
+	@Override
+	protected LoadedContent loadContent() throws IOException {
+		EntryLoader loader = getEntryLoader();
+		try (MappedZipFile zipFile = openArchive()) {
+			List<MappedZipFile.Entry> entries = new ArrayList<>();
+			for (MappedZipFile.Entry entry : zipFile.getEntries()) {
+				// skip intentional garbage / zip file abnormalities
+				if (!shouldSkip(entry.getName()) && loader.isValidFileEntry(entry))
+					entries.add(entry);
+			}
+			// Only class entries have their prefix removed, and files never include class entries
+			loader.onEntries(entries, entry -> loader.isValidClassEntry(entry) ? getClassName(entry) : entry.getName(),
+					entry -> {
+						if (!loader.isValidClassEntry(entry))
+							return null;
+						byte[] in = zipFile.read(entry);
+						// There is no possible way a "class" under 30 bytes is valid
+						return in.length < 30 ? null : in;
+					},
+					entry -> loader.isValidClassEntry(entry) ? null : zipFile.read(entry), false);
+		}
+		return new LoadedContent(loader.getClasses(), loader.getFiles());
+	}
+
+	private static String getClassName(MappedZipFile.Entry entry) {
+		String name = entry.getName();
+		if (name.startsWith(WAR_CLASS_PREFIX))
+			name = name.substring(WAR_CLASS_PREFIX.length());
+		return name;
+	}
 }
@@ -14,18 +14,27 @@ import me.coley.recaf.graph.inheritance.HierarchyGraph;
 import me.coley.recaf.mapping.AsmMappingUtils;
 import me.coley.recaf.parse.javadoc.Javadocs;
 import me.coley.recaf.parse.source.*;
+import me.coley.recaf.search.ConstantIndex;
 import me.coley.recaf.util.Log;
 import me.coley.recaf.util.ThreadUtil;
 import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.tree.ClassNode;
 
 import java.io.File;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 /**
  * Input manager
+ * <br>
+ * The sets of class names and classes returned by the workspace, such as {@link #getClassNames()} and
+ * {@link #getPrimaryClasses()}, are unmodifiable snapshots shared by all callers, and throw
+ * {@link UnsupportedOperationException} when modified. Callers that need a modifiable set must copy it first.
  *
  * @author Matt
  */
@@ -33,10 +42,22 @@ public class Workspace {
 	private static final LazyClasspathResource CP = LazyClasspathResource.get();
 	private final Map<String, String> aggregatedMappings = new TreeMap<>();
 	private final PhantomResource phantoms = new PhantomResource();
+	private final ResourceIndex classIndex = new ResourceIndex(this, JavaResource::getClasses);
+	private final ResourceIndex fileIndex = new ResourceIndex(this, JavaResource::getFiles);
+	private final ClassParseCache parseCache = new ClassParseCache();
+	private final WorkspaceEventBus eventBus = new WorkspaceEventBus(this);
+	private final AtomicReference<Versioned<Set<String>>> classNames = new AtomicReference<>();
+	private final AtomicReference<Versioned<Set<String>>> primaryClassNames = new AtomicReference<>();
+	private final AtomicReference<Versioned<Set<String>>> libraryClassNames = new AtomicReference<>();
+	private final AtomicReference<Versioned<Set<byte[]>>> primaryClasses = new AtomicReference<>();
+	private final AtomicReference<Versioned<Set<byte[]>>> libraryClasses = new AtomicReference<>();
+	private final AtomicReference<Versioned<Set<ClassReader>>> primaryClassReaders = new AtomicReference<>();
 	private final JavaResource primary;
 	private final List<JavaResource> libraries;
 	private HierarchyGraph hierarchyGraph;
+	private Consumer<WorkspaceEvent> hierarchyUpdater;
 	private FlowGraph flowGraph;
+	private ConstantIndex constantIndex;
 	private ParserConfiguration config;
 
 	/**
@@ -60,7 +81,7 @@ public class Workspace {
 	public Workspace(JavaResource primary, List<JavaResource> libraries) {
 		this.primary = primary;
 		this.primary.setPrimary(true);
-		this.libraries = libraries;
+		this.libraries = new LibraryList(libraries);
 	}
 
 	/**
@@ -77,6 +98,17 @@ public class Workspace {
 		return libraries;
 	}
 
+	/**
+	 * Releases the files held open by the resources of the workspace, such as the archives of
+	 * {@link JarResource#isLazyLoading() lazily loaded} libraries, so they can be changed or deleted.
+	 * Called when the workspace is replaced by another one. Content requested afterwards is loaded again.
+	 */
+	public void close() {
+		primary.invalidate();
+		for (JavaResource library : libraries)
+			library.invalidate();
+	}
+
 	/**
 	 * @return Recaf managed resource containing phantom references.
 	 */
@@ -89,10 +121,43 @@ public class Workspace {
 	 */
 	public HierarchyGraph getHierarchyGraph() {
 		if(hierarchyGraph == null)
-			hierarchyGraph = new HierarchyGraph(this);
+			setHierarchyGraph(new HierarchyGraph(this));
 		return hierarchyGraph;
 	}
 
+	/**
+	 * @param hierarchyGraph
+	 * 		Inheritance hierarchy utility to use, such as one restored from a {@link WorkspaceSnapshot}.
+	 * 		It is kept up to date with changes published by the {@link #getEventBus() event bus}.
+	 */
+	public void setHierarchyGraph(HierarchyGraph hierarchyGraph) {
+		if (hierarchyUpdater != null)
+			eventBus.unsubscribe(hierarchyUpdater);
+		this.hierarchyGraph = hierarchyGraph;
+		this.hierarchyUpdater = hierarchyGraph == null ? null : hierarchyGraph::update;
+		if (hierarchyUpdater != null)
+			eventBus.subscribe(hierarchyUpdater);
+	}
+
+	/**
+	 * @return Bus publishing changes made to the classes and files of the workspace.
+	 */
+	public WorkspaceEventBus getEventBus() {
+		return eventBus;
+	}
+
+	/**
+	 * @return Index of the constants in the {@link #getPrimary() primary file}.
+	 * It is kept up to date with changes published by the {@link #getEventBus() event bus}.
+	 */
+	public synchronized ConstantIndex getConstantIndex() {
+		if (constantIndex == null) {
+			constantIndex = new ConstantIndex(this);
+			eventBus.subscribe(constantIndex::update);
+		}
+		return constantIndex;
+	}
+
 	/**
 	 * @return Method flow utility.
 	 */
@@ -102,6 +167,13 @@ public class Workspace {
 		return flowGraph;
 	}
 
+	/**
+	 * @return Cache of parsed classes, shared by analysis of the workspace.
+	 */
+	public ClassParseCache getParseCache() {
+		return parseCache;
+	}
+
 	/**
 	 * @return Aggregated ASM mappings for the workspace.
 	 */
@@ -190,56 +262,98 @@ public class Workspace {
 	// ================================= CLASS / RESOURCE UTILS ================================= //
 
 	/**
-	 * @return Set of all class names loaded in the workspace.
+	 * The count is incremented whenever a class or file of the primary resource or any library is put or removed,
+	 * or when the libraries are changed. Callers can use this to cache values derived from the workspace content.
+	 *
+	 * @return Number of modifications made to the workspace content.
+	 */
+	public long getModificationCount() {
+		return classIndex.getModificationCount() + fileIndex.getModificationCount();
+	}
+
+	/**
+	 * @return Unmodifiable set of all class names loaded in the workspace.
+	 * The set is a snapshot, reused until the workspace is {@link #getModificationCount() modified}.
 	 */
 	public Set<String> getClassNames() {
-		Set<String> names = getPrimaryClassNames();
-		names.addAll(getLibraryClassNames());
-		return names;
+		return versioned(classNames, () -> {
+			Set<String> names = new HashSet<>(getPrimaryClassNames());
+			names.addAll(getLibraryClassNames());
+			return names;
+		});
 	}
 
 	/**
-	 * @return Set of all class names loaded in the primary resource.
+	 * @return Unmodifiable set of all class names loaded in the primary resource.
+	 * The set is a snapshot, reused until the workspace is {@link #getModificationCount() modified}.
 	 */
 	public Set<String> getPrimaryClassNames() {
-		return new HashSet<>(primary.getClasses().keySet());
+		return versioned(primaryClassNames, () -> new HashSet<>(primary.getClasses().keySet()));
 	}
 
 	/**
-	 * @return Set of all class names loaded in the library resources.
+	 * @return Unmodifiable set of all class names loaded in the library resources.
+	 * The set is a snapshot, reused until the workspace is {@link #getModificationCount() modified}.
 	 */
 	public Set<String> getLibraryClassNames() {
-		Set<String> names = new HashSet<>();
-		for(JavaResource resource : getLibraries())
-			names.addAll(resource.getClasses().keySet());
-		return names;
+		return versioned(libraryClassNames, () -> {
+			Set<String> names = new HashSet<>();
+			for(JavaResource resource : getLibraries())
+				names.addAll(resource.getClasses().keySet());
+			return names;
+		});
 	}
 
 	/**
-	 * @return Set of all classes loaded in the primary resource.
+	 * @return Unmodifiable set of all classes loaded in the primary resource.
+	 * The set is a snapshot, reused until the workspace is {@link #getModificationCount() modified}.
 	 */
 	public Set<byte[]> getPrimaryClasses() {
-		return new HashSet<>(primary.getClasses().values());
+		return versioned(primaryClasses, () -> new HashSet<>(primary.getClasses().values()));
 	}
 
 	/**
-	 * @return Set of all classes loaded in the library resources.
+	 * @return Unmodifiable set of all classes loaded in the library resources.
+	 * The set is a snapshot, reused until the workspace is {@link #getModificationCount() modified}.
 	 */
 	public Set<byte[]> getLibraryClasses() {
-		Set<byte[]> values = new HashSet<>();
-		for(JavaResource resource : getLibraries())
-			values.addAll(resource.getClasses().values());
-		return values;
+		return versioned(libraryClasses, () -> {
+			Set<byte[]> values = new HashSet<>();
+			for(JavaResource resource : getLibraries())
+				values.addAll(resource.getClasses().values());
+			return values;
+		});
 	}
 
 	/**
-	 * @return Set of all classes loaded in the primary resource as
+	 * @return Unmodifiable set of all classes loaded in the primary resource as
 	 * {@link org.objectweb.asm.ClassReader}.
+	 * The set is a snapshot, reused until the workspace is {@link #getModificationCount() modified}.
 	 */
 	public Set<ClassReader> getPrimaryClassReaders() {
-		return getPrimaryClasses().stream()
-				.map(ClassReader::new)
-				.collect(Collectors.toSet());
+		return versioned(primaryClassReaders, () -> getPrimaryClasses().stream()
+				.map(parseCache::getReader)
+				.collect(Collectors.toSet()));
+	}
+
+	/**
+	 * @param holder
+	 * 		Holder of the last computed value.
+	 * @param supplier
+	 * 		Supplier of an up-to-date value.
+	 * @param <T>
+	 * 		Type of value.
+	 *
+	 * @return Unmodifiable value for the current modification count.
+	 */
+	private <T> Set<T> versioned(AtomicReference<Versioned<Set<T>>> holder, Supplier<Set<T>> supplier) {
+		long version = getModificationCount();
+		Versioned<Set<T>> current = holder.get();
+		if(current != null && current.version == version)
+			return current.value;
+		Set<T> value = Collections.unmodifiableSet(supplier.get());
+		holder.set(new Versioned<>(version, value));
+		return value;
 	}
 
 	/**
@@ -249,11 +363,9 @@ public class Workspace {
 	 * @return The resource that contains the class.
 	 */
 	public JavaResource getContainingResourceForClass(String name) {
-		if(getPrimary().getClasses().containsKey(name))
-			return primary;
-		for(JavaResource resource : getLibraries())
-			if(resource.getClasses().containsKey(name))
-				return resource;
+		JavaResource resource = classIndex.get(name);
+		if(resource != null)
+			return resource;
 		if(CP.getClasses().containsKey(name))
 			return CP;
 		else if (phantoms.getClasses().containsKey(name))
@@ -269,12 +381,7 @@ public class Workspace {
 	 * @return The resource that contains the file.
 	 */
 	public JavaResource getContainingResourceForFile(String name) {
-		if(getPrimary().getFiles().containsKey(name))
-			return primary;
-		for(JavaResource resource : getLibraries())
-			if(resource.getFiles().containsKey(name))
-				return resource;
-		return null;
+		return fileIndex.get(name);
 	}
 
 	/**
@@ -284,15 +391,7 @@ public class Workspace {
 	 * @return {@code true} if one of the workspace sources contains the class.
 	 */
 	public boolean hasClass(String name) {
-		if (primary.getClasses().containsKey(name))
-			return true;
-		for (JavaResource resource : getLibraries())
-			if (resource.getClasses().containsKey(name))
-				return true;
-		if (CP.getClasses().containsKey(name))
-			return true;
-		else
-			return phantoms.getClasses().containsKey(name);
+		return getContainingResourceForClass(name) != null;
 	}
 
 	/**
@@ -302,12 +401,7 @@ public class Workspace {
 	 * @return {@code true} if one of the workspace sources contains the resource.
 	 */
 	public boolean hasFile(String name) {
-		if(primary.getFiles().containsKey(name))
-			return true;
-		for(JavaResource resource : getLibraries())
-			if(resource.getFiles().containsKey(name))
-				return true;
-		return false;
+		return fileIndex.get(name) != null;
 	}
 
 	/**
@@ -317,14 +411,9 @@ public class Workspace {
 	 * @return Raw bytecode of the class by the given name.
 	 */
 	public byte[] getRawClass(String name) {
-		byte[] ret = primary.getClasses().get(name);
-		if(ret != null)
-			return ret;
-		for(JavaResource resource : getLibraries()) {
-			ret = resource.getClasses().get(name);
-			if(ret != null)
-				return ret;
-		}
+		JavaResource resource = classIndex.get(name);
+		if(resource != null)
+			return resource.getClasses().get(name);
 		if (CP.getClasses().containsKey(name))
 			return CP.getClasses().get(name);
 		else if (phantoms.getClasses().containsKey(name))
@@ -341,7 +430,23 @@ public class Workspace {
 	public ClassReader getClassReader(String name) {
 		byte[] ret = getRawClass(name);
 		if(ret != null)
-			return new ClassReader(ret);
+			return parseCache.getReader(ret);
+		return null;
+	}
+
+	/**
+	 * @param name
+	 * 		Class name.
+	 * @param readFlags
+	 * 		{@link ClassReader} flags to apply when generating the node.
+	 *
+	 * @return Shared {@link ClassNode} for the given class. It <b>must not be modified</b>,
+	 * use {@link me.coley.recaf.util.ClassUtil#getNode(ClassReader, int)} to get a node to modify.
+	 */
+	public ClassNode getClassNode(String name, int readFlags) {
+		byte[] ret = getRawClass(name);
+		if(ret != null)
+			return parseCache.getNode(ret, readFlags);
 		return null;
 	}
 
@@ -362,13 +467,9 @@ public class Workspace {
 	 * @return Resource binary by the given name.
 	 */
 	public byte[] getFile(String name) {
-		byte[] ret = primary.getFiles().get(name);
-		if(ret != null)
-			return ret;
-		for(JavaResource resource : getLibraries())
-			ret = resource.getFiles().get(name);
-		if(ret != null)
-			return ret;
+		JavaResource resource = fileIndex.get(name);
+		if(resource != null)
+			return resource.getFiles().get(name);
 		return null;
 	}
 
@@ -383,9 +484,25 @@ public class Workspace {
 	 * then it's result may have {@link com.github.javaparser.ParseResult#isSuccessful()} be {@code false}.
 	 */
 	public Map<String, ParseResult<CompilationUnit>> analyzeSources() {
-		return Stream.concat(Stream.of(primary), libraries.stream())
-				.flatMap(resource -> resource.analyzeSource(this).entrySet().stream())
-				.collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+		// Create the shared config before parsing on multiple threads
+		getSourceParseConfig();
+		List<JavaResource> resources = new ArrayList<>();
+		resources.add(primary);
+		resources.addAll(libraries);
+		try {
+			return ThreadUtil.forkJoinPool().submit(() -> resources.parallelStream()
+					.map(resource -> resource.analyzeSource(this))
+					.flatMap(results -> results.entrySet().stream())
+					.collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue))).get();
+		} catch(InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			return Collections.emptyMap();
+		} catch(ExecutionException ex) {
+			Throwable cause = ex.getCause();
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			throw new IllegalStateException("Failed to analyze sources", cause);
+		}
 	}
 
 	/**
@@ -438,4 +555,79 @@ public class Workspace {
 				break;
 		return docs;
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Library list wrapper that keeps the name indices up to date when libraries are added or removed.
+	 * Removed libraries are unloaded.
+	 */
+	private class LibraryList extends AbstractList<JavaResource> {
+		private final List<JavaResource> backing;
+
+		private LibraryList(List<JavaResource> backing) {
+			this.backing = backing;
+		}
+
+		@Override
+		public JavaResource get(int index) {
+			return backing.get(index);
+		}
+
+		@Override
+		public int size() {
+			return backing.size();
+		}
+
+		@Override
+		public JavaResource set(int index, JavaResource resource) {
+			JavaResource old = backing.set(index, resource);
+			invalidateIndices();
+			release(old);
+			return old;
+		}
+
+		@Override
+		public void add(int index, JavaResource resource) {
+			backing.add(index, resource);
+			invalidateIndices();
+		}
+
+		@Override
+		public JavaResource remove(int index) {
+			JavaResource old = backing.remove(index);
+			invalidateIndices();
+			release(old);
+			return old;
+		}
+
+		/**
+		 * @param resource
+		 * 		Library no longer in the workspace, unloaded to release the files it holds open.
+		 */
+		private void release(JavaResource resource) {
+			if (resource != null && resource != primary && !backing.contains(resource))
+				resource.invalidate();
+		}
+
+		private void invalidateIndices() {
+			classIndex.invalidate();
+			fileIndex.invalidate();
+			eventBus.onLibrariesChanged();
+		}
+	}
+
+	/**
+	 * Value computed at some modification count of the workspace.
+	 *
+	 * @param <T>
+	 * 		Type of value.
+	 */
+	private static class Versioned<T> {
+		private final long version;
+		private final T value;
+
+		private Versioned(long version, T value) {
+			this.version = version;
+			this.value = value;
+		}
+	}
+}
@@ -0,0 +1,60 @@
+package me.coley.recaf.workspace;
+
+import java.util.*;
+
+/**
+ * Batch of changes made to a workspace, published by its {@link WorkspaceEventBus}.
+ * Holds one {@link ResourceDelta} for each resource that was changed.
+ *
+ * @author Matt
+ */
+public class WorkspaceEvent {
+	private final Workspace workspace;
+	private final Map<JavaResource, ResourceDelta> deltas;
+	private final boolean librariesChanged;
+
+	/**
+	 * @param workspace
+	 * 		Changed workspace.
+	 * @param deltas
+	 * 		Changes of each resource.
+	 * @param librariesChanged
+	 * 		{@code true} if libraries were added to or removed from the workspace.
+	 */
+	WorkspaceEvent(Workspace workspace, Map<JavaResource, ResourceDelta> deltas, boolean librariesChanged) {
+		this.workspace = workspace;
+		this.deltas = deltas;
+		this.librariesChanged = librariesChanged;
+	}
+
+	/**
+	 * @return Changed workspace.
+	 */
+	public Workspace getWorkspace() {
+		return workspace;
+	}
+
+	/**
+	 * @return Changes of each changed resource.
+	 */
+	public Collection<ResourceDelta> getDeltas() {
+		return Collections.unmodifiableCollection(deltas.values());
+	}
+
+	/**
+	 * @param resource
+	 * 		Resource to check.
+	 *
+	 * @return Changes of the resource, or {@code null} if it was not changed.
+	 */
+	public ResourceDelta getDelta(JavaResource resource) {
+		return deltas.get(resource);
+	}
+
+	/**
+	 * @return {@code true} if libraries were added to or removed from the workspace.
+	 */
+	public boolean isLibrariesChanged() {
+		return librariesChanged;
+	}
+}
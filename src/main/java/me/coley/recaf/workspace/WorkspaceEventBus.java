@@ -0,0 +1,236 @@
+package me.coley.recaf.workspace;
+
+import me.coley.recaf.util.struct.ListeningMap;
+
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+import static me.coley.recaf.util.Log.*;
+
+/**
+ * Publishes changes made to the classes and files of a workspace as batched {@link WorkspaceEvent events}.
+ * <br>
+ * Outside of a {@link #beginTransaction() transaction} each change is published on its own. Within a transaction,
+ * changes are coalesced and published as a single event once the outermost transaction ends. Changes made on any
+ * thread while a transaction is open are part of it. Subscribers are called on the thread that publishes the event,
+ * after the change is visible in the workspace.
+ * <br>
+ * Resources are only listened to while there are subscribers, and listening does not load their content.
+ *
+ * @author Matt
+ */
+public class WorkspaceEventBus {
+	private final Set<Consumer<WorkspaceEvent>> subscribers = new CopyOnWriteArraySet<>();
+	private final Map<JavaResource, Hook> hooks = new IdentityHashMap<>();
+	private final Workspace workspace;
+	private Map<JavaResource, ResourceDelta> pending = new LinkedHashMap<>();
+	private boolean librariesChanged;
+	private int depth;
+
+	/**
+	 * @param workspace
+	 * 		Workspace to publish changes of.
+	 */
+	WorkspaceEventBus(Workspace workspace) {
+		this.workspace = workspace;
+	}
+
+	/**
+	 * @param subscriber
+	 * 		Subscriber to call with each published event.
+	 */
+	public void subscribe(Consumer<WorkspaceEvent> subscriber) {
+		subscribers.add(subscriber);
+		sync();
+	}
+
+	/**
+	 * @param subscriber
+	 * 		Subscriber to no longer call.
+	 */
+	public void unsubscribe(Consumer<WorkspaceEvent> subscriber) {
+		subscribers.remove(subscriber);
+		sync();
+	}
+
+	/**
+	 * Start a transaction. Changes are held until the matching {@link #endTransaction()} call.
+	 * Transactions may be nested, in which case changes are published when the outermost one ends.
+	 */
+	public synchronized void beginTransaction() {
+		depth++;
+	}
+
+	/**
+	 * End a transaction, publishing the coalesced changes if it is the outermost one.
+	 *
+	 * @throws IllegalStateException
+	 * 		When there is no open transaction.
+	 */
+	public void endTransaction() {
+		synchronized(this) {
+			if (depth == 0)
+				throw new IllegalStateException("No transaction to end");
+			depth--;
+		}
+		flush();
+	}
+
+	/**
+	 * Run an action in a transaction, so its changes are published as a single event.
+	 *
+	 * @param action
+	 * 		Action making changes to the workspace.
+	 */
+	public void transaction(Runnable action) {
+		beginTransaction();
+		try {
+			action.run();
+		} finally {
+			endTransaction();
+		}
+	}
+
+	/**
+	 * @return {@code true} when a transaction is open.
+	 */
+	public synchronized boolean isInTransaction() {
+		return depth > 0;
+	}
+
+	/**
+	 * Record that a class was moved to a new name. Should be called after the class has been removed and put under
+	 * its new name, within the same transaction, so the removal and addition are published as a rename instead.
+	 *
+	 * @param resource
+	 * 		Resource containing the class.
+	 * @param oldName
+	 * 		Previous name of the class.
+	 * @param newName
+	 * 		New name of the class.
+	 */
+	public void onRename(JavaResource resource, String oldName, String newName) {
+		synchronized(this) {
+			ResourceDelta delta = pending.get(resource);
+			if (delta == null)
+				return;
+			delta.onRename(oldName, newName);
+		}
+		flush();
+	}
+
+	/**
+	 * Called when libraries are added to or removed from the workspace.
+	 */
+	void onLibrariesChanged() {
+		synchronized(this) {
+			librariesChanged = true;
+		}
+		sync();
+		flush();
+	}
+
+	/**
+	 * Listen to the resources of the workspace while there are subscribers.
+	 */
+	private synchronized void sync() {
+		Set<JavaResource> resources = Collections.newSetFromMap(new IdentityHashMap<>());
+		if (!subscribers.isEmpty()) {
+			resources.add(workspace.getPrimary());
+			resources.addAll(workspace.getLibraries());
+		}
+		for (Iterator<Map.Entry<JavaResource, Hook>> it = hooks.entrySet().iterator(); it.hasNext(); ) {
+			Map.Entry<JavaResource, Hook> e = it.next();
+			if (!resources.contains(e.getKey())) {
+				e.getValue().unhook();
+				it.remove();
+			}
+		}
+		for (JavaResource resource : resources)
+			hooks.computeIfAbsent(resource, Hook::new);
+	}
+
+	/**
+	 * Publish pending changes, unless a transaction is open.
+	 */
+	private void flush() {
+		WorkspaceEvent event;
+		synchronized(this) {
+			if (depth > 0)
+				return;
+			pending.values().removeIf(ResourceDelta::isEmpty);
+			if (pending.isEmpty() && !librariesChanged)
+				return;
+			event = new WorkspaceEvent(workspace, pending, librariesChanged);
+			pending = new LinkedHashMap<>();
+			librariesChanged = false;
+		}
+		for (Consumer<WorkspaceEvent> subscriber : subscribers) {
+			try {
+				subscriber.accept(event);
+			} catch(Throwable t) {
+				error(t, "Workspace event subscriber failed: {}", subscriber);
+			}
+		}
+	}
+
+	private ResourceDelta delta(JavaResource resource) {
+		return pending.computeIfAbsent(resource, ResourceDelta::new);
+	}
+
+	/**
+	 * Listeners registered on the maps of a single resource.
+	 */
+	private class Hook {
+		private final ListeningMap<String, byte[]> classes;
+		private final ListeningMap<String, byte[]> files;
+		private final BiConsumer<String, byte[]> classUpdate;
+		private final BiConsumer<String, byte[]> fileUpdate;
+		private final Runnable classReset;
+		private final Runnable fileReset;
+
+		private Hook(JavaResource resource) {
+			this.classes = resource.getClassMap();
+			this.files = resource.getFileMap();
+			this.classUpdate = (name, old) -> {
+				boolean exists = classes.containsKey(name);
+				synchronized(WorkspaceEventBus.this) {
+					delta(resource).onClass(name, old != null, exists);
+				}
+				flush();
+			};
+			this.fileUpdate = (name, old) -> {
+				boolean exists = files.containsKey(name);
+				synchronized(WorkspaceEventBus.this) {
+					delta(resource).onFile(name, old != null, exists);
+				}
+				flush();
+			};
+			this.classReset = () -> {
+				synchronized(WorkspaceEventBus.this) {
+					delta(resource).onClassesReset();
+				}
+				flush();
+			};
+			this.fileReset = () -> {
+				synchronized(WorkspaceEventBus.this) {
+					delta(resource).onFilesReset();
+				}
+				flush();
+			};
+			classes.getUpdateListeners().add(classUpdate);
+			classes.getResetListeners().add(classReset);
+			files.getUpdateListeners().add(fileUpdate);
+			files.getResetListeners().add(fileReset);
+		}
+
+		private void unhook() {
+			classes.getUpdateListeners().remove(classUpdate);
+			classes.getResetListeners().remove(classReset);
+			files.getUpdateListeners().remove(fileUpdate);
+			files.getResetListeners().remove(fileReset);
+		}
+	}
+}
@@ -1,6 +1,7 @@
 package me.coley.recaf.workspace;
 
 import com.eclipsesource.json.*;
+import me.coley.recaf.search.ConstantIndex;
 import me.coley.recaf.util.IOUtil;
 
 import java.io.File;
@@ -14,6 +15,8 @@ import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
 
+import static me.coley.recaf.util.Log.*;
+
 /**
  * IO Utilities for {@link Workspace}.
  *
@@ -30,7 +33,71 @@ public class WorkspaceIO {
 	 * 		Thrown if the path could not be read or parsed.
 	 */
 	public static Workspace fromJson(Path json) throws Exception {
-		return fromJson(String.join("", Files.readAllLines(json, StandardCharsets.UTF_8)));
+		String text = String.join("", Files.readAllLines(json, StandardCharsets.UTF_8));
+		Path snapshot = getSnapshotPath(json);
+		Workspace workspace = null;
+		if (Files.exists(snapshot)) {
+			try {
+				workspace = WorkspaceSnapshot.read(text, snapshot);
+				if (workspace == null)
+					debug("Ignoring outdated workspace snapshot: {}", snapshot);
+			} catch(IOException ex) {
+				warn(ex, "Failed to read workspace snapshot, loading from sources instead: {}", snapshot);
+			}
+		}
+		if (workspace == null)
+			workspace = fromJson(text);
+		Path constants = getConstantIndexPath(json);
+		if (Files.exists(constants)) {
+			try {
+				workspace.getConstantIndex().read(constants);
+			} catch(IOException ex) {
+				warn(ex, "Failed to read constant index, it will be rebuilt: {}", constants);
+			}
+		}
+		return workspace;
+	}
+
+	/**
+	 * Write a snapshot of the loaded content of the workspace next to its json config.
+	 * The snapshot is used by {@link #fromJson(Path)} to skip reloading unchanged resources.
+	 * The {@link Workspace#getConstantIndex() constant index} is written as well, if it has been built.
+	 *
+	 * @param workspace
+	 * 		Workspace instance.
+	 * @param json
+	 * 		Path of the saved json config of the workspace.
+	 *
+	 * @throws IOException
+	 * 		Thrown if the snapshot could not be written.
+	 */
+	public static void writeSnapshot(Workspace workspace, Path json) throws IOException {
+		String text = String.join("", Files.readAllLines(json, StandardCharsets.UTF_8));
+		WorkspaceSnapshot.write(workspace, text, getSnapshotPath(json));
+		// Only persist the constant index if it has been used, building it just to save it is not worth the time
+		ConstantIndex constants = workspace.getConstantIndex();
+		if (constants.isBuilt())
+			constants.write(getConstantIndexPath(json));
+	}
+
+	/**
+	 * @param json
+	 * 		Path of a json config.
+	 *
+	 * @return Path of the workspace snapshot belonging to the config.
+	 */
+	public static Path getSnapshotPath(Path json) {
+		return json.resolveSibling(json.getFileName() + ".snapshot");
+	}
+
+	/**
+	 * @param json
+	 * 		Path of a json config.
+	 *
+	 * @return Path of the constant index belonging to the config.
+	 */
+	public static Path getConstantIndexPath(Path json) {
+		return json.resolveSibling(json.getFileName() + ".constants");
 	}
 
 	/**
@@ -112,6 +179,11 @@ public class WorkspaceIO {
 	private static JsonObject serializeBase(JavaResource resource) {
 		JsonObject root = Json.object();
 		ResourceKind kind = resource.getKind();
+		if (resource instanceof NestedArchiveResource) {
+			root.add("kind", "nested");
+			root.add("source", ((NestedArchiveResource) resource).getLocation());
+			return root;
+		}
 		switch(kind) {
 			case CLASS:
 				Path clazz = ((ClassResource) resource).getPath();
@@ -186,6 +258,18 @@ public class WorkspaceIO {
 				if (Files.exists(path))
 					resource = FileSystemResource.of(path);
 				break;
+			case "nested":
+				String[] parts = source.split("!/");
+				Path outer = Paths.get(parts[0]);
+				if (parts.length < 2 || !Files.exists(outer))
+					break;
+				resource = FileSystemResource.of(outer);
+				if (!(resource instanceof ArchiveResource))
+					throw new IllegalArgumentException("Invalid resource, nested source is not in an archive: " +
+							source);
+				for (int i = 1; i < parts.length; i++)
+					resource = new NestedArchiveResource((ArchiveResource) resource, parts[i]);
+				break;
 			case "maven":
 				String[] args = source.split(":");
 				if (args.length != 3)
@@ -0,0 +1,365 @@
+package me.coley.recaf.workspace;
+
+import me.coley.recaf.graph.inheritance.HierarchyGraph;
+
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static me.coley.recaf.util.Log.*;
+
+/**
+ * Binary snapshot of the loaded content of a workspace.
+ * <br>
+ * The snapshot holds the already validated and patched class and file bytes of each resource,
+ * the names and original content of modified items, and the inheritance hierarchy of the primary resource.
+ * Each resource is keyed by a hash of its source, so its content is only restored when the source is unchanged.
+ * Resources that are not restored are loaded from their source as usual.
+ * <br>
+ * Layout: a header holding the hash of the workspace config, followed by an index of every resource's entries,
+ * followed by the raw data of all entries. The file is memory mapped when read, and entries are only copied out of it
+ * when they are first accessed, see {@link SnapshotMap}.
+ *
+ * @author Matt
+ */
+public class WorkspaceSnapshot {
+	private static final int MAGIC = 0x52435753;
+	private static final int VERSION = 2;
+
+	/**
+	 * Write a snapshot of the workspace.
+	 *
+	 * @param workspace
+	 * 		Workspace to snapshot.
+	 * @param json
+	 * 		Json config of the workspace, see {@link WorkspaceIO#toJson(Workspace)}.
+	 * @param path
+	 * 		Location to write the snapshot to.
+	 *
+	 * @throws IOException
+	 * 		When the snapshot could not be written.
+	 */
+	public static void write(Workspace workspace, String json, Path path) throws IOException {
+		List<JavaResource> resources = new ArrayList<>();
+		resources.add(workspace.getPrimary());
+		resources.addAll(workspace.getLibraries());
+		Path dir = path.toAbsolutePath().getParent();
+		Path temp = Files.createTempFile(dir, "snapshot", ".tmp");
+		Path dataTemp = Files.createTempFile(dir, "snapshot-data", ".tmp");
+		try {
+			// The index is built in memory while entry data is streamed to a separate file,
+			// so the content of lazily loaded resources does not need to be held in memory all at once.
+			ByteArrayOutputStream indexBytes = new ByteArrayOutputStream();
+			DataOutputStream index = new DataOutputStream(indexBytes);
+			try (OutputStream data = new BufferedOutputStream(Files.newOutputStream(dataTemp))) {
+				writeBytes(index, hash(json.getBytes(StandardCharsets.UTF_8)));
+				index.writeInt(resources.size());
+				long offset = 0;
+				for (JavaResource resource : resources) {
+					byte[] sourceHash = hashSource(resource);
+					if (sourceHash == null) {
+						writeBytes(index, new byte[0]);
+						continue;
+					}
+					writeBytes(index, sourceHash);
+					offset = writeEntries(index, data, resource.getClasses(), resource.getDirtyClasses(),
+							resource.getClassHistory(), offset);
+					offset = writeEntries(index, data, resource.getFiles(), resource.getDirtyFiles(),
+							resource.getFileHistory(), offset);
+				}
+				writeHierarchy(index, workspace.getHierarchyGraph().getDescendantMap());
+			}
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				indexBytes.writeTo(out);
+				Files.copy(dataTemp, out);
+			}
+			Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+		} finally {
+			Files.deleteIfExists(temp);
+			Files.deleteIfExists(dataTemp);
+		}
+	}
+
+	/**
+	 * Read a workspace from its config, restoring content from the snapshot where the sources are unchanged.
+	 *
+	 * @param json
+	 * 		Json config of the workspace.
+	 * @param path
+	 * 		Location of the snapshot.
+	 *
+	 * @return Workspace, or {@code null} when the snapshot does not belong to the given config.
+	 *
+	 * @throws Exception
+	 * 		When the config could not be parsed, or the snapshot could not be read.
+	 */
+	public static Workspace read(String json, Path path) throws Exception {
+		MappedByteBuffer buffer;
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		// Restored maps keep using the mapping until they have read all their entries
+		SnapshotMap.Mapping mapping = new SnapshotMap.Mapping(buffer);
+		try {
+			if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION)
+				throw new IOException("Unsupported snapshot format: " + path);
+			if (!Arrays.equals(readBytes(buffer), hash(json.getBytes(StandardCharsets.UTF_8))))
+				return null;
+			Workspace workspace = WorkspaceIO.fromJson(json);
+			List<JavaResource> resources = new ArrayList<>();
+			resources.add(workspace.getPrimary());
+			resources.addAll(workspace.getLibraries());
+			int count = buffer.getInt();
+			if (count != resources.size())
+				throw new IOException("Snapshot does not match workspace resources: " + path);
+			List<Index> indices = new ArrayList<>();
+			for (JavaResource resource : resources) {
+				byte[] sourceHash = readBytes(buffer);
+				if (sourceHash.length == 0)
+					continue;
+				Index classes = readIndex(buffer);
+				Index files = readIndex(buffer);
+				// Only restore resources whose source has not changed since the snapshot was taken
+				if (Arrays.equals(sourceHash, hashSource(resource))) {
+					classes.resource = resource;
+					files.resource = resource;
+					indices.add(classes);
+					indices.add(files);
+				}
+			}
+			Map<String, Set<String>> descendants = readHierarchy(buffer);
+			int dataStart = buffer.position();
+			for (int i = 0; i < indices.size(); i += 2) {
+				Index classes = indices.get(i);
+				Index files = indices.get(i + 1);
+				classes.resource.restore(classes.toMap(mapping, buffer, dataStart),
+						files.toMap(mapping, buffer, dataStart), classes.dirty, files.dirty);
+			}
+			boolean primaryRestored = !indices.isEmpty() && indices.get(0).resource == workspace.getPrimary();
+			if (primaryRestored && descendants != null)
+				workspace.setHierarchyGraph(new HierarchyGraph(workspace, descendants));
+			debug("Restored {}/{} resources from workspace snapshot", indices.size() / 2, resources.size());
+			return workspace;
+		} catch(BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException ex) {
+			throw new IOException("Malformed snapshot: " + path, ex);
+		} finally {
+			mapping.release();
+		}
+	}
+
+	/**
+	 * @param resource
+	 * 		Resource to hash.
+	 *
+	 * @return Hash of the resource's source, or {@code null} if the resource is not backed by the file system.
+	 * Directories are hashed by the names, sizes and modification times of their files.
+	 *
+	 * @throws IOException
+	 * 		When the source could not be read.
+	 */
+	static byte[] hashSource(JavaResource resource) throws IOException {
+		if (!(resource instanceof FileSystemResource))
+			return null;
+		Path path = ((FileSystemResource) resource).getPath();
+		MessageDigest digest = digest();
+		if (Files.isDirectory(path)) {
+			List<Path> files;
+			try (Stream<Path> stream = Files.walk(path)) {
+				files = stream.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+			}
+			ByteBuffer buffer = ByteBuffer.allocate(16);
+			for (Path file : files) {
+				digest.update(path.relativize(file).toString().getBytes(StandardCharsets.UTF_8));
+				buffer.clear();
+				buffer.putLong(Files.size(file));
+				buffer.putLong(Files.getLastModifiedTime(file).toMillis());
+				digest.update(buffer.array());
+			}
+		} else {
+			try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+				digest.update(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+			}
+		}
+		return digest.digest();
+	}
+
+	private static long writeEntries(DataOutputStream index, OutputStream data, Map<String, byte[]> map,
+									 Set<String> dirty, Map<String, History> histories, long offset)
+			throws IOException {
+		// Entry count is written up front, so use a snapshot of the map's keys
+		List<String> names = new ArrayList<>(map.keySet());
+		index.writeInt(names.size());
+		for (String name : names) {
+			byte[] value = map.get(name);
+			if (value == null)
+				value = new byte[0];
+			boolean isDirty = dirty.contains(name);
+			writeBytes(index, name.getBytes(StandardCharsets.UTF_8));
+			index.writeBoolean(isDirty);
+			index.writeLong(offset);
+			index.writeInt(value.length);
+			data.write(value);
+			offset += value.length;
+			if (isDirty) {
+				// The original content follows the modified content, so the restored history can revert to it
+				History history = histories.get(name);
+				byte[] original = history == null ? null : history.getInitial();
+				index.writeInt(original == null ? -1 : original.length);
+				if (original != null) {
+					data.write(original);
+					offset += original.length;
+				}
+			}
+		}
+		return offset;
+	}
+
+	private static Index readIndex(ByteBuffer buffer) throws IOException {
+		int count = buffer.getInt();
+		if (count < 0)
+			throw new IOException("Corrupt snapshot");
+		Index index = new Index(count);
+		for (int i = 0; i < count; i++) {
+			String name = new String(readBytes(buffer), StandardCharsets.UTF_8);
+			index.names[i] = name;
+			boolean dirty = buffer.get() != 0;
+			if (dirty)
+				index.dirty.add(name);
+			index.offsets[i] = buffer.getLong();
+			index.lengths[i] = buffer.getInt();
+			index.originalLengths[i] = dirty ? buffer.getInt() : -1;
+			if (index.offsets[i] < 0 || index.lengths[i] < 0 || index.originalLengths[i] < -1)
+				throw new IOException("Corrupt snapshot");
+		}
+		return index;
+	}
+
+	private static void writeHierarchy(DataOutputStream out, Map<String, Set<String>> descendants)
+			throws IOException {
+		out.writeInt(descendants.size());
+		for (Map.Entry<String, Set<String>> e : descendants.entrySet()) {
+			// The parent of an interface-less root class is null
+			writeBytes(out, e.getKey() == null ? null : e.getKey().getBytes(StandardCharsets.UTF_8));
+			out.writeInt(e.getValue().size());
+			for (String child : e.getValue())
+				writeBytes(out, child.getBytes(StandardCharsets.UTF_8));
+		}
+	}
+
+	private static Map<String, Set<String>> readHierarchy(ByteBuffer buffer) throws IOException {
+		int count = buffer.getInt();
+		if (count < 0)
+			throw new IOException("Corrupt snapshot");
+		Map<String, Set<String>> descendants = new HashMap<>();
+		for (int i = 0; i < count; i++) {
+			byte[] parent = readNullableBytes(buffer);
+			int childCount = buffer.getInt();
+			if (childCount < 0)
+				throw new IOException("Corrupt snapshot");
+			Set<String> children = new HashSet<>();
+			for (int j = 0; j < childCount; j++)
+				children.add(new String(readBytes(buffer), StandardCharsets.UTF_8));
+			descendants.put(parent == null ? null : new String(parent, StandardCharsets.UTF_8), children);
+		}
+		return descendants;
+	}
+
+	private static void writeBytes(DataOutputStream out, byte[] value) throws IOException {
+		if (value == null) {
+			out.writeInt(-1);
+			return;
+		}
+		out.writeInt(value.length);
+		out.write(value);
+	}
+
+	private static byte[] readBytes(ByteBuffer buffer) throws IOException {
+		byte[] value = readNullableBytes(buffer);
+		if (value == null)
+			throw new IOException("Corrupt snapshot");
+		return value;
+	}
+
+	private static byte[] readNullableBytes(ByteBuffer buffer) throws IOException {
+		int length = buffer.getInt();
+		if (length == -1)
+			return null;
+		if (length < 0 || length > buffer.remaining())
+			throw new IOException("Corrupt snapshot");
+		byte[] value = new byte[length];
+		buffer.get(value);
+		return value;
+	}
+
+	static byte[] hash(byte[] value) {
+		return digest().digest(value);
+	}
+
+	private static MessageDigest digest() {
+		try {
+			return MessageDigest.getInstance("SHA-1");
+		} catch(NoSuchAlgorithmException ex) {
+			throw new IllegalStateException("SHA-1 not supported", ex);
+		}
+	}
+
+	/**
+	 * Index of the entries of a single class or file map.
+	 */
+	private static class Index {
+		private final String[] names;
+		private final long[] offsets;
+		private final int[] lengths;
+		private final int[] originalLengths;
+		private final Set<String> dirty = new HashSet<>();
+		private JavaResource resource;
+
+		private Index(int count) {
+			names = new String[count];
+			offsets = new long[count];
+			lengths = new int[count];
+			originalLengths = new int[count];
+		}
+
+		/**
+		 * @param mapping
+		 * 		Mapped snapshot to serve the entries from.
+		 * @param buffer
+		 * 		Mapped snapshot file.
+		 * @param dataStart
+		 * 		Position of the entry data in the file.
+		 *
+		 * @return Map of the entries, which are read from the mapping when first accessed.
+		 *
+		 * @throws IOException
+		 * 		When an entry lies outside of the snapshot file.
+		 */
+		private Map<String, byte[]> toMap(SnapshotMap.Mapping mapping, ByteBuffer buffer, int dataStart)
+				throws IOException {
+			SnapshotMap map = new SnapshotMap(mapping);
+			for (int i = 0; i < names.length; i++) {
+				long position = dataStart + offsets[i];
+				long end = position + lengths[i] + Math.max(originalLengths[i], 0);
+				if (end > buffer.limit())
+					throw new IOException("Corrupt snapshot");
+				byte[] original = originalLengths[i] < 0 ? null :
+						mapping.read(position + lengths[i], originalLengths[i]);
+				map.index(names[i], position, lengths[i], original);
+			}
+			// Release the mapping right away if there is nothing to read from it
+			map.trim();
+			return map;
+		}
+	}
+}
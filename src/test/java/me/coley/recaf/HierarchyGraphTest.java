@@ -41,6 +41,25 @@ public class HierarchyGraphTest extends Base {
 		expectedChildren.forEach(child -> assertTrue(descendants.contains(child)));
 	}
 
+	@Test
+	public void testDescendantMapIsUnmodifiable() {
+		Map<String, Set<String>> descendants = graph.getDescendantMap();
+		Set<String> children = descendants.get("test/Greetings");
+		assertNotNull(children);
+		assertThrows(UnsupportedOperationException.class, () -> children.add("test/Other"));
+		assertThrows(UnsupportedOperationException.class, () -> descendants.remove("test/Greetings"));
+		assertFalse(graph.getDescendants("test/Greetings").anyMatch("test/Other"::equals));
+	}
+
+	@Test
+	public void testBreakConditionKeepsDescendants() {
+		Set<String> children = graph.getDescendants("test/Greetings").collect(Collectors.toSet());
+		assertFalse(children.isEmpty());
+		// Skipped descendants are only left out of the result, not the graph
+		assertEquals(0, graph.getAllDescendantsWithBreakCondition("test/Greetings", n -> true).count());
+		assertEquals(children, graph.getDescendants("test/Greetings").collect(Collectors.toSet()));
+	}
+
 	@Test
 	public void testParents() {
 		String actualChild = "test/Yoda";
@@ -5,6 +5,7 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
+import java.util.Arrays;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -116,4 +117,27 @@ public class HistoryTest extends Base {
 		assertArrayEquals(DUMMY, resource.getFileHistory(key).pop());
 		assertArrayEquals(initial, resource.getFileHistory(key).pop());
 	}
+
+	@Test
+	public void testClassRollbackMultipleStates(){
+		String key = "Start";
+		byte[] initial = resource.getClassHistory(key).peek();
+		// Each state is a small edit of the previous one, so older states are stored as deltas
+		byte[][] states = new byte[5][];
+		byte[] current = initial;
+		for (int i = 0; i < states.length; i++) {
+			current = Arrays.copyOf(current, current.length + i);
+			current[current.length / 2] ^= (byte) (i + 1);
+			states[i] = current;
+			resource.getClasses().put(key, current);
+			resource.createClassSave(key);
+		}
+		assertEquals(states.length + 1, resource.getClassHistory(key).size());
+		for (int i = states.length - 1; i >= 0; i--) {
+			assertArrayEquals(states[i], resource.getClassHistory(key).pop());
+			assertArrayEquals(states[i], resource.getClasses().get(key));
+		}
+		assertArrayEquals(initial, resource.getClassHistory(key).pop());
+		assertTrue(resource.getClassHistory(key).isAtInitial());
+	}
 }
@@ -55,6 +55,18 @@ public class JavadocsTest extends Base {
 		}
 	}
 
+	@ParameterizedTest
+	@ValueSource(strings = { JAVA8, JAVA12 })
+	public void testParsedOnDemand(String file) {
+		load(file);
+		// Docs are indexed by class name, and parsed pages are reused
+		assertTrue(base.getClassDocs().keySet().contains("calc/Expression"));
+		Javadocs docs = base.getClassDocs("calc/Expression");
+		assertEquals("calc/Expression", docs.getInternalName());
+		assertSame(docs, base.getClassDocs("calc/Expression"));
+		assertNull(base.getClassDocs("calc/DoesNotExist"));
+	}
+
 	@ParameterizedTest
 	@ValueSource(strings = { JAVA8, JAVA12 })
 	public void testField(String file) {
@@ -2,6 +2,7 @@ package me.coley.recaf;
 
 import com.google.common.collect.MapDifference;
 import com.google.common.collect.Maps;
+import me.coley.recaf.graph.inheritance.HierarchyGraph;
 import me.coley.recaf.mapping.*;
 import me.coley.recaf.workspace.*;
 import org.junit.jupiter.api.BeforeEach;
@@ -11,6 +12,8 @@ import org.objectweb.asm.tree.ClassNode;
 
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -103,6 +106,32 @@ public class RemappingTest extends Base {
 		}
 	}
 
+	@Test
+	public void testRenameEvent() {
+		try {
+			HierarchyGraph graph = workspace.getHierarchyGraph();
+			List<WorkspaceEvent> events = new ArrayList<>();
+			workspace.getEventBus().subscribe(events::add);
+			Mappings mappings = MappingImpl.SIMPLE.create(classMapFile, workspace);
+			mappings.accept(resource);
+			// All changes are published as one event
+			assertEquals(1, events.size());
+			ResourceDelta delta = events.get(0).getDelta(resource);
+			assertEquals("rename/GoodGuy", delta.getRenamedClasses().get("test/Jedi"));
+			assertEquals("rename/BadGuy", delta.getRenamedClasses().get("test/Sith"));
+			assertEquals("rename/Hello", delta.getRenamedClasses().get("test/Greetings"));
+			assertTrue(delta.getChangedClasses().contains("test/Yoda"));
+			assertTrue(delta.getChangedClasses().contains("test/Person"));
+			assertTrue(delta.getAddedClasses().isEmpty());
+			assertTrue(delta.getRemovedClasses().isEmpty());
+			// The hierarchy is updated from the event, and matches a rebuilt hierarchy
+			assertEquals(new HierarchyGraph(workspace).getDescendantMap(), graph.getDescendantMap());
+			assertTrue(graph.getDescendants("rename/GoodGuy").anyMatch("test/Yoda"::equals));
+		} catch(IOException ex) {
+			fail(ex);
+		}
+	}
+
 	@Test
 	public void testRenamedMethod() {
 		try {
@@ -1,14 +1,37 @@
 package me.coley.recaf;
 
+import me.coley.recaf.util.ClassHeader;
+import me.coley.recaf.util.ClassUtil;
+import me.coley.recaf.util.MappedZipFile;
 import me.coley.recaf.workspace.*;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldNode;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipOutputStream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -32,6 +55,330 @@ public class ResourceInputTest extends Base {
 		}
 	}
 
+	@Test
+	public void testJarParallel() {
+		try {
+			Path file = getClasspathFile("calc.jar");
+			JarResource sequential = new JarResource(file);
+			sequential.setLazyLoading(false);
+			JarResource parallel = new JarResource(file);
+			parallel.setLazyLoading(false);
+			parallel.setParallelLoading(true);
+			assertEquals(CLASSES_IN_CALC_JAR, parallel.getClasses().size());
+			assertEquals(sequential.getClasses().keySet(), parallel.getClasses().keySet());
+			for (String name : sequential.getClasses().keySet())
+				assertArrayEquals(sequential.getClasses().get(name), parallel.getClasses().get(name));
+		} catch(IOException ex) {
+			fail(ex);
+		}
+	}
+
+	@Test
+	public void testJarLazy() {
+		try {
+			Path file = getClasspathFile("calc.jar");
+			JarResource eager = new JarResource(file);
+			eager.setLazyLoading(false);
+			JarResource lazy = new JarResource(file);
+			lazy.setLazyLoading(true);
+			lazy.setLazyCacheSize(0);
+			assertEquals(CLASSES_IN_CALC_JAR, lazy.getClasses().size());
+			for (String name : eager.getClasses().keySet())
+				assertArrayEquals(eager.getClasses().get(name), lazy.getClasses().get(name));
+		} catch(IOException ex) {
+			fail(ex);
+		}
+	}
+
+	@Test
+	public void testDefaultLibraryIsLazy() {
+		try {
+			Path file = getClasspathFile("calc.jar");
+			JarResource library = new JarResource(file);
+			library.setLazyCacheSize(0);
+			assertTrue(library.isLazyLoading());
+			Map<String, byte[]> classes = library.getClasses();
+			assertEquals(CLASSES_IN_CALC_JAR, classes.size());
+			assertNull(library.getSharedParents(classes.keySet().iterator().next()));
+			// Bytecode is read from the archive on demand, so evicted values are read again
+			Iterator<String> names = classes.keySet().iterator();
+			String first = names.next();
+			String second = names.next();
+			byte[] value = classes.get(first);
+			classes.get(second);
+			byte[] reread = classes.get(first);
+			assertNotSame(value, reread);
+			assertArrayEquals(value, reread);
+		} catch(IOException ex) {
+			fail(ex);
+		}
+	}
+
+	@Test
+	public void testMappedArchiveReleasedOnClose(@TempDir Path dir) {
+		try {
+			Path file = dir.resolve("calc.jar");
+			Files.copy(getClasspathFile("calc.jar"), file);
+			MappedZipFile archive = new MappedZipFile(file);
+			MappedZipFile.Entry entry = archive.getEntries().get(0);
+			assertNotNull(archive.read(entry));
+			archive.close();
+			// The mapping no longer locks the file, and is not read after being released
+			Files.delete(file);
+			assertThrows(IOException.class, () -> archive.read(entry));
+		} catch(IOException ex) {
+			fail(ex);
+		}
+	}
+
+	@Test
+	public void testMappedArchiveForgedSize() {
+		try {
+			byte[] content = new byte[100_000];
+			Arrays.fill(content, (byte) 'A');
+			byte[] zip = zipOf("Item.txt", content);
+			// Declare an uncompressed size close to 2GB, which must not be allocated up front
+			ByteBuffer.wrap(zip).order(ByteOrder.LITTLE_ENDIAN).putInt(centralHeader(zip) + 24, 0x7FFFFFF0);
+			MappedZipFile archive = new MappedZipFile(ByteBuffer.wrap(zip));
+			assertArrayEquals(content, archive.read(archive.getEntries().get(0)));
+		} catch(IOException ex) {
+			fail(ex);
+		}
+	}
+
+	@Test
+	public void testMappedArchiveCorruptDirectory() {
+		try {
+			byte[] zip = zipOf("Item.txt", "Hello".getBytes(StandardCharsets.UTF_8));
+			// Name length running past the end of the central directory
+			ByteBuffer.wrap(zip).order(ByteOrder.LITTLE_ENDIAN).putShort(centralHeader(zip) + 28, (short) 0xFFFF);
+			assertThrows(ZipException.class, () -> new MappedZipFile(ByteBuffer.wrap(zip)));
+			// Truncated archive, missing the end of the central directory
+			byte[] truncated = Arrays.copyOf(zip, zip.length / 2);
+			assertThrows(ZipException.class, () -> new MappedZipFile(ByteBuffer.wrap(truncated)));
+		} catch(IOException ex) {
+			fail(ex);
+		}
+	}
+
+	@Test
+	public void testLazyLibraryReleasedOnClose(@TempDir Path dir) {
+		try {
+			Path file = dir.resolve("library.jar");
+			Files.copy(getClasspathFile("calc.jar"), file);
+			JarResource library = new JarResource(file);
+			Workspace workspace = new Workspace(new JarResource(getClasspathFile("inherit.jar")),
+					new ArrayList<>(Collections.singletonList(library)));
+			assertTrue(library.isLazyLoading());
+			assertEquals(CLASSES_IN_CALC_JAR, library.getClasses().size());
+			workspace.close();
+			// The archive is no longer held open, so it can be replaced
+			Files.delete(file);
+			Files.copy(getClasspathFile("inherit.jar"), file);
+			assertEquals(CLASSES_IN_INHERIT_JAR, library.getClasses().size());
+			workspace.getLibraries().remove(library);
+			Files.delete(file);
+		} catch(IOException ex) {
+			fail(ex);
+		}
+	}
+
+	@Test
+	public void testClassHeadersMatchAsm() {
+		try {
+			Path file = getClasspathFile("calc.jar");
+			JavaResource resource = new JarResource(file);
+			for (byte[] value : resource.getClasses().values()) {
+				ClassHeader header = ClassUtil.readValidHeader(value);
+				ClassReader reader = new ClassReader(value);
+				assertNotNull(header);
+				assertEquals(reader.getClassName(), header.getName());
+				assertEquals(reader.getSuperName(), header.getSuperName());
+				assertArrayEquals(reader.getInterfaces(), header.getInterfaces());
+				assertEquals(reader.getAccess(), header.getAccess());
+			}
+			assertNull(ClassUtil.readValidHeader(new byte[] { (byte) 0xCA, (byte) 0xFE, 0, 0 }));
+		} catch(IOException ex) {
+			fail(ex);
+		}
+	}
+
+	@Test
+	public void testWorkspaceSnapshot(@TempDir Path dir) {
+		try {
+			Path file = getClasspathFile("calc.jar");
+			Workspace workspace = new Workspace(new JarResource(file));
+			String modified = workspace.getPrimary().getClasses().keySet().iterator().next();
+			byte[] original = workspace.getRawClass(modified);
+			ClassNode node = new ClassNode();
+			new ClassReader(original).accept(node, 0);
+			node.fields.add(new FieldNode(Opcodes.ACC_PRIVATE, "snapshotField", "I", null, null));
+			ClassWriter writer = new ClassWriter(0);
+			node.accept(writer);
+			workspace.getPrimary().createClassSave(modified);
+			workspace.getPrimary().getClasses().put(modified, writer.toByteArray());
+			Path json = dir.resolve("workspace.json");
+			Files.write(json, WorkspaceIO.toJson(workspace).getBytes(StandardCharsets.UTF_8));
+			WorkspaceIO.writeSnapshot(workspace, json);
+			// Content and modifications are restored from the snapshot
+			Workspace restored = WorkspaceIO.fromJson(json);
+			assertEquals(CLASSES_IN_CALC_JAR, restored.getPrimary().getClasses().size());
+			for (String name : workspace.getPrimary().getClasses().keySet())
+				assertArrayEquals(workspace.getRawClass(name), restored.getRawClass(name));
+			assertTrue(restored.getPrimary().getDirtyClasses().contains(modified));
+			assertEquals(workspace.getHierarchyGraph().getDescendantMap(),
+					restored.getHierarchyGraph().getDescendantMap());
+			// The original content is restored as the base of the modified class's history
+			assertFalse(Arrays.equals(original, restored.getRawClass(modified)));
+			assertArrayEquals(original, restored.getPrimary().getClassHistory(modified).pop());
+			assertArrayEquals(original, restored.getRawClass(modified));
+		} catch(Exception ex) {
+			fail(ex);
+		}
+	}
+
+	@Test
+	public void testRuntimeClasspath() {
+		Map<String, byte[]> classes = LazyClasspathResource.get().getClasses();
+		assertTrue(classes.containsKey("java/lang/Object"));
+		assertTrue(classes.containsKey("java.util.HashMap"));
+		assertTrue(classes.containsKey("me/coley/recaf/Recaf"));
+		assertFalse(classes.containsKey("java/lang/DoesNotExist"));
+		assertNotNull(classes.get("java/lang/Object"));
+		assertNull(classes.get("java/lang/DoesNotExist"));
+	}
+
+	@Test
+	public void testInstrumentationUnavailable() {
+		// Not running as an agent
+		assertFalse(InstrumentationResource.isActive());
+		assertThrows(IllegalStateException.class, InstrumentationResource::getInstance);
+	}
+
+	@Test
+	public void testDirectoryMatchesJar(@TempDir Path dir) {
+		try {
+			Path file = getClasspathFile("calc.jar");
+			JarResource jar = new JarResource(file);
+			jar.setLazyLoading(false);
+			// Files are requested first, so classes are held from the same pass until requested
+			Map<String, byte[]> jarFiles = jar.getFiles();
+			Map<String, byte[]> jarClasses = jar.getClasses();
+			for (Map.Entry<String, byte[]> e : jarFiles.entrySet()) {
+				Path path = dir.resolve(e.getKey());
+				Files.createDirectories(path.getParent());
+				Files.write(path, e.getValue());
+			}
+			for (Map.Entry<String, byte[]> e : jarClasses.entrySet()) {
+				Path path = dir.resolve(e.getKey() + ".class");
+				Files.createDirectories(path.getParent());
+				Files.write(path, e.getValue());
+			}
+			DirectoryResource directory = new DirectoryResource(dir);
+			DirectoryResource parallel = new DirectoryResource(dir);
+			parallel.setParallelLoading(true);
+			assertEquals(CLASSES_IN_CALC_JAR, jarClasses.size());
+			assertEquals(jarClasses.keySet(), directory.getClasses().keySet());
+			assertEquals(jarFiles.keySet(), directory.getFiles().keySet());
+			assertEquals(jarFiles.keySet(), parallel.getFiles().keySet());
+			for (String name : jarClasses.keySet()) {
+				assertArrayEquals(jarClasses.get(name), directory.getClasses().get(name));
+				assertArrayEquals(jarClasses.get(name), parallel.getClasses().get(name));
+			}
+		} catch(IOException ex) {
+			fail(ex);
+		}
+	}
+
+	@Test
+	public void testNestedArchives(@TempDir Path dir) {
+		Path outer = dir.resolve("outer.jar");
+		try {
+			byte[] inner = Files.readAllBytes(getClasspathFile("calc.jar"));
+			try (ZipOutputStream zos = new ZipOutputStream(Files.newOutputStream(outer))) {
+				// Fat jars store their libraries uncompressed
+				ZipEntry stored = new ZipEntry("BOOT-INF/lib/stored.jar");
+				CRC32 crc = new CRC32();
+				crc.update(inner);
+				stored.setMethod(ZipEntry.STORED);
+				stored.setSize(inner.length);
+				stored.setCrc(crc.getValue());
+				zos.putNextEntry(stored);
+				zos.write(inner);
+				zos.closeEntry();
+				zos.putNextEntry(new ZipEntry("BOOT-INF/lib/deflated.jar"));
+				zos.write(inner);
+				zos.closeEntry();
+				zos.putNextEntry(new ZipEntry("readme.txt"));
+				zos.write("text".getBytes(StandardCharsets.UTF_8));
+				zos.closeEntry();
+			}
+			JavaResource calc = new JarResource(getClasspathFile("calc.jar"));
+			List<NestedArchiveResource> nested = new JarResource(outer).getNestedArchives();
+			assertEquals(2, nested.size());
+			for (NestedArchiveResource resource : nested) {
+				assertTrue(resource.getLocation().startsWith(outer.toString() + "!/BOOT-INF/lib/"));
+				assertTrue(resource.isLazyLoading());
+				resource.setLazyCacheSize(0);
+				Map<String, byte[]> classes = resource.getClasses();
+				assertEquals(CLASSES_IN_CALC_JAR, classes.size());
+				for (String name : calc.getClasses().keySet())
+					assertArrayEquals(calc.getClasses().get(name), classes.get(name));
+				// Classes are only read from the archive when accessed, so evicted values are read again
+				Iterator<String> names = classes.keySet().iterator();
+				String first = names.next();
+				byte[] value = classes.get(first);
+				classes.get(names.next());
+				assertNotSame(value, classes.get(first));
+			}
+		} catch(IOException ex) {
+			fail(ex);
+		}
+	}
+
+	@Test
+	public void testSharedLibrary(@TempDir Path dir) {
+		Path stored = dir.resolve("libraries");
+		try {
+			LibraryStore.clear();
+			LibraryStore.setEnabled(true);
+			LibraryStore.setDirectory(stored);
+			Path file = getClasspathFile("calc.jar");
+			JavaResource first = new JarResource(file);
+			JavaResource second = new JarResource(file);
+			assertEquals(CLASSES_IN_CALC_JAR, first.getClasses().size());
+			for (String name : first.getClasses().keySet()) {
+				// Libraries of the same file share their content
+				assertSame(first.getClasses().get(name), second.getClasses().get(name));
+				ClassReader reader = new ClassReader(first.getClasses().get(name));
+				String[] parents = first.getSharedParents(name);
+				assertNotNull(parents);
+				assertEquals(reader.getSuperName(), parents[0]);
+				assertEquals(reader.getInterfaces().length, parents.length - 1);
+			}
+			// Changes to one library do not affect the other
+			String modified = first.getClasses().keySet().iterator().next();
+			byte[] original = second.getClasses().get(modified);
+			first.getClasses().put(modified, original.clone());
+			assertNull(first.getSharedParents(modified));
+			assertSame(original, second.getClasses().get(modified));
+			// Libraries are read from the store directory in later sessions
+			assertEquals(1, stored.toFile().list().length);
+			LibraryStore.clear();
+			JavaResource restored = new JarResource(file);
+			assertEquals(second.getClasses().keySet(), restored.getClasses().keySet());
+			assertEquals(second.getFiles().keySet(), restored.getFiles().keySet());
+			for (String name : second.getClasses().keySet())
+				assertArrayEquals(second.getClasses().get(name), restored.getClasses().get(name));
+		} catch(IOException ex) {
+			fail(ex);
+		} finally {
+			LibraryStore.setEnabled(false);
+			LibraryStore.setDirectory(null);
+			LibraryStore.clear();
+		}
+	}
+
 	@Test
 	public void testJarResourcesDoNotContainClasses() {
 		try {
@@ -122,4 +469,22 @@ public class ResourceInputTest extends Base {
 	public void testMavenDoesNotExist() {
 		assertThrows(IOException.class, () -> new MavenResource("does","not","exist"));
 	}
+
+	private static byte[] zipOf(String name, byte[] content) throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		try (ZipOutputStream zos = new ZipOutputStream(baos)) {
+			zos.putNextEntry(new ZipEntry(name));
+			zos.write(content);
+			zos.closeEntry();
+		}
+		return baos.toByteArray();
+	}
+
+	private static int centralHeader(byte[] zip) {
+		ByteBuffer buffer = ByteBuffer.wrap(zip).order(ByteOrder.LITTLE_ENDIAN);
+		for (int i = zip.length - 4; i >= 0; i--)
+			if (buffer.getInt(i) == 0x02014b50)
+				return i;
+		throw new IllegalStateException("No central directory header");
+	}
 }
@@ -3,11 +3,20 @@ package me.coley.recaf;
 import me.coley.recaf.workspace.*;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.tree.ClassNode;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BooleanSupplier;
+import java.util.stream.IntStream;
 
-import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.*;
 
 /**
  * Tests the listening map used in {@link me.coley.recaf.workspace.JavaResource}.
@@ -50,6 +59,40 @@ public class ResourceUpdateTest extends Base {
 		assertTrue(resource.getDirtyFiles().contains(valueToPut));
 	}
 
+	@Test
+	public void testEventTransaction() {
+		// Loading the content replaces the maps in bulk, so it is done first
+		resource.getClasses();
+		resource.getFiles();
+		List<WorkspaceEvent> events = new ArrayList<>();
+		WorkspaceEventBus bus = workspace.getEventBus();
+		bus.subscribe(events::add);
+		resource.getClasses().put("Existing", new byte[0]);
+		resource.getFiles().put("existing.txt", new byte[0]);
+		// Changes outside of a transaction are published on their own
+		assertEquals(2, events.size());
+		assertEquals(Collections.singleton("Existing"), events.get(0).getDelta(resource).getAddedClasses());
+		assertEquals(Collections.singleton("existing.txt"), events.get(1).getDelta(resource).getAddedFiles());
+		events.clear();
+		// Changes in a transaction are coalesced into one event
+		bus.transaction(() -> {
+			resource.getClasses().put("Added", new byte[0]);
+			resource.getClasses().put("Temporary", new byte[0]);
+			resource.getClasses().remove("Temporary");
+			resource.getClasses().put("Existing", new byte[1]);
+			resource.getClasses().put("Added", new byte[1]);
+			bus.transaction(() -> resource.getFiles().remove("existing.txt"));
+			assertTrue(events.isEmpty());
+		});
+		assertEquals(1, events.size());
+		ResourceDelta delta = events.get(0).getDelta(resource);
+		assertEquals(Collections.singleton("Added"), delta.getAddedClasses());
+		assertEquals(Collections.singleton("Existing"), delta.getChangedClasses());
+		assertTrue(delta.getRemovedClasses().isEmpty());
+		assertEquals(Collections.singleton("existing.txt"), delta.getRemovedFiles());
+		assertThrows(IllegalStateException.class, bus::endTransaction);
+	}
+
 	@Test
 	public void testClassPutAll() {
 		String valueToPut1 = "Test1";
@@ -113,6 +156,165 @@ public class ResourceUpdateTest extends Base {
 		assertTrue(removed.contains(valueToRemove));
 	}
 
+	@Test
+	public void testWorkspaceLookupFollowsUpdates() {
+		String name = "Test";
+		JavaResource library = new DummyResource();
+		workspace.getLibraries().add(library);
+		assertNull(workspace.getContainingResourceForClass(name));
+		// Library definitions are found, but primary definitions take priority
+		library.getClasses().put(name, new byte[0]);
+		assertSame(library, workspace.getContainingResourceForClass(name));
+		resource.getClasses().put(name, new byte[0]);
+		assertSame(resource, workspace.getContainingResourceForClass(name));
+		resource.getClasses().remove(name);
+		assertSame(library, workspace.getContainingResourceForClass(name));
+		// Removing the library removes its definitions
+		workspace.getLibraries().remove(library);
+		assertFalse(workspace.hasClass(name));
+		// Same for files
+		resource.getFiles().put(name, new byte[0]);
+		assertTrue(workspace.hasFile(name));
+		resource.getFiles().remove(name);
+		assertFalse(workspace.hasFile(name));
+	}
+
+	@Test
+	public void testParseCacheFollowsUpdates() throws IOException {
+		String name = "Hello";
+		byte[] code = Files.readAllBytes(getClasspathFile("Hello.class"));
+		resource.getClasses().put(name, code);
+		// Repeated lookups share the parsed class
+		ClassNode node = workspace.getClassNode(name, ClassReader.SKIP_CODE);
+		assertSame(node, workspace.getClassNode(name, ClassReader.SKIP_CODE));
+		assertSame(workspace.getClassReader(name), workspace.getClassReader(name));
+		assertTrue(workspace.getParseCache().getHits() > 0);
+		// Updated bytecode is parsed again
+		resource.getClasses().put(name, code.clone());
+		assertNotSame(node, workspace.getClassNode(name, ClassReader.SKIP_CODE));
+	}
+
+	@Test
+	public void testVersionedNameViews() {
+		String name = "Test";
+		Set<String> names = workspace.getPrimaryClassNames();
+		long version = workspace.getModificationCount();
+		// Unmodified workspace reuses the view
+		assertSame(names, workspace.getPrimaryClassNames());
+		assertThrows(UnsupportedOperationException.class, () -> names.add(name));
+		// Modifications are reflected in a new view
+		resource.getClasses().put(name, new byte[0]);
+		assertTrue(workspace.getModificationCount() > version);
+		assertFalse(names.contains(name));
+		assertTrue(workspace.getPrimaryClassNames().contains(name));
+		assertTrue(workspace.getClassNames().contains(name));
+	}
+
+	@Test
+	public void testVersionedNameViewsReadDuringPut() {
+		String name = "Test";
+		// Index the workspace, so its listeners run before the one below
+		workspace.getModificationCount();
+		// Put listeners run before the map changes, so views read by them must not be reused afterwards
+		resource.getClasses().getPutListeners().add((n, code) -> workspace.getPrimaryClassNames());
+		resource.getClasses().put(name, new byte[0]);
+		assertTrue(workspace.getPrimaryClassNames().contains(name));
+	}
+
+	@Test
+	public void testConcurrentPut() {
+		int count = 1000;
+		JavaResource concurrent = new DummyResource();
+		concurrent.setConcurrent(true);
+		concurrent.setPrimary(true);
+		// Record values put in the map
+		Set<String> putted = ConcurrentHashMap.newKeySet();
+		concurrent.getClasses().getPutListeners().add((name, code) -> putted.add(name));
+		// Put values from multiple threads
+		IntStream.range(0, count).parallel().forEach(i -> concurrent.getClasses().put("Test" + i, new byte[0]));
+		assertEquals(count, concurrent.getClasses().size());
+		assertEquals(count, putted.size());
+		assertEquals(count, concurrent.getDirtyClasses().size());
+		assertEquals(count, concurrent.getClassHistory().size());
+	}
+
+	@Test
+	public void testDirectoryWatching(@TempDir Path dir) throws Exception {
+		String name = "notes.txt";
+		Path file = dir.resolve(name);
+		Files.write(file, "initial".getBytes(StandardCharsets.UTF_8));
+		DirectoryResource directory = new DirectoryResource(dir);
+		directory.setConcurrent(true);
+		directory.setWatching(true);
+		try {
+			assertArrayEquals("initial".getBytes(StandardCharsets.UTF_8), directory.getFiles().get(name));
+			// Changes on disk are put into the loaded files
+			byte[] updated = "updated".getBytes(StandardCharsets.UTF_8);
+			Files.write(file, updated);
+			awaitCondition(() -> Arrays.equals(updated, directory.getFiles().get(name)));
+			// New classes are validated and put into the loaded classes
+			Files.copy(getClasspathFile("Hello.class"), dir.resolve("Hello.class"));
+			awaitCondition(() -> directory.getClasses().containsKey("Hello"));
+			// Removed files are removed from the loaded files
+			Files.delete(file);
+			awaitCondition(() -> !directory.getFiles().containsKey(name));
+		} finally {
+			directory.setWatching(false);
+		}
+	}
+
+	@Test
+	public void testDirectoryWatchingInvalidatedClass(@TempDir Path dir) throws Exception {
+		Path file = dir.resolve("Hello.class");
+		Files.copy(getClasspathFile("Hello.class"), file);
+		DirectoryResource directory = new DirectoryResource(dir);
+		directory.setWatching(true);
+		try {
+			// Watching makes the resource safe to update from the watcher's thread
+			assertTrue(directory.isConcurrent());
+			assertTrue(directory.getClasses().containsKey("Hello"));
+			// A class file rewritten with invalid content no longer holds the class, and is added as a file
+			byte[] invalid = "not a class".getBytes(StandardCharsets.UTF_8);
+			Files.write(file, invalid);
+			awaitCondition(() -> directory.getFiles().containsKey("Hello.class"));
+			assertFalse(directory.getClasses().containsKey("Hello"));
+			assertArrayEquals(invalid, directory.getFiles().get("Hello.class"));
+		} finally {
+			directory.setWatching(false);
+		}
+	}
+
+	@Test
+	public void testDirectoryWatchingMismatchedClassNames(@TempDir Path dir) throws Exception {
+		// Class names do not have to match the names of their files
+		Path pointFile = dir.resolve("Hello.class");
+		Path helloFile = dir.resolve("Point.class");
+		Files.copy(getClasspathFile("Point.class"), pointFile);
+		Files.copy(getClasspathFile("Hello.class"), helloFile);
+		DirectoryResource directory = new DirectoryResource(dir);
+		directory.setWatching(true);
+		try {
+			assertTrue(directory.getClasses().containsKey("Hello"));
+			assertTrue(directory.getClasses().containsKey("Point"));
+			// Deleting a file removes the class it held, not the class matching its name
+			Files.delete(pointFile);
+			awaitCondition(() -> !directory.getClasses().containsKey("Point"));
+			assertTrue(directory.getClasses().containsKey("Hello"));
+		} finally {
+			directory.setWatching(false);
+		}
+	}
+
+	private static void awaitCondition(BooleanSupplier condition) throws InterruptedException {
+		// Some watch service implementations poll for changes, so allow plenty of time
+		long end = System.currentTimeMillis() + 20_000;
+		while (!condition.getAsBoolean()) {
+			if (System.currentTimeMillis() > end)
+				fail("Timed out waiting for directory changes");
+			Thread.sleep(20);
+		}
+	}
+
 	/**
 	 * Empty resource that allows items to be added.
 	 */
@@ -3,10 +3,18 @@ package me.coley.recaf;
 import me.coley.recaf.search.*;
 import me.coley.recaf.workspace.*;
 import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.commons.ClassRemapper;
+import org.objectweb.asm.commons.Remapper;
 
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 import static me.coley.recaf.search.StringMatchMode.*;
@@ -281,6 +289,241 @@ public class SearchTest extends Base {
 		assertTrue(results.contains("calc/Constant"));
 	}
 
+	@Test
+	public void testParallelMatchesSerial() {
+		// Setup workspace - Enough copies of the calculator to be split across threads
+		Workspace copies = new Workspace(new EmptyResource());
+		for (int i = 0; i < 40; i++) {
+			String prefix = "copy" + i + "/";
+			for (Map.Entry<String, byte[]> e : base.getClasses().entrySet()) {
+				ClassWriter cw = new ClassWriter(0);
+				new ClassReader(e.getValue()).accept(new ClassRemapper(cw, new Remapper() {
+					@Override
+					public String map(String internalName) {
+						return internalName.startsWith("calc/") ? prefix + internalName : internalName;
+					}
+				}), 0);
+				copies.getPrimary().getClasses().put(prefix + e.getKey(), cw.toByteArray());
+			}
+		}
+		// Results, including their order, must be the same
+		Query[] queries = {
+				new StringQuery("EVAL", STARTS_WITH),
+				new ClassReferenceQuery("java/lang/String"),
+				new MemberReferenceQuery(null, "log", null, EQUALS)
+		};
+		for (Query query : queries) {
+			List<String> serial = describe(SearchBuilder.in(copies).query(query).build());
+			List<String> parallel = describe(SearchBuilder.in(copies).parallel().query(query).build());
+			assertFalse(serial.isEmpty());
+			assertEquals(serial, parallel);
+		}
+	}
+
+	@Test
+	public void testMatchedFieldIsPerThread() throws InterruptedException {
+		// Queries written against the protected field share their results with getMatched(), per thread
+		LegacyQuery query = new LegacyQuery();
+		query.match("Main");
+		assertEquals(1, query.getMatched().size());
+		AtomicInteger otherSize = new AtomicInteger(-1);
+		Thread thread = new Thread(() -> {
+			query.match("Other");
+			otherSize.set(query.getMatched().size());
+		});
+		thread.start();
+		thread.join();
+		assertEquals(1, otherSize.get());
+		assertEquals(1, query.getMatched().size());
+		assertEquals("Main", ((ClassResult) query.getMatched().get(0)).getName());
+	}
+
+	@Test
+	public void testIndexMatchesFullSearch() {
+		// Narrowing the classes to visit with the constant index must not change the results
+		Query[] queries = {
+				new StringQuery("EVAL", STARTS_WITH),
+				new StringQuery("e", CONTAINS),
+				new StringQuery("EVAL: ", EQUALS),
+				new ValueQuery(30),
+				new ValueQuery(1)
+		};
+		workspace.getConstantIndex().build();
+		for (Query query : queries) {
+			List<String> full = describe(SearchBuilder.in(workspace).noIndex().query(query).build());
+			List<String> indexed = describe(SearchBuilder.in(workspace).query(query).build());
+			assertFalse(full.isEmpty());
+			assertEquals(full, indexed);
+		}
+	}
+
+	@Test
+	public void testSearchBeforeIndexIsBuilt() throws Exception {
+		Workspace fresh = new Workspace(base);
+		ConstantIndex index = fresh.getConstantIndex();
+		List<String> full = describe(SearchBuilder.in(workspace).noIndex()
+				.query(new StringQuery("EVAL", STARTS_WITH)).build());
+		// Until the index is built every class is visited, and the index is built in the background
+		assertEquals(full, describe(SearchBuilder.in(fresh).query(new StringQuery("EVAL", STARTS_WITH)).build()));
+		index.buildInBackground().get();
+		assertTrue(index.isBuilt());
+		assertEquals(full, describe(SearchBuilder.in(fresh).query(new StringQuery("EVAL", STARTS_WITH)).build()));
+	}
+
+	@Test
+	public void testIndexLocations(@TempDir Path dir) throws IOException {
+		ConstantIndex index = workspace.getConstantIndex();
+		// String "EVAL: " is used by an instruction in Calculator.evaluate(int, String)
+		List<ConstantIndex.Location> strings = index.findStrings("EVAL", STARTS_WITH);
+		assertEquals(1, strings.size());
+		ConstantIndex.Location location = strings.get(0);
+		assertEquals("calc/Calculator", location.getOwner());
+		assertEquals("evaluate", location.getMemberName());
+		assertEquals("(ILjava/lang/String;)D", location.getMemberDesc());
+		assertTrue(location.getOffset() >= 0);
+		// Calculator.MAX_DEPTH = 30 is both a field constant and inlined
+		List<ConstantIndex.Location> values = index.findValues(30);
+		assertTrue(values.stream().anyMatch(loc -> "MAX_DEPTH".equals(loc.getMemberName()) && loc.getOffset() < 0));
+		assertTrue(values.stream().anyMatch(loc -> loc.getOffset() >= 0));
+		// Written index is reused by a new workspace
+		Path file = dir.resolve("index.constants");
+		index.write(file);
+		ConstantIndex copy = new Workspace(base).getConstantIndex();
+		copy.read(file);
+		assertEquals(values.toString(), copy.findValues(30).toString());
+		assertEquals(strings.toString(), copy.findStrings("EVAL", STARTS_WITH).toString());
+	}
+
+	@Test
+	public void testConstantPoolFilterKeepsMatches() {
+		// A class name query that never matches cannot be checked against the constant pool,
+		// so adding it visits every class without adding results
+		Query[] queries = {
+				new ClassReferenceQuery("java/lang/String"),
+				new ClassReferenceQuery("Expression", CONTAINS),
+				new MemberReferenceQuery(null, "log", null, EQUALS),
+				new MemberReferenceQuery("java/io/PrintStream", "println", null, EQUALS),
+				new StringQuery("EVAL", STARTS_WITH)
+		};
+		for (Query query : queries) {
+			List<String> filtered = describe(SearchBuilder.in(workspace).noIndex().query(query).build());
+			List<String> full = describe(SearchBuilder.in(workspace).noIndex().query(query)
+					.query(new ClassNameQuery("does/not/Exist", EQUALS)).build());
+			assertFalse(filtered.isEmpty());
+			assertEquals(full, filtered);
+		}
+	}
+
+	@Test
+	public void testCompiledMatchers() {
+		StringMatcher regex = REGEX.compile("^EVAL: ?$");
+		assertTrue(regex.matches("EVAL: "));
+		assertTrue(regex.matches("EVAL:"));
+		assertFalse(regex.matches("xEVAL: "));
+		// Compiled matchers agree with the one-off match method
+		for (StringMatchMode mode : StringMatchMode.values()) {
+			StringMatcher matcher = mode.compile("EVAL");
+			for (String text : new String[] { "EVAL", "EVAL: ", "x EVAL", "eval" })
+				assertEquals(mode.match("EVAL", text), matcher.matches(text));
+		}
+		// Invalid patterns never match
+		assertFalse(REGEX.compile("[").matches("["));
+	}
+
+	@Test
+	public void testInsnPatternCaptures() {
+		// Setup search - Each string passed to "String.contains" in Calculator.evaluate(int, String)
+		SearchCollector collector = SearchBuilder.in(workspace).skipDebug()
+				.query(new InsnPatternQuery("LDC $str; INVOKEVIRTUAL java/lang/String.contains *")).build();
+		List<String> captured = collector.getAllResults().stream()
+				.filter(res -> ((Context.MemberContext) res.getContext()).getParent().getName().equals("calc/Calculator"))
+				.map(res -> ((InsnPatternResult) res).getCaptures().get("str"))
+				.collect(Collectors.toList());
+		assertEquals(Arrays.asList("(", "^", "*", "/", "+"), captured.subList(0, 5));
+		// Matched instructions are listed in the result
+		InsnPatternResult first = (InsnPatternResult) collector.getAllResults().get(0);
+		assertEquals(2, first.getLines().size());
+		assertTrue(first.getLines().get(1).startsWith("INVOKEVIRTUAL java/lang/String.contains"));
+	}
+
+	@Test
+	public void testInsnPatternGapsAndBackReferences() {
+		// Setup search - Constructing a type, the same type must be passed to the constructor call
+		SearchCollector collector = SearchBuilder.in(workspace).skipDebug()
+				.query(new InsnPatternQuery("NEW $type\nDUP\n...\nINVOKESPECIAL $type.<init>"))
+				.build();
+		List<SearchResult> results = collector.getAllResults();
+		assertFalse(results.isEmpty());
+		for (SearchResult res : results) {
+			InsnPatternResult result = (InsnPatternResult) res;
+			String type = result.getCaptures().get("type");
+			List<String> lines = result.getLines();
+			assertEquals("NEW " + type, lines.get(0));
+			assertTrue(lines.get(lines.size() - 1).startsWith("INVOKESPECIAL " + type + ".<init>"));
+		}
+		assertTrue(results.stream().anyMatch(res -> "calc/Parenthesis".equals(
+				((InsnPatternResult) res).getCaptures().get("type"))));
+		// Opcode wildcards
+		assertFalse(SearchBuilder.in(workspace).query(new InsnPatternQuery("INVOKE* *.log"))
+				.build().getAllResults().isEmpty());
+	}
+
+	@Test
+	public void testInsnPatternMalformed() {
+		assertThrows(IllegalArgumentException.class, () -> new InsnPatternQuery("NOT_AN_OPCODE"));
+		assertThrows(IllegalArgumentException.class, () -> new InsnPatternQuery("LDC \"unterminated"));
+		assertThrows(IllegalArgumentException.class, () -> new InsnPatternQuery("..."));
+	}
+
+	@Test
+	public void testLimitStreamsFirstResults() {
+		// Calculator.MAX_DEPTH = 30 is found before the inlined value, see testValue
+		List<SearchResult> streamed = new ArrayList<>();
+		SearchCollector collector = SearchBuilder.in(workspace).skipDebug()
+				.query(new ValueQuery(30)).limit(1).onResult(streamed::add).build();
+		List<SearchResult> results = collector.getAllResults();
+		assertEquals(1, results.size());
+		assertEquals(results, streamed);
+		contextEquals(results.get(0).getContext(), "calc/Calculator", "MAX_DEPTH", "I");
+	}
+
+	@Test
+	public void testStartReportsProgress() throws Exception {
+		AtomicInteger progress = new AtomicInteger();
+		SearchBuilder builder = SearchBuilder.in(workspace).noIndex().skipDebug().skipCode()
+				.query(new ClassNameQuery("calc/", STARTS_WITH));
+		List<String> expected = describe(builder.build());
+		SearchTask task = builder.onProgress((scanned, total) -> progress.set(scanned)).start();
+		SearchCollector collector = task.get();
+		assertTrue(task.isDone());
+		assertFalse(task.isCancelled());
+		assertEquals(workspace.getPrimaryClassNames().size(), task.getTotal());
+		assertEquals(task.getTotal(), task.getScanned());
+		assertEquals(task.getTotal(), progress.get());
+		assertEquals(expected, describe(collector));
+	}
+
+	@Test
+	public void testCancelStopsSearch() throws Exception {
+		// Hold the search after the first class until it has been cancelled
+		CountDownLatch cancelled = new CountDownLatch(1);
+		SearchTask task = SearchBuilder.in(workspace).noIndex().skipDebug().skipCode()
+				.query(new ClassNameQuery("calc/", STARTS_WITH))
+				.onProgress((scanned, total) -> {
+					try {
+						cancelled.await();
+					} catch(InterruptedException ex) {
+						Thread.currentThread().interrupt();
+					}
+				}).start();
+		task.cancel();
+		cancelled.countDown();
+		SearchCollector collector = task.get();
+		assertTrue(task.isCancelled());
+		assertTrue(task.getScanned() < task.getTotal());
+		assertTrue(collector.getAllResults().size() <= 1);
+	}
+
 	private static void contextEquals(Context<?> context, String owner, String name, String desc) {
 		assertTrue(context instanceof Context.MemberContext);
 		Context.MemberContext member = (Context.MemberContext) context;
@@ -288,4 +531,23 @@ public class SearchTest extends Base {
 		assertEquals(name, member.getName());
 		assertEquals(desc, member.getDesc());
 	}
+
+	private static List<String> describe(SearchCollector collector) {
+		return collector.getAllResults().stream()
+				.map(res -> res.getContext() + " " + res)
+				.collect(Collectors.toList());
+	}
+
+	/**
+	 * Query that adds its results through the protected field, like queries written before parallel search.
+	 */
+	private static class LegacyQuery extends Query {
+		private LegacyQuery() {
+			super(QueryType.CLASS_NAME, EQUALS);
+		}
+
+		private void match(String name) {
+			matched.add(new ClassResult(Opcodes.ACC_PUBLIC, name));
+		}
+	}
 }
@@ -223,6 +223,28 @@ public class SourceCodeTest extends Base {
 			assertMatchingSource(resource);
 		}
 
+		@Test
+		public void testLazySourceLoading() {
+			JavaResource resource;
+			try {
+				Path file = getClasspathFile("calc.jar");
+				resource = new JarResource(file);
+				resource.getClasses();
+				if(!resource.setClassSources(file))
+					fail("Failed to read sources!");
+				// Sources are indexed by class name, and parsed on first request or in the background
+				assertTrue(resource.getClassSources().containsKey("calc/Calculator"));
+				resource.preloadClassSources().get();
+			} catch(Exception ex) {
+				fail(ex);
+				return;
+			}
+			SourceCode code = resource.getClassSource("calc/Calculator");
+			assertEquals("calc/Calculator", code.getInternalName());
+			assertSame(code, resource.getClassSource("calc/Calculator"));
+			assertNull(resource.getClassSource("calc/DoesNotExist"));
+		}
+
 		@Test
 		public void testSingleClassSourceLoading() {
 			JavaResource resource;
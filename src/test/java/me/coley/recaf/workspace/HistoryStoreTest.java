@@ -0,0 +1,76 @@
+package me.coley.recaf.workspace;
+
+import me.coley.recaf.util.struct.ListeningMap;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for history states moved to disk.
+ *
+ * @author Matt
+ */
+public class HistoryStoreTest {
+	private final ListeningMap<String, byte[]> map = new ListeningMap<>();
+	private long threshold;
+
+	@BeforeEach
+	public void setup() {
+		map.setBacking(new HashMap<>());
+		threshold = HistoryStore.getSpillThreshold();
+		// Move every delta to disk
+		HistoryStore.setSpillThreshold(0);
+	}
+
+	@AfterEach
+	public void cleanup() {
+		HistoryStore.setSpillThreshold(threshold);
+	}
+
+	@Test
+	public void testSpillFileDeletedWhenCleared() {
+		History history = new History(map, "Item");
+		push(history, 5);
+		assertTrue(HistoryStore.getSpillSize() > 0);
+		history.clear();
+		assertEquals(0, HistoryStore.getSpillSize());
+	}
+
+	@Test
+	public void testSpillFileShrinksWhenReverting() {
+		History history = new History(map, "Item");
+		byte[][] states = push(history, 5);
+		long size = HistoryStore.getSpillSize();
+		assertTrue(size > 0);
+		for (int i = states.length - 1; i >= 0; i--) {
+			assertArrayEquals(states[i], history.pop());
+			assertTrue(HistoryStore.getSpillSize() <= size);
+			size = HistoryStore.getSpillSize();
+		}
+		assertEquals(0, HistoryStore.getSpillSize());
+	}
+
+	@Test
+	public void testReadWithoutSpillFileFails() {
+		assertEquals(0, HistoryStore.getSpillSize());
+		assertThrows(IllegalStateException.class, () -> HistoryStore.read(0, 16));
+	}
+
+	private byte[][] push(History history, int count) {
+		byte[][] states = new byte[count][];
+		byte[] current = new byte[256];
+		for (int i = 0; i < count; i++) {
+			current = Arrays.copyOf(current, current.length);
+			current[current.length / 2 + i] ^= (byte) (i + 1);
+			states[i] = current;
+			map.put(history.name, current);
+			history.push(current);
+		}
+		return states;
+	}
+}
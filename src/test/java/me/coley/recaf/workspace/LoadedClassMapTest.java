@@ -0,0 +1,86 @@
+package me.coley.recaf.workspace;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for lazily listed runtime classes.
+ *
+ * @author Matt
+ */
+public class LoadedClassMapTest {
+	private final AtomicInteger fetches = new AtomicInteger();
+	private LoadedClassMap map;
+
+	private LoadedClassMap create(boolean available) {
+		map = new LoadedClassMap(cls -> {
+			// Fetching retransforms the class, which must not happen while holding the map's lock
+			assertFalse(Thread.holdsLock(map));
+			fetches.incrementAndGet();
+			return available ? code(cls) : null;
+		}, LoadedClassMap.DEFAULT_CACHE_SIZE);
+		return map;
+	}
+
+	@Test
+	public void testNamesListedWithoutFetching() {
+		LoadedClassMap map = create(true);
+		map.index("java/lang/String", String.class);
+		map.index("java/util/List", List.class);
+		assertEquals(new HashSet<>(Arrays.asList("java/lang/String", "java/util/List")), map.keySet());
+		assertEquals(2, map.size());
+		assertTrue(map.containsKey("java/lang/String"));
+		assertTrue(map.isIndexed("java/lang/String"));
+		assertSame(String.class, map.getRuntimeClass("java/lang/String"));
+		assertEquals(0, fetches.get());
+	}
+
+	@Test
+	public void testFetchOnDemand() {
+		LoadedClassMap map = create(true);
+		map.index("java/lang/String", String.class);
+		map.index("java/util/List", List.class);
+		assertArrayEquals(code(String.class), map.get("java/lang/String"));
+		assertEquals(1, fetches.get());
+		// Fetched values are cached
+		assertArrayEquals(code(String.class), map.get("java/lang/String"));
+		assertEquals(1, fetches.get());
+		assertNull(map.get("java/lang/DoesNotExist"));
+		assertEquals(1, fetches.get());
+	}
+
+	@Test
+	public void testPutKeepsOriginal() {
+		LoadedClassMap map = create(true);
+		map.index("java/lang/String", String.class);
+		Supplier<byte[]> original = map.getOriginal("java/lang/String");
+		byte[] modified = new byte[] { 1, 2, 3 };
+		assertArrayEquals(code(String.class), map.put("java/lang/String", modified));
+		assertFalse(map.isIndexed("java/lang/String"));
+		assertArrayEquals(modified, map.get("java/lang/String"));
+		assertArrayEquals(code(String.class), original.get());
+		assertNull(map.getOriginal("java/lang/DoesNotExist"));
+	}
+
+	@Test
+	public void testUnavailableBytecode() {
+		// Classes that cannot be retransformed or read from their class loader
+		LoadedClassMap map = create(false);
+		map.index("java/lang/String", String.class);
+		assertNull(map.get("java/lang/String"));
+		// The class is still listed, and fetching is tried again on the next access
+		assertTrue(map.containsKey("java/lang/String"));
+		assertNull(map.get("java/lang/String"));
+		assertEquals(2, fetches.get());
+	}
+
+	private static byte[] code(Class<?> cls) {
+		return cls.getName().getBytes(StandardCharsets.UTF_8);
+	}
+}